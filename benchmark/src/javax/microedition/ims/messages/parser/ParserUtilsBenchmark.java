@@ -0,0 +1,142 @@
+/*
+ * This software code is (c) 2010 T-Mobile USA, Inc. All Rights Reserved.
+ *
+ * Unauthorized redistribution or further use of this material is
+ * prohibited without the express permission of T-Mobile USA, Inc. and
+ * will be prosecuted to the fullest extent of the law.
+ *
+ * Removal or modification of these Terms and Conditions from the source
+ * or binary code of this software is prohibited.  In the event that
+ * redistribution of the source or binary code for this software is
+ * approved by T-Mobile USA, Inc., these Terms and Conditions and the
+ * above copyright notice must be reproduced in their entirety and in all
+ * circumstances.
+ *
+ * No name or trademarks of T-Mobile USA, Inc., or of its parent company,
+ * Deutsche Telekom AG or any Deutsche Telekom or T-Mobile entity, may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" AND "WITH ALL FAULTS" BASIS
+ * AND WITHOUT WARRANTIES OF ANY KIND.  ALL EXPRESS OR IMPLIED
+ * CONDITIONS, REPRESENTATIONS OR WARRANTIES, INCLUDING ANY IMPLIED
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR
+ * NON-INFRINGEMENT CONCERNING THIS SOFTWARE, ITS SOURCE OR BINARY CODE
+ * OR ANY DERIVATIVES THEREOF ARE HEREBY EXCLUDED.  T-MOBILE USA, INC.
+ * AND ITS LICENSORS SHALL NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY
+ * LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE
+ * OR ITS DERIVATIVES.  IN NO EVENT WILL T-MOBILE USA, INC. OR ITS
+ * LICENSORS BE LIABLE FOR LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT,
+ * INDIRECT, SPECIAL, CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES,
+ * HOWEVER CAUSED AND REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT
+ * OF THE USE OF OR INABILITY TO USE THIS SOFTWARE, EVEN IF T-MOBILE USA,
+ * INC. HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGES.
+ *
+ * THESE TERMS AND CONDITIONS APPLY SOLELY AND EXCLUSIVELY TO THE USE,
+ * MODIFICATION OR DISTRIBUTION OF THIS SOFTWARE, ITS SOURCE OR BINARY
+ * CODE OR ANY DERIVATIVES THEREOF, AND ARE SEPARATE FROM ANY WRITTEN
+ * WARRANTY THAT MAY BE PROVIDED WITH A DEVICE YOU PURCHASE FROM T-MOBILE
+ * USA, INC., AND TO THE EXTENT PERMITTED BY LAW.
+ */
+
+package javax.microedition.ims.messages.parser;
+
+import java.lang.reflect.Method;
+
+/**
+ * Compares string based and byte-range based {@link ParserUtils} decoding (numbers, display name, url decoding).
+ * Run it as a plain java application with ims-parser and ims-common on classpath,
+ * it prints time and allocated bytes per call for both variants.
+ */
+public class ParserUtilsBenchmark {
+    private static final int WARM_UP_ITERATIONS = 200 * 1000;
+    private static final int ITERATIONS = 2 * 1000 * 1000;
+
+    private static final String TEXT = "CSeq: 314159 INVITE\r\n" +
+            "Content-Length: 1024\r\n" +
+            "From: \"Alice Smith\" <sip:alice@example.com>;tag=9fxced76sl\r\n" +
+            "To: <sip:bob%40biloxi.example.com;transport=tcp>\r\n";
+    private static final byte[] DATA = TEXT.getBytes();
+
+    private static final int NUMBER_START = 6, NUMBER_END = 12;
+    private static final int LENGTH_START = 37, LENGTH_END = 41;
+    private static final int NAME_START = 50, NAME_END = 61;
+    private static final int URI_START = TEXT.indexOf("sip:bob"), URI_END = TEXT.indexOf('>', URI_START);
+
+    private static volatile long sink;
+
+    private interface Task {
+        long run();
+    }
+
+    private static final Task STRING_TASK = new Task() {
+        public long run() {
+            long retValue = ParserUtils.toNumber(new String(DATA, NUMBER_START, NUMBER_END - NUMBER_START), -1, 10);
+            retValue += ParserUtils.toNumber(new String(DATA, LENGTH_START, LENGTH_END - LENGTH_START), -1, 10);
+            retValue += ParserUtils.decodeDisplayName(new String(DATA, NAME_START, NAME_END - NAME_START)).length();
+            retValue += ParserUtils.urlDecode(new String(DATA, URI_START, URI_END - URI_START)).hashCode();
+            return retValue;
+        }
+    };
+
+    private static final Task BYTES_TASK = new Task() {
+        public long run() {
+            long retValue = ParserUtils.toNumber(DATA, NUMBER_START, NUMBER_END, -1, 10);
+            retValue += ParserUtils.toNumber(DATA, LENGTH_START, LENGTH_END, -1, 10);
+            retValue += ParserUtils.decodeDisplayName(DATA, NAME_START, NAME_END).length();
+            retValue += ParserUtils.urlDecode(DATA, URI_START, URI_END).hashCode();
+            return retValue;
+        }
+    };
+
+
+    public static void main(String[] args) {
+        if (STRING_TASK.run() != BYTES_TASK.run()) {
+            throw new IllegalStateException("Benchmark variants are not equivalent");
+        }
+
+        measure("string ", STRING_TASK, WARM_UP_ITERATIONS, false);
+        measure("bytes  ", BYTES_TASK, WARM_UP_ITERATIONS, false);
+
+        measure("string ", STRING_TASK, ITERATIONS, true);
+        measure("bytes  ", BYTES_TASK, ITERATIONS, true);
+    }
+
+    private static void measure(final String name, final Task task, final int iterations, final boolean report) {
+        final long startBytes = allocatedBytes();
+        final long startTime = System.nanoTime();
+
+        long result = 0;
+        for (int i = 0; i < iterations; i++) {
+            result += task.run();
+        }
+
+        final long time = System.nanoTime() - startTime;
+        final long bytes = allocatedBytes() - startBytes;
+        sink = result;
+
+        if (report) {
+            System.out.println(name + ": " + (time / iterations) + " ns/op, " +
+                    (startBytes < 0 ? "n/a" : String.valueOf(bytes / iterations)) + " bytes/op");
+        }
+    }
+
+    /**
+     * @return bytes allocated by current thread so far or -1 if runtime doesn't provide this information
+     */
+    private static long allocatedBytes() {
+        long retValue = -1;
+        try {
+            //looked up reflectively, so the class compiles against platforms without java.lang.management
+            final Object threadBean = Class.forName("java.lang.management.ManagementFactory").
+                    getMethod("getThreadMXBean").invoke(null);
+            final Method method = Class.forName("com.sun.management.ThreadMXBean").
+                    getMethod("getThreadAllocatedBytes", long.class);
+            retValue = (Long) method.invoke(threadBean, Thread.currentThread().getId());
+        }
+        catch (Exception e) {
+            retValue = -1;
+        }
+        return retValue;
+    }
+}
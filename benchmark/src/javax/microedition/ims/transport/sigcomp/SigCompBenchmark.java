@@ -0,0 +1,337 @@
+/*
+ * This software code is (c) 2010 T-Mobile USA, Inc. All Rights Reserved.
+ *
+ * Unauthorized redistribution or further use of this material is
+ * prohibited without the express permission of T-Mobile USA, Inc. and
+ * will be prosecuted to the fullest extent of the law.
+ *
+ * Removal or modification of these Terms and Conditions from the source
+ * or binary code of this software is prohibited.  In the event that
+ * redistribution of the source or binary code for this software is
+ * approved by T-Mobile USA, Inc., these Terms and Conditions and the
+ * above copyright notice must be reproduced in their entirety and in all
+ * circumstances.
+ *
+ * No name or trademarks of T-Mobile USA, Inc., or of its parent company,
+ * Deutsche Telekom AG or any Deutsche Telekom or T-Mobile entity, may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" AND "WITH ALL FAULTS" BASIS
+ * AND WITHOUT WARRANTIES OF ANY KIND.  ALL EXPRESS OR IMPLIED
+ * CONDITIONS, REPRESENTATIONS OR WARRANTIES, INCLUDING ANY IMPLIED
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR
+ * NON-INFRINGEMENT CONCERNING THIS SOFTWARE, ITS SOURCE OR BINARY CODE
+ * OR ANY DERIVATIVES THEREOF ARE HEREBY EXCLUDED.  T-MOBILE USA, INC.
+ * AND ITS LICENSORS SHALL NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY
+ * LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE
+ * OR ITS DERIVATIVES.  IN NO EVENT WILL T-MOBILE USA, INC. OR ITS
+ * LICENSORS BE LIABLE FOR LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT,
+ * INDIRECT, SPECIAL, CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES,
+ * HOWEVER CAUSED AND REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT
+ * OF THE USE OF OR INABILITY TO USE THIS SOFTWARE, EVEN IF T-MOBILE USA,
+ * INC. HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGES.
+ *
+ * THESE TERMS AND CONDITIONS APPLY SOLELY AND EXCLUSIVELY TO THE USE,
+ * MODIFICATION OR DISTRIBUTION OF THIS SOFTWARE, ITS SOURCE OR BINARY
+ * CODE OR ANY DERIVATIVES THEREOF, AND ARE SEPARATE FROM ANY WRITTEN
+ * WARRANTY THAT MAY BE PROVIDED WITH A DEVICE YOU PURCHASE FROM T-MOBILE
+ * USA, INC., AND TO THE EXTENT PERMITTED BY LAW.
+ */
+
+package javax.microedition.ims.transport.sigcomp;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures bytes saved and CPU cost of SigComp over a sequence of SIP messages.
+ * <p/>
+ * Usage: SigCompBenchmark [file or directory ...]. Every file holds one message, files of a directory are
+ * taken in name order. Built-in registration and call flow is used if no arguments are given.
+ * Requests are sent by the client and responses by the server, so each side learns states saved by the
+ * other one only from returned parameters of received messages.
+ */
+public final class SigCompBenchmark {
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int ROUNDS = 1000;
+    private static final byte[] SIP_VERSION = "SIP/2.0 ".getBytes();
+
+    private static final String[] SAMPLE_FLOW = {
+            "REGISTER sip:ims.example.com SIP/2.0\r\n" +
+                    "Via: SIP/2.0/UDP 10.10.2.17:5060;branch=z9hG4bK-524287-1---1b4f7d9e2c3a0f11;rport\r\n" +
+                    "Max-Forwards: 70\r\n" +
+                    "Contact: <sip:12065550100@10.10.2.17:5060;transport=UDP>;expires=600000;+g.3gpp.smsip;+sip.instance=\"<urn:gsma:imei:35209900-176148-0>\"\r\n" +
+                    "To: <sip:12065550100@ims.example.com>\r\n" +
+                    "From: <sip:12065550100@ims.example.com>;tag=5a181657\r\n" +
+                    "Call-ID: 8f2b4c1e-19d5-49f0-a055-fae25a1421fa\r\n" +
+                    "CSeq: 1 REGISTER\r\n" +
+                    "Expires: 600000\r\n" +
+                    "Allow: INVITE, ACK, CANCEL, BYE, NOTIFY, REFER, MESSAGE, OPTIONS, INFO, SUBSCRIBE, UPDATE, PRACK\r\n" +
+                    "Supported: path, gruu, sec-agree\r\n" +
+                    "User-Agent: IMS Android Client 1.0\r\n" +
+                    "Authorization: Digest username=\"12065550100@ims.example.com\",realm=\"ims.example.com\",nonce=\"\",uri=\"sip:ims.example.com\",response=\"\"\r\n" +
+                    "Content-Length: 0\r\n" +
+                    "\r\n",
+            "SIP/2.0 401 Unauthorized\r\n" +
+                    "Via: SIP/2.0/UDP 10.10.2.17:5060;branch=z9hG4bK-524287-1---1b4f7d9e2c3a0f11;rport=5060;received=173.153.36.18\r\n" +
+                    "To: <sip:12065550100@ims.example.com>;tag=aprqngfrt-jcj0dh0000020\r\n" +
+                    "From: <sip:12065550100@ims.example.com>;tag=5a181657\r\n" +
+                    "Call-ID: 8f2b4c1e-19d5-49f0-a055-fae25a1421fa\r\n" +
+                    "CSeq: 1 REGISTER\r\n" +
+                    "WWW-Authenticate: Digest realm=\"ims.example.com\",nonce=\"5c9f3e1a7b2d4f60a8e1c3b5d7f9e2a4\",algorithm=MD5,qop=\"auth\"\r\n" +
+                    "Content-Length: 0\r\n" +
+                    "\r\n",
+            "REGISTER sip:ims.example.com SIP/2.0\r\n" +
+                    "Via: SIP/2.0/UDP 10.10.2.17:5060;branch=z9hG4bK-524287-1---7c2e9a0d4b6f1e38;rport\r\n" +
+                    "Max-Forwards: 70\r\n" +
+                    "Contact: <sip:12065550100@10.10.2.17:5060;transport=UDP>;expires=600000;+g.3gpp.smsip;+sip.instance=\"<urn:gsma:imei:35209900-176148-0>\"\r\n" +
+                    "To: <sip:12065550100@ims.example.com>\r\n" +
+                    "From: <sip:12065550100@ims.example.com>;tag=5a181657\r\n" +
+                    "Call-ID: 8f2b4c1e-19d5-49f0-a055-fae25a1421fa\r\n" +
+                    "CSeq: 2 REGISTER\r\n" +
+                    "Expires: 600000\r\n" +
+                    "Allow: INVITE, ACK, CANCEL, BYE, NOTIFY, REFER, MESSAGE, OPTIONS, INFO, SUBSCRIBE, UPDATE, PRACK\r\n" +
+                    "Supported: path, gruu, sec-agree\r\n" +
+                    "User-Agent: IMS Android Client 1.0\r\n" +
+                    "Authorization: Digest username=\"12065550100@ims.example.com\",realm=\"ims.example.com\",nonce=\"5c9f3e1a7b2d4f60a8e1c3b5d7f9e2a4\",uri=\"sip:ims.example.com\",response=\"0f3a8e2b5c7d9e1f4a6b8c0d2e4f6a8b\",algorithm=MD5,cnonce=\"e1f4a6b8\",qop=auth,nc=00000001\r\n" +
+                    "Content-Length: 0\r\n" +
+                    "\r\n",
+            "SIP/2.0 200 OK\r\n" +
+                    "Via: SIP/2.0/UDP 10.10.2.17:5060;branch=z9hG4bK-524287-1---7c2e9a0d4b6f1e38;rport=5060;received=173.153.36.18\r\n" +
+                    "To: <sip:12065550100@ims.example.com>;tag=aprqngfrt-jcj0dh0000021\r\n" +
+                    "From: <sip:12065550100@ims.example.com>;tag=5a181657\r\n" +
+                    "Call-ID: 8f2b4c1e-19d5-49f0-a055-fae25a1421fa\r\n" +
+                    "CSeq: 2 REGISTER\r\n" +
+                    "Contact: <sip:12065550100@10.10.2.17:5060;transport=UDP>;expires=600000\r\n" +
+                    "P-Associated-URI: <sip:12065550100@ims.example.com>, <tel:+12065550100>\r\n" +
+                    "Service-Route: <sip:orig@scscf.ims.example.com:6060;lr>\r\n" +
+                    "Path: <sip:term@pcscf.ims.example.com;lr>\r\n" +
+                    "Content-Length: 0\r\n" +
+                    "\r\n",
+            "INVITE sip:12065550199@ims.example.com SIP/2.0\r\n" +
+                    "Via: SIP/2.0/UDP 10.10.2.17:5060;branch=z9hG4bK-524287-1---3e5a7c9b1d2f4e68;rport\r\n" +
+                    "Max-Forwards: 70\r\n" +
+                    "Route: <sip:orig@scscf.ims.example.com:6060;lr>\r\n" +
+                    "Contact: <sip:12065550100@10.10.2.17:5060;transport=UDP>;+g.3gpp.icsi-ref=\"urn%3Aurn-7%3A3gpp-service.ims.icsi.mmtel\"\r\n" +
+                    "To: <sip:12065550199@ims.example.com>\r\n" +
+                    "From: <sip:12065550100@ims.example.com>;tag=d8245ce2\r\n" +
+                    "Call-ID: 2a7c9e1b-35c6-4411-aaa5-e45b06ad7e22\r\n" +
+                    "CSeq: 1 INVITE\r\n" +
+                    "Allow: INVITE, ACK, CANCEL, BYE, NOTIFY, REFER, MESSAGE, OPTIONS, INFO, SUBSCRIBE, UPDATE, PRACK\r\n" +
+                    "Supported: 100rel, timer, precondition\r\n" +
+                    "P-Preferred-Identity: <sip:12065550100@ims.example.com>\r\n" +
+                    "User-Agent: IMS Android Client 1.0\r\n" +
+                    "Content-Type: application/sdp\r\n" +
+                    "Content-Length: 318\r\n" +
+                    "\r\n" +
+                    "v=0\r\n" +
+                    "o=- 1288787284 1288787284 IN IP4 10.10.2.17\r\n" +
+                    "s=-\r\n" +
+                    "c=IN IP4 10.10.2.17\r\n" +
+                    "t=0 0\r\n" +
+                    "m=audio 40000 RTP/AVP 0 8 96 101\r\n" +
+                    "a=rtpmap:0 PCMU/8000\r\n" +
+                    "a=rtpmap:8 PCMA/8000\r\n" +
+                    "a=rtpmap:96 AMR/8000\r\n" +
+                    "a=fmtp:96 mode-change-capability=2;max-red=0\r\n" +
+                    "a=rtpmap:101 telephone-event/8000\r\n" +
+                    "a=fmtp:101 0-15\r\n" +
+                    "a=ptime:20\r\n" +
+                    "a=maxptime:240\r\n" +
+                    "a=sendrecv\r\n",
+            "SIP/2.0 180 Ringing\r\n" +
+                    "Via: SIP/2.0/UDP 10.10.2.17:5060;branch=z9hG4bK-524287-1---3e5a7c9b1d2f4e68;rport=5060;received=173.153.36.18\r\n" +
+                    "Record-Route: <sip:scscf.ims.example.com:6060;lr>\r\n" +
+                    "Contact: <sip:12065550199@10.10.3.44:5060>\r\n" +
+                    "To: <sip:12065550199@ims.example.com>;tag=9f1c3e5a\r\n" +
+                    "From: <sip:12065550100@ims.example.com>;tag=d8245ce2\r\n" +
+                    "Call-ID: 2a7c9e1b-35c6-4411-aaa5-e45b06ad7e22\r\n" +
+                    "CSeq: 1 INVITE\r\n" +
+                    "Content-Length: 0\r\n" +
+                    "\r\n",
+            "ACK sip:12065550199@10.10.3.44:5060 SIP/2.0\r\n" +
+                    "Via: SIP/2.0/UDP 10.10.2.17:5060;branch=z9hG4bK-524287-1---5b7d9f1a3c4e6a80;rport\r\n" +
+                    "Max-Forwards: 70\r\n" +
+                    "Route: <sip:scscf.ims.example.com:6060;lr>\r\n" +
+                    "To: <sip:12065550199@ims.example.com>;tag=9f1c3e5a\r\n" +
+                    "From: <sip:12065550100@ims.example.com>;tag=d8245ce2\r\n" +
+                    "Call-ID: 2a7c9e1b-35c6-4411-aaa5-e45b06ad7e22\r\n" +
+                    "CSeq: 1 ACK\r\n" +
+                    "Content-Length: 0\r\n" +
+                    "\r\n",
+            "BYE sip:12065550199@10.10.3.44:5060 SIP/2.0\r\n" +
+                    "Via: SIP/2.0/UDP 10.10.2.17:5060;branch=z9hG4bK-524287-1---7d9f1b3c5e6a8c02;rport\r\n" +
+                    "Max-Forwards: 70\r\n" +
+                    "Route: <sip:scscf.ims.example.com:6060;lr>\r\n" +
+                    "To: <sip:12065550199@ims.example.com>;tag=9f1c3e5a\r\n" +
+                    "From: <sip:12065550100@ims.example.com>;tag=d8245ce2\r\n" +
+                    "Call-ID: 2a7c9e1b-35c6-4411-aaa5-e45b06ad7e22\r\n" +
+                    "CSeq: 2 BYE\r\n" +
+                    "User-Agent: IMS Android Client 1.0\r\n" +
+                    "Content-Length: 0\r\n" +
+                    "\r\n"
+    };
+
+    private SigCompBenchmark() {
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final List<byte[]> corpus = args.length == 0 ? sampleCorpus() : readCorpus(args);
+        if (corpus.isEmpty()) {
+            System.out.println("No messages found");
+            return;
+        }
+
+        run("message based", corpus, false);
+        run("stream based", corpus, true);
+    }
+
+    private static void run(final String title, final List<byte[]> corpus, final boolean stream) throws IOException {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            runRound(corpus, stream, null);
+        }
+
+        final Totals totals = new Totals();
+        for (int i = 0; i < ROUNDS; i++) {
+            runRound(corpus, stream, totals);
+        }
+
+        final int messages = corpus.size();
+        System.out.println("SigComp, " + title + " transport, " + messages + " messages, " + ROUNDS + " rounds");
+        System.out.println("  original bytes:        " + totals.originalBytes / ROUNDS);
+        System.out.println("  compressed bytes:      " + totals.compressedBytes / ROUNDS +
+                " (first message " + totals.firstMessageBytes / ROUNDS + " of " + corpus.get(0).length + ")");
+        System.out.println("  saved:                 " +
+                percent(totals.originalBytes - totals.compressedBytes, totals.originalBytes) + "%, " +
+                "after first message " +
+                percent(totals.originalBytes - totals.firstOriginalBytes - totals.compressedBytes + totals.firstMessageBytes,
+                        totals.originalBytes - totals.firstOriginalBytes) + "%");
+        System.out.println("  compress, us/message:  " + micros(totals.compressNanos, ROUNDS * messages));
+        System.out.println("  decompress, us/message: " + micros(totals.decompressNanos, ROUNDS * messages));
+    }
+
+    /**
+     * Exchanges corpus between client and server compartments.
+     */
+    private static void runRound(final List<byte[]> corpus, final boolean stream, final Totals totals)
+            throws IOException {
+
+        final SigCompCompartment client = new SigCompCompartment(new SigCompStateStore(), stream);
+        final SigCompCompartment server = new SigCompCompartment(new SigCompStateStore(), stream);
+
+        boolean first = true;
+        for (byte[] message : corpus) {
+            final boolean response = isResponse(message);
+            final SigCompCompartment sender = response ? server : client;
+            final SigCompCompartment receiver = response ? client : server;
+
+            final long start = System.nanoTime();
+            final byte[] compressed = sender.compress(message);
+            final long compressedAt = System.nanoTime();
+
+            final List<byte[]> messages = new ArrayList<byte[]>(1);
+            final SigCompCompartment.MessageSink sink = new SigCompCompartment.MessageSink() {
+                public boolean onMessage(final byte[] message) {
+                    messages.add(message);
+                    return true;
+                }
+            };
+            if (stream) {
+                receiver.feedStream(compressed, 0, compressed.length, sink);
+            }
+            else {
+                receiver.decompress(compressed, 0, compressed.length, sink);
+            }
+            final long decompressedAt = System.nanoTime();
+            final byte[] decompressed = messages.size() == 1 ? messages.get(0) : null;
+
+            if (!Arrays.equals(message, decompressed)) {
+                throw new IOException("Message is corrupted by compression: " + new String(message));
+            }
+
+            if (totals != null) {
+                totals.originalBytes += message.length;
+                totals.compressedBytes += compressed.length;
+                totals.compressNanos += compressedAt - start;
+                totals.decompressNanos += decompressedAt - compressedAt;
+                if (first) {
+                    totals.firstOriginalBytes += message.length;
+                    totals.firstMessageBytes += compressed.length;
+                }
+            }
+            first = false;
+        }
+    }
+
+    private static boolean isResponse(final byte[] message) {
+        return message.length >= SIP_VERSION.length &&
+                Arrays.equals(SIP_VERSION, Arrays.copyOf(message, SIP_VERSION.length));
+    }
+
+    private static long percent(final long part, final long total) {
+        return total == 0 ? 0 : part * 100 / total;
+    }
+
+    private static String micros(final long nanos, final int count) {
+        return String.valueOf(Math.round(nanos / 100.0 / count) / 10.0);
+    }
+
+    private static List<byte[]> sampleCorpus() {
+        final List<byte[]> corpus = new ArrayList<byte[]>();
+        for (String message : SAMPLE_FLOW) {
+            corpus.add(message.getBytes());
+        }
+        return corpus;
+    }
+
+    private static List<byte[]> readCorpus(final String[] paths) throws IOException {
+        final List<byte[]> corpus = new ArrayList<byte[]>();
+        for (String path : paths) {
+            final File file = new File(path);
+            final File[] files = file.isDirectory() ? file.listFiles() : new File[]{file};
+            if (files != null) {
+                Arrays.sort(files);
+                for (File messageFile : files) {
+                    if (messageFile.isFile()) {
+                        corpus.add(readFile(messageFile));
+                    }
+                }
+            }
+        }
+        return corpus;
+    }
+
+    private static byte[] readFile(final File file) throws IOException {
+        final InputStream is = new FileInputStream(file);
+        try {
+            final byte[] content = new byte[(int) file.length()];
+            int read = 0;
+            while (read < content.length) {
+                final int count = is.read(content, read, content.length - read);
+                if (count < 0) {
+                    break;
+                }
+                read += count;
+            }
+            return Arrays.copyOf(content, read);
+        }
+        finally {
+            is.close();
+        }
+    }
+
+    private static final class Totals {
+        long originalBytes;
+        long compressedBytes;
+        long firstOriginalBytes;
+        long firstMessageBytes;
+        long compressNanos;
+        long decompressNanos;
+    }
+}
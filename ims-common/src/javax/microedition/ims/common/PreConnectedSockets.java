@@ -0,0 +1,134 @@
+/*
+ * This software code is (c) 2010 T-Mobile USA, Inc. All Rights Reserved.
+ *
+ * Unauthorized redistribution or further use of this material is
+ * prohibited without the express permission of T-Mobile USA, Inc. and
+ * will be prosecuted to the fullest extent of the law.
+ *
+ * Removal or modification of these Terms and Conditions from the source
+ * or binary code of this software is prohibited.  In the event that
+ * redistribution of the source or binary code for this software is
+ * approved by T-Mobile USA, Inc., these Terms and Conditions and the
+ * above copyright notice must be reproduced in their entirety and in all
+ * circumstances.
+ *
+ * No name or trademarks of T-Mobile USA, Inc., or of its parent company,
+ * Deutsche Telekom AG or any Deutsche Telekom or T-Mobile entity, may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" AND "WITH ALL FAULTS" BASIS
+ * AND WITHOUT WARRANTIES OF ANY KIND.  ALL EXPRESS OR IMPLIED
+ * CONDITIONS, REPRESENTATIONS OR WARRANTIES, INCLUDING ANY IMPLIED
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR
+ * NON-INFRINGEMENT CONCERNING THIS SOFTWARE, ITS SOURCE OR BINARY CODE
+ * OR ANY DERIVATIVES THEREOF ARE HEREBY EXCLUDED.  T-MOBILE USA, INC.
+ * AND ITS LICENSORS SHALL NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY
+ * LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE
+ * OR ITS DERIVATIVES.  IN NO EVENT WILL T-MOBILE USA, INC. OR ITS
+ * LICENSORS BE LIABLE FOR LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT,
+ * INDIRECT, SPECIAL, CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES,
+ * HOWEVER CAUSED AND REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT
+ * OF THE USE OF OR INABILITY TO USE THIS SOFTWARE, EVEN IF T-MOBILE USA,
+ * INC. HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGES.
+ *
+ * THESE TERMS AND CONDITIONS APPLY SOLELY AND EXCLUSIVELY TO THE USE,
+ * MODIFICATION OR DISTRIBUTION OF THIS SOFTWARE, ITS SOURCE OR BINARY
+ * CODE OR ANY DERIVATIVES THEREOF, AND ARE SEPARATE FROM ANY WRITTEN
+ * WARRANTY THAT MAY BE PROVIDED WITH A DEVICE YOU PURCHASE FROM T-MOBILE
+ * USA, INC., AND TO THE EXTENT PERMITTED BY LAW.
+ */
+
+package javax.microedition.ims.common;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sockets connected ahead of time, e.g. by connection race of DNS resolver, waiting for the transport
+ * to connect to the same destination. Socket which is not taken in time is closed.
+ */
+public final class PreConnectedSockets {
+    private static final String LOG_PREFIX = "PreConnectedSockets";
+    private static final long MAX_IDLE_MILLIS = 10 * 1000;
+
+    private static final PreConnectedSockets INSTANCE = new PreConnectedSockets();
+
+    //by destination host:port, guarded by itself
+    private final Map<String, Socket> sockets = new HashMap<String, Socket>();
+    private final ScheduledExecutorService closer =
+            Executors.newSingleThreadScheduledExecutor(new NamedDaemonThreadFactory("PreConnectedSockets"));
+
+    private PreConnectedSockets() {
+    }
+
+    public static PreConnectedSockets getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Parks connected socket. Socket parked earlier for the same destination is closed.
+     */
+    public void offer(final String host, final int port, final Socket socket) {
+        final String destination = host + ":" + port;
+
+        final Socket replaced;
+        synchronized (sockets) {
+            replaced = sockets.put(destination, socket);
+        }
+        if (replaced != null) {
+            closeQuietly(replaced);
+        }
+
+        closer.schedule(new Runnable() {
+            public void run() {
+                boolean expired;
+                synchronized (sockets) {
+                    expired = sockets.get(destination) == socket;
+                    if (expired) {
+                        sockets.remove(destination);
+                    }
+                }
+                if (expired) {
+                    Logger.log(Logger.Tag.COMMON, LOG_PREFIX, "Socket to " + destination + " was not taken, closed");
+                    closeQuietly(socket);
+                }
+            }
+        }, MAX_IDLE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return connected socket to destination or null if there is none
+     */
+    public Socket take(final String host, final int port) {
+        final Socket socket;
+        synchronized (sockets) {
+            socket = sockets.remove(host + ":" + port);
+        }
+
+        Socket retValue = null;
+        if (socket != null) {
+            if (socket.isConnected() && !socket.isClosed() && !socket.isInputShutdown()) {
+                retValue = socket;
+            }
+            else {
+                closeQuietly(socket);
+            }
+        }
+        return retValue;
+    }
+
+    private static void closeQuietly(final Socket socket) {
+        try {
+            socket.close();
+        }
+        catch (IOException e) {
+            Logger.log(Logger.Tag.WARNING, LOG_PREFIX, "Can't close socket: " + e);
+        }
+    }
+}
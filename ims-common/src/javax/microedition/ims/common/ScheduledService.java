@@ -49,6 +49,13 @@ import java.util.concurrent.TimeUnit;
  *
  */
 public interface ScheduledService {
+
+    /**
+     * Marks transactionId of a task which must run in time even if the device sleeps, e.g. keep-alive.
+     */
+    interface WakeUpTask {
+    }
+
     ManagableScheduledFuture<?> schedule(Runnable command, Object transactionId, long delay, TimeUnit unit);
     
     void shutdown();
@@ -103,12 +103,16 @@ public class TemporaryStorageImpl<T> implements TemporaryStorage<T>, Shutdownabl
 
     
     public boolean contains(T element) {
-        return list.contains(element);
+        synchronized (list) {
+            return list.contains(element);
+        }
     }
 
     
     public boolean containsAndRemove(T element) {
-        return list.remove(element);
+        synchronized (list) {
+            return list.remove(element);
+        }
     }
 
     
@@ -0,0 +1,172 @@
+/*
+ * This software code is (c) 2010 T-Mobile USA, Inc. All Rights Reserved.
+ *
+ * Unauthorized redistribution or further use of this material is
+ * prohibited without the express permission of T-Mobile USA, Inc. and
+ * will be prosecuted to the fullest extent of the law.
+ *
+ * Removal or modification of these Terms and Conditions from the source
+ * or binary code of this software is prohibited.  In the event that
+ * redistribution of the source or binary code for this software is
+ * approved by T-Mobile USA, Inc., these Terms and Conditions and the
+ * above copyright notice must be reproduced in their entirety and in all
+ * circumstances.
+ *
+ * No name or trademarks of T-Mobile USA, Inc., or of its parent company,
+ * Deutsche Telekom AG or any Deutsche Telekom or T-Mobile entity, may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" AND "WITH ALL FAULTS" BASIS
+ * AND WITHOUT WARRANTIES OF ANY KIND.  ALL EXPRESS OR IMPLIED
+ * CONDITIONS, REPRESENTATIONS OR WARRANTIES, INCLUDING ANY IMPLIED
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR
+ * NON-INFRINGEMENT CONCERNING THIS SOFTWARE, ITS SOURCE OR BINARY CODE
+ * OR ANY DERIVATIVES THEREOF ARE HEREBY EXCLUDED.  T-MOBILE USA, INC.
+ * AND ITS LICENSORS SHALL NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY
+ * LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE
+ * OR ITS DERIVATIVES.  IN NO EVENT WILL T-MOBILE USA, INC. OR ITS
+ * LICENSORS BE LIABLE FOR LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT,
+ * INDIRECT, SPECIAL, CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES,
+ * HOWEVER CAUSED AND REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT
+ * OF THE USE OF OR INABILITY TO USE THIS SOFTWARE, EVEN IF T-MOBILE USA,
+ * INC. HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGES.
+ *
+ * THESE TERMS AND CONDITIONS APPLY SOLELY AND EXCLUSIVELY TO THE USE,
+ * MODIFICATION OR DISTRIBUTION OF THIS SOFTWARE, ITS SOURCE OR BINARY
+ * CODE OR ANY DERIVATIVES THEREOF, AND ARE SEPARATE FROM ANY WRITTEN
+ * WARRANTY THAT MAY BE PROVIDED WITH A DEVICE YOU PURCHASE FROM T-MOBILE
+ * USA, INC., AND TO THE EXTENT PERMITTED BY LAW.
+ */
+
+package javax.microedition.ims.common.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size-bounded cache which evicts least recently used entries.
+ * <p/>
+ * Entries are spread over independently locked segments, so lookups from different threads rarely contend.
+ * Every segment keeps its own access order, i.e. eviction is LRU per segment.
+ * Null keys are not supported.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class LruCache<K, V> {
+    private static final int DEFAULT_SEGMENTS = 8;
+
+    private final Segment<K, V>[] segments;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    public LruCache(final int capacity) {
+        this(capacity, DEFAULT_SEGMENTS);
+    }
+
+    public LruCache(final int capacity, final int segmentsNumber) {
+        if (capacity <= 0 || segmentsNumber <= 0) {
+            throw new IllegalArgumentException("capacity and segmentsNumber must be positive. Now capacity = " +
+                    capacity + ", segmentsNumber = " + segmentsNumber);
+        }
+
+        final int segmentsCount = Math.min(capacity, segmentsNumber);
+        @SuppressWarnings("unchecked")
+        final Segment<K, V>[] segmentsArray = (Segment<K, V>[]) new Segment<?, ?>[segmentsCount];
+        for (int i = 0; i < segmentsCount; i++) {
+            //first segments take remainder of the division
+            segmentsArray[i] = new Segment<K, V>(capacity / segmentsCount + (i < capacity % segmentsCount ? 1 : 0));
+        }
+        this.segments = segmentsArray;
+    }
+
+    /**
+     * @return cached value or null if there is no value for the key
+     */
+    public V get(final K key) {
+        final Segment<K, V> segment = segmentFor(key);
+
+        final V retValue;
+        synchronized (segment) {
+            retValue = segment.get(key);
+        }
+
+        (retValue == null ? missCount : hitCount).incrementAndGet();
+        return retValue;
+    }
+
+    public void put(final K key, final V value) {
+        if (value == null) {
+            throw new NullPointerException("Value can't be null");
+        }
+
+        final Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, value);
+        }
+    }
+
+    public void remove(final K key) {
+        final Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.remove(key);
+        }
+    }
+
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int retValue = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                retValue += segment.size();
+            }
+        }
+        return retValue;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    private Segment<K, V> segmentFor(final K key) {
+        int hash = key.hashCode();
+        //spread bits so that keys differing in high bits only don't land in the same segment
+        hash ^= (hash >>> 20) ^ (hash >>> 12);
+        hash ^= (hash >>> 7) ^ (hash >>> 4);
+        return segments[(hash & 0x7FFFFFFF) % segments.length];
+    }
+
+    
+    public String toString() {
+        return "LruCache[size=" + size() + ", hits=" + hitCount + ", misses=" + missCount + "]";
+    }
+
+    private static class Segment<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        private Segment(final int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        
+        protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+            return size() > capacity;
+        }
+    }
+}
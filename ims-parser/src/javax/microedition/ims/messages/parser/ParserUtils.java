@@ -53,13 +53,18 @@ import java.util.Iterator;
 public class ParserUtils {
 
     public static String urlDecode(String s) {
-        StringBuilder ret = new StringBuilder();
-        for (int i = 0; i < s.length(); i++) {
+        final int firstEscape = s.indexOf('%');
+        if (firstEscape < 0) {
+            return s;
+        }
+
+        StringBuilder ret = new StringBuilder(s.length());
+        ret.append(s, 0, firstEscape);
+        for (int i = firstEscape; i < s.length(); i++) {
             char c = s.charAt(i);
             if (c == '%') {
-                i++;
-                ret.append((char) toNumber(s.substring(i, i + 2), 0, 16));
-                i++;
+                ret.append((char) hexByte(s, i + 1));
+                i += 2;
             }
             else {
                 ret.append(c);
@@ -68,6 +73,14 @@ public class ParserUtils {
         return ret.toString();
     }
 
+    /**
+     * Decodes %XX escapes of data[start, end). Range without escapes is just converted to string.
+     */
+    public static String urlDecode(final byte[] data, final int start, final int end) {
+        final String value = new String(data, start, end - start);
+        return indexOf(data, start, end, (byte) '%') < 0 ? value : urlDecode(value);
+    }
+
 
     public static int toNumber(String parseMe, int defValue, int radix) {
         int ret = defValue;
@@ -80,6 +93,24 @@ public class ParserUtils {
         return ret;
     }
 
+    /**
+     * Parses number straight from data[start, end) with no intermediate string.
+     */
+    public static int toNumber(final byte[] data, final int start, final int end, final int defValue, final int radix) {
+        int ret = defValue;
+        try {
+            final long value = parseLong(data, start, end, radix);
+            if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                throw new NumberFormatException();
+            }
+            ret = (int) value;
+        }
+        catch (NumberFormatException e) {
+            Logger.log(Logger.Tag.PARSER, "Error parsing int: " + new String(data, start, end - start));
+        }
+        return ret;
+    }
+
 
     public static long toLongNumber(String parseMe, int defValue, int radix) {
         long ret = defValue;
@@ -92,18 +123,33 @@ public class ParserUtils {
         return ret;
     }
 
+    /**
+     * Parses number straight from data[start, end) with no intermediate string.
+     */
+    public static long toLongNumber(final byte[] data, final int start, final int end, final int defValue, final int radix) {
+        long ret = defValue;
+        try {
+            ret = parseLong(data, start, end, radix);
+        }
+        catch (NumberFormatException e) {
+            Logger.log(Logger.Tag.PARSER, "Error parsing long: " + new String(data, start, end - start));
+        }
+        return ret;
+    }
+
 
     public static String decodeDisplayName(String dn) {
-        StringBuilder result = new StringBuilder();
-        if (dn.length() < 2) {
+        if (dn.length() < 2 || dn.indexOf('\\') < 0) {
             return dn;
         }
+        StringBuilder result = new StringBuilder(dn.length());
         for (int i = 0; i < dn.length(); ++i) {
-            if (dn.charAt(i) == '\\' && dn.charAt(i + 1) == '\\') {
+            final boolean escaped = dn.charAt(i) == '\\' && i + 1 < dn.length();
+            if (escaped && dn.charAt(i + 1) == '\\') {
                 result.append('\\');
                 i++;
             }
-            else if (dn.charAt(i) == '\\' && dn.charAt(i + 1) == '"') {
+            else if (escaped && dn.charAt(i + 1) == '"') {
                 result.append('"');
                 i++;
             }
@@ -114,6 +160,14 @@ public class ParserUtils {
         return result.toString();
     }
 
+    /**
+     * Decodes \\ and \" escapes of data[start, end). Range without escapes is just converted to string.
+     */
+    public static String decodeDisplayName(final byte[] data, final int start, final int end) {
+        final String value = new String(data, start, end - start);
+        return indexOf(data, start, end, (byte) '\\') < 0 ? value : decodeDisplayName(value);
+    }
+
     public static String encodeDisplayName(String dn) {
         StringBuilder result = new StringBuilder();
         for (int i = 0; i < dn.length(); ++i) {
@@ -200,4 +254,55 @@ public class ParserUtils {
         }
         return sb;
     }
+
+    private static long parseLong(final byte[] data, final int start, final int end, final int radix) {
+        if (start >= end) {
+            throw new NumberFormatException();
+        }
+
+        int i = start;
+        boolean negative = false;
+        if (data[i] == '-' || data[i] == '+') {
+            negative = data[i] == '-';
+            if (++i == end) {
+                throw new NumberFormatException();
+            }
+        }
+
+        //accumulating negatively as Long.parseLong does, so Long.MIN_VALUE is parsed without overflow
+        final long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        final long multmin = limit / radix;
+        long result = 0;
+        while (i < end) {
+            final int digit = Character.digit((char) (data[i++] & 0xFF), radix);
+            if (digit < 0 || result < multmin) {
+                throw new NumberFormatException();
+            }
+            result *= radix;
+            if (result < limit + digit) {
+                throw new NumberFormatException();
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    private static int hexByte(final String s, final int index) {
+        final int hi = index + 1 < s.length() ? Character.digit(s.charAt(index), 16) : -1;
+        final int lo = hi < 0 ? -1 : Character.digit(s.charAt(index + 1), 16);
+        if (lo < 0) {
+            Logger.log(Logger.Tag.PARSER, "Error parsing int: " + s.substring(index, Math.min(index + 2, s.length())));
+            return 0;
+        }
+        return hi << 4 | lo;
+    }
+
+    private static int indexOf(final byte[] data, final int start, final int end, final byte value) {
+        for (int i = start; i < end; i++) {
+            if (data[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
 }
@@ -79,7 +79,7 @@ public class BodyParser{
 	}
 
 	action set_param_quoted_value {
-		curParam.setValue(ParserUtils.decodeDisplayName(arrayToString(m_Mark+1, p-2)));
+		curParam.setValue(ParserUtils.decodeDisplayName(data, m_Mark+1, p-2));
 	}
 
 	action do_add_param {
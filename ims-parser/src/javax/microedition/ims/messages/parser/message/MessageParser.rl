@@ -44,6 +44,7 @@
 import javax.microedition.ims.common.Logger;
 import javax.microedition.ims.common.Protocol;
 import javax.microedition.ims.messages.parser.ParserUtils;
+import javax.microedition.ims.messages.wrappers.common.ByteSlice;
 import javax.microedition.ims.messages.wrappers.sip.BaseSipMessage;
 import javax.microedition.ims.messages.wrappers.sip.Header;
 import javax.microedition.ims.messages.wrappers.sip.ParamHeader;
@@ -54,11 +55,38 @@ import javax.microedition.ims.messages.wrappers.sip.UriHeader;
 import javax.microedition.ims.messages.wrappers.sip.Via;
 import javax.microedition.ims.messages.wrappers.sip.Refresher;
 
-
-
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+
+
+/**
+ * Ragel based SIP message parser.
+ * <p/>
+ * Parser keeps its scanning state in instance fields so each instance can be used by a single thread at a time
+ * without any locking. Callers that parse messages continuously (e.g. a channel reader) should keep own instance,
+ * occasional callers can use static {@link #parse(byte[])} which delegates to a per-thread instance.
+ * <p/>
+ * Parser created with lazy values mode keeps opaque header values (User-Agent, Server, Subject, SIP-ETag,
+ * SIP-If-Match and all the generic custom headers) as {@link ByteSlice} views into parsed buffer, so they are
+ * decoded only if somebody reads them.
+ * <p/>
+ * Besides parsing of complete messages parser can consume a stream (see {@link #feed(byte[], int, int)}).
+ * In this mode Ragel state is preserved between calls, so message split over several network reads is scanned
+ * only once and no separate framing of the stream is needed.
+ */
 public class MessageParser{
 
-	private static boolean debug = false;
+	private static final boolean debug = false;
+
+	private static final ThreadLocal<MessageParser> THREAD_PARSER = new ThreadLocal<MessageParser>() {
+		@Override
+		protected MessageParser initialValue() {
+			return new MessageParser();
+		}
+	};
 
 	private static void constraint(Object b, String error) {
 		if(b == null){
@@ -68,7 +96,7 @@ public class MessageParser{
 	}
 
 	
-	private static void check(String value) {
+	private void check(String value) {
 		if(!debug) return;
 		int dataleft = pe - p;
 		Logger.log(Logger.Tag.PARSER,"Parsing: "+value + "       line- " + currentLine + "       dataleft: " + arrayToString( p, p+ (dataleft > 20 ? 20 : dataleft)));
@@ -89,8 +117,7 @@ public class MessageParser{
 
 	action set_cseq {
 		check("set_cseq");
-		String tmp = arrayToString( m_Mark, p);
-		msgBuilder.cSeq(ParserUtils.toNumber(tmp, -1, 10));//base.setCSeq( ParserUtils.toNumber(tmp, -1, 10));
+		msgBuilder.cSeq(ParserUtils.toNumber(data, m_Mark, p, -1, 10));//base.setCSeq( ParserUtils.toNumber(tmp, -1, 10));
 	}
 
 	action prepare_req_uri {
@@ -202,16 +229,14 @@ public class MessageParser{
 
 	action set_content_length {
 		check("set_content_length");
-		String tmp = arrayToString( m_Mark, p);
-		contentLength = ParserUtils.toNumber(tmp, -1, 10);
+		contentLength = ParserUtils.toNumber(data, m_Mark, p, -1, 10);
 		msgBuilder.contentLength(contentLength);//base.setContentLength(contentLength);
 	}
 	
 	
 	action set_max_forwards {
 		check("set_max_forwards");
-		String tmp = arrayToString( m_Mark, p);
-		int res = ParserUtils.toNumber(tmp, -1, 10);
+		int res = ParserUtils.toNumber(data, m_Mark, p, -1, 10);
 		constraint( res >= 0, "Illegal Max-Forwards value" );
 		msgBuilder.maxForwards( res );//base.setMaxForwards( res );
 	}
@@ -272,10 +297,10 @@ public class MessageParser{
 
 	action set_dn {
 		check("set_dn");		
-		uriBuilder.displayName( ParserUtils.decodeDisplayName( arrayToString( m_Mark, p+1)));//uri.setDisplayName( ParserUtils.decodeDisplayName( arrayToString( m_Mark, p+1)));
+		uriBuilder.displayName( ParserUtils.decodeDisplayName(data, m_Mark, p+1));//uri.setDisplayName( ParserUtils.decodeDisplayName( arrayToString( m_Mark, p+1)));
 	}
 	action set_dn_quoted {		
-		uriBuilder.displayName( ParserUtils.decodeDisplayName( ParserUtils.decodeDisplayName( arrayToString( m_Mark + 1, p) )));//uri.setDisplayName( ParserUtils.decodeDisplayName( arrayToString( m_Mark + 1, p) ));
+		uriBuilder.displayName( ParserUtils.decodeDisplayName( ParserUtils.decodeDisplayName(data, m_Mark + 1, p)));//uri.setDisplayName( ParserUtils.decodeDisplayName( arrayToString( m_Mark + 1, p) ));
 	}
 
 	action set_callid {
@@ -325,7 +350,7 @@ public class MessageParser{
 	# Needs to be decoded
 	action set_pw {
 		check("set_pw");		
-		uriBuilder.password( ParserUtils.urlDecode( arrayToString( m_Mark, p) ));//uri.setPassword( ParserUtils.urlDecode( arrayToString( m_Mark, p) ));
+		uriBuilder.password( ParserUtils.urlDecode(data, m_Mark, p));//uri.setPassword( ParserUtils.urlDecode( arrayToString( m_Mark, p) ));
 	}
 
 	# Should not be decoded
@@ -342,38 +367,38 @@ public class MessageParser{
 
 	action set_etag {
 		check("set_etag");		
-		msgBuilder.eTag( arrayToString( m_Mark, p) );//base.setETag( arrayToString( m_Mark, p) );
+		msgBuilder.eTag( arraySlice( m_Mark, p) );//base.setETag( arrayToString( m_Mark, p) );
 	}
 
 	action set_ifmatch {
 		check("set_ifmatch");		
-		msgBuilder.ifMatch( arrayToString( m_Mark, p) );//base.setIfMatch( arrayToString( m_Mark, p) );
+		msgBuilder.ifMatch( arraySlice( m_Mark, p) );//base.setIfMatch( arrayToString( m_Mark, p) );
 	}
 
 	action set_status_code {
 		check("set_status_code");		
-		int code = ParserUtils.toNumber(arrayToString( m_Mark, p), 01, 10);
+		int code = ParserUtils.toNumber(data, m_Mark, p, 01, 10);
 		constraint( code > 99 && code < 1000, "Illegal status code" );
 		msgBuilder.statusCode( code );//response.setStatusCode( code );
 	}
 
 	action set_expires {		
-		msgBuilder.expires( ParserUtils.toNumber(arrayToString( m_Mark, p), 01, 10) );//base.setExpires( ParserUtils.toNumber(arrayToString( m_Mark, p), 01, 10) );
+		msgBuilder.expires( ParserUtils.toNumber(data, m_Mark, p, 01, 10) );//base.setExpires( ParserUtils.toNumber(arrayToString( m_Mark, p), 01, 10) );
 	}
 
 	action set_minexpires {		
-		msgBuilder.minExpires( ParserUtils.toNumber(arrayToString( m_Mark, p), 01, 10) );//base.setMinExpires( ParserUtils.toNumber(arrayToString( m_Mark, p), 01, 10) );
+		msgBuilder.minExpires( ParserUtils.toNumber(data, m_Mark, p, 01, 10) );//base.setMinExpires( ParserUtils.toNumber(arrayToString( m_Mark, p), 01, 10) );
 	}
 
 	# Needs to be decoded
 	action set_reason_phrase {
 		check("set_reason_phrase");		
-		msgBuilder.reasonPhrase( ParserUtils.urlDecode( arrayToString( m_Mark, p) ) );//response.setReasonPhrase( ParserUtils.urlDecode( arrayToString( m_Mark, p) ) );
+		msgBuilder.reasonPhrase( ParserUtils.urlDecode(data, m_Mark, p) );//response.setReasonPhrase( ParserUtils.urlDecode( arrayToString( m_Mark, p) ) );
 	}
 
 	action set_port {
 		check("set_port");		
-		uriBuilder.port( ParserUtils.toNumber(arrayToString( m_Mark, p), 01, 10) );//uri.setPort( ParserUtils.toNumber(arrayToString( m_Mark, p), 01, 10) );
+		uriBuilder.port( ParserUtils.toNumber(data, m_Mark, p, 01, 10) );//uri.setPort( ParserUtils.toNumber(arrayToString( m_Mark, p), 01, 10) );
 	}
 
 	action set_se_uas {
@@ -388,7 +413,7 @@ public class MessageParser{
 
 	action set_se_seconds {
 		check("set_se_seconds");		
-		msgBuilder.getSessionExpiresBuilder().expiresValue(ParserUtils.toNumber(arrayToString( m_Mark, p), 01, 10));//base.getSessionExpires().setExpiresValue( ParserUtils.toNumber(arrayToString( m_Mark, p), 01, 10) );
+		msgBuilder.getSessionExpiresBuilder().expiresValue(ParserUtils.toNumber(data, m_Mark, p, 01, 10));//base.getSessionExpires().setExpiresValue( ParserUtils.toNumber(arrayToString( m_Mark, p), 01, 10) );
 	}
 
 	action add_se_param {
@@ -461,28 +486,28 @@ public class MessageParser{
 	# Needs to be decoded
 	action set_create_uriheader_name {
 		check("set_create_uriheader_name");		
-		curParam = ParserUtils.urlDecode( arrayToString( m_Mark, p) );
+		curParam = ParserUtils.urlDecode(data, m_Mark, p);
 		uriBuilder.param(curParam);//uri.getHeaders().set( curParam );
 	}
 
 	# Needs to be decoded
 	action set_uriheader {
 		check("set_uriheader");		
-		String tmp = ParserUtils.urlDecode( arrayToString( m_Mark, p) );
+		String tmp = ParserUtils.urlDecode(data, m_Mark, p);
 		uriBuilder.param( curParam, tmp );//uri.getHeaders().set( curParam, tmp );
 	}
 
 	# URI parameter value, needs to be decoded
 	action set_create_param_name {
 		check("set_create_param_name");		
-		curParam = ParserUtils.urlDecode( arrayToString( m_Mark, p) );
+		curParam = ParserUtils.urlDecode(data, m_Mark, p);
 		uriBuilder.param( curParam );//uri.getParamsList().set( curParam );
 	}
 
 	# URI parameter value, needs to be decoded
 	action set_param_value {
 		check("set_param_value");		
-		String tmp = ParserUtils.urlDecode( arrayToString( m_Mark, p)) ;
+		String tmp = ParserUtils.urlDecode(data, m_Mark, p) ;
 		uriBuilder.param( curParam, tmp );//uri.getParamsList().set( curParam, tmp );
 	}
 
@@ -501,7 +526,7 @@ public class MessageParser{
 	# Should NOT be decoded
 	action set_unquote_hvalvalue {
 		check("set_unquote_hvalvalue");
-		curHValValue = ParserUtils.decodeDisplayName( arrayToString( m_Mark + 1, p - 1) );
+		curHValValue = ParserUtils.decodeDisplayName(data, m_Mark + 1, p - 1);
 	}
 
 
@@ -551,24 +576,24 @@ public class MessageParser{
 	}
 
 	action set_ctype_value_quoted {
-		curHValValue = ParserUtils.decodeDisplayName( arrayToString( m_Mark + 1, p - 1) );
+		curHValValue = ParserUtils.decodeDisplayName(data, m_Mark + 1, p - 1);
 		msgBuilder.getContentTypeBuilder().param(curHValName);//base.getContentType().getParamsList().set( curHValName );
 		msgBuilder.getContentTypeBuilder().param(curHValName, curHValValue);//base.getContentType().getParamsList().set( curHValName, curHValValue );
 	}
 
 	action set_subject {
 		check("set_subject");			
-		msgBuilder.subject( arrayToString( m_Mark, p) );//base.setSubject( arrayToString( m_Mark, p) );
+		msgBuilder.subject( arraySlice( m_Mark, p) );//base.setSubject( arrayToString( m_Mark, p) );
 	}
 
 	action set_useragent {
 		check("set_useragent");
 		//if(request != null)
-			msgBuilder.userAgent( arrayToString( m_Mark, p) );//request.setUserAgent( arrayToString( m_Mark, p) );
+			msgBuilder.userAgent( arraySlice( m_Mark, p) );//request.setUserAgent( arrayToString( m_Mark, p) );
 	}
 	action set_server {
 		check("set_server");		
-		msgBuilder.server( arrayToString( m_Mark, p) );//base.setServer( arrayToString( m_Mark, p) );
+		msgBuilder.server( arraySlice( m_Mark, p) );//base.setServer( arrayToString( m_Mark, p) );
 	}
 	action set_event_type {
 		check("set_event_type");		
@@ -662,7 +687,7 @@ public class MessageParser{
 
 	action custom_header {
 		check("custom_header");
-		msgBuilder.customHeader( customHeaderName, arrayToString( m_Mark, p));//base.addCustomHeader( customHeaderName, arrayToString( m_Mark, p));
+		msgBuilder.customHeader( customHeaderName, arraySlice( m_Mark, p));//base.addCustomHeader( customHeaderName, arrayToString( m_Mark, p));
 	}
 		
 
@@ -1209,7 +1234,7 @@ public class MessageParser{
 
 %% write data;
 
-protected static String arrayToString(int mark, int p) {
+protected String arrayToString(int mark, int p) {
 		// Java is a verbose pain the ass. Our C++ is much more compact.
 		// So, donkey-show to copy the currently marked bytes back into a string,
 		// just so we can display what we just parsed. You will have to deal with this
@@ -1223,8 +1248,12 @@ protected static String arrayToString(int mark, int p) {
 		return result;
 	}
 
+	protected CharSequence arraySlice(int mark, int p) {
+		return lazyValues ? new ByteSlice(data, mark, p - mark) : arrayToString(mark, p);
+	}
+
 
-	protected volatile static byte[] data;
+	private byte[] data;
 
 
 	public static void main(String[] args){
@@ -1445,10 +1474,48 @@ protected static String arrayToString(int mark, int p) {
 	    curParam = null;
 	    paramHeader = null; 
 	}*/
-	private volatile static int currentLine, p, pe;                   // Current index into data is "p"
+	private int currentLine, p, pe;                   // Current index into data is "p"
+
+	// Ragel machine and actions state. Fields (not locals) so parsing can be resumed on next stream part
+	private int cs, eof;
+	private ParserState state = ParserState.INITIAL;
+
+	// Whenever we see something interesting, remember the current index. Then, when we've decided
+	// we really saw something interesting, fetch the part between "mark" and "current value of p"
+	private int m_Mark;
+
+	private String customHeaderName, temp;
+	private int startOfCurrentLine, contentLength;
+
+	private BaseSipMessage.Builder msgBuilder;
+	private Via.Builder viaBuilder;
+	private SipUri.SipUriBuilder uriBuilder;
+	private UriHeader.UriHeaderBuilder uriHeaderBuilder;
+	private String curHValName, curHValValue, curParam;
+	private ParamHeader.ParamHeaderBuilder paramHeaderBuilder;
+
+	// Stream mode. Bytes of message being parsed are [streamStart, streamLength) of streamBuffer
+	private static final int STREAM_BUFFER_SIZE = 8 * 1024;
+
+	private byte[] streamBuffer;
+	private int streamStart, streamLength, bodyStart;
+	private boolean resyncLogged;
+
+
+	private final boolean lazyValues;
+
+
+	public MessageParser() {
+		this(false);
+	}
+
+
+	public MessageParser(final boolean lazyValues) {
+		this.lazyValues = lazyValues;
+	}
 
 
-	public synchronized static BaseSipMessage parse(String input ) {
+	public static BaseSipMessage parse(String input ) {
 		Logger.log(Logger.Tag.PARSER,"parsing started: \n");	
 		byte[] dataTemp  = null;
 
@@ -1462,46 +1529,47 @@ protected static String arrayToString(int mark, int p) {
 	}
 
 
-	public synchronized static BaseSipMessage parse(final byte[] input) {	
+	public static BaseSipMessage parse(final byte[] input) {
+		return THREAD_PARSER.get().parseMessage(input);
+	}
+
+
+	public BaseSipMessage parseMessage(final byte[] input) {
+		try {
+			return doParse(input);
+		} finally {
+			//do not keep reference to the last parsed buffer
+			data = null;
+			state = ParserState.INITIAL;
+			releaseMessageState();
+		}
+	}
+
+
+	private BaseSipMessage doParse(final byte[] input) {	
 		
 		if(input == null || input.length == 0){
 			throw new IllegalArgumentException("Wrong data to parse");
 		}
 
+		if(streamLength > 0){
+			throw new IllegalStateException("Parser is in the middle of stream, use separate instance");
+		}
+
 		data = input;
 		
-		int cs = 0;                  // Ragel keeps the state in "cs"
+		cs = 0;                  // Ragel keeps the state in "cs"
 		p = 0;                   // Current index into data is "p"
 		pe = 0;        // Length of data, SO YES data[pe] IS AN INVALID INDEX THIS IS CORRECT!
-		int eof = 0; 
+		eof = 0; 
 		int offset = 0; 
-		ParserState state = ParserState.INITIAL;
-
-
-		// Whenever we see something interesting, remember the current index. Then, when we've decided
-		// we really saw something interesting, fetch the part between "mark" and "current value of p"
-
-		int m_Mark = 0;
+		state = ParserState.INITIAL;
 
-		String customHeaderName = null, temp = null;
-		int startOfCurrentLine = 0 , contentLength = 0;
+		resetMessageState();
 
-		BaseSipMessage.Builder msgBuilder = new BaseSipMessage.Builder();
-
-		//Via via = null;
-        Via.Builder viaBuilder = null;
 		Request request = null;
 		Response response = null;
 
-        //SipUri uri = null;
-		//UriHeader uriHeader = null;
-        SipUri.SipUriBuilder uriBuilder = null;
-        UriHeader.UriHeaderBuilder uriHeaderBuilder = null;
-
-		String curHValName = null, curHValValue = null, curParam = null;
-		//final ParamHeader paramHeader = null;
-        ParamHeader.ParamHeaderBuilder paramHeaderBuilder = null;
-
 		/*
 		BaseSipMessage base = new BaseSipMessage();   
 		Via via = null;
@@ -1607,7 +1675,8 @@ protected static String arrayToString(int mark, int p) {
     	                   return response;
     	             }
     	             */
-    	             final BaseSipMessage retValue = msgBuilder.build();
+    	             //received bytes are kept as wire representation, so inbound message is never serialized again
+    	             final BaseSipMessage retValue = msgBuilder.build(data);
 
         if(retValue instanceof Request){
             request = (Request) retValue;
@@ -1620,8 +1689,175 @@ protected static String arrayToString(int mark, int p) {
         }
         return retValue;
 	}
-	
-	
+
+
+	/**
+	 * Feeds next part of the stream to parser. Part may contain any piece of traffic: a part of message,
+	 * several complete messages, end of one message and beginning of the next one.
+	 * Parser keeps Ragel state between calls, so every byte is scanned only once.
+	 *
+	 * @param part - received bytes
+	 * @param offset - offset of the first received byte in part
+	 * @param length - amount of received bytes
+	 * @return messages completed by this part, empty list if none
+	 */
+	public List<BaseSipMessage> feed(final byte[] part, final int offset, final int length) {
+		appendToStream(part, offset, length);
+
+		List<BaseSipMessage> retValue = Collections.emptyList();
+
+		boolean parseNext = true;
+		while (parseNext) {
+			parseNext = false;
+			data = streamBuffer;
+
+			if (state == ParserState.INITIAL) {
+				skipLeadingWhitespaces();
+				if (streamStart == streamLength) {
+					break;
+				}
+
+				resetMessageState();
+				p = streamStart;
+				startOfCurrentLine = p;
+				state = ParserState.PARSING_HEADERS;
+
+				%% write init;
+			}
+
+			if (state == ParserState.PARSING_HEADERS) {
+				pe = streamLength;
+				eof = -1;                // more data is always expected on the stream
+
+				%% write exec;
+
+				if (cs == message_error) {
+					if (!resyncLogged) {
+						Logger.log(Logger.Tag.PARSER, "Stream did not comply with the grammar at position " + (p - streamStart) +
+								", skipping data till the next message: \n" + arrayToString(streamStart, Math.min(p + 1, streamLength)));
+						resyncLogged = true;
+					}
+					//drop everything up to the failed byte and try to start new message right after it
+					streamStart = Math.min(p + 1, streamLength);
+					state = ParserState.INITIAL;
+					parseNext = true;
+				} else if (cs >= message_first_final) {
+					bodyStart = p;
+					state = ParserState.PARSING_BODY;
+				}
+			}
+
+			if (state == ParserState.PARSING_BODY) {
+				final int bodyLength = contentLength > 0 ? contentLength : 0;
+
+				if (streamLength - bodyStart >= bodyLength) {
+					if (retValue.isEmpty()) {
+						retValue = new ArrayList<BaseSipMessage>(2);
+					}
+					retValue.add(completeStreamMessage(bodyStart + bodyLength));
+					parseNext = true;
+				}
+			}
+		}
+
+		return retValue;
+	}
+
+	/**
+	 * @return amount of bytes of not yet completed message kept by parser
+	 */
+	public int getStreamedSize() {
+		return streamLength - streamStart;
+	}
+
+	/**
+	 * @return header part of not yet completed message or null if headers are not received completely
+	 */
+	public byte[] getStreamedHeaders() {
+		return state == ParserState.PARSING_BODY ? Arrays.copyOfRange(streamBuffer, streamStart, bodyStart) : null;
+	}
+
+	/**
+	 * Discards not yet completed message and brings parser to initial state.
+	 */
+	public void resetStream() {
+		streamBuffer = null;
+		streamStart = streamLength = bodyStart = 0;
+		data = null;
+		state = ParserState.INITIAL;
+		releaseMessageState();
+	}
+
+	private void appendToStream(final byte[] part, final int offset, final int length) {
+		if (streamBuffer == null) {
+			//lazy values keep the whole buffer alive, so there it is sized to the received data only
+			streamBuffer = new byte[lazyValues ? length : Math.max(STREAM_BUFFER_SIZE, length)];
+		}
+		else if (streamLength + length > streamBuffer.length) {
+			//marks are absolute indexes so message is never moved inside buffer, buffer grows instead
+			streamBuffer = Arrays.copyOf(streamBuffer, Math.max(streamBuffer.length * 2, streamLength + length));
+		}
+
+		System.arraycopy(part, offset, streamBuffer, streamLength, length);
+		streamLength += length;
+	}
+
+	private void skipLeadingWhitespaces() {
+		while (streamStart < streamLength) {
+			final byte b = streamBuffer[streamStart];
+			if (b != '\r' && b != '\n' && b != ' ' && b != '\t') {
+				break;
+			}
+			streamStart++;
+		}
+
+		if (streamStart == streamLength) {
+			streamStart = streamLength = 0;
+		}
+	}
+
+	private BaseSipMessage completeStreamMessage(final int messageEnd) {
+		//filled buffer is handed over to the message, its wire bytes and body are ranges of it
+		final BaseSipMessage retValue = msgBuilder.build(streamBuffer, streamStart, messageEnd - streamStart, bodyStart);
+
+		//only bytes of the next message are moved to a new buffer, none is allocated if there are no such bytes
+		final int leftOversSize = streamLength - messageEnd;
+		final byte[] nextBuffer = leftOversSize > 0 ?
+				new byte[lazyValues ? leftOversSize : Math.max(STREAM_BUFFER_SIZE, leftOversSize)] :
+				null;
+		if (leftOversSize > 0) {
+			System.arraycopy(streamBuffer, messageEnd, nextBuffer, 0, leftOversSize);
+		}
+
+		streamBuffer = nextBuffer;
+		streamStart = 0;
+		streamLength = leftOversSize;
+		state = ParserState.INITIAL;
+		resyncLogged = false;
+		releaseMessageState();
+
+		return retValue;
+	}
+
+	private void resetMessageState() {
+		releaseMessageState();
+
+		currentLine = 0;
+		m_Mark = 0;
+		startOfCurrentLine = 0;
+		contentLength = 0;
+		msgBuilder = new BaseSipMessage.Builder();
+	}
+
+	private void releaseMessageState() {
+		customHeaderName = temp = null;
+		msgBuilder = null;
+		viaBuilder = null;
+		uriBuilder = null;
+		uriHeaderBuilder = null;
+		curHValName = curHValValue = curParam = null;
+		paramHeaderBuilder = null;
+	}
 }
 
 
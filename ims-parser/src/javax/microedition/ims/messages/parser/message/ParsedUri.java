@@ -0,0 +1,187 @@
+/*
+ * This software code is (c) 2010 T-Mobile USA, Inc. All Rights Reserved.
+ *
+ * Unauthorized redistribution or further use of this material is
+ * prohibited without the express permission of T-Mobile USA, Inc. and
+ * will be prosecuted to the fullest extent of the law.
+ *
+ * Removal or modification of these Terms and Conditions from the source
+ * or binary code of this software is prohibited.  In the event that
+ * redistribution of the source or binary code for this software is
+ * approved by T-Mobile USA, Inc., these Terms and Conditions and the
+ * above copyright notice must be reproduced in their entirety and in all
+ * circumstances.
+ *
+ * No name or trademarks of T-Mobile USA, Inc., or of its parent company,
+ * Deutsche Telekom AG or any Deutsche Telekom or T-Mobile entity, may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" AND "WITH ALL FAULTS" BASIS
+ * AND WITHOUT WARRANTIES OF ANY KIND.  ALL EXPRESS OR IMPLIED
+ * CONDITIONS, REPRESENTATIONS OR WARRANTIES, INCLUDING ANY IMPLIED
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR
+ * NON-INFRINGEMENT CONCERNING THIS SOFTWARE, ITS SOURCE OR BINARY CODE
+ * OR ANY DERIVATIVES THEREOF ARE HEREBY EXCLUDED.  T-MOBILE USA, INC.
+ * AND ITS LICENSORS SHALL NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY
+ * LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE
+ * OR ITS DERIVATIVES.  IN NO EVENT WILL T-MOBILE USA, INC. OR ITS
+ * LICENSORS BE LIABLE FOR LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT,
+ * INDIRECT, SPECIAL, CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES,
+ * HOWEVER CAUSED AND REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT
+ * OF THE USE OF OR INABILITY TO USE THIS SOFTWARE, EVEN IF T-MOBILE USA,
+ * INC. HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGES.
+ *
+ * THESE TERMS AND CONDITIONS APPLY SOLELY AND EXCLUSIVELY TO THE USE,
+ * MODIFICATION OR DISTRIBUTION OF THIS SOFTWARE, ITS SOURCE OR BINARY
+ * CODE OR ANY DERIVATIVES THEREOF, AND ARE SEPARATE FROM ANY WRITTEN
+ * WARRANTY THAT MAY BE PROVIDED WITH A DEVICE YOU PURCHASE FROM T-MOBILE
+ * USA, INC., AND TO THE EXTENT PERMITTED BY LAW.
+ */
+
+package javax.microedition.ims.messages.parser.message;
+
+import javax.microedition.ims.messages.wrappers.common.Param;
+import javax.microedition.ims.messages.wrappers.common.ParamList;
+import javax.microedition.ims.messages.wrappers.common.ParamListDefaultImpl;
+import javax.microedition.ims.messages.wrappers.common.Uri;
+import javax.microedition.ims.messages.wrappers.sip.SipUri;
+import javax.microedition.ims.messages.wrappers.sip.UriHeader;
+import java.util.Map;
+
+/**
+ * Immutable result of URI parsing. Unlike {@link UriHeader}, whose params are mutable {@link Param} objects,
+ * it can be shared between threads and cached, see {@link SipUriParser#parse(String)}.
+ */
+public final class ParsedUri {
+    private static final String[] NO_PARAMS = new String[0];
+
+    private final String prefix;
+    private final String displayName;
+    private final String username;
+    private final String password;
+    private final String domain;
+    private final int port;
+    private final String[] paramNames;
+    //null for params without value
+    private final String[] paramValues;
+    private String stringValue;
+
+    ParsedUri(final Uri uri) {
+        this.prefix = uri.getPrefix();
+        this.displayName = uri.getDisplayName();
+        this.username = uri.getUsername();
+        this.password = uri.getPassword();
+        this.domain = uri.getDomain();
+        this.port = uri.getPort();
+
+        final ParamList paramList = uri.getParamsList();
+        final Map<String, Param> params = paramList == null ? null : paramList.getParams();
+        if (params == null || params.isEmpty()) {
+            this.paramNames = NO_PARAMS;
+            this.paramValues = NO_PARAMS;
+        }
+        else {
+            this.paramNames = new String[params.size()];
+            this.paramValues = new String[params.size()];
+
+            int i = 0;
+            for (Map.Entry<String, Param> entry : params.entrySet()) {
+                paramNames[i] = entry.getKey();
+                paramValues[i] = entry.getValue() == null ? null : entry.getValue().getValue();
+                i++;
+            }
+        }
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public int getParamsCount() {
+        return paramNames.length;
+    }
+
+    public String getParamName(final int index) {
+        return paramNames[index];
+    }
+
+    /**
+     * @return param value or null for param without value
+     */
+    public String getParamValue(final int index) {
+        return paramValues[index];
+    }
+
+    /**
+     * @return new header holding this URI, caller is free to use it the way parsed header used to be used
+     */
+    public UriHeader toUriHeader() {
+        final ParamList uriParamList = new ParamListDefaultImpl();
+        for (int i = 0; i < paramNames.length; i++) {
+            if (paramValues[i] == null) {
+                uriParamList.set(paramNames[i]);
+            }
+            else {
+                uriParamList.set(paramNames[i], paramValues[i]);
+            }
+        }
+
+        final SipUri.SipUriBuilder uriBuilder = new SipUri.SipUriBuilder()
+                .prefix(prefix)
+                .displayName(displayName)
+                .username(username)
+                .password(password)
+                .domain(domain)
+                .port(port);
+        uriBuilder.paramList(uriParamList);
+
+        return new UriHeader.UriHeaderBuilder().uriBuilder(uriBuilder).build();
+    }
+
+    
+    public String toString() {
+        String retValue = stringValue;
+        if (retValue == null) {
+            stringValue = retValue = doBuildStringValue();
+        }
+        return retValue;
+    }
+
+    private String doBuildStringValue() {
+        final StringBuilder retValue = new StringBuilder("ParsedUri [prefix=").append(prefix)
+                .append(", displayName=").append(displayName)
+                .append(", username=").append(username)
+                .append(", domain=").append(domain)
+                .append(", port=").append(port)
+                .append(", params=");
+
+        for (int i = 0; i < paramNames.length; i++) {
+            retValue.append(i == 0 ? "" : ";").append(paramNames[i]);
+            if (paramValues[i] != null) {
+                retValue.append('=').append(paramValues[i]);
+            }
+        }
+        return retValue.append("]").toString();
+    }
+}
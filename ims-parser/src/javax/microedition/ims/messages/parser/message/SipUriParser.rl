@@ -42,6 +42,7 @@
 package javax.microedition.ims.messages.parser.message;
 
 import javax.microedition.ims.common.Logger;
+import javax.microedition.ims.common.util.LruCache;
 import javax.microedition.ims.messages.parser.ParserUtils;
 import javax.microedition.ims.messages.wrappers.common.ParamList;
 import javax.microedition.ims.messages.wrappers.common.ParamListDefaultImpl;
@@ -50,6 +51,10 @@ import javax.microedition.ims.messages.wrappers.sip.UriHeader;
 
 
 
+/**
+ * Parses SIP and TEL URIs. Parser keeps no shared state, results are cached in bounded LRU cache
+ * since the same few URIs (own identity, routes, buddies) are parsed over and over.
+ */
 public class SipUriParser {
 
 %%{
@@ -92,7 +97,7 @@ public class SipUriParser {
 
 	action set_port {
 	  //uri.getUriBuilder().setPort(ParserUtils.toNumber(arrayToString(m_Mark, p), 0, 10));
-      uriBuilder.port(ParserUtils.toNumber(arrayToString(m_Mark, p), 0, 10));
+      uriBuilder.port(ParserUtils.toNumber(data, m_Mark, p, 0, 10));
     }
 
 
@@ -286,7 +291,14 @@ public class SipUriParser {
 
 %% write data;
 
-	protected static String arrayToString(int mark, int p) {
+	private static final int CACHE_CAPACITY = 256;
+
+	//cached result of the input which doesn't comply with the grammar
+	private static final ParsedUri INVALID_URI = new ParsedUri(new SipUri.SipUriBuilder().buildUri());
+
+	private static final LruCache<String, ParsedUri> cache = new LruCache<String, ParsedUri>(CACHE_CAPACITY);
+
+	protected String arrayToString(int mark, int p) {
 		byte[] tmp = new byte[p - mark];
         System.arraycopy(data, mark, tmp, 0, p - mark);
         String result = new String(tmp);
@@ -295,9 +307,8 @@ public class SipUriParser {
 	}
 
 
-	protected static byte[] data;
-	private static UriHeader uri ; //test object just to save data inside, real wrappers needed
-	private static String m_CurParam;
+	protected byte[] data;
+	private String m_CurParam;
 
 /*	public static void main(String[] args) {
         if (args.length < 1) {
@@ -331,8 +342,41 @@ public class SipUriParser {
     }*/
 
 
-	public synchronized static UriHeader parseUri(String input) {
-	    //uri = new UriHeader();
+	/**
+	 * @return new header holding parsed URI or null if input doesn't comply with the grammar
+	 */
+	public static UriHeader parseUri(String input) {
+		final ParsedUri parsedUri = parse(input);
+		return parsedUri == null ? null : parsedUri.toUriHeader();
+	}
+
+	/**
+	 * @return shared immutable parsed URI or null if input doesn't comply with the grammar
+	 */
+	public static ParsedUri parse(String input) {
+		//cache doesn't take null keys, such input never complies with the grammar anyway
+		if (input == null) {
+			return null;
+		}
+
+		ParsedUri retValue = cache.get(input);
+		if (retValue == null) {
+			final UriHeader uri = new SipUriParser().doParse(input);
+			retValue = uri == null ? INVALID_URI : new ParsedUri(uri.getUri());
+			cache.put(input, retValue);
+		}
+		return retValue == INVALID_URI ? null : retValue;
+	}
+
+	public static long getCacheHitCount() {
+		return cache.getHitCount();
+	}
+
+	public static long getCacheMissCount() {
+		return cache.getMissCount();
+	}
+
+	private UriHeader doParse(String input) {
         SipUri.SipUriBuilder uriBuilder = new SipUri.SipUriBuilder();
         ParamList uriParamList = new ParamListDefaultImpl();
 
@@ -370,7 +414,7 @@ public class SipUriParser {
 
 		// Error state is clear
         final SipUri.SipUriBuilder sipUriBuilder = (SipUri.SipUriBuilder) uriBuilder.paramList(uriParamList);
-        uri = new UriHeader.UriHeaderBuilder().uriBuilder(sipUriBuilder).build();
+        final UriHeader uri = new UriHeader.UriHeaderBuilder().uriBuilder(sipUriBuilder).build();
 
         if (cs == uri_parser_error) {
             Logger.log(Logger.Tag.PARSER, "Your input did not comply with the grammar");
@@ -90,7 +90,7 @@ public class MsrpParser{
 	}
 
 	action set_port {
-		currentUri.setPort(ParserUtils.toNumber(arrayToString(m_Mark, p), 0, 10));
+		currentUri.setPort(ParserUtils.toNumber(data, m_Mark, p, 0, 10));
 	}
 
 	action set_fail_no {
@@ -128,7 +128,7 @@ public class MsrpParser{
 	}
 	
 	action set_range_start {
-		byteRangeStart = ParserUtils.toNumber(arrayToString(m_Mark, p), 0, 10);
+		byteRangeStart = ParserUtils.toNumber(data, m_Mark, p, 0, 10);
 	}
 
 	action set_message_id {
@@ -136,16 +136,16 @@ public class MsrpParser{
 	}
 
 	action set_total_size {
-		totalSize = ParserUtils.toNumber(arrayToString(m_Mark, p), 0, 10);
+		totalSize = ParserUtils.toNumber(data, m_Mark, p, 0, 10);
 	}
 
 	action set_status_code {
-		code = ParserUtils.toNumber(arrayToString(m_Mark, p), 0, 10);
+		code = ParserUtils.toNumber(data, m_Mark, p, 0, 10);
 	}
 	
 	
 	action set_code {
-		code = ParserUtils.toNumber(arrayToString(m_Mark, p), 0, 10);
+		code = ParserUtils.toNumber(data, m_Mark, p, 0, 10);
 	}
 
 	action set_reason_phrase {
@@ -186,14 +186,17 @@ public class MsrpParser{
 			currentMessage.setPrevProgress( byteRangeStart);	
 			currentMessage.setCurrentProgress( byteRangeEnd);			
 			currentMessage.setTotalSize( totalSize );
-			int  bodyEnd = data.length - 7 - 2 - transactionId.length() - 1 - 2;
+			int  bodyEnd = pe - 7 - 2 - transactionId.length() - 1 - 2;
             int bodyStart = p + 4;
             if(bodyEnd - bodyStart < 0){
                 bodyStart = bodyEnd;
             }
-            byte[] tmp = new byte[ bodyEnd - bodyStart ];
-            System.arraycopy( data, bodyStart, tmp, 0, bodyEnd - bodyStart);
-            currentMessage.setContent(0, tmp);
+            currentMessage.setContent(0, data, bodyStart, bodyEnd - bodyStart);
+
+            if (headersOnly) {
+                /* Body is known from the end line position, no need to scan it */
+                fbreak;
+            }
 		}
 		
 	}
@@ -208,7 +211,6 @@ public class MsrpParser{
 
 	action endline_id {
 		String eid = arrayToString(m_Mark, p -3);
-		String content = arrayToString(startOfContent, m_Mark);
 
 		String od = arrayToString(m_Mark - 7 - 2, p); //TODO refactor
 		
@@ -233,7 +235,7 @@ public class MsrpParser{
 			/* Pass remaining data to message */
 
 			if (currentMessage != null) {
-				currentMessage.setContent( byteRangeStart, cutArray( startOfContent, m_Mark - 7 - 2 ) );
+				currentMessage.setContent( byteRangeStart, data, startOfContent, m_Mark - 7 - 2 - startOfContent );
 			}
 		}
 		
@@ -453,7 +455,7 @@ public class MsrpParser{
 
 %%write data;
 
-	protected static String arrayToString(int mark, int p) {
+	protected String arrayToString(int mark, int p) {
 
 		byte[] tmp = new byte[ p - mark ];
 		System.arraycopy( data, mark, tmp, 0, p - mark);
@@ -461,19 +463,16 @@ public class MsrpParser{
 		return result;
 	}
 	
-	protected static byte[] cutArray(int mark, int p) {
-
-		byte[] tmp = new byte[ p - mark ];
-		System.arraycopy( data, mark, tmp, 0, p - mark);		
-		return tmp;
-	}
+	//only start line and headers are parsed, body is taken as is
+	private final boolean headersOnly;
 
+		protected byte[] data;
 
-	
-		protected volatile static byte[] data;
-		
+	private MsrpParser(final boolean headersOnly) {
+		this.headersOnly = headersOnly;
+	}
 
-	public static synchronized MsrpMessage parse(final String input) {
+	public static MsrpMessage parse(final String input) {
 		System.out.println("msrp message parsing started. Your input is: \n"+input);
 
 		if(input == null || input.length() == 0){
@@ -490,13 +489,31 @@ public class MsrpParser{
 		return parse(dataTemp);
 	}
 
-	public static synchronized MsrpMessage parse(final byte[] input) {		
+	public static MsrpMessage parse(final byte[] input) {		
 
 		if(input == null || input.length == 0){
 			return null;
 			//throw new IllegalArgumentException("Wrong data to parse. input == null || input.length == 0");
 		}
 
+		return new MsrpParser(false).doParse(input, 0, input.length);
+	}
+
+	/**
+	 * Parses start line and headers of complete MSRP message, body is not scanned.
+	 * Body of the result is a slice of input, see {@link MsrpMessage#writeBody(java.io.OutputStream)}.
+	 *
+	 * @param input - complete message including end line
+	 */
+	public static MsrpMessage parseHeaders(final byte[] input, final int offset, final int length) {
+		if(input == null || length == 0){
+			return null;
+		}
+
+		return new MsrpParser(true).doParse(input, offset, length);
+	}
+
+	private MsrpMessage doParse(final byte[] input, final int offset, final int length) {
 		//Logger.log("Message to parse :"+new String(input));
 		data = input;
 
@@ -529,8 +546,8 @@ public class MsrpParser{
         int  startOfContent = 0;  
         
         
-        int p = 0; 
-        int pe = data.length;
+        int p = offset; 
+        int pe = offset + length;
         int eof = pe;
         
        
@@ -545,6 +562,12 @@ public class MsrpParser{
 		return null;
 	} else if (cs < msrp_first_final) {		
 
+		if (headersOnly && currentMessage != null && terminator == ChunkTerminator.NOT_SET) {
+			/* Parsing stopped at the body, flag is the last char before CRLF of the end line */
+			terminator = toTerminator(data[pe - 3]);
+			currentMessage.setTerminator(terminator);
+		}
+
 		if (!fetchingData) {
 			/* Still somewhere inside headers */
 			diff = p - m_Mark;
@@ -594,6 +617,20 @@ public class MsrpParser{
 	return currentMessage;
 }
 
+	private static ChunkTerminator toTerminator(final byte flag) {
+		final ChunkTerminator retValue;
+		if (flag == '#') {
+			retValue = ChunkTerminator.ABORTED;
+		} else if (flag == '$') {
+			retValue = ChunkTerminator.FINISHED;
+		} else if (flag == '+') {
+			retValue = ChunkTerminator.CONTINUES;
+		} else {
+			retValue = ChunkTerminator.NOT_SET;
+		}
+		return retValue;
+	}
+
 	
 	public static void main(String[] args){
 		String input = "MSRP btjg27vh1h SEND\r\n" +
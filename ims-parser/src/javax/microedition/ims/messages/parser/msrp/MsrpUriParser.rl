@@ -70,7 +70,7 @@ public class MsrpUriParser{
 		uri.setTransport(arrayToString(m_Mark, p));
 	}
 	action set_port {
-		uri.setPort(ParserUtils.toNumber(arrayToString(m_Mark, p), 0, 10));
+		uri.setPort(ParserUtils.toNumber(data, m_Mark, p, 0, 10));
 	}
 
 	ALPHA = alpha;
@@ -57,7 +57,7 @@ public class FmtpParser {
 	}
 
 	action set_payload {
-		type = ParserUtils.toNumber(arrayToString(m_Mark, p), 0, 10);
+		type = ParserUtils.toNumber(data, m_Mark, p, 0, 10);
 	}
 
 	action set_data {
@@ -102,28 +102,42 @@ public class FmtpParser {
 
 %% write data;
 
-	protected static String arrayToString(int mark, int p) {
+	protected String arrayToString(int mark, int p) {
 		byte[] tmp = new byte[ p - mark ];
 		System.arraycopy( data, mark, tmp, 0, p - mark);
 		String result = new String( tmp );
 		return result;
 	}
 
-	protected static byte[] data;
+	protected byte[] data;
 		
 	public static Fmtp parse(String input) {
+		final byte[] bytes;
 		try {
-            data = input.getBytes("UTF-8");
+            bytes = input.getBytes("UTF-8");
         } catch (Exception e) {
 
             Logger.log(Logger.Tag.PARSER, "Unsupported encoding");
             return null;
         }
 
-        int m_Mark = 0;
+        return parse(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Parses fmtp attribute value straight from the bytes it was received in.
+	 */
+	public static Fmtp parse(byte[] input, int offset, int length) {
+        return new FmtpParser().doParse(input, offset, length);
+	}
+
+	private Fmtp doParse(byte[] input, int offset, int length) {
+        data = input;
+
+        int m_Mark = offset;
         int cs = 0;                  // Ragel keeps the state in "cs"
-        int p = 0;                   // Current index into data is "p"
-        int pe = data.length;        // Length of data
+        int p = offset;              // Current index into data is "p"
+        int pe = offset + length;    // End of data
         int eof = pe;
         
         int type = -1;
@@ -56,15 +56,15 @@ public class RtpMapParser{
 	}
 
 	action set_payload {
-		type =  ParserUtils.toNumber(arrayToString(m_Mark, p), 0, 10);
+		type =  ParserUtils.toNumber(data, m_Mark, p, 0, 10);
 	}
 
 	action set_clockrate {
-		clockRate =  ParserUtils.toNumber(arrayToString(m_Mark, p), 0, 10);
+		clockRate =  ParserUtils.toNumber(data, m_Mark, p, 0, 10);
 	}
 
 	action set_channels {
-		channels =  ParserUtils.toNumber(arrayToString(m_Mark, p), 0, 10);
+		channels =  ParserUtils.toNumber(data, m_Mark, p, 0, 10);
 	}
 
 	action set_name {
@@ -115,27 +115,41 @@ public class RtpMapParser{
 
 %% write data;
 
-	protected static String arrayToString(int mark, int p) {
+	protected String arrayToString(int mark, int p) {
 		byte[] tmp = new byte[ p - mark ];
 		System.arraycopy( data, mark, tmp, 0, p - mark);
 		String result = new String( tmp );
 		return result;
 	}
 
-	protected static byte[] data;
+	protected byte[] data;
 	
 	public static RtpMap parse(String input) {
+		final byte[] bytes;
 		try {
-            data = input.getBytes("UTF-8");
+            bytes = input.getBytes("UTF-8");
         } catch (Exception e) {
             System.out.println("Unsupported encoding");
             return null;
         }
 
-        int m_Mark = 0;
+        return parse(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Parses rtpmap attribute value straight from the bytes it was received in.
+	 */
+	public static RtpMap parse(byte[] input, int offset, int length) {
+        return new RtpMapParser().doParse(input, offset, length);
+	}
+
+	private RtpMap doParse(byte[] input, int offset, int length) {
+        data = input;
+
+        int m_Mark = offset;
         int cs = 0;                  // Ragel keeps the state in "cs"
-        int p = 0;                   // Current index into data is "p"
-        int pe = data.length;        // Length of data
+        int p = offset;              // Current index into data is "p"
+        int pe = offset + length;    // End of data
         int eof = pe;
         
     int type = -1;
@@ -57,7 +57,7 @@ public class SdpParser{
 	}
 
 	action set_proto_version {
-		mes.setVersion(ParserUtils.toNumber(arrayToString(m_Mark, p), 0, 10));
+		mes.setVersion(ParserUtils.toNumber(data, m_Mark, p, 0, 10));
 	}
 
 	action set_username {
@@ -65,11 +65,11 @@ public class SdpParser{
 	}
 
 	action set_session_id {
-		mes.setSessionId(ParserUtils.toLongNumber(arrayToString(m_Mark, p), 0, 10));
+		mes.setSessionId(ParserUtils.toLongNumber(data, m_Mark, p, 0, 10));
 	}
 
 	action set_session_version {
-		mes.setSessionVersion(ParserUtils.toLongNumber(arrayToString(m_Mark, p), 0, 10));
+		mes.setSessionVersion(ParserUtils.toLongNumber(data, m_Mark, p, 0, 10));
 	}
 
 	action set_session_addr_type {
@@ -134,11 +134,11 @@ public class SdpParser{
 	}
 
 	action set_media_port {
-		curMedia.setPort(ParserUtils.toNumber(arrayToString(m_Mark, p), 0, 10));
+		curMedia.setPort(ParserUtils.toNumber(data, m_Mark, p, 0, 10));
 	}
 
 	action set_media_numports {
-		curMedia.setNumberOfPorts(ParserUtils.toNumber(arrayToString(m_Mark, p), 0, 10));
+		curMedia.setNumberOfPorts(ParserUtils.toNumber(data, m_Mark, p, 0, 10));
 	}
 
 	action set_media_protocol {
@@ -184,7 +184,7 @@ public class SdpParser{
 	}
 
 	action set_bandwidth_value {
-		bandwidth.setBandwidth(ParserUtils.toLongNumber(arrayToString(m_Mark, p), 0, 10));
+		bandwidth.setBandwidth(ParserUtils.toLongNumber(data, m_Mark, p, 0, 10));
 		if (inMedia) {
 			curMedia.setBandwidth( bandwidth );
 		} else {
@@ -193,11 +193,11 @@ public class SdpParser{
 	}
 
 	action set_start_time {
-		timing.setStartTime(ParserUtils.toLongNumber(arrayToString(m_Mark, p), 0, 10));
+		timing.setStartTime(ParserUtils.toLongNumber(data, m_Mark, p, 0, 10));
 	}
 
 	action set_stop_time {
-		timing.setEndTime(ParserUtils.toLongNumber(arrayToString(m_Mark, p), 0, 10));
+		timing.setEndTime(ParserUtils.toLongNumber(data, m_Mark, p, 0, 10));
 	}
 
 	action add_timing {
@@ -206,15 +206,15 @@ public class SdpParser{
 	}
 
 	action set_repeat_interval {
-		repeat.setInterval(ParserUtils.toLongNumber(arrayToString(m_Mark, p), 0, 10));
+		repeat.setInterval(ParserUtils.toLongNumber(data, m_Mark, p, 0, 10));
 	}
 
 	action set_repeat_duration {
-		repeat.setDuration(ParserUtils.toLongNumber(arrayToString(m_Mark, p), 0, 10));
+		repeat.setDuration(ParserUtils.toLongNumber(data, m_Mark, p, 0, 10));
 	}
 
 	action add_repeat_value {
-		repeat.getOffsets().add( new Long(ParserUtils.toLongNumber(arrayToString(m_Mark, p), 0, 10)));
+		repeat.getOffsets().add( new Long(ParserUtils.toLongNumber(data, m_Mark, p, 0, 10)));
 	}
 
 	action set_zone_adj_time {
@@ -229,11 +229,11 @@ public class SdpParser{
 	}
 
 	action add_adj_time {
-		adj.setOffset(ParserUtils.toLongNumber(arrayToString(m_Mark, p), 0, 10));
+		adj.setOffset(ParserUtils.toLongNumber(data, m_Mark, p, 0, 10));
 	}
 
 	action add_adj_value {
-		adj.setAdjustment(ParserUtils.toLongNumber(arrayToString(m_Mark, p), 0, 10));
+		adj.setAdjustment(ParserUtils.toLongNumber(data, m_Mark, p, 0, 10));
 		mes.getZoneAdjustments().add( adj );
 		adj = new ZoneAdjustment();
 	}
@@ -453,55 +453,67 @@ public class SdpParser{
 
 %% write data;
 
-	protected static String arrayToString(int mark, int p) {
+	protected String arrayToString(int mark, int p) {
 
 		byte[] tmp = new byte[ p - mark ];
 		System.arraycopy( data, mark, tmp, 0, p - mark);
 		String result = new String( tmp );
 		return result;
 	}
-	protected static byte[] data;
-	protected static int cs = 0;                  // Ragel keeps the state in "cs"
-	protected static int p = 0;                   // Current index into data is "p"
-	protected static int pe = 0;        // Length of data, SO YES data[pe] IS AN INVALID INDEX THIS IS CORRECT!
-	protected static int eof = 0; 
-	
-	private static void cleanVariables(){
-	    data = null;
-        cs = 0;                  
-        p = 0;                   
-        pe = 0;        
-        eof = 0;         
-	}
+	protected byte[] data;
 
 
 	public static SdpMessage parse(String input) {
 	        //Logger.log(Logger.Tag.PARSER,"parsing started. Your input is: "+input);
 
-	cleanVariables();
-
 	if(input == null || input.length() == 0){
 	     return null;
-	 } else if(!input.endsWith("\n")){
-	     input += "\n";
 	 }
-	
+
+	 final byte[] bytes;
 	 try {
-            data = input.getBytes("UTF-8");
+            bytes = input.getBytes("UTF-8");
         } catch (Exception e) {
             Logger.log(Logger.Tag.PARSER, "Unsupported encoding");
             return null;
         }
 
+        return parse(bytes, 0, bytes.length);
+	}
+
+	public static SdpMessage parse(byte[] input) {
+	    return input == null ? null : parse(input, 0, input.length);
+	}
+
+	/**
+	 * Parses SDP straight from the bytes it was received in, e.g. from body of SIP message.
+	 * Input is not modified and not kept after parsing.
+	 */
+	public static SdpMessage parse(byte[] input, int offset, int length) {
+	if(input == null || length == 0){
+	     return null;
+	 } else if(input[offset + length - 1] != '\n'){
+	     //grammar expects terminated last line
+	     final byte[] terminated = new byte[length + 1];
+	     System.arraycopy(input, offset, terminated, 0, length);
+	     terminated[length] = '\n';
+	     return new SdpParser().doParse(terminated, 0, terminated.length);
+	 }
+
+	 return new SdpParser().doParse(input, offset, length);
+	}
+
+	private SdpMessage doParse(byte[] input, int offset, int length) {
+        data = input;
 
         // Whenever we see something interesting, remember the current index. Then, when we've decided
         // we really saw something interesting, fetch the part between "mark" and "current value of p"
 
-        int m_Mark = 0;
-        cs = 0;                  // Ragel keeps the state in "cs"
-        p = 0;                   // Current index into data is "p"
-        pe = data.length;        // Length of data
-        eof = pe;  
+        int m_Mark = offset;
+        int cs = 0;                  // Ragel keeps the state in "cs"
+        int p = offset;              // Current index into data is "p"
+        int pe = offset + length;    // End of data, SO YES data[pe] IS AN INVALID INDEX THIS IS CORRECT!
+        int eof = pe;
 	
 	boolean inMedia = false;
 	Media curMedia = new Media();
@@ -519,7 +531,7 @@ public class SdpParser{
 	
 				        if (cs == sdp_error) {
             Logger.log(Logger.Tag.PARSER, "Your input did not comply with the grammar");
-            Logger.log(Logger.Tag.PARSER, "SDP Parsing error at " + p + " near text:" + arrayToString(p - 2, p + 2));
+            Logger.log(Logger.Tag.PARSER, "SDP Parsing error at " + p + " near text:" + arrayToString(Math.max(offset, p - 2), Math.min(pe, p + 2)));
             return null;
 
         }
@@ -0,0 +1,128 @@
+/*
+ * This software code is (c) 2010 T-Mobile USA, Inc. All Rights Reserved.
+ *
+ * Unauthorized redistribution or further use of this material is
+ * prohibited without the express permission of T-Mobile USA, Inc. and
+ * will be prosecuted to the fullest extent of the law.
+ *
+ * Removal or modification of these Terms and Conditions from the source
+ * or binary code of this software is prohibited.  In the event that
+ * redistribution of the source or binary code for this software is
+ * approved by T-Mobile USA, Inc., these Terms and Conditions and the
+ * above copyright notice must be reproduced in their entirety and in all
+ * circumstances.
+ *
+ * No name or trademarks of T-Mobile USA, Inc., or of its parent company,
+ * Deutsche Telekom AG or any Deutsche Telekom or T-Mobile entity, may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" AND "WITH ALL FAULTS" BASIS
+ * AND WITHOUT WARRANTIES OF ANY KIND.  ALL EXPRESS OR IMPLIED
+ * CONDITIONS, REPRESENTATIONS OR WARRANTIES, INCLUDING ANY IMPLIED
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR
+ * NON-INFRINGEMENT CONCERNING THIS SOFTWARE, ITS SOURCE OR BINARY CODE
+ * OR ANY DERIVATIVES THEREOF ARE HEREBY EXCLUDED.  T-MOBILE USA, INC.
+ * AND ITS LICENSORS SHALL NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY
+ * LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE
+ * OR ITS DERIVATIVES.  IN NO EVENT WILL T-MOBILE USA, INC. OR ITS
+ * LICENSORS BE LIABLE FOR LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT,
+ * INDIRECT, SPECIAL, CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES,
+ * HOWEVER CAUSED AND REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT
+ * OF THE USE OF OR INABILITY TO USE THIS SOFTWARE, EVEN IF T-MOBILE USA,
+ * INC. HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGES.
+ *
+ * THESE TERMS AND CONDITIONS APPLY SOLELY AND EXCLUSIVELY TO THE USE,
+ * MODIFICATION OR DISTRIBUTION OF THIS SOFTWARE, ITS SOURCE OR BINARY
+ * CODE OR ANY DERIVATIVES THEREOF, AND ARE SEPARATE FROM ANY WRITTEN
+ * WARRANTY THAT MAY BE PROVIDED WITH A DEVICE YOU PURCHASE FROM T-MOBILE
+ * USA, INC., AND TO THE EXTENT PERMITTED BY LAW.
+ */
+
+package javax.microedition.ims.messages.wrappers.common;
+
+/**
+ * Read-only view of a range of bytes of parsed message.
+ * <p/>
+ * Bytes are decoded to String only the first time the value is requested. Decoding follows the same rules
+ * as parser itself (platform default charset).
+ */
+public final class ByteSlice implements CharSequence {
+    private final byte[] data;
+    private final int offset;
+    private final int length;
+
+    private String stringValue;
+
+    public ByteSlice(final byte[] data, final int offset, final int length) {
+        if (data == null) {
+            throw new NullPointerException("data is null");
+        }
+        if (offset < 0 || length < 0 || offset + length > data.length) {
+            throw new IndexOutOfBoundsException("offset = " + offset + " length = " + length + " data.length = " + data.length);
+        }
+
+        this.data = data;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Returns String value of the slice, materializing it if necessary.
+     *
+     * @param value - slice, String or null
+     * @return String representation of value or null
+     */
+    public static String stringOf(final CharSequence value) {
+        return value == null ? null : value.toString();
+    }
+
+    public int length() {
+        //byte length and char length differ for multi-byte characters
+        return toString().length();
+    }
+
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    public char charAt(final int index) {
+        return toString().charAt(index);
+    }
+
+    public CharSequence subSequence(final int start, final int end) {
+        return toString().subSequence(start, end);
+    }
+
+    public boolean isMaterialized() {
+        return stringValue != null;
+    }
+
+    
+    public String toString() {
+        String retValue = stringValue;
+
+        if (retValue == null) {
+            retValue = new String(data, offset, length);
+            stringValue = retValue;
+        }
+
+        return retValue;
+    }
+
+    
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ByteSlice)) {
+            return false;
+        }
+        return toString().equals(o.toString());
+    }
+
+    
+    public int hashCode() {
+        return toString().hashCode();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * This software code is (c) 2010 T-Mobile USA, Inc. All Rights Reserved.
+ *
+ * Unauthorized redistribution or further use of this material is
+ * prohibited without the express permission of T-Mobile USA, Inc. and
+ * will be prosecuted to the fullest extent of the law.
+ *
+ * Removal or modification of these Terms and Conditions from the source
+ * or binary code of this software is prohibited.  In the event that
+ * redistribution of the source or binary code for this software is
+ * approved by T-Mobile USA, Inc., these Terms and Conditions and the
+ * above copyright notice must be reproduced in their entirety and in all
+ * circumstances.
+ *
+ * No name or trademarks of T-Mobile USA, Inc., or of its parent company,
+ * Deutsche Telekom AG or any Deutsche Telekom or T-Mobile entity, may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" AND "WITH ALL FAULTS" BASIS
+ * AND WITHOUT WARRANTIES OF ANY KIND.  ALL EXPRESS OR IMPLIED
+ * CONDITIONS, REPRESENTATIONS OR WARRANTIES, INCLUDING ANY IMPLIED
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR
+ * NON-INFRINGEMENT CONCERNING THIS SOFTWARE, ITS SOURCE OR BINARY CODE
+ * OR ANY DERIVATIVES THEREOF ARE HEREBY EXCLUDED.  T-MOBILE USA, INC.
+ * AND ITS LICENSORS SHALL NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY
+ * LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE
+ * OR ITS DERIVATIVES.  IN NO EVENT WILL T-MOBILE USA, INC. OR ITS
+ * LICENSORS BE LIABLE FOR LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT,
+ * INDIRECT, SPECIAL, CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES,
+ * HOWEVER CAUSED AND REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT
+ * OF THE USE OF OR INABILITY TO USE THIS SOFTWARE, EVEN IF T-MOBILE USA,
+ * INC. HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGES.
+ *
+ * THESE TERMS AND CONDITIONS APPLY SOLELY AND EXCLUSIVELY TO THE USE,
+ * MODIFICATION OR DISTRIBUTION OF THIS SOFTWARE, ITS SOURCE OR BINARY
+ * CODE OR ANY DERIVATIVES THEREOF, AND ARE SEPARATE FROM ANY WRITTEN
+ * WARRANTY THAT MAY BE PROVIDED WITH A DEVICE YOU PURCHASE FROM T-MOBILE
+ * USA, INC., AND TO THE EXTENT PERMITTED BY LAW.
+ */
+
+package javax.microedition.ims.messages.wrappers.common;
+
+import javax.microedition.ims.common.util.MultiMap;
+import java.util.*;
+
+/**
+ * Custom header map which keeps values as parsed (String or not yet decoded {@link ByteSlice}).
+ * <p/>
+ * Values are decoded only for the header somebody asks for, so headers nobody reads are never materialized.
+ */
+public final class LazyHeaderMap implements MultiMap<String, String> {
+    private final Map<String, List<CharSequence>> values;
+
+    public LazyHeaderMap() {
+        this.values = new HashMap<String, List<CharSequence>>();
+    }
+
+    public LazyHeaderMap(final MultiMap<String, String> mapToCopy) {
+        this.values = new HashMap<String, List<CharSequence>>();
+
+        if (mapToCopy instanceof LazyHeaderMap) {
+            //copy raw values, nothing gets decoded
+            for (Map.Entry<String, List<CharSequence>> entry : ((LazyHeaderMap) mapToCopy).values.entrySet()) {
+                values.put(entry.getKey(), new ArrayList<CharSequence>(entry.getValue()));
+            }
+        }
+        else if (mapToCopy != null) {
+            for (String key : mapToCopy.keySet()) {
+                final Collection<String> keyValues = mapToCopy.get(key);
+                values.put(key, keyValues == null ? new ArrayList<CharSequence>() : new ArrayList<CharSequence>(keyValues));
+            }
+        }
+    }
+
+    public String put(final String key, final String value) {
+        putRaw(key, value);
+        return value;
+    }
+
+    /**
+     * Adds value without decoding it.
+     */
+    public void putRaw(final String key, final CharSequence value) {
+        if (key == null || value == null) {
+            throw new NullPointerException();
+        }
+
+        List<CharSequence> keyValues = values.get(key);
+        if (keyValues == null) {
+            keyValues = new ArrayList<CharSequence>(1);
+            values.put(key, keyValues);
+        }
+        keyValues.add(value);
+    }
+
+    /**
+     * @return new list of decoded values or null if there is no such header
+     */
+    public List<String> get(final String key) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+
+        final List<CharSequence> keyValues = values.get(key);
+
+        List<String> retValue = null;
+        if (keyValues != null) {
+            retValue = new ArrayList<String>(keyValues.size());
+            for (CharSequence value : keyValues) {
+                retValue.add(value.toString());
+            }
+        }
+
+        return retValue;
+    }
+
+    public Collection<String> keySet() {
+        return values.keySet();
+    }
+
+    public String toString() {
+        return " values: " + values;
+    }
+}
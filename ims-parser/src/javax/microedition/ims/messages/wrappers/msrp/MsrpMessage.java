@@ -41,6 +41,10 @@
 
 package javax.microedition.ims.messages.wrappers.msrp;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.microedition.ims.common.IMSEntityType;
@@ -62,7 +66,9 @@ public class MsrpMessage implements IMSMessage {
     private long prevProgress;
     private MessageState state = MessageState.Idle;
     private long totalSize;
-    private byte[] body;
+    //body may be a slice of received chunk, see setContent(int, byte[], int, int).
+    //Array and range are published together, so readers on other threads never see them mixed
+    private volatile Body body = Body.EMPTY;
     private ChunkTerminator terminator = ChunkTerminator.NOT_SET;
     private ResponseClass responseClass;
     private final AtomicBoolean expired = new AtomicBoolean(false); 
@@ -86,7 +92,7 @@ public class MsrpMessage implements IMSMessage {
         this.toPath = MsrpUriParser.parse(iMsrpMessageBuilder.recipient);
         this.subject = iMsrpMessageBuilder.subject;
         this.messageId = iMsrpMessageBuilder.messageId;
-        this.body = iMsrpMessageBuilder.body;
+        setContent(0, iMsrpMessageBuilder.body);
         this.contentType = iMsrpMessageBuilder.contentType;
     }
 
@@ -118,13 +124,50 @@ public class MsrpMessage implements IMSMessage {
         return prevProgress;
     }
 
+    /**
+     * Returns body as separate array. Body received as slice of chunk is copied on first call,
+     * use {@link #writeBody(OutputStream)} or {@link #openBodyStream()} to avoid the copy.
+     */
     public byte[] getBody() {
-        return body;
+        Body current = body;
+        if (current.data != null && (current.offset != 0 || current.length != current.data.length)) {
+            final byte[] copy = new byte[current.length];
+            System.arraycopy(current.data, current.offset, copy, 0, current.length);
+            current = new Body(copy, 0, copy.length);
+            //concurrent callers may copy twice, every copy has the same content
+            body = current;
+        }
+        return current.data;
+    }
+
+    public int getBodyLength() {
+        return body.length;
+    }
+
+    public void writeBody(final OutputStream out) throws IOException {
+        final Body current = body;
+        if (current.data != null) {
+            out.write(current.data, current.offset, current.length);
+        }
+    }
+
+    public InputStream openBodyStream() {
+        final Body current = body;
+        return current.data == null ?
+                new ByteArrayInputStream(new byte[0]) :
+                new ByteArrayInputStream(current.data, current.offset, current.length);
     }
 
 
     public void setContent(int ofs, byte[] content) {
-        this.body = content;
+        setContent(ofs, content, 0, content == null ? 0 : content.length);
+    }
+
+    /**
+     * Sets body as a slice of the source, e.g. of received chunk. Source is not copied and must not be modified later.
+     */
+    public void setContent(int ofs, byte[] source, int offset, int length) {
+        this.body = new Body(source, offset, length);
     }
 
     public int getCode() {
@@ -278,17 +321,19 @@ public class MsrpMessage implements IMSMessage {
             sb.append(MsrpHeaders.Status.stringValue()).append(": 000 ").append(code).append(" ").append(reasonPhrase).append(StringUtils.SIP_TERMINATOR);
         }
 
-        if (body != null && contentType != null && contentType.length() > 0) {
+        final Body content = body;
+        if (content.data != null && contentType != null && contentType.length() > 0) {
             sb.append(MsrpHeaders.Content_Type.stringValue()).append(": ").append(contentType).append(StringUtils.SIP_TERMINATOR);
         }
         assert getTerminator() != ChunkTerminator.NOT_SET : "Wrong chunk terminator";
         String lineEnding = new StringBuilder().append("-------").append(transactionId).append(getTerminator().getValue()).append(StringUtils.SIP_TERMINATOR).toString();
         byte[] headers = sb.toString().getBytes();
         int headersLength = headers.length, bodyLength = 0;
+        final int contentLength = content.length;
         int terminatorLen = StringUtils.SIP_TERMINATOR.getBytes().length;
         byte[] ret = null;
-        if (body != null && body.length > 0) {
-            bodyLength = body.length + 2 * terminatorLen;
+        if (content.data != null && contentLength > 0) {
+            bodyLength = contentLength + 2 * terminatorLen;
             ret = new byte[headersLength + bodyLength + lineEnding.length()];
         }
         else {
@@ -299,11 +344,11 @@ public class MsrpMessage implements IMSMessage {
 
         System.arraycopy(headers, 0, ret, 0, headersLength);
 
-        if (body != null && body.length > 0) {
+        if (content.data != null && contentLength > 0) {
 
             System.arraycopy(StringUtils.SIP_TERMINATOR.getBytes(), 0, ret, headersLength, terminatorLen);
-            System.arraycopy(body, 0, ret, headersLength + terminatorLen, body.length);
-            System.arraycopy(StringUtils.SIP_TERMINATOR.getBytes(), 0, ret, headersLength + body.length + terminatorLen, terminatorLen);
+            System.arraycopy(content.data, content.offset, ret, headersLength + terminatorLen, contentLength);
+            System.arraycopy(StringUtils.SIP_TERMINATOR.getBytes(), 0, ret, headersLength + contentLength + terminatorLen, terminatorLen);
         }
         System.arraycopy(lineEnding.getBytes(), 0, ret, headersLength + bodyLength, lineEnding.length());
 
@@ -329,6 +374,20 @@ public class MsrpMessage implements IMSMessage {
                 '}';
     }
 
+    private static final class Body {
+        private static final Body EMPTY = new Body(null, 0, 0);
+
+        private final byte[] data;
+        private final int offset;
+        private final int length;
+
+        private Body(final byte[] data, final int offset, final int length) {
+            this.data = data;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
     public static class IMsrpMessageBuilder {
         private String contentType;
         private String sender;
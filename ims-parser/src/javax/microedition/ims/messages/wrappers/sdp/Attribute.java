@@ -54,6 +54,10 @@ public class Attribute {
         this.value = value;
     }
 
+    public Attribute(Attribute other) {
+        this(other.name, other.value);
+    }
+
     public String getValue() {
         return value;
     }
@@ -46,6 +46,14 @@ public class Bandwidth {
     private String type;
     private long bandwidth;
 
+    public Bandwidth() {
+    }
+
+    public Bandwidth(Bandwidth other) {
+        this.type = other.type;
+        this.bandwidth = other.bandwidth;
+    }
+
     public String getType() {
         return type;
     }
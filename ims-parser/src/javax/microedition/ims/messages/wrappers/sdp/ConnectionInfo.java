@@ -58,6 +58,12 @@ public class ConnectionInfo {
         this.isOwnAddress = isOwnAddress;
     }
 
+    public ConnectionInfo(ConnectionInfo other) {
+        this(other.address, other.isOwnAddress);
+        this.netType = other.netType;
+        this.addrType = other.addrType;
+    }
+
     public NetType getNetType() {
         return netType;
     }
@@ -51,6 +51,10 @@ public class EncryptionKey {
         this.value = encryptionKeys;
     }
 
+    public EncryptionKey(EncryptionKey other) {
+        this(other.value);
+    }
+
     public String getValue() {
         return value;
     }
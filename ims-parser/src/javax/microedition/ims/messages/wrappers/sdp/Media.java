@@ -69,6 +69,27 @@ public class Media {
         this.formats = new ArrayList<String>();
     }
 
+    /**
+     * Creates deep copy of other media, crypto params are immutable and shared.
+     */
+    public Media(Media other) {
+        this.type = other.type;
+        this.port = other.port;
+        this.numberOfPorts = other.numberOfPorts;
+        this.protocol = other.protocol;
+        this.formats = other.formats == null ? null : new ArrayList<String>(other.formats);
+        this.securedMedia = other.securedMedia;
+        this.cryptoParams.addAll(other.cryptoParams);
+        this.information = other.information;
+        this.connectionInfo = other.connectionInfo == null ? null : new ConnectionInfo(other.connectionInfo);
+        this.bandwidth = other.bandwidth == null ? null : new Bandwidth(other.bandwidth);
+        this.encryptionKeys = other.encryptionKeys == null ? null : new EncryptionKey(other.encryptionKeys);
+        this.attributes = new ArrayList<Attribute>(other.attributes.size());
+        for (Attribute attribute : other.attributes) {
+            attributes.add(new Attribute(attribute));
+        }
+    }
+
 
     private Media(MediaBuilder builder) {
         Logger.log("constructor", "Media");
@@ -78,6 +78,44 @@ public class SdpMessage {
     }
 
 
+    public SdpMessage() {
+    }
+
+    /**
+     * Creates deep copy of other message.
+     */
+    public SdpMessage(SdpMessage other) {
+        this.version = other.version;
+        this.sessionId = other.sessionId;
+        this.sessionVersion = other.sessionVersion;
+        this.netType = other.netType;
+        this.addrType = other.addrType;
+        this.username = other.username;
+        this.sessionAddress = other.sessionAddress;
+        this.sessionName = other.sessionName;
+        this.sessionInformation = other.sessionInformation;
+        this.uri = other.uri;
+        this.emailAddresses.addAll(other.emailAddresses);
+        this.phoneNumbers.addAll(other.phoneNumbers);
+        this.connectionInfo = other.connectionInfo == null ? null : new ConnectionInfo(other.connectionInfo);
+        this.encryptionKey = other.encryptionKey == null ? null : new EncryptionKey(other.encryptionKey);
+        for (Bandwidth bandwidth : other.bandwidthList) {
+            bandwidthList.add(new Bandwidth(bandwidth));
+        }
+        for (Timing timing : other.timings) {
+            timings.add(new Timing(timing));
+        }
+        for (ZoneAdjustment zoneAdjustment : other.zoneAdjustments) {
+            zoneAdjustments.add(new ZoneAdjustment(zoneAdjustment));
+        }
+        for (Attribute attribute : other.attributes) {
+            attributes.add(new Attribute(attribute));
+        }
+        for (Media media : other.medias) {
+            medias.add(new Media(media));
+        }
+    }
+
     public int getVersion() {
         return version;
     }
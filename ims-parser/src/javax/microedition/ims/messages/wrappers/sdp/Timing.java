@@ -55,6 +55,17 @@ public class Timing {
         repeats = new ArrayList<TimingRepeat>();
     }
 
+    public Timing(Timing other) {
+        this.startTime = other.startTime;
+        this.endTime = other.endTime;
+        if (other.repeats != null) {
+            this.repeats = new ArrayList<TimingRepeat>(other.repeats.size());
+            for (TimingRepeat repeat : other.repeats) {
+                repeats.add(new TimingRepeat(repeat));
+            }
+        }
+    }
+
     public long getStartTime() {
         return startTime;
     }
@@ -55,6 +55,12 @@ public class TimingRepeat {
         offsets = new ArrayList<Long>();
     }
 
+    public TimingRepeat(TimingRepeat other) {
+        this.interval = other.interval;
+        this.duration = other.duration;
+        this.offsets = other.offsets == null ? null : new ArrayList<Long>(other.offsets);
+    }
+
 
     public long getInterval() {
         return interval;
@@ -46,6 +46,14 @@ public class ZoneAdjustment {
     private long offset;
     private long adjustment;
 
+    public ZoneAdjustment() {
+    }
+
+    public ZoneAdjustment(ZoneAdjustment other) {
+        this.offset = other.offset;
+        this.adjustment = other.adjustment;
+    }
+
     public long getOffset() {
         return offset;
     }
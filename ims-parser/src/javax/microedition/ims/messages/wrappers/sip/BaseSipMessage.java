@@ -43,13 +43,15 @@ package javax.microedition.ims.messages.wrappers.sip;
 
 import javax.microedition.ims.common.*;
 import javax.microedition.ims.common.util.MultiMap;
-import javax.microedition.ims.common.util.MultiValueMap;
 import javax.microedition.ims.messages.parser.message.ChallengeParser;
 import javax.microedition.ims.messages.parser.message.MessageParser;
+import javax.microedition.ims.messages.wrappers.common.ByteSlice;
+import javax.microedition.ims.messages.wrappers.common.LazyHeaderMap;
 import javax.microedition.ims.messages.wrappers.common.Param;
 import javax.microedition.ims.messages.wrappers.common.ParamList;
 import javax.microedition.ims.messages.wrappers.common.ParamListDefaultImpl;
 import javax.microedition.ims.messages.wrappers.common.Uri;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -100,25 +102,32 @@ public class BaseSipMessage implements IMSMessage {
     );
     private static final Collection<String> DIRECTLY_HANDLED_HEADERS =
             Collections.unmodifiableCollection(obtainDirectlyHandledHeaders());
+    //bit i of presentHeaders stands for builder i
+    private static final HeaderBuilder[] HEADER_BUILDERS = HEADERS_ORDER.toArray(new HeaderBuilder[HEADERS_ORDER.size()]);
 
 
     private final int cSeq;
     private final int maxForwards;
 
     private final String callId;
-    private final String eTag;
-    private final String ifMatch;
-    private final String subject;
     private final String method;
-    private final String userAgent;
-    private final String server;
+
+    //values rarely used by stack itself, kept as is (String or not yet decoded ByteSlice)
+    private final CharSequence eTag;
+    private final CharSequence ifMatch;
+    private final CharSequence subject;
+    private final CharSequence userAgent;
+    private final CharSequence server;
 
     private final SessionExpiresHeader sessionExpires;
     private final UriHeader from;
     private final UriHeader to;
     private final UriHeader referredBy;
 
-    private final byte[] body;
+    //body of received message is a slice of receivedContent, copied out on first demand only
+    private volatile byte[] body;
+    private final int bodyOffset;
+    private final int bodyLength;
     private final long expires;
     private final long minExpires;
     private final ParamHeader subscriptionState;
@@ -126,7 +135,7 @@ public class BaseSipMessage implements IMSMessage {
     private final ParamHeader contentType;
 
     //private final ParamHeader accept;   
-    private final MultiMap<String, String> customHeaders;
+    private final LazyHeaderMap customHeaders;
     private final ParamList acceptContact;
     private final ParamList rejectContact;
 
@@ -151,11 +160,21 @@ public class BaseSipMessage implements IMSMessage {
     private final int contentLength;
 
     private final IMSID imsid;
-    private final String stringValue;
-    private final byte[] byteContent;
-    private final String content;
-    private final String shortDescription;
     private final int preComputedHash;
+    //builders which may write something for the message, others are skipped by writeHeaders
+    private final long presentHeaders;
+
+    //bytes message was parsed from, null for locally built messages
+    private final byte[] receivedContent;
+    private final int receivedOffset;
+    private final int receivedLength;
+
+    //wire representation is built on first demand only
+    private volatile byte[] byteContent;
+    private volatile byte[] compactByteContent;
+    private String content;
+    private String stringValue;
+    private String shortDescription;
 
 
     public BaseSipMessage(final Builder builder) {
@@ -239,7 +258,7 @@ public class BaseSipMessage implements IMSMessage {
         this.serviceRoutes = Collections.unmodifiableCollection(new ArrayList<UriHeader>(builder.serverRoutes));
 
         //customHeaders = new MultiValueMap<String, String>();
-        this.customHeaders = new MultiValueMap<String, String>(builder.customHeaders);
+        this.customHeaders = new LazyHeaderMap(builder.customHeaders);
 
         //vias = new ArrayList<Via>();
         this.vias = builder.vias == null ? Collections.<Via>emptyList() : buildVias(builder.vias);
@@ -255,19 +274,21 @@ public class BaseSipMessage implements IMSMessage {
                                 new HashMap<ChallengeType, AuthChallenge>(chMap)
                 );
 
-        this.body = builder.body == null ? null : builder.body.clone();
+        this.bodyOffset = builder.bodyOffset;
+        this.bodyLength = builder.bodyOffset >= 0 ? builder.receivedOffset + builder.receivedLength - builder.bodyOffset : 0;
+        this.body = builder.bodyOffset >= 0 || builder.body == null ? null : builder.body.clone();
+        this.receivedContent = builder.receivedContent;
+        this.receivedOffset = builder.receivedOffset;
+        this.receivedLength = builder.receivedLength;
 
-        this.stringValue = doBuildStringValue();
-        this.byteContent = doBuildByteContent();
-        this.content = new String(byteContent);
-        this.shortDescription = doBuildShortDescription();
+        this.presentHeaders = receivedContent == null ? computePresentHeaders() : -1L;
         this.preComputedHash = doComputeHash();
     }
 
     public Builder getBuilder() {
         final Builder retValue = new Builder(this instanceof Request ? Builder.Type.REQUEST : Builder.Type.RESPONSE);
 
-        retValue.body = this.body;
+        retValue.body = getBody();
 
         retValue.cSeq = this.getcSeq();
         retValue.contentLength = this.contentLength;
@@ -320,7 +341,7 @@ public class BaseSipMessage implements IMSMessage {
                 null :
                 new SessionExpiresHeader.Builder(this.sessionExpires);
 
-        retValue.customHeaders = this.customHeaders;
+        retValue.customHeaders = new LazyHeaderMap(this.customHeaders);
 
         retValue.acceptContact = this.acceptContact;
         retValue.rejectContact = this.rejectContact;
@@ -407,7 +428,7 @@ public class BaseSipMessage implements IMSMessage {
     }
 
     public String geteTag() {
-        return eTag;
+        return ByteSlice.stringOf(eTag);
     }
 
     public UriHeader getFrom() {
@@ -419,15 +440,19 @@ public class BaseSipMessage implements IMSMessage {
     }
 
     public String getIfMatch() {
-        return ifMatch;
+        return ByteSlice.stringOf(ifMatch);
     }
 
     public String getSubject() {
-        return subject;
+        return ByteSlice.stringOf(subject);
     }
 
     public byte[] getBody() {
-        return body;
+        byte[] retValue = body;
+        if (retValue == null && bodyLength > 0) {
+            body = retValue = Arrays.copyOfRange(receivedContent, bodyOffset, bodyOffset + bodyLength);
+        }
+        return retValue;
     }
 
     public UriHeader getReferredBy() {
@@ -527,8 +552,9 @@ public class BaseSipMessage implements IMSMessage {
     }
 
     public List<String> getCustomHeader(String header) {
-        Collection<String> collection = customHeaders.get(header);
-        return customHeaders.get(header) != null ? new ArrayList<String>(collection) : new ArrayList<String>();
+        //map decodes values into a fresh list on every call, so it is handed out as is
+        final List<String> values = customHeaders.get(header);
+        return values != null ? values : new ArrayList<String>();
     }
 
     /**
@@ -546,7 +572,11 @@ public class BaseSipMessage implements IMSMessage {
     }
     
     public String toString() {
-        return stringValue;
+        String retValue = stringValue;
+        if (retValue == null) {
+            stringValue = retValue = doBuildStringValue();
+        }
+        return retValue;
     }
 
     private String doBuildStringValue() {
@@ -554,21 +584,231 @@ public class BaseSipMessage implements IMSMessage {
     }
     
     public String buildContent() {
-        return content;
+        String retValue = content;
+        if (retValue == null) {
+            content = retValue = new String(buildByteContent());
+        }
+        return retValue;
     }
 
+    /**
+     * Returns wire representation of the message.
+     * For received messages these are the bytes message was parsed from, otherwise message is serialized on first call.
+     * Message is immutable, any modification goes through {@link #getBuilder()} and produces new message,
+     * so cached value never becomes stale.
+     *
+     * @return message bytes
+     */
     public byte[] buildByteContent() {
-        return byteContent;
+        byte[] retValue = byteContent;
+        if (retValue == null) {
+            retValue = receivedContent != null ? getReceivedContent() : doBuildByteContent(false);
+            byteContent = retValue;
+        }
+        return retValue;
+    }
+
+    /**
+     * Same as {@link #buildByteContent()} but headers are written in RFC 3261 compact form,
+     * e.g. to keep UDP request under path MTU. Received messages are returned as they were received.
+     *
+     * @return message bytes
+     */
+    public byte[] buildCompactByteContent() {
+        byte[] retValue = compactByteContent;
+        if (retValue == null) {
+            retValue = receivedContent != null ? getReceivedContent() : doBuildByteContent(true);
+            compactByteContent = retValue;
+        }
+        return retValue;
+    }
+
+    public boolean isReceived() {
+        return receivedContent != null;
+    }
+
+    private byte[] getReceivedContent() {
+        return receivedOffset == 0 && receivedLength == receivedContent.length ?
+                receivedContent :
+                Arrays.copyOfRange(receivedContent, receivedOffset, receivedOffset + receivedLength);
+    }
+
+    /**
+     * Writes wire representation of the message straight into target, e.g. into buffer of transport.
+     *
+     * @param target - buffer to write message to
+     * @throws java.nio.BufferOverflowException if message doesn't fit into remaining space of target
+     */
+    public void writeByteContent(final ByteBuffer target) {
+        writeByteContent(target, false);
+    }
+
+    /**
+     * @param target - buffer to write message to
+     * @param compactForm - whether headers should be written in compact form
+     * @throws java.nio.BufferOverflowException if message doesn't fit into remaining space of target
+     */
+    public void writeByteContent(final ByteBuffer target, final boolean compactForm) {
+        final byte[] content = compactForm ? compactByteContent : byteContent;
+        if (receivedContent != null) {
+            target.put(receivedContent, receivedOffset, receivedLength);
+        }
+        else if (content != null) {
+            target.put(content);
+        }
+        else {
+            writeContent(new SipMessageWriter(target, compactForm));
+        }
     }
 
-    private byte[] doBuildByteContent() {
-        StringBuilder retValue = new StringBuilder(1000);
+    protected byte[] doBuildByteContent(final boolean compactForm) {
+        final SipMessageWriter writer = SipMessageWriter.obtain(compactForm);
+        writeContent(writer);
+        return writer.toByteArray();
+    }
+
+    protected void writeContent(final SipMessageWriter writer) {
+        writeHeaders(writer);
+    }
 
-        for (HeaderBuilder headerBuilder : HEADERS_ORDER) {
-            headerBuilder.build(this, retValue, DIRECTLY_HANDLED_HEADERS);
+    protected final void writeHeaders(final SipMessageWriter writer) {
+        for (long headers = presentHeaders; headers != 0; headers &= headers - 1) {
+            HEADER_BUILDERS[Long.numberOfTrailingZeros(headers)].write(this, writer, DIRECTLY_HANDLED_HEADERS);
         }
+    }
+
+    //a bit may be set for a header builder ends up skipping, never the other way round
+    private long computePresentHeaders() {
+        final boolean hasCustomHeaders = customHeaders != null && !customHeaders.keySet().isEmpty();
 
-        return retValue.toString().getBytes();
+        long retValue = 0;
+        for (int i = 0; i < HEADER_BUILDERS.length; i++) {
+            final Header header = HEADER_BUILDERS[i].getHeader();
+            if (header == null ? hasCustomHeaders : isHeaderPresent(header, hasCustomHeaders)) {
+                retValue |= 1L << i;
+            }
+        }
+        return retValue;
+    }
+
+    private boolean isHeaderPresent(final Header header, final boolean hasCustomHeaders) {
+        final boolean retValue;
+
+        switch (header) {
+            case To:
+                retValue = to != null;
+                break;
+            case From:
+                retValue = from != null;
+                break;
+            case Referred_By:
+                retValue = referredBy != null;
+                break;
+            case Call_ID:
+                retValue = callId != null;
+                break;
+            case Max_Forwards:
+                retValue = maxForwards >= 0;
+                break;
+            case CSeq:
+                retValue = cSeq >= 0;
+                break;
+            case Expires:
+                retValue = expires >= 0;
+                break;
+            case Min_Expires:
+                retValue = minExpires >= 0;
+                break;
+            case UserAgent:
+                retValue = userAgent != null;
+                break;
+            case Server:
+                retValue = server != null;
+                break;
+            case Subject:
+                retValue = subject != null;
+                break;
+            case SIP_ETag:
+                retValue = eTag != null;
+                break;
+            case SIP_If_Match:
+                retValue = ifMatch != null;
+                break;
+            case Via:
+                retValue = isPresent(vias);
+                break;
+            case Contact:
+                retValue = contacts != null;
+                break;
+            case Authorization:
+                retValue = challenges.containsKey(ChallengeType.UAS);
+                break;
+            case Proxy_Authorization:
+                retValue = challenges.containsKey(ChallengeType.PROXY);
+                break;
+            case Supported:
+                retValue = isPresent(supported);
+                break;
+            case Require:
+                retValue = isPresent(require);
+                break;
+            case Allow:
+                retValue = isPresent(allow);
+                break;
+            case Allow_Events:
+                retValue = isPresent(allowEvents);
+                break;
+            case RecordRoute:
+                retValue = isPresent(recordRoutes);
+                break;
+            case PAssertedIdentities:
+                retValue = isPresent(pAssertedIdentities);
+                break;
+            case HistoryInfo:
+                retValue = isPresent(historyInfo);
+                break;
+            case ServiceRoutes:
+                retValue = isPresent(serviceRoutes);
+                break;
+            case PAssociatedUris:
+                retValue = isPresent(pAssociatedUris);
+                break;
+            //these may be taken from custom headers as well
+            case Route:
+                retValue = isPresent(routes) || hasCustomHeaders;
+                break;
+            case Privacy:
+                retValue = isPresent(privacy) || hasCustomHeaders;
+                break;
+            case Accept:
+                retValue = hasCustomHeaders;
+                break;
+            case RefresherParam:
+            case Min_SE:
+                retValue = sessionExpires != null;
+                break;
+            case SubscriptionState:
+                retValue = subscriptionState != null;
+                break;
+            case AcceptContact:
+                retValue = acceptContact != null;
+                break;
+            case RejectContact:
+                retValue = rejectContact != null;
+                break;
+            case Content_Type:
+                retValue = contentType != null;
+                break;
+            default:
+                //Content-Length and any header added to HEADERS_ORDER later
+                retValue = true;
+        }
+
+        return retValue;
+    }
+
+    private static boolean isPresent(final Collection<?> values) {
+        return values != null && !values.isEmpty();
     }
 
     public Map<ChallengeType, AuthChallenge> getAuthenticationChallenges() {
@@ -576,14 +816,18 @@ public class BaseSipMessage implements IMSMessage {
     }
 
     public String getUserAgent() {
-        return userAgent;
+        return ByteSlice.stringOf(userAgent);
     }
 
     public String shortDescription() {
-        return shortDescription;
+        String retValue = shortDescription;
+        if (retValue == null) {
+            shortDescription = retValue = doBuildShortDescription();
+        }
+        return retValue;
     }
 
-    private String doBuildShortDescription() {
+    protected String doBuildShortDescription() {
         return getMethod() + ":" + getCallId();
     }
 
@@ -695,7 +939,7 @@ public class BaseSipMessage implements IMSMessage {
     }
 
     public String getServer() {
-        return server;
+        return ByteSlice.stringOf(server);
     }
 
     public static class Builder {
@@ -707,6 +951,11 @@ public class BaseSipMessage implements IMSMessage {
         Type type;
 
         byte[] body;
+        byte[] receivedContent;
+        int receivedOffset;
+        int receivedLength;
+        //offset of body inside receivedContent, -1 if body is set on its own
+        int bodyOffset = -1;
 
         int cSeq;
         int contentLength;
@@ -716,12 +965,12 @@ public class BaseSipMessage implements IMSMessage {
         long minExpires = -1;
 
         String callId;
-        String eTag;
-        String ifMatch;
+        CharSequence eTag;
+        CharSequence ifMatch;
         String reasonPhrase;
-        String server;
-        String userAgent;
-        String subject;
+        CharSequence server;
+        CharSequence userAgent;
+        CharSequence subject;
         String method;
 
         Collection<String> allow = new ArrayList<String>();
@@ -751,7 +1000,7 @@ public class BaseSipMessage implements IMSMessage {
         ContactsList.Builder contacts = new ContactsList.Builder();
         SessionExpiresHeader.Builder sessionExpires = new SessionExpiresHeader.Builder(null, -1L, -1L);
 
-        MultiMap<String, String> customHeaders = new MultiValueMap<String, String>();
+        LazyHeaderMap customHeaders = new LazyHeaderMap();
 
         ParamList acceptContact = new ParamListDefaultImpl();
         ParamList rejectContact = new ParamListDefaultImpl();
@@ -939,11 +1188,21 @@ public class BaseSipMessage implements IMSMessage {
             return this;
         }
 
+        public Builder eTag(final CharSequence eTag) {
+            this.eTag = eTag;
+            return this;
+        }
+
         public Builder ifMatch(final String ifMatch) {
             this.ifMatch = ifMatch;
             return this;
         }
 
+        public Builder ifMatch(final CharSequence ifMatch) {
+            this.ifMatch = ifMatch;
+            return this;
+        }
+
         private Collection<String> createStringContainer() {
             return new ArrayList<String>(10);
         }
@@ -977,6 +1236,11 @@ public class BaseSipMessage implements IMSMessage {
             return this;
         }
 
+        public Builder server(final CharSequence server) {
+            this.server = server;
+            return this;
+        }
+
         public Builder subscriptionState(final String subscriptionState) {
             if (this.subscriptionState == null) {
                 this.subscriptionState = new ParamHeader.ParamHeaderBuilder();
@@ -1032,11 +1296,21 @@ public class BaseSipMessage implements IMSMessage {
             return this;
         }
 
+        public Builder userAgent(final CharSequence userAgent) {
+            this.userAgent = userAgent;
+            return this;
+        }
+
         public Builder subject(final String subject) {
             this.subject = subject;
             return this;
         }
 
+        public Builder subject(final CharSequence subject) {
+            this.subject = subject;
+            return this;
+        }
+
         public ContactsList.Builder getContactsBuilder() {
             if (this.contacts == null) {
                 this.contacts = new ContactsList.Builder();
@@ -1067,15 +1341,21 @@ public class BaseSipMessage implements IMSMessage {
         }
 
         public Builder customHeader(final String customHeaderName, final String value) {
+            return customHeader(customHeaderName, (CharSequence) value);
+        }
+
+        /**
+         * Value may be a not yet decoded {@link ByteSlice}. It's decoded here only for auth headers.
+         */
+        public Builder customHeader(final String customHeaderName, final CharSequence value) {
             if (this.customHeaders == null) {
-                this.customHeaders = new MultiValueMap<String, String>();
+                this.customHeaders = new LazyHeaderMap();
             }
 
-            this.customHeaders.put(customHeaderName, value);
+            this.customHeaders.putRaw(customHeaderName, value);
 
-            String trimmedValue = value.trim();
-            if ((isAuthHeader(customHeaderName)) &&
-                    trimmedValue != null) {
+            if (isAuthHeader(customHeaderName)) {
+                String trimmedValue = value.toString().trim();
 
                 //Logger.log(Logger.Tag.PARSER,"Get auth info: "+trimmedValue);
                 AuthenticationChallenge challenge = ((AuthenticationChallenge) ChallengeParser.consume(trimmedValue));
@@ -1162,6 +1442,43 @@ public class BaseSipMessage implements IMSMessage {
             return type == Type.RESPONSE ? new Response(this) : new Request(this);
         }
 
+        /**
+         * Builds message received from network. Passed bytes are used as wire representation of the message
+         * instead of serializing it again.
+         *
+         * @param receivedContent - bytes message was parsed from
+         * @return built message
+         */
+        public BaseSipMessage build(final byte[] receivedContent) {
+            return build(receivedContent, 0, receivedContent.length, -1);
+        }
+
+        /**
+         * Builds message received from network out of a range of the buffer, neither the message nor its body is
+         * copied. Buffer is handed over to the message, so caller must not change the range afterwards.
+         *
+         * @param buffer     - buffer message was parsed from
+         * @param offset     - offset of the message in buffer
+         * @param length     - length of the message
+         * @param bodyOffset - offset of the body in buffer, body lasts till the end of the message.
+         *                   -1 if body is set by {@link #body(byte[])}
+         * @return built message
+         */
+        public BaseSipMessage build(final byte[] buffer, final int offset, final int length, final int bodyOffset) {
+            this.receivedContent = buffer;
+            this.receivedOffset = offset;
+            this.receivedLength = length;
+            this.bodyOffset = bodyOffset;
+            try {
+                return build();
+            }
+            finally {
+                this.receivedContent = null;
+                this.receivedOffset = this.receivedLength = 0;
+                this.bodyOffset = -1;
+            }
+        }
+
         public void authenticationChallenge(final Map<ChallengeType, AuthChallenge> challengeMap) {
             ensureChallengeMapExists();
 
@@ -41,6 +41,8 @@
 
 package javax.microedition.ims.messages.wrappers.sip;
 
+import javax.microedition.ims.common.util.StringUtils;
+
 /**
  * User: Pavel Laboda (pavel.laboda@gmail.com)
  * Date: 04-Jan-2010
@@ -49,40 +51,40 @@ package javax.microedition.ims.messages.wrappers.sip;
 public enum Header {
     Msg("") {},
     Authentication_Info("Authentication-Info"),
-    Via("Via"),
+    Via("Via", "v"),
     Max_Forwards("Max-Forwards"),
-    To("To"),
+    To("To", "t"),
     SIP_ETag("SIP-Etag"),
-    From("From"),
-    Call_ID("Call-ID"),
+    From("From", "f"),
+    Call_ID("Call-ID", "i"),
     CSeq("CSeq"),
-    Subject("Subject"),
+    Subject("Subject", "s"),
     Server("Server"),
     Min_Expires("Min-Expires"),
     Route("Route"),
     RefresherParam("refresher"),
-    Referred_By("Referred-By"),
-    Session_Expires("Session-Expires"),
+    Referred_By("Referred-By", "b"),
+    Session_Expires("Session-Expires", "x"),
     Min_SE("Min-SE"),
     Allow("Allow"),
-    Event("Event"),
+    Event("Event", "o"),
     SubscriptionState("Subscription-State"),
     Require("Require"),
-    Supported("Supported"),
+    Supported("Supported", "k"),
     Privacy("Privacy"),
-    Contact("Contact"),
+    Contact("Contact", "m"),
     Expires("Expires"),
-    Allow_Events("Allow-Events"),
-    AcceptContact("Accept-Contact"),
-    RejectContact("Reject-Contact"),
+    Allow_Events("Allow-Events", "u"),
+    AcceptContact("Accept-Contact", "a"),
+    RejectContact("Reject-Contact", "j"),
     Authorization("Authorization"),
     Proxy_Authorization("Proxy-Authorization"),
     UserAgent("User-Agent"),
     SIP_If_Match("SIP-If-Match"),
-    Content_Length("Content-Length"),
+    Content_Length("Content-Length", "l"),
     WWW_Authenticate("WWW-Authenticate"),
     Proxy_Authenticate("Proxy-Authenticate"),
-    Content_Type("Content-Type"),
+    Content_Type("Content-Type", "c"),
     PAssociatedUris("P-Associated-Uri"),
     PAssociatedSipUris("P-Associated-SipUri"),
     PAssertedIdentities("P-Asserted-Identity"),
@@ -110,15 +112,41 @@ public enum Header {
     Reason("Reason");
 
     private final String stringValue;
+    private final byte[] nameBytes;
+    private final byte[] compactNameBytes;
 
     private Header(String stringValue) {
+        this(stringValue, stringValue);
+    }
+
+    /**
+     * @param compactForm - RFC 3261 compact form of the header name
+     */
+    private Header(String stringValue, String compactForm) {
         this.stringValue = stringValue;
+        this.nameBytes = (stringValue + StringUtils.DOTS).getBytes();
+        this.compactNameBytes = (compactForm + ":").getBytes();
     }
 
     public String stringValue() {
         return stringValue;
     }
 
+    /**
+     * @return "name: " prefix of the header line. Shared array, must not be modified.
+     */
+    byte[] nameBytes() {
+        return nameBytes;
+    }
+
+    /**
+     * @return compact "n:" prefix of the header line, long name is used if header has no compact form.
+     * Shared array, must not be modified.
+     */
+    byte[] compactNameBytes() {
+        return compactNameBytes;
+    }
+
     public boolean testAgainst(String candidate) {
         return candidate.toUpperCase().startsWith(stringValue.toUpperCase());
     }
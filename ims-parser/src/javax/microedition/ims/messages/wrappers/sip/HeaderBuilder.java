@@ -54,4 +54,6 @@ public interface HeaderBuilder {
     Header getHeader();
 
     StringBuilder build(BaseSipMessage msg, StringBuilder buffer, Collection<String> directlyHandledHeaders);
+
+    void write(BaseSipMessage msg, SipMessageWriter writer, Collection<String> directlyHandledHeaders);
 }
@@ -41,23 +41,27 @@
 
 package javax.microedition.ims.messages.wrappers.sip;
 
+import javax.microedition.ims.messages.wrappers.common.ByteSlice;
 import javax.microedition.ims.messages.wrappers.common.ParamList;
 import javax.microedition.ims.messages.wrappers.common.ParamListDefaultImpl;
 
 public class ParamHeader {
-    private final String value;
+    //either String or not yet decoded ByteSlice
+    private final CharSequence value;
     private final ParamList paramsList;
-    private final String content;
-    private final String stringValue;
+    private String content;
+    private String stringValue;
 
     protected ParamHeader(final ParamHeaderBuilder builder) {
         this.value = builder.value;
         this.paramsList = builder.paramsList == null ? null : ParamListDefaultImpl.unmodifableCopyOf(builder.paramsList);
-        this.content = doBuildContent();
-        this.stringValue = doBuildStringValue();
     }
 
     public String getValue() {
+        return ByteSlice.stringOf(this.value);
+    }
+
+    CharSequence getRawValue() {
         return this.value;
     }
 
@@ -66,7 +70,11 @@ public class ParamHeader {
     }
 
     public String buildContent() {
-        return content;
+        String retValue = content;
+        if (retValue == null) {
+            content = retValue = doBuildContent();
+        }
+        return retValue;
     }
 
     private String doBuildContent() {
@@ -83,7 +91,11 @@ public class ParamHeader {
 
     
     public String toString() {
-        return stringValue;
+        String retValue = stringValue;
+        if (retValue == null) {
+            stringValue = retValue = doBuildStringValue();
+        }
+        return retValue;
     }
 
     private String doBuildStringValue() {
@@ -93,7 +105,7 @@ public class ParamHeader {
     }
 
     public static class ParamHeaderBuilder {
-        protected String value;
+        protected CharSequence value;
         protected ParamList paramsList;
 
         public ParamHeaderBuilder() {
@@ -104,7 +116,7 @@ public class ParamHeader {
         }
 
         public ParamHeaderBuilder(ParamHeader paramHeader) {
-            this.value = paramHeader.getValue();
+            this.value = paramHeader.getRawValue();
 
             final ParamListDefaultImpl paramList = new ParamListDefaultImpl();
             paramList.merge(paramHeader.getParamsList());
@@ -116,6 +128,14 @@ public class ParamHeader {
             return this;
         }
 
+        /**
+         * Sets value which may be lazily decoded slice of parsed message.
+         */
+        public ParamHeaderBuilder value(final CharSequence value) {
+            this.value = value;
+            return this;
+        }
+
         public ParamHeaderBuilder paramsList(final ParamList paramsList) {
             ensureParamListExists();
 
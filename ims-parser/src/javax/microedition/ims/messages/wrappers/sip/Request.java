@@ -48,20 +48,13 @@ import javax.microedition.ims.messages.wrappers.common.Uri;
 public final class Request extends BaseSipMessage {
 
     private final Uri requestUri;
-    private final String shortDescription;
-    private final byte[] byteContent;
     private final int preComputedHash;
-    private final String content;
 
     public Request(final Builder builder) {
         super(builder);
 
         this.requestUri = builder.requestUri;
         this.preComputedHash = doComputeHash();
-
-        this.byteContent = doBuildByteContent();
-        this.content = new String(byteContent);
-        this.shortDescription = doBuildShortDescription();
     }
 
 
@@ -69,11 +62,7 @@ public final class Request extends BaseSipMessage {
         return requestUri;
     }
 
-    public String shortDescription() {
-        return shortDescription;
-    }
-
-    private String doBuildShortDescription() {
+    protected String doBuildShortDescription() {
         return "req " + getMethod() + ":" + getCallId();
     }
 
@@ -86,38 +75,19 @@ public final class Request extends BaseSipMessage {
         return builder;
     }
 
-    public byte[] buildByteContent() {
-        return byteContent;
-    }
-
-    
-    public String buildContent() {
-        return content;
-    }
-
-    private byte[] doBuildByteContent() {
+    protected void writeContent(final SipMessageWriter writer) {
         assert requestUri != null : "Request URI shouldn't be null";
 
-        StringBuilder sb = new StringBuilder();
-        sb.append(getMethod()).append(StringUtils.SPACE).
+        writer.append(getMethod()).append(StringUtils.SPACE).
                 append(requestUri.getShortURI()).append(StringUtils.SPACE).
-                append(StringUtils.SIP_VERSION).append(StringUtils.SIP_TERMINATOR);
-
-        sb.append(new String(super.buildByteContent())).append(StringUtils.SIP_TERMINATOR); //CRLF before BODY;
-        byte[] headers = sb.toString().getBytes();
-        int headersLength = headers.length, bodyLength = 0;
-        byte[] retValue = null;
-        if (getBody() != null && getBody().length > 0) {
-            bodyLength = getBody().length;
-            retValue = new byte[headersLength + bodyLength];
-            System.arraycopy(headers, 0, retValue, 0, headersLength);
-            System.arraycopy(getBody(), 0, retValue, headersLength, bodyLength);
-        }
-        else {
-            retValue = headers;
-        }
+                append(StringUtils.SIP_VERSION).terminate();
 
-        return retValue;
+        writeHeaders(writer);
+        writer.terminate(); //CRLF before BODY
+
+        if (getBody() != null) {
+            writer.append(getBody());
+        }
     }
 
     public boolean isEqualTo(final Request msg) {
@@ -50,12 +50,9 @@ public final class Response extends BaseSipMessage {
     private final String reasonPhrase;
     private final int statusCode;
 
-    private final String stringValue;
-    private final byte[] byteContent;
-    private final String content;
+    private String stringValue;
 
     private final String responseLine;
-    private final String shortDescription;
     private final int preComputedHash;
 
     public Response(final Builder builder) {
@@ -66,11 +63,6 @@ public final class Response extends BaseSipMessage {
         this.responseClass = ResponseClass.createByCode(statusCode);
         this.responseLine = doBuildResponseLine();
         this.preComputedHash = doComputeHash();
-
-        this.stringValue = doBuildStringValue();
-        this.byteContent = doBuildByteContent();
-        this.content = new String(byteContent);
-        this.shortDescription = doBuildShortDescription();
     }
 
     public ResponseClass getResponseClass() {
@@ -96,7 +88,11 @@ public final class Response extends BaseSipMessage {
 
     
     public String toString() {
-        return stringValue;
+        String retValue = stringValue;
+        if (retValue == null) {
+            stringValue = retValue = doBuildStringValue();
+        }
+        return retValue;
     }
 
     private String doBuildStringValue() {
@@ -105,33 +101,15 @@ public final class Response extends BaseSipMessage {
                 + super.toString() + "]";
     }
 
-    public byte[] buildByteContent() {
-        return byteContent;
-    }
+    protected void writeContent(final SipMessageWriter writer) {
+        writer.append(getResponseLine()).append(StringUtils.SPACE).terminate();
 
-    
-    public String buildContent() {
-        return content;
-    }
+        writeHeaders(writer);
+        writer.terminate();
 
-    private byte[] doBuildByteContent() {
-        StringBuilder sb = new StringBuilder();
-        sb.append(getResponseLine()).append(StringUtils.SPACE).append(StringUtils.SIP_TERMINATOR);
-        sb.append(new String(super.buildByteContent())).append(StringUtils.SIP_TERMINATOR);
-
-        byte[] headers = sb.toString().getBytes();
-        int headersLength = headers.length;
-        byte[] retValue = null;
-        if (getBody() != null && getBody().length > 0) {
-            retValue = new byte[headersLength + getBody().length];
-            System.arraycopy(headers, 0, retValue, 0, headersLength);
-            System.arraycopy(getBody(), 0, retValue, headersLength, getBody().length);
+        if (getBody() != null) {
+            writer.append(getBody());
         }
-        else {
-            retValue = headers;
-        }
-
-        return retValue;
     }
 
     public String getResponseLine() {
@@ -143,11 +121,7 @@ public final class Response extends BaseSipMessage {
                 append(StringUtils.SPACE).append(reasonPhrase).toString();
     }
 
-    public String shortDescription() {
-        return shortDescription;
-    }
-
-    private String doBuildShortDescription() {
+    protected String doBuildShortDescription() {
         return "resp " + getStatusCode() + " " + getReasonPhrase() + " " + getMethod() + ":" + getCallId();
     }
 
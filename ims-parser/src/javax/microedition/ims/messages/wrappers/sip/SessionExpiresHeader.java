@@ -48,7 +48,7 @@ public class SessionExpiresHeader extends ParamHeader {
     private final Refresher refresher;
     private final long expiresValue;
     private final long minExpiresValue;
-    private final String stringValue;
+    private String stringValue;
 
     public SessionExpiresHeader(final Builder builder) {
         super(new ParamHeaderBuilder().value(builder.value).paramsList(builder.paramsList));
@@ -56,8 +56,6 @@ public class SessionExpiresHeader extends ParamHeader {
         this.refresher = builder.refresher;
         this.expiresValue = builder.expiresValue;
         this.minExpiresValue = builder.minExpiresValue;
-
-        this.stringValue = doBuildStringValue();
     }
 
     public long getMinExpiresValue() {
@@ -74,7 +72,11 @@ public class SessionExpiresHeader extends ParamHeader {
 
     
     public String toString() {
-        return stringValue;
+        String retValue = stringValue;
+        if (retValue == null) {
+            stringValue = retValue = doBuildStringValue();
+        }
+        return retValue;
     }
 
     private String doBuildStringValue() {
@@ -0,0 +1,357 @@
+/*
+ * This software code is (c) 2010 T-Mobile USA, Inc. All Rights Reserved.
+ *
+ * Unauthorized redistribution or further use of this material is
+ * prohibited without the express permission of T-Mobile USA, Inc. and
+ * will be prosecuted to the fullest extent of the law.
+ *
+ * Removal or modification of these Terms and Conditions from the source
+ * or binary code of this software is prohibited.  In the event that
+ * redistribution of the source or binary code for this software is
+ * approved by T-Mobile USA, Inc., these Terms and Conditions and the
+ * above copyright notice must be reproduced in their entirety and in all
+ * circumstances.
+ *
+ * No name or trademarks of T-Mobile USA, Inc., or of its parent company,
+ * Deutsche Telekom AG or any Deutsche Telekom or T-Mobile entity, may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" AND "WITH ALL FAULTS" BASIS
+ * AND WITHOUT WARRANTIES OF ANY KIND.  ALL EXPRESS OR IMPLIED
+ * CONDITIONS, REPRESENTATIONS OR WARRANTIES, INCLUDING ANY IMPLIED
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR
+ * NON-INFRINGEMENT CONCERNING THIS SOFTWARE, ITS SOURCE OR BINARY CODE
+ * OR ANY DERIVATIVES THEREOF ARE HEREBY EXCLUDED.  T-MOBILE USA, INC.
+ * AND ITS LICENSORS SHALL NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY
+ * LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE
+ * OR ITS DERIVATIVES.  IN NO EVENT WILL T-MOBILE USA, INC. OR ITS
+ * LICENSORS BE LIABLE FOR LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT,
+ * INDIRECT, SPECIAL, CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES,
+ * HOWEVER CAUSED AND REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT
+ * OF THE USE OF OR INABILITY TO USE THIS SOFTWARE, EVEN IF T-MOBILE USA,
+ * INC. HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGES.
+ *
+ * THESE TERMS AND CONDITIONS APPLY SOLELY AND EXCLUSIVELY TO THE USE,
+ * MODIFICATION OR DISTRIBUTION OF THIS SOFTWARE, ITS SOURCE OR BINARY
+ * CODE OR ANY DERIVATIVES THEREOF, AND ARE SEPARATE FROM ANY WRITTEN
+ * WARRANTY THAT MAY BE PROVIDED WITH A DEVICE YOU PURCHASE FROM T-MOBILE
+ * USA, INC., AND TO THE EXTENT PERMITTED BY LAW.
+ */
+
+package javax.microedition.ims.messages.wrappers.sip;
+
+import javax.microedition.ims.common.util.StringUtils;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Serializes SIP message parts straight into {@link ByteBuffer}.
+ * Header names are written from precomputed byte constants, ASCII values are written char by char
+ * with no intermediate String or byte array.
+ * <p/>
+ * Writer either wraps caller's buffer (e.g. transport buffer) and throws {@link BufferOverflowException}
+ * when message doesn't fit, or is a pooled per-thread writer with growing buffer, see {@link #obtain()}.
+ * <p/>
+ * In compact form writer emits RFC 3261 compact header names (v, f, t, i, m, l, c, k, ...) and drops
+ * optional whitespace after header colon and around list separators.
+ */
+public final class SipMessageWriter {
+    private static final int INITIAL_CAPACITY = 2 * 1024;
+    //pooled buffer which grew bigger than this is not kept after use
+    private static final int MAX_POOLED_CAPACITY = 64 * 1024;
+
+    private static final byte[] SIP_TERMINATOR_BYTES = StringUtils.SIP_TERMINATOR.getBytes();
+    private static final byte[] DOTS_BYTES = StringUtils.DOTS.getBytes();
+    private static final byte[] MIN_LONG_BYTES = String.valueOf(Long.MIN_VALUE).getBytes();
+
+    //"n:" prefixes keyed by long header name, used to compact header lines still produced as text
+    private static final Map<String, byte[]> COMPACT_NAMES = new HashMap<String, byte[]>();
+
+    static {
+        for (Header header : Header.values()) {
+            if (header.stringValue().length() > 0) {
+                COMPACT_NAMES.put(header.stringValue(), header.compactNameBytes());
+            }
+        }
+    }
+
+    private static final ThreadLocal<SipMessageWriter> THREAD_WRITER = new ThreadLocal<SipMessageWriter>() {
+        protected SipMessageWriter initialValue() {
+            return new SipMessageWriter(ByteBuffer.allocate(INITIAL_CAPACITY), true, false);
+        }
+    };
+
+    private final boolean growable;
+    private boolean compactForm;
+    private final byte[] digits = new byte[20];
+    private final StringBuilder textBuffer = new StringBuilder(256);
+    private ByteBuffer buffer;
+
+
+    public SipMessageWriter(final ByteBuffer target) {
+        this(target, false, false);
+    }
+
+    /**
+     * @param compactForm - whether compact header names should be written
+     */
+    public SipMessageWriter(final ByteBuffer target, final boolean compactForm) {
+        this(target, false, compactForm);
+    }
+
+    private SipMessageWriter(final ByteBuffer buffer, final boolean growable, final boolean compactForm) {
+        this.buffer = buffer;
+        this.growable = growable;
+        this.compactForm = compactForm;
+    }
+
+    /**
+     * @return empty writer with pooled buffer owned by the calling thread
+     */
+    public static SipMessageWriter obtain() {
+        return obtain(false);
+    }
+
+    /**
+     * @param compactForm - whether compact header names should be written
+     * @return empty writer with pooled buffer owned by the calling thread
+     */
+    public static SipMessageWriter obtain(final boolean compactForm) {
+        final SipMessageWriter retValue = THREAD_WRITER.get();
+        if (retValue.buffer.capacity() > MAX_POOLED_CAPACITY) {
+            retValue.buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+        }
+        retValue.buffer.clear();
+        retValue.compactForm = compactForm;
+        return retValue;
+    }
+
+    public boolean isCompactForm() {
+        return compactForm;
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return copy of bytes written so far
+     */
+    public byte[] toByteArray() {
+        final ByteBuffer written = buffer.duplicate();
+        written.flip();
+
+        final byte[] retValue = new byte[written.remaining()];
+        written.get(retValue);
+        return retValue;
+    }
+
+    /**
+     * Writes "name: " of the header, or "n:" in compact form.
+     */
+    public SipMessageWriter header(final Header header) {
+        return append(compactForm ? header.compactNameBytes() : header.nameBytes());
+    }
+
+    /**
+     * Writes "name: " of the header which isn't known in advance (custom header), or "name:" in compact form.
+     */
+    public SipMessageWriter header(final String name) {
+        append(name);
+        return compactForm ? append(':') : append(DOTS_BYTES);
+    }
+
+    /**
+     * Writes complete header lines built as text. In compact form long header names are replaced
+     * with compact ones and whitespace after colon is dropped.
+     */
+    public SipMessageWriter headerText(final CharSequence lines) {
+        if (!compactForm) {
+            return append(lines);
+        }
+
+        final int length = lines.length();
+        int lineStart = 0;
+        while (lineStart < length) {
+            int lineEnd = indexOf(lines, '\n', lineStart);
+            lineEnd = lineEnd < 0 ? length : lineEnd + 1;
+
+            final int colon = indexOf(lines, ':', lineStart);
+            if (colon < 0 || colon >= lineEnd) {
+                append(lines.subSequence(lineStart, lineEnd));
+            }
+            else {
+                final CharSequence name = lines.subSequence(lineStart, colon);
+                final byte[] compactName = COMPACT_NAMES.get(name.toString());
+                if (compactName != null) {
+                    append(compactName);
+                }
+                else {
+                    append(name).append(':');
+                }
+
+                int valueStart = colon + 1;
+                while (valueStart < lineEnd && lines.charAt(valueStart) == ' ') {
+                    valueStart++;
+                }
+                append(lines.subSequence(valueStart, lineEnd));
+            }
+
+            lineStart = lineEnd;
+        }
+        return this;
+    }
+
+    public SipMessageWriter terminate() {
+        return append(SIP_TERMINATOR_BYTES);
+    }
+
+    /**
+     * Writes complete header line for each value. In compact form values are joined into single line.
+     */
+    public SipMessageWriter headerLines(final Header header, final Collection<? extends ParamHeader> values) {
+        if (compactForm) {
+            return paramHeaderList(header, values, ",");
+        }
+
+        for (ParamHeader value : values) {
+            header(header).append(value.buildContent()).terminate();
+        }
+        return this;
+    }
+
+    /**
+     * Writes single header line with built values separated by given separator. Nothing is written for empty list.
+     */
+    public SipMessageWriter paramHeaderList(
+            final Header header,
+            final Collection<? extends ParamHeader> values,
+            final String separator) {
+
+        if (values != null && !values.isEmpty()) {
+            header(header);
+            final Iterator<? extends ParamHeader> it = values.iterator();
+            while (it.hasNext()) {
+                append(it.next().buildContent());
+                if (it.hasNext()) {
+                    separator(separator);
+                }
+            }
+            terminate();
+        }
+        return this;
+    }
+
+    /**
+     * Writes single header line with values separated by given separator. Nothing is written for empty list.
+     */
+    public SipMessageWriter stringList(final Header header, final Collection<String> values, final String separator) {
+        if (values != null && !values.isEmpty()) {
+            header(header);
+            final Iterator<String> it = values.iterator();
+            while (it.hasNext()) {
+                append(String.valueOf(it.next()));
+                if (it.hasNext()) {
+                    separator(separator);
+                }
+            }
+            terminate();
+        }
+        return this;
+    }
+
+    /**
+     * Writes list separator, with surrounding whitespace dropped in compact form.
+     */
+    public SipMessageWriter separator(final String separator) {
+        return append(compactForm ? separator.trim() : separator);
+    }
+
+    public SipMessageWriter append(final char c) {
+        if (c >= 0x80) {
+            return append(String.valueOf(c));
+        }
+        ensureCapacity(1);
+        buffer.put((byte) c);
+        return this;
+    }
+
+    public SipMessageWriter append(final byte[] bytes) {
+        return append(bytes, 0, bytes.length);
+    }
+
+    public SipMessageWriter append(final byte[] bytes, final int offset, final int length) {
+        ensureCapacity(length);
+        buffer.put(bytes, offset, length);
+        return this;
+    }
+
+    public SipMessageWriter append(final CharSequence value) {
+        final int length = value.length();
+        ensureCapacity(length);
+
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c >= 0x80) {
+                //rest of the value is encoded the same way as String.getBytes() would do it
+                return append(value.subSequence(i, length).toString().getBytes());
+            }
+            buffer.put((byte) c);
+        }
+        return this;
+    }
+
+    public SipMessageWriter append(final long value) {
+        if (value == Long.MIN_VALUE) {
+            return append(MIN_LONG_BYTES);
+        }
+
+        long rest = value < 0 ? -value : value;
+        int pos = digits.length;
+        do {
+            digits[--pos] = (byte) ('0' + rest % 10);
+            rest /= 10;
+        } while (rest != 0);
+
+        if (value < 0) {
+            digits[--pos] = '-';
+        }
+        return append(digits, pos, digits.length - pos);
+    }
+
+    /**
+     * @return empty reusable builder for the parts still produced as text, valid till next call
+     */
+    public StringBuilder textBuffer() {
+        textBuffer.setLength(0);
+        return textBuffer;
+    }
+
+    private static int indexOf(final CharSequence value, final char c, final int from) {
+        final int length = value.length();
+        for (int i = from; i < length; i++) {
+            if (value.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void ensureCapacity(final int length) {
+        if (buffer.remaining() < length) {
+            if (!growable) {
+                throw new BufferOverflowException();
+            }
+
+            final ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + length));
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+    }
+}
@@ -55,10 +55,10 @@ public class SipUri extends ParamHeader implements Uri {
     private final String prefix;
     private final int port;
     private final ParamList headers;
-    private final String stringValue;
-    private final String shortURINoParams;
-    private final String shortURI;
-    private final String content;
+    private String stringValue;
+    private String shortURINoParams;
+    private String shortURI;
+    private String content;
 
 
     private SipUri(final SipUriBuilder builder) {
@@ -71,11 +71,6 @@ public class SipUri extends ParamHeader implements Uri {
         this.prefix = builder.prefix;
         this.port = builder.port;
         this.headers = builder.headers == null ? null : ParamListDefaultImpl.unmodifableCopyOf(builder.headers);
-
-        this.stringValue = doBuildStringValue();
-        this.shortURINoParams = doBuildShortURINoParams();
-        this.shortURI = doBuildShortUri();
-        this.content = doBuildContent();
     }
 
     public String getDisplayName() {
@@ -111,7 +106,11 @@ public class SipUri extends ParamHeader implements Uri {
 
 
     public String buildContent() {
-        return content;
+        String retValue = content;
+        if (retValue == null) {
+            content = retValue = doBuildContent();
+        }
+        return retValue;
     }
 
     private String doBuildContent() {
@@ -132,7 +131,11 @@ public class SipUri extends ParamHeader implements Uri {
     }
 
     public String getShortURI() {
-        return shortURI;
+        String retValue = shortURI;
+        if (retValue == null) {
+            shortURI = retValue = doBuildShortUri();
+        }
+        return retValue;
     }
 
     private String doBuildShortUri() {
@@ -147,7 +150,11 @@ public class SipUri extends ParamHeader implements Uri {
     }
 
     public String getShortURINoParams() {
-        return shortURINoParams;
+        String retValue = shortURINoParams;
+        if (retValue == null) {
+            shortURINoParams = retValue = doBuildShortURINoParams();
+        }
+        return retValue;
     }
 
     private String doBuildShortURINoParams() {
@@ -183,7 +190,11 @@ public class SipUri extends ParamHeader implements Uri {
 
 
     public String toString() {
-        return stringValue;
+        String retValue = stringValue;
+        if (retValue == null) {
+            stringValue = retValue = doBuildStringValue();
+        }
+        return retValue;
     }
 
     private String doBuildStringValue() {
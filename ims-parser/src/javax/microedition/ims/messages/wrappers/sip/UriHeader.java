@@ -49,17 +49,13 @@ public class UriHeader extends ParamHeader {
 
     private final Uri uri;
     private final String tag;
-    private final String content;
-    private final String stringValue;
+    private String content;
+    private String stringValue;
 
     protected UriHeader(final UriHeaderBuilder builder) {
         super(new ParamHeaderBuilder().value(builder.value).paramsList(builder.paramsList));
         this.uri = builder.uriBuilder.buildUri();
         this.tag = builder.tag;
-
-
-        this.content = doBuildContent();
-        this.stringValue = doBuildStringValue();
     }
 
     public Uri getUri() {
@@ -72,7 +68,11 @@ public class UriHeader extends ParamHeader {
 
 
     public String toString() {
-        return stringValue;
+        String retValue = stringValue;
+        if (retValue == null) {
+            stringValue = retValue = doBuildStringValue();
+        }
+        return retValue;
     }
 
     private String doBuildStringValue() {
@@ -81,7 +81,11 @@ public class UriHeader extends ParamHeader {
 
 
     public String buildContent() {
-        return content;
+        String retValue = content;
+        if (retValue == null) {
+            content = retValue = doBuildContent();
+        }
+        return retValue;
     }
 
     private String doBuildContent() {
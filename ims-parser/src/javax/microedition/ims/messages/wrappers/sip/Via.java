@@ -47,8 +47,8 @@ import javax.microedition.ims.common.util.StringUtils;
 
 public class Via extends UriHeader {
     private final Protocol protocol;
-    private final String content;
-    private final String stringValue;
+    private String content;
+    private String stringValue;
 
     public Via(final Builder builder) {
         super(
@@ -60,8 +60,6 @@ public class Via extends UriHeader {
         );
 
         this.protocol = builder.protocol;
-        this.content = doBuildeContent();
-        this.stringValue = doBuildStringValue();
     }
 
     public Protocol getProtocol() {
@@ -70,7 +68,11 @@ public class Via extends UriHeader {
 
     
     public String toString() {
-        return stringValue;
+        String retValue = stringValue;
+        if (retValue == null) {
+            stringValue = retValue = doBuildStringValue();
+        }
+        return retValue;
     }
 
     private String doBuildStringValue() {
@@ -79,7 +81,11 @@ public class Via extends UriHeader {
 
     
     public String buildContent() {
-        return content;
+        String retValue = content;
+        if (retValue == null) {
+            content = retValue = doBuildeContent();
+        }
+        return retValue;
     }
 
     private String doBuildeContent() {
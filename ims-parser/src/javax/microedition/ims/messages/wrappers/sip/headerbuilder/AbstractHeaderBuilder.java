@@ -41,8 +41,11 @@
 
 package javax.microedition.ims.messages.wrappers.sip.headerbuilder;
 
+import javax.microedition.ims.messages.wrappers.sip.BaseSipMessage;
 import javax.microedition.ims.messages.wrappers.sip.Header;
 import javax.microedition.ims.messages.wrappers.sip.HeaderBuilder;
+import javax.microedition.ims.messages.wrappers.sip.SipMessageWriter;
+import java.util.Collection;
 
 /**
  * Created by IntelliJ IDEA.
@@ -61,4 +64,12 @@ abstract class AbstractHeaderBuilder implements HeaderBuilder {
     public Header getHeader() {
         return header;
     }
+
+    /**
+     * Default implementation writes text produced by {@link #build(BaseSipMessage, StringBuilder, Collection)}.
+     * Frequently used headers override it and write their values directly.
+     */
+    public void write(final BaseSipMessage msg, final SipMessageWriter writer, final Collection<String> directlyHandledHeaders) {
+        writer.headerText(build(msg, writer.textBuffer(), directlyHandledHeaders));
+    }
 }
@@ -44,6 +44,7 @@ package javax.microedition.ims.messages.wrappers.sip.headerbuilder;
 import javax.microedition.ims.messages.parser.ParserUtils;
 import javax.microedition.ims.messages.wrappers.sip.BaseSipMessage;
 import javax.microedition.ims.messages.wrappers.sip.Header;
+import javax.microedition.ims.messages.wrappers.sip.SipMessageWriter;
 import java.util.Collection;
 
 /**
@@ -66,4 +67,8 @@ public class AllowEventsHeaderBuilder extends AbstractHeaderBuilder {
 
         return ParserUtils.appendStringsList(buffer, msg.getAllowEvents(), Header.Allow_Events);
     }
+
+    public void write(final BaseSipMessage msg, final SipMessageWriter writer, final Collection<String> directlyHandledHeaders) {
+        writer.stringList(Header.Allow_Events, msg.getAllowEvents(), ", ");
+    }
 }
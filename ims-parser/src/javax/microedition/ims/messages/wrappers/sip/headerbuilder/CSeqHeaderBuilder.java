@@ -44,6 +44,7 @@ package javax.microedition.ims.messages.wrappers.sip.headerbuilder;
 import javax.microedition.ims.common.util.StringUtils;
 import javax.microedition.ims.messages.wrappers.sip.BaseSipMessage;
 import javax.microedition.ims.messages.wrappers.sip.Header;
+import javax.microedition.ims.messages.wrappers.sip.SipMessageWriter;
 import java.util.Collection;
 
 /**
@@ -75,4 +76,12 @@ public class CSeqHeaderBuilder extends AbstractHeaderBuilder {
 
         return buffer;
     }
+
+    public void write(final BaseSipMessage msg, final SipMessageWriter writer, final Collection<String> directlyHandledHeaders) {
+        final int cSeqHeader = msg.getcSeq();
+
+        if (cSeqHeader >= 0) {
+            writer.header(Header.CSeq).append(cSeqHeader).append(" ").append(String.valueOf(msg.getMethod())).terminate();
+        }
+    }
 }
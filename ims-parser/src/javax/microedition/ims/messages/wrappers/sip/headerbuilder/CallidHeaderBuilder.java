@@ -44,6 +44,7 @@ package javax.microedition.ims.messages.wrappers.sip.headerbuilder;
 import javax.microedition.ims.common.util.StringUtils;
 import javax.microedition.ims.messages.wrappers.sip.BaseSipMessage;
 import javax.microedition.ims.messages.wrappers.sip.Header;
+import javax.microedition.ims.messages.wrappers.sip.SipMessageWriter;
 import java.util.Collection;
 
 /**
@@ -72,4 +73,12 @@ public class CallidHeaderBuilder extends AbstractHeaderBuilder {
 
         return buffer;
     }
+
+    public void write(final BaseSipMessage msg, final SipMessageWriter writer, final Collection<String> directlyHandledHeaders) {
+        final String callIdHeader = msg.getCallId();
+
+        if (callIdHeader != null) {
+            writer.header(Header.Call_ID).append(callIdHeader).terminate();
+        }
+    }
 }
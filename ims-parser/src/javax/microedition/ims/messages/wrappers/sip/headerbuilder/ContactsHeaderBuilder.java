@@ -45,6 +45,7 @@ import javax.microedition.ims.common.util.StringUtils;
 import javax.microedition.ims.messages.wrappers.sip.BaseSipMessage;
 import javax.microedition.ims.messages.wrappers.sip.ContactsList;
 import javax.microedition.ims.messages.wrappers.sip.Header;
+import javax.microedition.ims.messages.wrappers.sip.SipMessageWriter;
 import javax.microedition.ims.messages.wrappers.sip.UriHeader;
 import java.util.Collection;
 
@@ -80,4 +81,12 @@ public class ContactsHeaderBuilder extends AbstractHeaderBuilder {
 
         return buffer;
     }
+
+    public void write(final BaseSipMessage msg, final SipMessageWriter writer, final Collection<String> directlyHandledHeaders) {
+        final ContactsList contacts = msg.getContacts();
+
+        if (contacts != null) {
+            writer.headerLines(Header.Contact, contacts.getContactsList());
+        }
+    }
 }
@@ -44,6 +44,7 @@ package javax.microedition.ims.messages.wrappers.sip.headerbuilder;
 import javax.microedition.ims.common.util.StringUtils;
 import javax.microedition.ims.messages.wrappers.sip.BaseSipMessage;
 import javax.microedition.ims.messages.wrappers.sip.Header;
+import javax.microedition.ims.messages.wrappers.sip.SipMessageWriter;
 import java.util.Collection;
 
 /**
@@ -74,4 +75,9 @@ public class ContentLengthHeaderBuilder extends AbstractHeaderBuilder {
 
         return buffer;
     }
+
+    public void write(final BaseSipMessage msg, final SipMessageWriter writer, final Collection<String> directlyHandledHeaders) {
+        final byte[] body = msg.getBody();
+        writer.header(Header.Content_Length).append(body != null ? body.length : 0).terminate();
+    }
 }
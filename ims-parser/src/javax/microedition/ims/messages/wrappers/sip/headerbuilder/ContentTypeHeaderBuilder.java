@@ -45,6 +45,7 @@ import javax.microedition.ims.common.util.StringUtils;
 import javax.microedition.ims.messages.wrappers.sip.BaseSipMessage;
 import javax.microedition.ims.messages.wrappers.sip.Header;
 import javax.microedition.ims.messages.wrappers.sip.ParamHeader;
+import javax.microedition.ims.messages.wrappers.sip.SipMessageWriter;
 import java.util.Collection;
 
 /**
@@ -74,4 +75,12 @@ public class ContentTypeHeaderBuilder extends AbstractHeaderBuilder {
 
         return buffer;
     }
+
+    public void write(final BaseSipMessage msg, final SipMessageWriter writer, final Collection<String> directlyHandledHeaders) {
+        final ParamHeader contentTypeHeader = msg.getContentType();
+
+        if (contentTypeHeader != null && contentTypeHeader.getValue() != null) {
+            writer.header(Header.Content_Type).append(contentTypeHeader.buildContent()).terminate();
+        }
+    }
 }
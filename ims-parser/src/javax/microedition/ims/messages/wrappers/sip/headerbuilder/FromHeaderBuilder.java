@@ -44,6 +44,7 @@ package javax.microedition.ims.messages.wrappers.sip.headerbuilder;
 import javax.microedition.ims.common.util.StringUtils;
 import javax.microedition.ims.messages.wrappers.sip.BaseSipMessage;
 import javax.microedition.ims.messages.wrappers.sip.Header;
+import javax.microedition.ims.messages.wrappers.sip.SipMessageWriter;
 import javax.microedition.ims.messages.wrappers.sip.UriHeader;
 import java.util.Collection;
 
@@ -73,4 +74,12 @@ public class FromHeaderBuilder extends AbstractHeaderBuilder {
 
         return buffer;
     }
+
+    public void write(final BaseSipMessage msg, final SipMessageWriter writer, final Collection<String> directlyHandledHeaders) {
+        final UriHeader fromHeader = msg.getFrom();
+
+        if (fromHeader != null) {
+            writer.header(Header.From).append(fromHeader.buildContent()).terminate();
+        }
+    }
 }
@@ -44,6 +44,7 @@ package javax.microedition.ims.messages.wrappers.sip.headerbuilder;
 import javax.microedition.ims.messages.parser.ParserUtils;
 import javax.microedition.ims.messages.wrappers.sip.BaseSipMessage;
 import javax.microedition.ims.messages.wrappers.sip.Header;
+import javax.microedition.ims.messages.wrappers.sip.SipMessageWriter;
 import java.util.Collection;
 
 /**
@@ -62,4 +63,8 @@ public class RequireHeaderBuilder extends AbstractHeaderBuilder {
     public StringBuilder build(final BaseSipMessage msg, final StringBuilder buffer, Collection<String> directlyHandledHeaders) {
         return ParserUtils.appendStringsList(buffer, msg.getRequire(), Header.Require);
     }
+
+    public void write(final BaseSipMessage msg, final SipMessageWriter writer, final Collection<String> directlyHandledHeaders) {
+        writer.stringList(Header.Require, msg.getRequire(), ", ");
+    }
 }
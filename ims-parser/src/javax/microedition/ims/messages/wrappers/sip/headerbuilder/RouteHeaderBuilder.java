@@ -44,6 +44,7 @@ package javax.microedition.ims.messages.wrappers.sip.headerbuilder;
 import javax.microedition.ims.messages.parser.ParserUtils;
 import javax.microedition.ims.messages.wrappers.sip.BaseSipMessage;
 import javax.microedition.ims.messages.wrappers.sip.Header;
+import javax.microedition.ims.messages.wrappers.sip.SipMessageWriter;
 import javax.microedition.ims.messages.wrappers.sip.UriHeader;
 import java.util.Collection;
 
@@ -80,4 +81,15 @@ public class RouteHeaderBuilder extends AbstractHeaderBuilder {
 
         return retValue;
     }
+
+    public void write(final BaseSipMessage msg, final SipMessageWriter writer, final Collection<String> directlyHandledHeaders) {
+        final Collection<UriHeader> routes = msg.getRoutes();
+
+        if (routes != null && routes.size() > 0) {
+            writer.paramHeaderList(Header.Route, routes, " ,");
+        }
+        else {
+            writer.stringList(Header.Route, msg.getCustomHeaders().get(Header.Route.stringValue()), " ,");
+        }
+    }
 }
@@ -292,6 +292,34 @@ public class CompositeConfig implements Configuration, RegistryChangeListener {
         return conf.useDNSLookup();
     }
 
+    public boolean useCompactHeaders() {
+        return conf.useCompactHeaders();
+    }
+
+    public boolean useNioTransport() {
+        return conf.useNioTransport();
+    }
+
+    public int getWriteCoalescingMillis() {
+        return conf.getWriteCoalescingMillis();
+    }
+
+    public boolean useSigComp() {
+        return conf.useSigComp();
+    }
+
+    public int getMaxDatagramRequestSize() {
+        return conf.getMaxDatagramRequestSize();
+    }
+
+    public int getTlsSessionLifetime() {
+        return conf.getTlsSessionLifetime();
+    }
+
+    public boolean useFlowKeepAlive() {
+        return conf.useFlowKeepAlive();
+    }
+
     public DtmfPayloadType getDtmfPayload() {
         return conf.getDtmfPayload();
     }
@@ -43,20 +43,17 @@ package javax.microedition.ims;
 
 import javax.microedition.ims.transport.MessageContentProvider;
 import javax.microedition.ims.transport.MessageContext;
-import javax.microedition.ims.transport.MessageReader;
+import javax.microedition.ims.transport.sigcomp.SigCompCompartment;
 
 public abstract class DefaultMessageContext<T> implements MessageContext<T> {
     private final MessageContentProvider<T> messageContentProvider;
-    private final MessageReader<T> messageReader;
     private final T dummyMessage;
 
     public DefaultMessageContext(
             final MessageContentProvider<T> messageContentProvider,
-            final MessageReader<T> messageReader,
             final T dummyMessage) {
 
         this.messageContentProvider = messageContentProvider;
-        this.messageReader = messageReader;
         this.dummyMessage = dummyMessage;
     }
 
@@ -66,18 +63,27 @@ public abstract class DefaultMessageContext<T> implements MessageContext<T> {
         return messageContentProvider;
     }
 
-    
-    public MessageReader<T> getMessageReader() {
-        return messageReader;
+    public SigCompCompartment createSigCompCompartment(final boolean stream) {
+        return null;
+    }
+
+    public boolean isCompressionRequested(final T msg) {
+        return false;
     }
 
+    public T buildStreamTransportMessage(final T msg) {
+        return null;
+    }
+
+    public int getOutboundFlowTimer(final T msg) {
+        return -1;
+    }
 
     
     public String toString() {
         final StringBuffer sb = new StringBuffer();
         sb.append("DefaultMessageContext");
         sb.append("{messageContentProvider=").append(messageContentProvider);
-        sb.append(", messageReader=").append(messageReader);
         sb.append(", dummyMessage=").append(dummyMessage);
         sb.append('}');
         return sb.toString();
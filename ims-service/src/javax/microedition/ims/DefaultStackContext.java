@@ -390,7 +390,15 @@ public class DefaultStackContext implements StackContextExt, Shutdownable {
         registry.registerMessageContext(new XdmMessageContext(this));
         registry.registerMessageContext(new MsrpMessageContext(this));
 
-        MessageTransport<IMSMessage> retValue = new MessageTransport<IMSMessage>(router, registry, connectionSecurityInfoProvider);
+        MessageTransport<IMSMessage> retValue = new MessageTransport<IMSMessage>(
+                router,
+                registry,
+                connectionSecurityInfoProvider,
+                getConfig().useNioTransport(),
+                getConfig().getWriteCoalescingMillis(),
+                getConfig().getTlsSessionLifetime(),
+                getConfig().useFlowKeepAlive() ? repetitiousTaskManager : null
+        );
 
         retValue.addTransportListener(
                 new TransportListenerAdapter<IMSMessage>() {
@@ -47,6 +47,8 @@ import javax.microedition.ims.common.TimeoutUnit;
 import javax.microedition.ims.core.StackContext;
 import javax.microedition.ims.messages.wrappers.msrp.MsrpMessage;
 import javax.microedition.ims.transport.MessageContentProvider;
+import javax.microedition.ims.transport.MessageReader;
+import java.nio.ByteBuffer;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -74,13 +76,21 @@ public class MsrpMessageContext extends DefaultMessageContext<MsrpMessage> {
                     public byte[] getByteContent(MsrpMessage msg) {
                         return msg.buildByteContent();
                     }
+
+                    public void writeByteContent(MsrpMessage msg, ByteBuffer target) {
+                        target.put(msg.buildByteContent());
+                    }
                 },
-                new MsrpMessageReader(),
                 new MsrpMessage()
         );
         //this.context = context;
     }
 
+
+    public MessageReader<MsrpMessage> createMessageReader(final boolean stream) {
+        return new MsrpMessageReader();
+    }
+
     
     public int getMessageRate() {
         return 30;
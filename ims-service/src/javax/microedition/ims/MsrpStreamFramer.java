@@ -0,0 +1,237 @@
+/*
+ * This software code is (c) 2010 T-Mobile USA, Inc. All Rights Reserved.
+ *
+ * Unauthorized redistribution or further use of this material is
+ * prohibited without the express permission of T-Mobile USA, Inc. and
+ * will be prosecuted to the fullest extent of the law.
+ *
+ * Removal or modification of these Terms and Conditions from the source
+ * or binary code of this software is prohibited.  In the event that
+ * redistribution of the source or binary code for this software is
+ * approved by T-Mobile USA, Inc., these Terms and Conditions and the
+ * above copyright notice must be reproduced in their entirety and in all
+ * circumstances.
+ *
+ * No name or trademarks of T-Mobile USA, Inc., or of its parent company,
+ * Deutsche Telekom AG or any Deutsche Telekom or T-Mobile entity, may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" AND "WITH ALL FAULTS" BASIS
+ * AND WITHOUT WARRANTIES OF ANY KIND.  ALL EXPRESS OR IMPLIED
+ * CONDITIONS, REPRESENTATIONS OR WARRANTIES, INCLUDING ANY IMPLIED
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR
+ * NON-INFRINGEMENT CONCERNING THIS SOFTWARE, ITS SOURCE OR BINARY CODE
+ * OR ANY DERIVATIVES THEREOF ARE HEREBY EXCLUDED.  T-MOBILE USA, INC.
+ * AND ITS LICENSORS SHALL NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY
+ * LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE
+ * OR ITS DERIVATIVES.  IN NO EVENT WILL T-MOBILE USA, INC. OR ITS
+ * LICENSORS BE LIABLE FOR LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT,
+ * INDIRECT, SPECIAL, CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES,
+ * HOWEVER CAUSED AND REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT
+ * OF THE USE OF OR INABILITY TO USE THIS SOFTWARE, EVEN IF T-MOBILE USA,
+ * INC. HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGES.
+ *
+ * THESE TERMS AND CONDITIONS APPLY SOLELY AND EXCLUSIVELY TO THE USE,
+ * MODIFICATION OR DISTRIBUTION OF THIS SOFTWARE, ITS SOURCE OR BINARY
+ * CODE OR ANY DERIVATIVES THEREOF, AND ARE SEPARATE FROM ANY WRITTEN
+ * WARRANTY THAT MAY BE PROVIDED WITH A DEVICE YOU PURCHASE FROM T-MOBILE
+ * USA, INC., AND TO THE EXTENT PERMITTED BY LAW.
+ */
+
+package javax.microedition.ims;
+
+import javax.microedition.ims.common.Logger;
+import javax.microedition.ims.transport.impl.Utils;
+import java.io.IOException;
+
+/**
+ * Splits MSRP stream into messages by end line.
+ * <p/>
+ * Transaction id is taken from the start line and the end line pattern "-------tid" is matched
+ * incrementally over received bytes, so each byte is scanned once whatever the size of the chunk.
+ * Complete message is handed out in the buffer it was collected in, no copy of the body is made.
+ */
+final class MsrpStreamFramer {
+
+    interface FrameReceiver {
+        /**
+         * @param message buffer which first length bytes are complete message including end line.
+         *                Buffer is not used by the framer afterwards.
+         */
+        void onFrame(byte[] message, int length) throws IOException;
+    }
+
+    private static final int INITIAL_BUFFER_SIZE = 4 * 1024;
+    private static final byte[] START_LINE_PREFIX = "MSRP ".getBytes();
+    private static final byte[] END_LINE_PREFIX = "\n-------".getBytes();
+
+    private final FrameReceiver frameReceiver;
+
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    private int fill;
+    //bytes of buffer already checked by end line matcher
+    private int scanned;
+
+    //end line of current transaction, null till start line is read
+    private byte[] endPattern;
+    private int[] endPatternFailure;
+    private int matched;
+
+    MsrpStreamFramer(final FrameReceiver frameReceiver) {
+        this.frameReceiver = frameReceiver;
+    }
+
+    /**
+     * Feeds next part of the stream. Part is not referenced after the call returns.
+     */
+    void feed(final byte[] part, final int offset, final int length) throws IOException {
+        int from = offset;
+        final int end = offset + length;
+
+        //CRLF between messages
+        while (fill == 0 && from < end && isLineBreak(part[from])) {
+            from++;
+        }
+        append(part, from, end - from);
+
+        int messageLength;
+        while ((messageLength = nextMessageLength()) > 0) {
+            final byte[] message = buffer;
+            startNextMessage(message, messageLength);
+            frameReceiver.onFrame(message, messageLength);
+        }
+    }
+
+    private int nextMessageLength() {
+        if (endPattern == null && !readStartLine()) {
+            return -1;
+        }
+
+        while (scanned < fill) {
+            if (matched == endPattern.length) {
+                //flag and CRLF have to follow the end line pattern
+                if (fill - scanned < 3) {
+                    return -1;
+                }
+                if (isFlag(buffer[scanned]) && buffer[scanned + 1] == '\r' && buffer[scanned + 2] == '\n') {
+                    return scanned + 3;
+                }
+                matched = endPatternFailure[matched - 1];
+                continue;
+            }
+
+            final byte b = buffer[scanned++];
+            while (matched > 0 && endPattern[matched] != b) {
+                matched = endPatternFailure[matched - 1];
+            }
+            if (endPattern[matched] == b) {
+                matched++;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Reads transaction id from the start line and prepares end line pattern for it.
+     * Lines which are not MSRP start lines are dropped.
+     *
+     * @return true if start line is read
+     */
+    private boolean readStartLine() {
+        while (endPattern == null) {
+            int lineEnd = scanned;
+            while (lineEnd < fill && buffer[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            if (lineEnd == fill) {
+                scanned = fill;
+                return false;
+            }
+
+            final int idStart = START_LINE_PREFIX.length;
+            int idEnd = idStart;
+            while (idEnd < lineEnd && buffer[idEnd] != ' ' && buffer[idEnd] != '\r') {
+                idEnd++;
+            }
+
+            if (startsWith(buffer, START_LINE_PREFIX, lineEnd) && idEnd > idStart) {
+                endPattern = new byte[END_LINE_PREFIX.length + idEnd - idStart];
+                System.arraycopy(END_LINE_PREFIX, 0, endPattern, 0, END_LINE_PREFIX.length);
+                System.arraycopy(buffer, idStart, endPattern, END_LINE_PREFIX.length, idEnd - idStart);
+                endPatternFailure = Utils.computeFailure(endPattern);
+                matched = 0;
+                //line break of the start line can be the first byte of the end line
+                scanned = lineEnd;
+            }
+            else {
+                Logger.log(Logger.Tag.WARNING, "Not an MSRP start line skipped: " + new String(buffer, 0, lineEnd));
+                compact(lineEnd + 1);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Moves bytes following the message to a new buffer, message buffer is given away.
+     */
+    private void startNextMessage(final byte[] message, final int messageLength) {
+        int from = messageLength;
+        while (from < fill && isLineBreak(message[from])) {
+            from++;
+        }
+
+        final int leftOver = fill - from;
+        buffer = new byte[Math.max(INITIAL_BUFFER_SIZE, leftOver)];
+        System.arraycopy(message, from, buffer, 0, leftOver);
+        fill = leftOver;
+        resetTransaction();
+    }
+
+    private void compact(int from) {
+        while (from < fill && isLineBreak(buffer[from])) {
+            from++;
+        }
+        System.arraycopy(buffer, from, buffer, 0, fill - from);
+        fill -= from;
+        resetTransaction();
+    }
+
+    private void resetTransaction() {
+        scanned = 0;
+        matched = 0;
+        endPattern = null;
+        endPatternFailure = null;
+    }
+
+    private void append(final byte[] part, final int offset, final int length) {
+        if (buffer.length - fill < length) {
+            final byte[] grown = new byte[Math.max(buffer.length * 2, fill + length)];
+            System.arraycopy(buffer, 0, grown, 0, fill);
+            buffer = grown;
+        }
+        System.arraycopy(part, offset, buffer, fill, length);
+        fill += length;
+    }
+
+    private static boolean startsWith(final byte[] data, final byte[] prefix, final int limit) {
+        if (limit < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isFlag(final byte b) {
+        return b == '$' || b == '+' || b == '#';
+    }
+
+    private static boolean isLineBreak(final byte b) {
+        return b == '\r' || b == '\n';
+    }
+}
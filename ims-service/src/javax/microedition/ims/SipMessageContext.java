@@ -43,14 +43,31 @@ package javax.microedition.ims;
 
 import javax.microedition.ims.common.DefaultTimeoutUnit;
 import javax.microedition.ims.common.IMSEntityType;
+import javax.microedition.ims.common.Logger;
+import javax.microedition.ims.common.MessageType;
+import javax.microedition.ims.common.Protocol;
 import javax.microedition.ims.common.TimeoutUnit;
 import javax.microedition.ims.core.StackContext;
 import javax.microedition.ims.messages.parser.message.MessageParser;
 import javax.microedition.ims.messages.utils.StatusCode;
+import javax.microedition.ims.messages.wrappers.common.Param;
+import javax.microedition.ims.messages.wrappers.common.ParamList;
 import javax.microedition.ims.messages.wrappers.sip.BaseSipMessage;
+import javax.microedition.ims.messages.wrappers.sip.ContactsList;
+import javax.microedition.ims.messages.wrappers.sip.Request;
+import javax.microedition.ims.messages.wrappers.sip.Response;
+import javax.microedition.ims.messages.wrappers.sip.UriHeader;
+import javax.microedition.ims.messages.wrappers.sip.Via;
 import javax.microedition.ims.transport.MessageContentProvider;
+import javax.microedition.ims.transport.MessageReader;
+import javax.microedition.ims.transport.sigcomp.SigCompCompartment;
+import javax.microedition.ims.transport.sigcomp.SigCompStateStore;
 import javax.microedition.ims.util.MessageUtilHolder;
 import javax.microedition.ims.util.SipMessageUtil;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -59,7 +76,15 @@ import java.util.concurrent.TimeUnit;
  * Time: 15:41:14
  */
 public class SipMessageContext extends DefaultMessageContext<BaseSipMessage> {
+    private static final String COMP_PARAM = "comp";
+    private static final String SIGCOMP = "sigcomp";
+    private static final String OUTBOUND = "outbound";
+    private static final String REG_ID_PARAM = "reg-id";
+    private static final String FLOW_TIMER = "Flow-Timer";
+
     private final StackContext context;
+    //states are shared by all compartments of the stack, RFC 3320 allows it for local states
+    private final SigCompStateStore sigCompStateStore = createSigCompStateStore();
 
 
     public SipMessageContext(final StackContext context) {
@@ -72,17 +97,134 @@ public class SipMessageContext extends DefaultMessageContext<BaseSipMessage> {
 
                     
                     public byte[] getByteContent(BaseSipMessage msg) {
-                        byte[] ret = msg.buildByteContent();
+                        byte[] ret = useCompactHeaders(context) ? msg.buildCompactByteContent() : msg.buildByteContent();
                         return ret;
                     }
+
+                    public void writeByteContent(BaseSipMessage msg, ByteBuffer target) {
+                        msg.writeByteContent(target, useCompactHeaders(context));
+                    }
                 },
-                new SipMessageReader(),
                 MessageUtilHolder.<BaseSipMessage>getSIPMessageUtil().buildDummyMessage()
         );
         this.context = context;
     }
 
+
+    private static SigCompStateStore createSigCompStateStore() {
+        final SigCompStateStore retValue = new SigCompStateStore();
+        retValue.addSipSdpDictionary();
+        return retValue;
+    }
+
+    private static boolean useCompactHeaders(final StackContext context) {
+        return context.getConfig().useCompactHeaders();
+    }
+
+    public MessageReader<BaseSipMessage> createMessageReader(final boolean stream) {
+        return new SipMessageReader(stream);
+    }
+
     
+    public SigCompCompartment createSigCompCompartment(final boolean stream) {
+        return context.getConfig().useSigComp() ? new SigCompCompartment(sigCompStateStore, stream) : null;
+    }
+
+    /**
+     * Responses are compressed if top Via carries comp=sigcomp (RFC 3486),
+     * requests if next hop URI does.
+     */
+    public boolean isCompressionRequested(final BaseSipMessage msg) {
+        if (!context.getConfig().useSigComp()) {
+            return false;
+        }
+
+        final ParamList params;
+        if (msg instanceof Request) {
+            final Iterator<UriHeader> routes = msg.getRoutes().iterator();
+            params = routes.hasNext() ?
+                    routes.next().getUri().getParamsList() :
+                    ((Request) msg).getRequestUri().getParamsList();
+        }
+        else {
+            final List<Via> vias = msg.getVias();
+            params = vias.isEmpty() ? null : vias.get(0).getParamsList();
+        }
+
+        final Param comp = params == null ? null : params.get(COMP_PARAM);
+        return comp != null && SIGCOMP.equalsIgnoreCase(comp.getValue());
+    }
+
+    /**
+     * Top Via of the copy is switched to TCP, so the router sends it over TCP route to the same next hop
+     * and the response comes back over the same connection.
+     */
+    public BaseSipMessage buildStreamTransportMessage(final BaseSipMessage msg) {
+        final int maxDatagramSize = context.getConfig().getMaxDatagramRequestSize();
+
+        BaseSipMessage retValue = null;
+        if (maxDatagramSize > 0 && msg instanceof Request && !msg.isReceived()) {
+            final List<Via> vias = msg.getVias();
+            final boolean datagramVia = !vias.isEmpty() && vias.get(0).getProtocol() == Protocol.UDP;
+
+            if (datagramVia && getMessageContentProvider().getByteContent(msg).length > maxDatagramSize) {
+                final BaseSipMessage.Builder builder = msg.getBuilder();
+                builder.getVias().iterator().next().protocol(Protocol.TCP);
+                retValue = builder.build();
+            }
+        }
+        return retValue;
+    }
+
+    public int getOutboundFlowTimer(final BaseSipMessage msg) {
+        if (!(msg instanceof Response) || MessageType.parse(msg.getMethod()) != MessageType.SIP_REGISTER ||
+                ((Response) msg).getStatusCode() / 100 != 2) {
+            return -1;
+        }
+
+        final boolean outbound = contains(msg.getRequire(), OUTBOUND) || contains(msg.getSupported(), OUTBOUND);
+        if (!outbound || !hasRegIdContact(msg)) {
+            return -1;
+        }
+
+        int retValue = 0;
+        final List<String> flowTimers = msg.getCustomHeader(FLOW_TIMER);
+        if (!flowTimers.isEmpty()) {
+            final String flowTimer = flowTimers.get(0);
+            try {
+                retValue = Math.max(0, Integer.parseInt(flowTimer.trim()));
+            }
+            catch (NumberFormatException e) {
+                Logger.log(Logger.Tag.WARNING, "Wrong Flow-Timer: " + flowTimer);
+            }
+        }
+        return retValue;
+    }
+
+    private static boolean contains(final Collection<String> optionTags, final String optionTag) {
+        if (optionTags != null) {
+            for (String value : optionTags) {
+                if (optionTag.equalsIgnoreCase(value.trim())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasRegIdContact(final BaseSipMessage msg) {
+        final ContactsList contacts = msg.getContacts();
+        if (contacts != null) {
+            for (UriHeader contact : contacts.getContactsList()) {
+                final ParamList params = contact.getParamsList();
+                if (params != null && params.containsKey(REG_ID_PARAM)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     public int getMessageRate() {
         return 30;
     }
@@ -42,13 +42,10 @@
 package javax.microedition.ims;
 
 import javax.microedition.ims.common.Logger;
-import javax.microedition.ims.common.sip.HeaderMessagePart;
-import javax.microedition.ims.common.util.SIPUtil;
 import javax.microedition.ims.messages.parser.message.MessageParser;
 import javax.microedition.ims.messages.wrappers.sip.BaseSipMessage;
 import javax.microedition.ims.transport.MessageReader;
 import javax.microedition.ims.transport.impl.SipBufferOverflowException;
-import javax.microedition.ims.transport.impl.Utils;
 import java.util.Arrays;
 import java.util.List;
 import java.io.*;
@@ -66,276 +63,75 @@ class SipMessageReader implements MessageReader<BaseSipMessage> {
     //private static final int MAX_SIP_BUFFER_SIZE = 1300;
 
     private final AtomicReference<MessageReceiver<BaseSipMessage>> messageReceiver = new AtomicReference<MessageReceiver<BaseSipMessage>>(null);
-    private ByteArrayOutputStream leftOversBuff = new ByteArrayOutputStream(64 * 1024);
-
-    private HeaderMessagePart lastRedMsgHeaderPart = null;
-    private Integer neededTrafficSize = null;
-
-    private ByteArrayOutputStream compressedMessageCache = new ByteArrayOutputStream(64 * 1024);
-    private int skipBytesCount;
-    private boolean analyzeFisrtByte;
-
-    public SipMessageReader() {
+    //reader is fed under own monitor, so private parser instance is never shared between channels
+    private final MessageParser messageParser = new MessageParser(true);
+    //stream mode (TCP, TLS) parses every byte once keeping parser state between parts,
+    //otherwise (UDP) every part is a datagram carrying exactly one message
+    private final boolean streamParsing;
+
+    public SipMessageReader(final boolean streamParsing) {
+        this.streamParsing = streamParsing;
     }
 
     public void setMessageReceiver(final MessageReceiver<BaseSipMessage> messageReceiver) {
         this.messageReceiver.set(messageReceiver);
     }
 
-    public synchronized void feedPart(byte[] trafficPartBytes) throws IOException {
-        final int currentDataSize = leftOversBuff.size() + trafficPartBytes.length;
-        if (currentDataSize > MAX_SIP_BUFFER_SIZE) {
-            String errMsg = "Sip buffer overfow detected. Buffer size = " +
-                    MAX_SIP_BUFFER_SIZE + " current data size = " + currentDataSize;
-
-            Logger.log(Logger.Tag.WARNING, errMsg);
-            Logger.log(Logger.Tag.WARNING, "Skipped data: " + new String(leftOversBuff.toByteArray()));
-
-            final HeaderMessagePart lastRedMsgHeaderPartLocal = lastRedMsgHeaderPart;
-            leftOversBuff = new ByteArrayOutputStream(64 * 1024);
-            lastRedMsgHeaderPart = null;
-            neededTrafficSize = null;
-
-            if (lastRedMsgHeaderPartLocal != null) {
-                throw new SipBufferOverflowException(lastRedMsgHeaderPartLocal.getBytes());
-            }
-        }
-        else {
-            doFeedPart(trafficPartBytes);
-        }
+    public void feedPart(byte[] trafficPartBytes) throws IOException {
+        feedPart(trafficPartBytes, 0, trafficPartBytes.length);
     }
 
-    public void feedCompressedPart(byte[] part, boolean isStream) throws IOException {
-        Logger.log("received compressed data: " + part.length + " bytes " + new String(part));
-        //StringBuilder sb = new StringBuilder();
-        if (isStream) {
-            for (int i = 0; i < part.length; i++) {
-                //sb.append( (i % 40 == 0)? "\n" : "").append(" "+(int)part[i]);
-                compressedMessageCache.write(part[i]);
-                if (analyzeFisrtByte) {
-                    analyzeFisrtByte = false;
-                    if (part[i] > 0 && part[i + 1] < 128) {
-                        skipBytesCount = part[i] + 1; //2 for 0xff and next char
-                    }
-                    else if (part[i] == -1) { //end of message
-                        decompressAndParse(compressedMessageCache, true);
-                    }
-                }
-
-                skipBytesCount--;
-
-            }
-            //Logger.log(sb.toString());
+    public synchronized void feedPart(final byte[] part, final int offset, final int length) throws IOException {
+        if (streamParsing) {
+            doFeedStreamPart(part, offset, length);
         }
         else {
-            compressedMessageCache.write(part, 0, part.length);
-            compressedMessageCache.flush();
-            //parseMessage(decompressed);
-            //compressedMessageCache.reset();
+            //datagram is parsed on its own, so missing Content-Length or truncated body never affects the next one
+            parseMessage(Arrays.copyOfRange(part, offset, offset + length));
         }
-
-    }
-
-    private void decompressAndParse(ByteArrayOutputStream compressedMessageCache, boolean isStream) throws IOException {
-        compressedMessageCache.flush();
-        byte[] compressed = compressedMessageCache.toByteArray();
-        compressedMessageCache.reset();
-        //feedPart(decompressed);
     }
 
-    private void doFeedPart(byte[] trafficPartBytes) throws IOException {
-
-        //service variables. merely pointer in byte array of meassage we try to read out
-        int prevMsgEndIndex = -1;
-        int currBodyIndex = -1;
-
-        resetIfCorruptedStreamDetected(trafficPartBytes);
-
-        //all incoming traffic we add to buffer of previously recieved parts
-        leftOversBuff.write(trafficPartBytes);
-
-        //if we know traffic size for current message (and we do know it after we red header part of message) we
-        //can wait and do not do further processing till traffic buffer will grow to at least awaited value.
-        //traffic buffer growth by code line above
-        if (neededTrafficSize == null || leftOversBuff.size() >= neededTrafficSize) {
-
-            //if we have traffic buffer of enough size or we just don't know this size (e.g. just started to read new message)
-            //we take all bytes from buffer and try to process them in furtehr code
-            trafficPartBytes = leftOversBuff.toByteArray();
-
-            //SIP message headers and their bodies separated by double SIP_TERMINATOR sequence.
-            //SIP_TERMINATOR = \r\n = 0x0d 0x0a, double SIP_TERMINATOR = \r\n\r\n.
-            //We use this property of SIP stream to separate SIP message header from bodies.
-            //So we try to find sequence \r\n\r\n in traffic buffer in case we trying to read new message,
-            //or just use index of header end calculated in previous iteration
-            //So, currBodyIndex mean begining of message body.
-            currBodyIndex = lastRedMsgHeaderPart == null ?
-                    Utils.indexOf(
-                            trafficPartBytes,
-                            SIPUtil.BODY_TERMINATOR_BYTES,
-                            prevMsgEndIndex > 0 ? prevMsgEndIndex : 0
-                    ) :
-                    lastRedMsgHeaderPart.getEndIndex() + 1;
-
-            //if do found SIP_TERMINATOR sequence we clear traffic buffer and will completely process accumulated bytes
-            // in code below
-            if (currBodyIndex >= 0) {
-                leftOversBuff.reset();
-            }
-
-            //in common case traffic buffer can contain only part of single message, one complete message and part
-            //of next message or even multiple messages.
-            //So we have do next processing in loop
-            while (currBodyIndex > 0) {
-
-                assert currBodyIndex > prevMsgEndIndex : "sip stream failure";
-
-                //here we try to extract message header part in case we are reading new message
-                if (lastRedMsgHeaderPart == null) {
-                    byte[] msgHeaderTrafficPartBytes = new byte[currBodyIndex - prevMsgEndIndex - 1];
-                    System.arraycopy(trafficPartBytes, prevMsgEndIndex + 1, msgHeaderTrafficPartBytes, 0, msgHeaderTrafficPartBytes.length);
-                    //here we can extraxt message header part or null is SIP_MARKER was not found in bytes array
-                    lastRedMsgHeaderPart = SIPUtil.extractMsgHeaderPart(msgHeaderTrafficPartBytes);
-
-                    //calculate how many bytes must contain traffic buffer to allow us to read complete message.
-                    //If at current time byte buffer doesn't contain enough bytes we will accumulate them till we have enough.
-                    //this we can calculate only if have managed to read message header above
-                    neededTrafficSize = lastRedMsgHeaderPart == null ?
-                            null :
-                            prevMsgEndIndex +
-                                    lastRedMsgHeaderPart.getStartIndex() +
-                                    1 +
-                                    lastRedMsgHeaderPart.getEntireMessageLength();
-                }
-
-                //this block tries to read out whole message including header, body and header/body separator (BODY-SEPARATOR)
-                if (neededTrafficSize == null || neededTrafficSize <= trafficPartBytes.length) {
-
-                    //we can read the whole message only if we were able to read message header above
-                    if (lastRedMsgHeaderPart != null) {
-                        byte[] completeMsgBytes = extractCompleteMsg(trafficPartBytes, prevMsgEndIndex, lastRedMsgHeaderPart);
-                        assert completeMsgBytes.length == lastRedMsgHeaderPart.getEntireMessageLength() : "Illegal SIP stream state";
-
-                        //throw new SipBufferOverflowException(lastRedMsgHeaderPart.getBytes());
-                        parseMessage(completeMsgBytes);
-                    }
+    private void doFeedStreamPart(final byte[] part, final int offset, final int length) throws IOException {
+        final int currentDataSize = messageParser.getStreamedSize() + length;
+        if (currentDataSize > MAX_SIP_BUFFER_SIZE) {
+            String errMsg = "Sip buffer overfow detected. Buffer size = " +
+                    MAX_SIP_BUFFER_SIZE + " current data size = " + currentDataSize;
 
-                    //here we move END_OF_PREVIOUS_MESSAGE marker to the new position
-                    prevMsgEndIndex = lastRedMsgHeaderPart == null ?
-                            currBodyIndex - 1 + SIPUtil.BODY_TERMINATOR_BYTES.length :
-                            prevMsgEndIndex + lastRedMsgHeaderPart.getEntireMessageLength() + lastRedMsgHeaderPart.getStartIndex();
+            Logger.log(Logger.Tag.WARNING, errMsg);
 
-                    //try to find new message separator
-                    currBodyIndex = Utils.indexOf(trafficPartBytes, SIPUtil.BODY_TERMINATOR_BYTES, prevMsgEndIndex > 0 ? prevMsgEndIndex : 0);
+            final byte[] streamedHeaders = messageParser.getStreamedHeaders();
+            messageParser.resetStream();
 
-                    //clear state of previous message
-                    neededTrafficSize = null;
-                    lastRedMsgHeaderPart = null;
-                }
-                else {
-                    break;
-                }
+            if (streamedHeaders != null) {
+                throw new SipBufferOverflowException(streamedHeaders);
             }
-            processLeftOvers(trafficPartBytes, prevMsgEndIndex);
         }
-    }
-
-    /*
-    The purpose of this method is to detect a corrupted stream of bytes.
-    For example when we in a state awaiting next chunk of bytes to complete current message,
-    and this chunk contains a new message. In this case we have no chance to complete current message,
-    so we need to reset all buffers and counters and behave as if just started to recive bytes for a completely new message
-     */
-    private void resetIfCorruptedStreamDetected(byte[] trafficPartBytes) {
-        //this means we are in the middle of reading something
-        if (neededTrafficSize != null) {
-
-            //try to find marker of a new sip message
-            int i = Utils.indexOf(
-                    trafficPartBytes,
-                    SIPUtil.BODY_TERMINATOR_BYTES,
-                    0
-            );
-
-            //if we probably find new message we need to make further investigation to extract headers and so on.
-            if (i > 0) {
-                HeaderMessagePart messagePart = SIPUtil.extractMsgHeaderPart(trafficPartBytes);
-
-                //at this point we can say for sure we detected new message in a stream.
-                if (messagePart != null) {
-                    //here we check if this new message lays in rage of awaited bytes to complete current message
-                    int awaitedBytesSize = neededTrafficSize - leftOversBuff.size();
-
-                    //if so we need to reset state of reader.
-                    if (messagePart.getStartIndex() <= awaitedBytesSize) {
-                        Logger.log(Logger.Tag.WARNING, "Corrupted stream detected.");
-                        Logger.log(Logger.Tag.WARNING, "Buffer will be discarded:");
-                        Logger.log(Logger.Tag.WARNING, leftOversBuff.toString());
-
-                        neededTrafficSize = null;
-                        lastRedMsgHeaderPart = null;
-                        leftOversBuff.reset();
-                    }
-                }
-            }
-        }
-    }
-
-    private void processLeftOvers(byte[] trafficPartBytes, int prevMsgEndIndex) throws IOException {
-        //at some point we can't find more BODY_SEPARATOR's. Than we must check if tehre left some unprocessed bytes
-        //and if so we have to save them for further processing together with next bytes chunk
-        //here we calculate leftovers size
-        final int leftOversSize = trafficPartBytes.length - 1 - prevMsgEndIndex;
-
-        //leftOversBuff.size() == 0 means that at some point above we found BODY_SEPARATOR and
-        //some processing of incoming bytes were undertaken. That means in turn we have to take care about byte leftovers.
-        //If leftOversBuff.size() != 0 that means not BODY_SEPARATORs were found and leftOversBuffer
-        //already contains all unprocessed bytes and we have no need to take special care obout them.
-        if (leftOversBuff.size() == 0 && leftOversSize > 0) {
-            byte[] currLeftOvers = new byte[leftOversSize];
-            System.arraycopy(trafficPartBytes, prevMsgEndIndex + 1, currLeftOvers, 0, currLeftOvers.length);
-            leftOversBuff.write(currLeftOvers);
-
-            //as soon as we cut of some bytes we need to lessen awaited bytes amount by the same value
-            if (neededTrafficSize != null) {
-                neededTrafficSize = neededTrafficSize - (trafficPartBytes.length - currLeftOvers.length);
+        else {
+            for (BaseSipMessage incomingMsg : messageParser.feed(part, offset, length)) {
+                deliverMessage(incomingMsg);
             }
         }
     }
 
-    private byte[] extractCompleteMsg(
-            final byte[] byteTrafficPart,
-            final int prevMsgEndIndex,
-            final HeaderMessagePart headerPart) {
-
-        byte[] retValue =
-                new byte[headerPart.getEntireMessageLength()];
-
-        System.arraycopy(
-                byteTrafficPart,
-                prevMsgEndIndex + headerPart.getStartIndex() + 1,
-                retValue,
-                0,
-                retValue.length
-        );
-        return retValue;
-    }
-
     private BaseSipMessage parseMessage(final byte[] data) throws IOException {
 
         //Logger.log("Message to be parsed: " + new String(data));
-        BaseSipMessage incomingMsg = MessageParser.parse(data);
+        BaseSipMessage incomingMsg = messageParser.parseMessage(data);
         assert incomingMsg != null : "Ragel failure for :" + new String(data);
 
         if (incomingMsg != null) {
-            final MessageReceiver<BaseSipMessage> receiver = messageReceiver.get();
-            if (receiver != null) {
-                receiver.onMessage(incomingMsg);
-            }
+            deliverMessage(incomingMsg);
         }
         return incomingMsg;
     }
 
+    private void deliverMessage(final BaseSipMessage incomingMsg) throws IOException {
+        final MessageReceiver<BaseSipMessage> receiver = messageReceiver.get();
+        if (receiver != null) {
+            receiver.onMessage(incomingMsg);
+        }
+    }
+
     static String msg = "SIP/2.0 401 Unauthorized\r\n" +
             "To: \r\n" +
             "Call-ID: \r\n" +
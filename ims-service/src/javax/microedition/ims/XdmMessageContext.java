@@ -50,6 +50,7 @@ import javax.microedition.ims.core.xdm.XDMMessage;
 import javax.microedition.ims.transport.MessageContentProvider;
 import javax.microedition.ims.transport.MessageReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -58,6 +59,17 @@ import java.util.concurrent.TimeUnit;
  * Time: 15:41:14
  */
 public class XdmMessageContext extends DefaultMessageContext<XDMMessage> {
+    private static final MessageReader<XDMMessage> NO_OP_READER = new MessageReader<XDMMessage>() {
+        public void setMessageReceiver(MessageReceiver<XDMMessage> messageResolver) {
+        }
+
+        public void feedPart(byte[] part) throws IOException {
+        }
+
+        public void feedPart(byte[] part, int offset, int length) throws IOException {
+        }
+    };
+
     //private final StackContext context;
 
     public XdmMessageContext(final StackContext context) {
@@ -73,15 +85,9 @@ public class XdmMessageContext extends DefaultMessageContext<XDMMessage> {
                         assert false : "Shouldn't call this metjhod for this message";
                         return null;
                     }
-                },
-                new MessageReader<XDMMessage>() {
-                    public void setMessageReceiver(MessageReceiver<XDMMessage> messageResolver) {
-                    }
 
-                    public void feedPart(byte[] part) throws IOException {
-                    }
-
-                    public void feedCompressedPart(byte[] part, boolean isStream) throws IOException {
+                    public void writeByteContent(XDMMessage msg, ByteBuffer target) {
+                        assert false : "Shouldn't call this metjhod for this message";
                     }
                 },
                 new DummyXDMMessage()
@@ -89,6 +95,11 @@ public class XdmMessageContext extends DefaultMessageContext<XDMMessage> {
         //this.context = context;
     }
 
+
+    public MessageReader<XDMMessage> createMessageReader(final boolean stream) {
+        return NO_OP_READER;
+    }
+
     
     public int getMessageRate() {
         return 30;
@@ -94,6 +94,7 @@ import javax.microedition.ims.core.connection.ConnectionSecurityInfoProviderImpl
 import javax.microedition.ims.core.connection.GsmLocationServiceDefaultImpl;
 import javax.microedition.ims.core.env.ConnectionManager;
 import javax.microedition.ims.core.env.DefaultScheduledService;
+import javax.microedition.ims.core.env.TimingWheelScheduledService;
 import javax.microedition.ims.core.env.Environment;
 import javax.microedition.ims.core.env.EnvironmentDefaultImpl;
 import javax.microedition.ims.core.messagerouter.MessageRouterComposite;
@@ -195,7 +196,23 @@ public class ConnectorService extends Service implements UncaughtExceptionHandle
 
                 alarmReceiverHolder.set(alarmScheduledService);
 
-                scheduledService = alarmScheduledService;
+                //SIP transaction timers (at most 64*T1) run on the timing wheel and keep the device awake while
+                //pending, longer ones and keep-alive must wake the device
+                final PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+                final WakeLock wheelWakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, TAG + ".wheel");
+                scheduledService = new TimingWheelScheduledService(
+                        alarmScheduledService,
+                        RepetitiousTaskManager.TRANSACTION_TIMEOUT_INTERVAL,
+                        new TimingWheelScheduledService.ActivityListener() {
+                            public void onBusy() {
+                                wheelWakeLock.acquire();
+                            }
+
+                            public void onIdle() {
+                                wheelWakeLock.release();
+                            }
+                        }
+                );
             }
 
 
@@ -88,6 +88,13 @@ public class AndroidConfiguration implements Configuration,
     public static final String SIP_REGISTER_PROTOCOL_TYPE = "sip_registrar_protocol_type";
     public static final String SIP_GLOBAL_IP_DISCOVERY = "sip_global_ip_discovery";
     public static final String SIP_DNS_LOOKUP = "sip_dns_lookup";
+    public static final String SIP_COMPACT_HEADERS = "sip_compact_headers";
+    public static final String SIP_NIO_TRANSPORT = "sip_nio_transport";
+    public static final String SIP_WRITE_COALESCING_MILLIS = "sip_write_coalescing_millis";
+    public static final String SIP_SIGCOMP = "sip_sigcomp";
+    public static final String SIP_MAX_DATAGRAM_REQUEST_SIZE = "sip_max_datagram_request_size";
+    public static final String SIP_TLS_SESSION_LIFETIME = "sip_tls_session_lifetime";
+    public static final String SIP_FLOW_KEEP_ALIVE = "sip_flow_keep_alive";
 
     public static final String SIP_AUTH_TYPE = "sip_auth_type";
     public static final String SIP_AUTH_USERNAME_SCHEMA = "sip_auth_username_schema";
@@ -286,6 +293,44 @@ public class AndroidConfiguration implements Configuration,
         return getBooleanSettingValue(SIP_DNS_LOOKUP, R.string.def_dns_lookup);
     }
 
+    @Override
+    public boolean useCompactHeaders() {
+        return getBooleanSettingValue(SIP_COMPACT_HEADERS, R.string.def_compact_headers);
+    }
+
+    @Override
+    public boolean useNioTransport() {
+        return getBooleanSettingValue(SIP_NIO_TRANSPORT, R.string.def_nio_transport);
+    }
+
+    @Override
+    public int getWriteCoalescingMillis() {
+        return Integer.parseInt(getStringSettingValue(SIP_WRITE_COALESCING_MILLIS,
+                R.string.def_write_coalescing_millis));
+    }
+
+    @Override
+    public boolean useSigComp() {
+        return getBooleanSettingValue(SIP_SIGCOMP, R.string.def_sigcomp);
+    }
+
+    @Override
+    public int getMaxDatagramRequestSize() {
+        return Integer.parseInt(getStringSettingValue(SIP_MAX_DATAGRAM_REQUEST_SIZE,
+                R.string.def_max_datagram_request_size));
+    }
+
+    @Override
+    public int getTlsSessionLifetime() {
+        return Integer.parseInt(getStringSettingValue(SIP_TLS_SESSION_LIFETIME,
+                R.string.def_tls_session_lifetime));
+    }
+
+    @Override
+    public boolean useFlowKeepAlive() {
+        return getBooleanSettingValue(SIP_FLOW_KEEP_ALIVE, R.string.def_flow_keep_alive);
+    }
+
     public boolean useResourceReservation() {
         return getBooleanSettingValue(SIP_USE_RESOURCE_RESERVATION,
                 R.string.def_use_resource_reservation);
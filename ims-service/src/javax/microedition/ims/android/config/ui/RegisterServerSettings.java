@@ -50,8 +50,15 @@ import javax.microedition.ims.android.config.AndroidConfiguration;
 import javax.microedition.ims.android.config.ConfigurationChangeListener;
 import javax.microedition.ims.config.UserInfo;
 
+import static javax.microedition.ims.android.config.AndroidConfiguration.SIP_COMPACT_HEADERS;
 import static javax.microedition.ims.android.config.AndroidConfiguration.SIP_DNS_LOOKUP;
+import static javax.microedition.ims.android.config.AndroidConfiguration.SIP_FLOW_KEEP_ALIVE;
 import static javax.microedition.ims.android.config.AndroidConfiguration.SIP_GLOBAL_IP_DISCOVERY;
+import static javax.microedition.ims.android.config.AndroidConfiguration.SIP_NIO_TRANSPORT;
+import static javax.microedition.ims.android.config.AndroidConfiguration.SIP_MAX_DATAGRAM_REQUEST_SIZE;
+import static javax.microedition.ims.android.config.AndroidConfiguration.SIP_SIGCOMP;
+import static javax.microedition.ims.android.config.AndroidConfiguration.SIP_TLS_SESSION_LIFETIME;
+import static javax.microedition.ims.android.config.AndroidConfiguration.SIP_WRITE_COALESCING_MILLIS;
 
 /**
  * This class represent configuration for register server.
@@ -88,6 +95,13 @@ public class RegisterServerSettings extends PreferenceActivity implements Config
         initConnectionTypeControl();
         initDNSLookup();
         initGlobalIpDiscovery();
+        initCompactHeaders();
+        initNioTransport();
+        initWriteCoalescing();
+        initSigComp();
+        initMaxDatagramRequestSize();
+        initTlsSessionLifetime();
+        initFlowKeepAlive();
     }
 
     private void initHostControl() {
@@ -133,6 +147,41 @@ public class RegisterServerSettings extends PreferenceActivity implements Config
         preference.setSummary(Boolean.toString(configuration.useDNSLookup()));
     }
 
+    private void initCompactHeaders() {
+        Preference preference = findPreference(SIP_COMPACT_HEADERS);
+        preference.setSummary(Boolean.toString(configuration.useCompactHeaders()));
+    }
+
+    private void initNioTransport() {
+        Preference preference = findPreference(SIP_NIO_TRANSPORT);
+        preference.setSummary(Boolean.toString(configuration.useNioTransport()));
+    }
+
+    private void initWriteCoalescing() {
+        Preference preference = findPreference(SIP_WRITE_COALESCING_MILLIS);
+        preference.setSummary(String.valueOf(configuration.getWriteCoalescingMillis()));
+    }
+
+    private void initSigComp() {
+        Preference preference = findPreference(SIP_SIGCOMP);
+        preference.setSummary(Boolean.toString(configuration.useSigComp()));
+    }
+
+    private void initMaxDatagramRequestSize() {
+        Preference preference = findPreference(SIP_MAX_DATAGRAM_REQUEST_SIZE);
+        preference.setSummary(String.valueOf(configuration.getMaxDatagramRequestSize()));
+    }
+
+    private void initTlsSessionLifetime() {
+        Preference preference = findPreference(SIP_TLS_SESSION_LIFETIME);
+        preference.setSummary(String.valueOf(configuration.getTlsSessionLifetime()));
+    }
+
+    private void initFlowKeepAlive() {
+        Preference preference = findPreference(SIP_FLOW_KEEP_ALIVE);
+        preference.setSummary(Boolean.toString(configuration.useFlowKeepAlive()));
+    }
+
     private void initGlobalIpDiscovery() {
         Preference preference = findPreference(SIP_GLOBAL_IP_DISCOVERY);
         preference.setSummary(Boolean.toString(configuration.globalIpDiscovery()));
@@ -155,6 +204,20 @@ public class RegisterServerSettings extends PreferenceActivity implements Config
             initDNSLookup();
         } else if (AndroidConfiguration.SIP_GLOBAL_IP_DISCOVERY.equals(key)) {
             initGlobalIpDiscovery();
+        } else if (AndroidConfiguration.SIP_COMPACT_HEADERS.equals(key)) {
+            initCompactHeaders();
+        } else if (AndroidConfiguration.SIP_NIO_TRANSPORT.equals(key)) {
+            initNioTransport();
+        } else if (AndroidConfiguration.SIP_WRITE_COALESCING_MILLIS.equals(key)) {
+            initWriteCoalescing();
+        } else if (AndroidConfiguration.SIP_SIGCOMP.equals(key)) {
+            initSigComp();
+        } else if (AndroidConfiguration.SIP_MAX_DATAGRAM_REQUEST_SIZE.equals(key)) {
+            initMaxDatagramRequestSize();
+        } else if (AndroidConfiguration.SIP_TLS_SESSION_LIFETIME.equals(key)) {
+            initTlsSessionLifetime();
+        } else if (AndroidConfiguration.SIP_FLOW_KEEP_ALIVE.equals(key)) {
+            initFlowKeepAlive();
         } else if (AndroidConfiguration.SIP_PREFERRED_IDENTITY.equals(key)) {
             initUserPreferredIdentityControl();
         } else {
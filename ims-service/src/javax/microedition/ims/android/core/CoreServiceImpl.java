@@ -228,7 +228,7 @@ public class CoreServiceImpl extends ICoreService.Stub implements
                                             final String toUser) {
         ISession iSession = null;
 
-        if(!TextUtils.isEmpty(fromUser) && SipUriParser.parseUri(fromUser) == null) {
+        if(!TextUtils.isEmpty(fromUser) && SipUriParser.parse(fromUser) == null) {
             throw new IllegalArgumentException(
                     String.format("Wrong fromUser = '%s' parameter", fromUser)
             );
@@ -495,7 +495,7 @@ public class CoreServiceImpl extends ICoreService.Stub implements
         ISubscription subscription = null;
 
         try {
-            if (!TextUtils.isEmpty(fromUser) && SipUriParser.parseUri(fromUser) == null) {
+            if (!TextUtils.isEmpty(fromUser) && SipUriParser.parse(fromUser) == null) {
                     throw new IllegalArgumentException(String.format(
                             "Wrong from = '%s' parameter", fromUser));
             }
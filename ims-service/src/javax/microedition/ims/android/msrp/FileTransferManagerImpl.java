@@ -300,8 +300,7 @@ public class FileTransferManagerImpl extends IFileTransferManager.Stub {
         public void onBytesReceived(
                 final FileDescriptor fileDescriptor,
                 final long bytesTransferred,
-                final long bytesTotal,
-                final byte[] data) {
+                final long bytesTotal) {
 
             Logger.log(TAG, "MSRPFileReceivingListeners.onBytesReceived#started");
 
@@ -72,6 +72,13 @@ public final class BaseConfiguration implements Configuration {
     private final boolean useRPort;
     private final boolean forceSrtp;
     private final boolean useDnsLookup;
+    private final boolean useCompactHeaders;
+    private final boolean useNioTransport;
+    private final int writeCoalescingMillis;
+    private final boolean useSigComp;
+    private final int maxDatagramRequestSize;
+    private final int tlsSessionLifetime;
+    private final boolean useFlowKeepAlive;
     private final boolean useResourceReservation;
     private final long registrationExpirationSeconds;
     private final long subscriptionExpirationSeconds;
@@ -172,6 +179,13 @@ public final class BaseConfiguration implements Configuration {
         this.useRPort = builder.useRPort;
         this.forceSrtp = builder.forceSrtp;
         this.useDnsLookup = builder.useDNSLookup;
+        this.useCompactHeaders = builder.useCompactHeaders;
+        this.useNioTransport = builder.useNioTransport;
+        this.writeCoalescingMillis = builder.writeCoalescingMillis;
+        this.useSigComp = builder.useSigComp;
+        this.maxDatagramRequestSize = builder.maxDatagramRequestSize;
+        this.tlsSessionLifetime = builder.tlsSessionLifetime;
+        this.useFlowKeepAlive = builder.useFlowKeepAlive;
         this.useResourceReservation = builder.useResourceReservation;
         this.globalIpDiscovery = builder.globalIpDiscovery;
 
@@ -269,6 +283,13 @@ public final class BaseConfiguration implements Configuration {
         private boolean useRPort;
         private boolean forceSrtp;
         private boolean useDNSLookup;
+        private boolean useCompactHeaders;
+        private boolean useNioTransport;
+        private int writeCoalescingMillis;
+        //RFC 3261 18.1.1 limit for unknown path MTU
+        private int maxDatagramRequestSize = 1300;
+        private int tlsSessionLifetime = 12 * 60 * 60;
+        private boolean useFlowKeepAlive;
         private boolean useResourceReservation;
         private long registrationExpirationSeconds;
         private long subscriptionExpirationSeconds;
@@ -316,6 +337,13 @@ public final class BaseConfiguration implements Configuration {
             buildUseRPort(configuration.useRPort());
             //buildForceSrtp(configuration.forceSrtp());
             buildUseDNSLookup(configuration.useDNSLookup());
+            buildUseCompactHeaders(configuration.useCompactHeaders());
+            buildUseNioTransport(configuration.useNioTransport());
+            buildWriteCoalescingMillis(configuration.getWriteCoalescingMillis());
+            buildUseSigComp(configuration.useSigComp());
+            buildMaxDatagramRequestSize(configuration.getMaxDatagramRequestSize());
+            buildTlsSessionLifetime(configuration.getTlsSessionLifetime());
+            buildUseFlowKeepAlive(configuration.useFlowKeepAlive());
             buildUseResourceReservation(configuration.useResourceReservation());
             buildRegistrationExpirationSeconds(configuration
                     .getRegistrationExpirationSeconds());
@@ -427,6 +455,41 @@ public final class BaseConfiguration implements Configuration {
             this.useDNSLookup = useDNSLookup;
             return this;
         }
+
+        public ConfigurationBuilder buildUseCompactHeaders(final boolean useCompactHeaders) {
+            this.useCompactHeaders = useCompactHeaders;
+            return this;
+        }
+
+        public ConfigurationBuilder buildUseNioTransport(final boolean useNioTransport) {
+            this.useNioTransport = useNioTransport;
+            return this;
+        }
+
+        public ConfigurationBuilder buildWriteCoalescingMillis(final int writeCoalescingMillis) {
+            this.writeCoalescingMillis = writeCoalescingMillis;
+            return this;
+        }
+
+        public ConfigurationBuilder buildUseSigComp(final boolean useSigComp) {
+            this.useSigComp = useSigComp;
+            return this;
+        }
+
+        public ConfigurationBuilder buildMaxDatagramRequestSize(final int maxDatagramRequestSize) {
+            this.maxDatagramRequestSize = maxDatagramRequestSize;
+            return this;
+        }
+
+        public ConfigurationBuilder buildTlsSessionLifetime(final int tlsSessionLifetime) {
+            this.tlsSessionLifetime = tlsSessionLifetime;
+            return this;
+        }
+
+        public ConfigurationBuilder buildUseFlowKeepAlive(final boolean useFlowKeepAlive) {
+            this.useFlowKeepAlive = useFlowKeepAlive;
+            return this;
+        }
         
         public ConfigurationBuilder buildUseResourceReservation(
                 boolean useResourceReservation) {
@@ -731,6 +794,41 @@ public final class BaseConfiguration implements Configuration {
         return useDnsLookup;
     }
 
+    @Override
+    public boolean useCompactHeaders() {
+        return useCompactHeaders;
+    }
+
+    @Override
+    public boolean useNioTransport() {
+        return useNioTransport;
+    }
+
+    @Override
+    public int getWriteCoalescingMillis() {
+        return writeCoalescingMillis;
+    }
+
+    @Override
+    public boolean useSigComp() {
+        return useSigComp;
+    }
+
+    @Override
+    public int getMaxDatagramRequestSize() {
+        return maxDatagramRequestSize;
+    }
+
+    @Override
+    public int getTlsSessionLifetime() {
+        return tlsSessionLifetime;
+    }
+
+    @Override
+    public boolean useFlowKeepAlive() {
+        return useFlowKeepAlive;
+    }
+
     public DtmfPayloadType getDtmfPayload() {
         return dtmfPayload;
     }
@@ -749,6 +847,13 @@ public final class BaseConfiguration implements Configuration {
                 + ", maxForwards=" + maxForwards + ", useRPort=" + useRPort + ", forceSrtp="
                 + forceSrtp + ", useResourceReservation=" + useResourceReservation
                 + ", useDNSLookup="+useDnsLookup
+                + ", useCompactHeaders=" + useCompactHeaders
+                + ", useNioTransport=" + useNioTransport
+                + ", writeCoalescingMillis=" + writeCoalescingMillis
+                + ", useSigComp=" + useSigComp
+                + ", maxDatagramRequestSize=" + maxDatagramRequestSize
+                + ", tlsSessionLifetime=" + tlsSessionLifetime
+                + ", useFlowKeepAlive=" + useFlowKeepAlive
                 + ", registrationExpirationSeconds=" + registrationExpirationSeconds
                 + ", subscriptionExpirationSeconds=" + subscriptionExpirationSeconds
                 + ", publicationExpirationSeconds=" + publicationExpirationSeconds
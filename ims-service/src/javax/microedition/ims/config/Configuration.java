@@ -133,6 +133,41 @@ public interface Configuration {
 
     boolean useDNSLookup();
 
+    /**
+     * @return whether outgoing SIP messages are written with RFC 3261 compact header names
+     */
+    boolean useCompactHeaders();
+
+    /**
+     * @return whether TCP and UDP channels are served by shared selector loops instead of a thread per channel
+     */
+    boolean useNioTransport();
+
+    /**
+     * @return how long outgoing messages may wait to be sent together with following ones, in milliseconds
+     */
+    int getWriteCoalescingMillis();
+
+    /**
+     * @return whether SIP messages are compressed with SigComp (RFC 3320) where the next hop asks for comp=sigcomp
+     */
+    boolean useSigComp();
+
+    /**
+     * @return size in bytes above which requests routed to UDP are sent over TCP (RFC 3261 18.1.1), 0 disables it
+     */
+    int getMaxDatagramRequestSize();
+
+    /**
+     * @return seconds TLS session may be resumed for on reconnect, 0 disables resumption
+     */
+    int getTlsSessionLifetime();
+
+    /**
+     * @return whether outbound SIP flows are kept alive with RFC 5626 CRLF and STUN pings
+     */
+    boolean useFlowKeepAlive();
+
     Collection<String> getSpecialUris();
     
     DtmfPayloadType getDtmfPayload();
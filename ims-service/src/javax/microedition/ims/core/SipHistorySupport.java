@@ -59,7 +59,7 @@ public class SipHistorySupport implements HistorySupport<BaseSipMessage> {
             dialog.getMessageHistory().addMessage(msg, incomeMessage);
             Logger.log("SipHistorySupport", "income: " + incomeMessage + " content-type: " + msg.getContentType().getValue());
             if (incomeMessage) {
-                SdpMessage sdp = SipMessageUtils.getSdpFromMessage(msg);
+                SdpMessage sdp = SipMessageUtils.getSdpFromMessage(dialog, msg);
                 if (sdp != null) {
                     dialog.setIncomingSdpMessage(sdp);
                 }
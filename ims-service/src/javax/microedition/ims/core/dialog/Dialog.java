@@ -54,6 +54,7 @@ import javax.microedition.ims.core.registry.ClientRegistry;
 import javax.microedition.ims.core.registry.StackRegistry;
 import javax.microedition.ims.core.registry.property.CoreServiceProperty;
 import javax.microedition.ims.core.sipservice.refer.Refer;
+import javax.microedition.ims.core.transaction.PartitionResolver;
 import javax.microedition.ims.messages.MessageBuilderFactory;
 import javax.microedition.ims.messages.history.MessageAddedListener;
 import javax.microedition.ims.messages.history.MessageHistory;
@@ -117,6 +118,8 @@ public class Dialog implements IMSEntity, Shutdownable {
     private MessageHistory messageHistory = new MessageHistory();
     private final AtomicReference<SdpMessage> outgoingSdpMessage = new AtomicReference<SdpMessage>(null);
     private final AtomicReference<SdpMessage> incomingSdpMessage = new AtomicReference<SdpMessage>(null);
+    //last parsed incoming SDP body, session refresh re-INVITEs usually carry the same one
+    private final AtomicReference<SdpBody> lastIncomingSdpBody = new AtomicReference<SdpBody>(null);
 
     private final InitiateParty dialogType;
     private final AtomicReference<InitiateParty> reInviteInProgress = new AtomicReference<InitiateParty>(null);
@@ -277,6 +280,14 @@ public class Dialog implements IMSEntity, Shutdownable {
         return callId;
     }
 
+    /**
+     * All the transactions and service calls of the dialog run in the partition of its Call-ID.
+     */
+    @PartitionResolver
+    public Object getPartitionKey() {
+        return callId;
+    }
+
     public IMSID getIMSEntityId() {
         /* Object ret = null;
         if(imsEntityType == IMSEntityType.SIP) {
@@ -379,6 +390,23 @@ public class Dialog implements IMSEntity, Shutdownable {
         this.incomingSdpMessage.set(incomingSdpMessage);
     }
 
+    /**
+     * @param body - SDP body of incoming message
+     * @return copy of SDP previously parsed from the same body or null
+     */
+    public SdpMessage getParsedSdpMessage(final byte[] body) {
+        final SdpBody sdpBody = lastIncomingSdpBody.get();
+        //SdpMessage is mutable, so every caller gets own copy
+        return sdpBody != null && sdpBody.matches(body) ? new SdpMessage(sdpBody.sdp) : null;
+    }
+
+    /**
+     * Remembers copy of SDP parsed from the body, see {@link #getParsedSdpMessage(byte[])}.
+     */
+    public void putParsedSdpMessage(final byte[] body, final SdpMessage sdp) {
+        lastIncomingSdpBody.set(new SdpBody(body, new SdpMessage(sdp)));
+    }
+
     public String toString() {
         return "base = " + super.toString() + ", Dialog: " + callId;
     }
@@ -469,4 +497,20 @@ public class Dialog implements IMSEntity, Shutdownable {
 
         return clientData;
     }
+
+    private static final class SdpBody {
+        private final int hash;
+        private final byte[] body;
+        private final SdpMessage sdp;
+
+        private SdpBody(final byte[] body, final SdpMessage sdp) {
+            this.hash = Arrays.hashCode(body);
+            this.body = body.clone();
+            this.sdp = sdp;
+        }
+
+        private boolean matches(final byte[] otherBody) {
+            return hash == Arrays.hashCode(otherBody) && Arrays.equals(body, otherBody);
+        }
+    }
 }
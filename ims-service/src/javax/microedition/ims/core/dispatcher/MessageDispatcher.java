@@ -49,5 +49,11 @@ public interface MessageDispatcher<T> {
 
     void unregisterConsumer(final IMSEntity entity, final Consumer<T> consumer);
 
+    /**
+     * Binds transaction key to registered consumer. Message with the same key goes directly to the consumer.
+     * Binding is dropped on unregisterConsumer().
+     */
+    void indexConsumer(final Object transactionKey, final Consumer<T> consumer);
+
     DispatcherConsumer<T> getConsumer();
 }
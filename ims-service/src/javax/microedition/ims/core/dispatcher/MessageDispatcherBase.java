@@ -43,6 +43,7 @@ package javax.microedition.ims.core.dispatcher;
 
 import javax.microedition.ims.common.*;
 import javax.microedition.ims.core.IMSEntity;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -62,6 +63,10 @@ public abstract class MessageDispatcherBase<T extends IMSMessage> implements
     private final Map<Consumer<T>, Filter<T>> consumerFilterMap =
             Collections.synchronizedMap(new HashMap<Consumer<T>, Filter<T>>(10));
 
+    //transaction key index. Guarded by mutex. Filters are scanned only if message key is not indexed
+    private final Map<Object, List<Consumer<T>>> keyConsumersMap = new HashMap<Object, List<Consumer<T>>>(10);
+    private final Map<Consumer<T>, List<Object>> consumerKeysMap = new HashMap<Consumer<T>, List<Object>>(10);
+
     private final ConsumerRegistry<T> registry;
 
 
@@ -109,16 +114,109 @@ public abstract class MessageDispatcherBase<T extends IMSMessage> implements
         synchronized (mutex) {
             consumerFilterMap.remove(consumer);
             registry.unregisterConsumer(entity, consumer);
+            unindexConsumer(consumer);
         }
     }
 
+    
+    public void indexConsumer(final Object transactionKey, final Consumer<T> consumer) {
+        if (!done.get() && transactionKey != null) {
+            synchronized (mutex) {
+                //only registered consumers, so unregisterConsumer() always cleans the index up
+                if (consumerFilterMap.containsKey(consumer)) {
+                    List<Object> keys = consumerKeysMap.get(consumer);
+                    if (keys == null) {
+                        consumerKeysMap.put(consumer, keys = new ArrayList<Object>(2));
+                    }
+
+                    if (!keys.contains(transactionKey)) {
+                        keys.add(transactionKey);
+
+                        List<Consumer<T>> consumers = keyConsumersMap.get(transactionKey);
+                        if (consumers == null) {
+                            keyConsumersMap.put(transactionKey, consumers = new ArrayList<Consumer<T>>(1));
+                        }
+                        consumers.add(consumer);
+                    }
+                }
+            }
+        }
+    }
+
+    private void unindexConsumer(final Consumer<T> consumer) {
+        final List<Object> keys = consumerKeysMap.remove(consumer);
+
+        if (keys != null) {
+            for (Object key : keys) {
+                final List<Consumer<T>> consumers = keyConsumersMap.get(key);
+                if (consumers != null) {
+                    consumers.remove(consumer);
+                    if (consumers.size() == 0) {
+                        keyConsumersMap.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return transaction key of incoming message or null if message can be matched by filters only
+     */
+    protected Object getTransactionKey(T msg) {
+        return null;
+    }
+
     protected List<Consumer<T>> getFilteredConsumers(T msg) {
-        Map<Consumer<T>, Filter<T>> filterMap;
-        synchronized (mutex) {
-            filterMap = new HashMap<Consumer<T>, Filter<T>>(consumerFilterMap);
+        List<Consumer<T>> retValue = getIndexedConsumers(msg);
+
+        //fallback to scan of all entity consumers
+        if (retValue.size() == 0) {
+            Map<Consumer<T>, Filter<T>> filterMap;
+            synchronized (mutex) {
+                filterMap = new HashMap<Consumer<T>, Filter<T>>(consumerFilterMap);
+            }
+
+            retValue = registry.filterConsumersForMessage(msg, filterMap);
         }
 
-        return registry.filterConsumersForMessage(msg, filterMap);
+        return retValue;
+    }
+
+    private List<Consumer<T>> getIndexedConsumers(final T msg) {
+        final Object key = done.get() ? null : getTransactionKey(msg);
+
+        List<Consumer<T>> consumers = null;
+        List<Filter<T>> filters = null;
+
+        if (key != null) {
+            synchronized (mutex) {
+                final List<Consumer<T>> indexed = keyConsumersMap.get(key);
+
+                if (indexed != null) {
+                    consumers = new ArrayList<Consumer<T>>(indexed);
+                    filters = new ArrayList<Filter<T>>(indexed.size());
+                    for (Consumer<T> consumer : indexed) {
+                        filters.add(consumerFilterMap.get(consumer));
+                    }
+                }
+            }
+        }
+
+        List<Consumer<T>> retValue = Collections.emptyList();
+
+        if (consumers != null) {
+            retValue = new ArrayList<Consumer<T>>(consumers.size());
+
+            //filter still confirms message type and entity of indexed consumer
+            for (int i = 0; i < consumers.size(); i++) {
+                final Filter<T> filter = filters.get(i);
+                if (filter == null || filter.isApplicable(msg)) {
+                    retValue.add(consumers.get(i));
+                }
+            }
+        }
+
+        return retValue;
     }
 
     protected void feedConsumers(final List<Consumer<T>> consumers, final T msg) {
@@ -139,6 +237,11 @@ public abstract class MessageDispatcherBase<T extends IMSMessage> implements
             ((Shutdownable) registry).shutdown();
             consumerFilterMap.clear();
 
+            synchronized (mutex) {
+                keyConsumersMap.clear();
+                consumerKeysMap.clear();
+            }
+
             Logger.log(getClass(), Logger.Tag.SHUTDOWN, "MessageDispatcher shutdown successfully");
         }
     }
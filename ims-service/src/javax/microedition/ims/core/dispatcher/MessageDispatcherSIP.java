@@ -49,6 +49,7 @@ import javax.microedition.ims.core.StackContext;
 import javax.microedition.ims.core.dialog.Dialog;
 import javax.microedition.ims.core.dispatcher.checker.*;
 import javax.microedition.ims.core.sipservice.invite.DialogStateException;
+import javax.microedition.ims.core.transaction.SipTransactionKey;
 import javax.microedition.ims.core.transaction.TransactionRunnable;
 import javax.microedition.ims.core.transaction.TransactionUtils;
 import javax.microedition.ims.messages.utils.MessageUtils;
@@ -135,9 +136,10 @@ public class MessageDispatcherSIP extends MessageDispatcherBase<BaseSipMessage>
                 final SipMessageUtil<BaseSipMessage> sipMessageUtil = MessageUtilHolder
                         .getSIPMessageUtil();
 
+                //all messages of one dialog go to the same transaction partition
                 TransactionUtils.invokeLater(new TransactionRunnable(
                         "MessageDispatcher.outerConsumer :"
-                                + msg.shortDescription()) {
+                                + msg.shortDescription(), msg.getCallId()) {
                     public void run() {
                         final boolean duplicateDetected = sipMessageUtil
                                 .isDuplicateDetected(context, msg);
@@ -240,8 +242,12 @@ public class MessageDispatcherSIP extends MessageDispatcherBase<BaseSipMessage>
     // there could be accidental or malicious duplication of branch
     // parameters from different clients.
 
-    // TODO all said above MUST be checked here. This is an entry point for
-    // server requests and responses.
+    // Messages with RFC 3261 branch are matched by SipTransactionKey index,
+    // MessageFilterSIP scan is used only if key is not indexed.
+
+    protected Object getTransactionKey(final BaseSipMessage msg) {
+        return SipTransactionKey.create(msg);
+    }
 
     private void onOuterMessageIncome(final BaseSipMessage msg) {
         if (!done.get()) {
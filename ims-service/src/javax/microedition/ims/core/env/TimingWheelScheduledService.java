@@ -0,0 +1,494 @@
+/*
+ * This software code is (c) 2010 T-Mobile USA, Inc. All Rights Reserved.
+ *
+ * Unauthorized redistribution or further use of this material is
+ * prohibited without the express permission of T-Mobile USA, Inc. and
+ * will be prosecuted to the fullest extent of the law.
+ *
+ * Removal or modification of these Terms and Conditions from the source
+ * or binary code of this software is prohibited.  In the event that
+ * redistribution of the source or binary code for this software is
+ * approved by T-Mobile USA, Inc., these Terms and Conditions and the
+ * above copyright notice must be reproduced in their entirety and in all
+ * circumstances.
+ *
+ * No name or trademarks of T-Mobile USA, Inc., or of its parent company,
+ * Deutsche Telekom AG or any Deutsche Telekom or T-Mobile entity, may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" AND "WITH ALL FAULTS" BASIS
+ * AND WITHOUT WARRANTIES OF ANY KIND.  ALL EXPRESS OR IMPLIED
+ * CONDITIONS, REPRESENTATIONS OR WARRANTIES, INCLUDING ANY IMPLIED
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR
+ * NON-INFRINGEMENT CONCERNING THIS SOFTWARE, ITS SOURCE OR BINARY CODE
+ * OR ANY DERIVATIVES THEREOF ARE HEREBY EXCLUDED.  T-MOBILE USA, INC.
+ * AND ITS LICENSORS SHALL NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY
+ * LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE
+ * OR ITS DERIVATIVES.  IN NO EVENT WILL T-MOBILE USA, INC. OR ITS
+ * LICENSORS BE LIABLE FOR LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT,
+ * INDIRECT, SPECIAL, CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES,
+ * HOWEVER CAUSED AND REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT
+ * OF THE USE OF OR INABILITY TO USE THIS SOFTWARE, EVEN IF T-MOBILE USA,
+ * INC. HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGES.
+ *
+ * THESE TERMS AND CONDITIONS APPLY SOLELY AND EXCLUSIVELY TO THE USE,
+ * MODIFICATION OR DISTRIBUTION OF THIS SOFTWARE, ITS SOURCE OR BINARY
+ * CODE OR ANY DERIVATIVES THEREOF, AND ARE SEPARATE FROM ANY WRITTEN
+ * WARRANTY THAT MAY BE PROVIDED WITH A DEVICE YOU PURCHASE FROM T-MOBILE
+ * USA, INC., AND TO THE EXTENT PERMITTED BY LAW.
+ */
+
+package javax.microedition.ims.core.env;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.microedition.ims.common.Logger;
+import javax.microedition.ims.common.ManagableScheduledFuture;
+import javax.microedition.ims.common.NamedDaemonThreadFactory;
+import javax.microedition.ims.common.ScheduledService;
+
+/**
+ * Hashed timing wheel. Schedule and cancel are O(1) and take no lock, so thousands of SIP transaction
+ * timers don't fight for a delay queue. Tasks fire with up to one tick of lateness.
+ * <p/>
+ * Tasks run one by one on the wheel thread, the same way {@link DefaultScheduledService} runs them.
+ * The thread sleeps while nothing is scheduled and skips empty buckets, it wakes up only for the next
+ * occupied one or for a task scheduled earlier than that. Delays longer than <code>maxWheelDelayMillis</code>
+ * and tasks marked with {@link ScheduledService.WakeUpTask} may be handed to another service, e.g. one that
+ * can wake the device up. {@link ActivityListener} keeps the device awake while the wheel holds tasks.
+ */
+public class TimingWheelScheduledService implements ScheduledService {
+    private static final String LOG_TAG = "TimingWheelScheduledService";
+
+    public static final long DEFAULT_TICK_MILLIS = 10;
+    //512 ticks of 10 ms, one revolution covers SIP T4 and most of retransmission timers
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+    //tasks moved to the wheel per tick, keeps one burst of schedule calls from stalling the tick
+    private static final int MAX_TRANSFER_PER_TICK = 100000;
+
+    /**
+     * Called on the wheel thread, onBusy when tasks appear on idle wheel and onIdle when the last one is gone.
+     * Calls alternate, so a wake lock can be taken and released there.
+     */
+    public interface ActivityListener {
+        void onBusy();
+
+        void onIdle();
+    }
+
+    private final long tickNanos;
+    private final int mask;
+    private final Bucket[] wheel;
+
+    private final ScheduledService longDelayService;
+    private final long maxWheelDelayMillis;
+    private final ActivityListener activityListener;
+
+    private final Queue<WheelTask> pendingTasks = new ConcurrentLinkedQueue<WheelTask>();
+    private final Queue<WheelTask> cancelledTasks = new ConcurrentLinkedQueue<WheelTask>();
+    //tasks scheduled and neither run nor cancelled yet
+    private final AtomicInteger taskCount = new AtomicInteger(0);
+    private final Object idleLock = new Object();
+    //wheel thread waits on idleLock for a tick deadline, wakeUpNanos is the deadline
+    private volatile boolean sleeping;
+    private volatile long wakeUpNanos;
+    private final AtomicBoolean done = new AtomicBoolean(false);
+    private final Thread workerThread;
+
+    //both touched by wheel thread only
+    private final long startNanos = System.nanoTime();
+    private long tick;
+
+    public TimingWheelScheduledService() {
+        this(DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE, null, 0, null);
+    }
+
+    /**
+     * @param longDelayService    service for tasks delayed more than maxWheelDelayMillis
+     * @param maxWheelDelayMillis longest delay kept on the wheel
+     * @param activityListener    notified when the wheel gets tasks and runs out of them, may be null
+     */
+    public TimingWheelScheduledService(
+            final ScheduledService longDelayService,
+            final long maxWheelDelayMillis,
+            final ActivityListener activityListener) {
+        this(DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE, longDelayService, maxWheelDelayMillis, activityListener);
+    }
+
+    public TimingWheelScheduledService(
+            final long tickMillis,
+            final int wheelSize,
+            final ScheduledService longDelayService,
+            final long maxWheelDelayMillis,
+            final ActivityListener activityListener) {
+
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tickMillis must be greater than 0. Now it is " + tickMillis);
+        }
+        if (wheelSize <= 0 || wheelSize > (1 << 30)) {
+            throw new IllegalArgumentException("wheelSize must be in range 1.." + (1 << 30) + ". Now it is " + wheelSize);
+        }
+
+        int normalizedSize = 1;
+        while (normalizedSize < wheelSize) {
+            normalizedSize <<= 1;
+        }
+
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.mask = normalizedSize - 1;
+        this.wheel = new Bucket[normalizedSize];
+        for (int i = 0; i < normalizedSize; i++) {
+            wheel[i] = new Bucket();
+        }
+
+        this.longDelayService = longDelayService;
+        this.maxWheelDelayMillis = maxWheelDelayMillis;
+        this.activityListener = activityListener;
+
+        this.workerThread = new NamedDaemonThreadFactory("RepetitiousTaskManager").newThread(new Worker());
+        this.workerThread.start();
+    }
+
+    @Override
+    public ManagableScheduledFuture<?> schedule(Runnable command, Object transactionId, long delay, TimeUnit unit) {
+        if (command == null) {
+            throw new IllegalArgumentException("The command argument is null");
+        }
+
+        if (unit == null) {
+            throw new IllegalArgumentException("The unit argument is null");
+        }
+
+        final long nonNegativeDelay = delay < 0 ? 0 : delay;
+
+        final ManagableScheduledFuture<?> retValue;
+        if (longDelayService != null &&
+                (transactionId instanceof WakeUpTask || unit.toMillis(nonNegativeDelay) > maxWheelDelayMillis)) {
+            retValue = longDelayService.schedule(command, transactionId, nonNegativeDelay, unit);
+        }
+        else {
+            if (done.get()) {
+                throw new RejectedExecutionException("TimingWheelScheduledService already shutdown.");
+            }
+
+            final WheelTask task = new WheelTask(command, transactionId, System.nanoTime() + unit.toNanos(nonNegativeDelay));
+            pendingTasks.add(task);
+
+            //wheel thread sleeping till a later bucket must place the task first
+            if (taskCount.getAndIncrement() == 0 || sleeping && task.deadlineNanos - wakeUpNanos < 0) {
+                synchronized (idleLock) {
+                    idleLock.notifyAll();
+                }
+            }
+            retValue = task;
+        }
+
+        return retValue;
+    }
+
+    @Override
+    public void shutdown() {
+        if (done.compareAndSet(false, true)) {
+            Logger.log(LOG_TAG, "shutdown#pending tasks: " + taskCount.get());
+
+            synchronized (idleLock) {
+                idleLock.notifyAll();
+            }
+            workerThread.interrupt();
+
+            if (longDelayService != null) {
+                longDelayService.shutdown();
+            }
+        }
+    }
+
+    public int getScheduledTaskCount() {
+        return taskCount.get();
+    }
+
+    private final class Worker implements Runnable {
+        //true between onBusy and onIdle
+        private boolean busy;
+
+        public void run() {
+            while (awaitTasks()) {
+                final long tickDeadline = waitForNextTick();
+
+                if (tickDeadline >= 0) {
+                    removeCancelledTasks();
+                    transferPendingTasks();
+                    expireTasks(wheel[(int) (tick & mask)], tickDeadline);
+                    tick++;
+                }
+            }
+            setBusy(false);
+            Logger.log(LOG_TAG, "wheel thread finished");
+        }
+
+        private void setBusy(final boolean busy) {
+            if (activityListener != null && this.busy != busy) {
+                this.busy = busy;
+                if (busy) {
+                    activityListener.onBusy();
+                }
+                else {
+                    activityListener.onIdle();
+                }
+            }
+        }
+
+        //sleeps while there is nothing to do, returns false on shutdown
+        private boolean awaitTasks() {
+            boolean wasIdle = false;
+
+            if (taskCount.get() == 0) {
+                setBusy(false);
+            }
+
+            synchronized (idleLock) {
+                while (taskCount.get() == 0 && !done.get()) {
+                    wasIdle = true;
+                    try {
+                        idleLock.wait();
+                    }
+                    catch (InterruptedException e) {
+                        //cancel(true) of already finished task, nothing to do
+                    }
+                }
+            }
+
+            if (wasIdle) {
+                //wheel holds no live tasks, so skip idle ticks instead of replaying them
+                tick = Math.max(tick, (System.nanoTime() - startNanos) / tickNanos);
+            }
+
+            final boolean retValue = !done.get();
+            if (retValue) {
+                setBusy(true);
+            }
+            return retValue;
+        }
+
+        //moves to the next occupied tick and waits for its end, returns elapsed nanos then or -1 on shutdown
+        private long waitForNextTick() {
+            while (true) {
+                removeCancelledTasks();
+                transferPendingTasks();
+
+                final long nextTick = findNextOccupiedTick();
+                final long deadline = tickNanos * (nextTick + 1);
+                final long elapsed = System.nanoTime() - startNanos;
+                final long sleepMillis = (deadline - elapsed + 999999) / 1000000;
+
+                if (sleepMillis <= 0) {
+                    //buckets in between are empty, nothing is lost by skipping them
+                    tick = nextTick;
+                    return elapsed;
+                }
+
+                synchronized (idleLock) {
+                    //published before the queue is checked, so schedule() either sees it or leaves a task for us
+                    wakeUpNanos = startNanos + deadline;
+                    sleeping = true;
+                    try {
+                        if (pendingTasks.isEmpty() && !done.get()) {
+                            idleLock.wait(sleepMillis);
+                        }
+                    }
+                    catch (InterruptedException e) {
+                        //cancel(true) of already finished task or shutdown, checked below
+                    }
+                    finally {
+                        sleeping = false;
+                    }
+                }
+
+                if (done.get()) {
+                    return -1;
+                }
+            }
+        }
+
+        //first tick from the current one whose bucket holds tasks, one revolution ahead if all are empty
+        private long findNextOccupiedTick() {
+            for (int i = 0; i < wheel.length; i++) {
+                if (wheel[(int) ((tick + i) & mask)].head != null) {
+                    return tick + i;
+                }
+            }
+            return tick + wheel.length;
+        }
+
+        private void removeCancelledTasks() {
+            WheelTask task;
+            while ((task = cancelledTasks.poll()) != null) {
+                if (task.bucket != null) {
+                    task.bucket.remove(task);
+                }
+            }
+        }
+
+        private void transferPendingTasks() {
+            for (int i = 0; i < MAX_TRANSFER_PER_TICK; i++) {
+                final WheelTask task = pendingTasks.poll();
+                if (task == null) {
+                    break;
+                }
+
+                if (!task.isCancelled()) {
+                    final long calculatedTick = (task.deadlineNanos - startNanos) / tickNanos;
+                    task.remainingRounds = (calculatedTick - tick) / wheel.length;
+
+                    //overdue task goes to current bucket and fires in this tick
+                    final long taskTick = Math.max(calculatedTick, tick);
+                    wheel[(int) (taskTick & mask)].add(task);
+                }
+            }
+        }
+
+        private void expireTasks(final Bucket bucket, final long tickDeadline) {
+            WheelTask task = bucket.head;
+
+            while (task != null) {
+                final WheelTask next = task.next;
+
+                if (task.isCancelled()) {
+                    bucket.remove(task);
+                }
+                else if (task.remainingRounds <= 0 && task.deadlineNanos - startNanos <= tickDeadline) {
+                    bucket.remove(task);
+                    task.expire();
+                    //cancel(true) from inside of the task interrupts this thread
+                    Thread.interrupted();
+                }
+                else {
+                    task.remainingRounds--;
+                }
+
+                task = next;
+            }
+        }
+    }
+
+    //intrusive doubly linked list, touched by wheel thread only
+    private static final class Bucket {
+        private WheelTask head;
+        private WheelTask tail;
+
+        private void add(final WheelTask task) {
+            task.bucket = this;
+            if (head == null) {
+                head = tail = task;
+            }
+            else {
+                tail.next = task;
+                task.prev = tail;
+                tail = task;
+            }
+        }
+
+        private void remove(final WheelTask task) {
+            final WheelTask next = task.next;
+
+            if (task.prev != null) {
+                task.prev.next = next;
+            }
+            if (next != null) {
+                next.prev = task.prev;
+            }
+
+            if (task == head) {
+                if (task == tail) {
+                    head = tail = null;
+                }
+                else {
+                    head = next;
+                }
+            }
+            else if (task == tail) {
+                tail = task.prev;
+            }
+
+            task.prev = null;
+            task.next = null;
+            task.bucket = null;
+        }
+    }
+
+    private final class WheelTask extends FutureTask<Object> implements ManagableScheduledFuture<Object> {
+        private final Object transactionId;
+        private final long deadlineNanos;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        //wheel thread only
+        private long remainingRounds;
+        private Bucket bucket;
+        private WheelTask next;
+        private WheelTask prev;
+
+        private WheelTask(final Runnable command, final Object transactionId, final long deadlineNanos) {
+            super(command, null);
+            this.transactionId = transactionId;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        private void expire() {
+            release();
+            run();
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                taskCount.decrementAndGet();
+            }
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            if (other == this) {
+                return 0;
+            }
+
+            final long diff = other instanceof WheelTask ?
+                    deadlineNanos - ((WheelTask) other).deadlineNanos :
+                    getDelay(TimeUnit.NANOSECONDS) - other.getDelay(TimeUnit.NANOSECONDS);
+
+            return diff == 0 ? 0 : (diff < 0 ? -1 : 1);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            final boolean cancelled = super.cancel(mayInterruptIfRunning);
+
+            if (cancelled) {
+                release();
+                cancelledTasks.add(this);
+            }
+
+            return cancelled;
+        }
+
+        @Override
+        public void shutdown() {
+            //wheel task holds no wake lock or other resource
+        }
+
+        @Override
+        public String toString() {
+            return "WheelTask [deadline=" + deadlineNanos + ", transactionId = " + transactionId + "]";
+        }
+    }
+}
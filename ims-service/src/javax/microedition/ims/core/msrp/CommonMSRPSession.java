@@ -307,6 +307,14 @@ class CommonMSRPSession implements MSRPSession {
         return sessionId;
     }
 
+    /**
+     * Session shares the transaction partition with its SIP dialog.
+     */
+    @PartitionResolver
+    public Object getPartitionKey() {
+        return msrpDialog.getCallId();
+    }
+
     public void addMSRPSessionStartListener(MSRPSessionStartListener listener) {
         msrpSessionStartListenerHolder.addListener(listener);
     }
@@ -385,7 +393,7 @@ class CommonMSRPSession implements MSRPSession {
                 throw new IMSStackException("Can't send file " + fileDescriptor);
             }
 
-            TransactionUtils.invokeLaterSmart(new TransactionRunnable("Send file through chat session. " + fileDescriptor + " " + this) {
+            TransactionUtils.invokeLaterSmart(new TransactionRunnable("Send file through chat session. " + fileDescriptor + " " + this, getPartitionKey()) {
                 
                 public void run() {
                     final State currentSessionState = sessionState.get();
@@ -519,12 +527,12 @@ class CommonMSRPSession implements MSRPSession {
             }
 
             public void run() {
-                SdpMessage sdp = SdpParser.parse(new String(msg.getBody()));
+                SdpMessage sdp = SdpParser.parse(msg.getBody());
                 final MsrpUri msrpUri = MSRPHelper.obtainMSRPURI(sdp);
                 remotePartyURI.compareAndSet(null, msrpUri);
 
 
-                TransactionUtils.invokeLater(new TransactionRunnable("MSRP event notification " + CommonMSRPSession.this) {
+                TransactionUtils.invokeLater(new TransactionRunnable("MSRP event notification " + CommonMSRPSession.this, getPartitionKey()) {
                     public void run() {
                         msrpSessionStartListenerHolder.getNotifier().onMSRPSessionStarted();
                     }
@@ -634,7 +642,7 @@ class CommonMSRPSession implements MSRPSession {
     private void sendEmptyMsrpMessage() {
 
         final State currentSessionState = sessionState.get();
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+        assert TransactionUtils.isPartitionOwner(getPartitionKey()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
         assert State.OPENED == currentSessionState;
 
         //we need to send empty msrp message to ensure that connection is open
@@ -647,7 +655,7 @@ class CommonMSRPSession implements MSRPSession {
     }
 
     public void sendReport() {
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+        assert TransactionUtils.isPartitionOwner(getPartitionKey()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
 
         final State currSessionState = sessionState.get();
         assert State.OPENED == currSessionState;
@@ -661,7 +669,7 @@ class CommonMSRPSession implements MSRPSession {
     }
 
     public void sendStatus() {
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+        assert TransactionUtils.isPartitionOwner(getPartitionKey()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
 
         final State currSessionState = sessionState.get();
         assert State.OPENED == currSessionState;
@@ -676,7 +684,7 @@ class CommonMSRPSession implements MSRPSession {
 
     public void sendMessage(final MsrpMessage msrpMessage) {
 
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+        assert TransactionUtils.isPartitionOwner(getPartitionKey()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
 
         final State currentSessionState = sessionState.get();
         assert State.OPENED == currentSessionState;
@@ -727,7 +735,7 @@ class CommonMSRPSession implements MSRPSession {
         boolean retValue = false;
 
         if (MimeType.APP_SDP.stringValue().equals(message.getContentType().getValue())) {
-            SdpMessage sdpMessage = SdpParser.parse(new String(message.getBody()));
+            SdpMessage sdpMessage = SdpParser.parse(message.getBody());
 
             if (sdpMessage.typeSupported(SDPType.MSRP)) {
                 retValue = true;
@@ -769,7 +777,7 @@ class CommonMSRPSession implements MSRPSession {
 
         transitToState(null, State.CLOSED, new Runnable() {
             public void run() {
-                TransactionUtils.invokeLater(new TransactionRunnable("MSRP event notification " + CommonMSRPSession.this) {
+                TransactionUtils.invokeLater(new TransactionRunnable("MSRP event notification " + CommonMSRPSession.this, getPartitionKey()) {
                     public void run() {
                         Logger.log(TAG, "msrpSessionStartListenerHolder.getNotifier().onMSRPSessionStartFailed");
 
@@ -788,7 +796,7 @@ class CommonMSRPSession implements MSRPSession {
 
         transitToState(null, State.CLOSED, new Runnable() {
             public void run() {
-                TransactionUtils.invokeLater(new TransactionRunnable("MSRP event notification " + CommonMSRPSession.this) {
+                TransactionUtils.invokeLater(new TransactionRunnable("MSRP event notification " + CommonMSRPSession.this, getPartitionKey()) {
                     public void run() {
                         msrpSessionStopListenerHolder.getNotifier().onMSRPSessionFinished();
                     }
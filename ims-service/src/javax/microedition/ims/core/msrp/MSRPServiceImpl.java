@@ -362,9 +362,26 @@ public class MSRPServiceImpl extends AbstractService implements MSRPService, Inc
         assert msg.getType() == MsrpMessageType.SEND : "Wrong message type";
 
         if (!done.get()) {
-            MSRPSession msrpSession = sessionStorage.findSession(msg);
+            final MSRPSession msrpSession = sessionStorage.findSession(msg);
 
             assert msrpSession != null : "MSRP Session for incoming MSRP message not found. MSRP Message: " + msg;
+
+            //incoming MSRP message is dispatched by session id, so move to the partition of session's dialog
+            final String partitionKey = msrpSession.getMsrpDialog().getCallId();
+            TransactionUtils.invokeLaterSmart(
+                    new TransactionRunnable("handleIncomingSendMessage " + msg.shortDescription(), partitionKey) {
+                        public void run() {
+                            doHandleIncomingSendMessage(msrpSession, msg, partitionKey);
+                        }
+                    }
+            );
+        }
+    }
+
+    private void doHandleIncomingSendMessage(final MSRPSession msrpSession, final MsrpMessage msg, final String partitionKey) {
+        assert TransactionUtils.isPartitionOwner(partitionKey) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+
+        if (!done.get()) {
             assert Dialog.DialogState.STATED == msrpSession.getMsrpDialog().getState();
 
 
@@ -2,6 +2,7 @@ package javax.microedition.ims.core.msrp.filetransfer;
 
 import javax.microedition.ims.common.Logger;
 import javax.microedition.ims.common.Shutdownable;
+import javax.microedition.ims.messages.wrappers.msrp.MsrpMessage;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -50,6 +51,17 @@ class FileDataAccumulator implements Shutdownable {
         }
     }
 
+    /**
+     * Writes body of the chunk straight from the buffer it was received in.
+     */
+    public void processDataChunk(MsrpMessage chunk) throws IOException {
+        if (!done.get()) {
+            Logger.log(TAG, "FileDataAccumulator.processDataChunk#started");
+            chunk.writeBody(obtainOutputStream());
+            Logger.log(TAG, "FileDataAccumulator.processDataChunk#finished");
+        }
+    }
+
     private OutputStream obtainOutputStream() throws IOException {
 
         //try to check ref holder
@@ -187,7 +187,7 @@ public class FileReceiverImpl implements IncomingMSRPMessageListener, FileReceiv
 
                     final FileDescriptor fileDescriptor = new FileDescriptor.FileDescriptorBuilder()
                             .fileName(fileName)
-                            .fileSize(message.getBody() == null ? 0 : message.getBody().length)
+                            .fileSize(message.getBodyLength())
                             .contentType(message.getContentType())
                             .hash("" + fileId.hashCode())
                             .fileId(fileId)
@@ -232,7 +232,7 @@ public class FileReceiverImpl implements IncomingMSRPMessageListener, FileReceiv
 
             dataAccumulators.put(fileDescriptor.getFileId(), retValue);
         }
-        retValue.processDataChunk(message.getBody());
+        retValue.processDataChunk(message);
 
         if (terminator == ChunkTerminator.FINISHED) {
             FileDataAccumulator fileDataAccumulator = dataAccumulators.remove(fileDescriptor.getFileId());
@@ -258,9 +258,8 @@ public class FileReceiverImpl implements IncomingMSRPMessageListener, FileReceiv
 
         msrpFileReceivingProgressListenerHolder.getNotifier().onBytesReceived(
                 fileDescriptor,
-                message.getPrevProgress() + message.getBody().length - 1,
-                (int) message.getTotalSize(),
-                message.getBody()
+                message.getPrevProgress() + message.getBodyLength() - 1,
+                (int) message.getTotalSize()
         );
 
         if (terminator == ChunkTerminator.FINISHED) {
@@ -48,7 +48,6 @@ public interface MSRPFileReceivingProgressListener {
     void onBytesReceived(
             FileDescriptor fileDescriptor,
             long bytesTransferred,
-            long bytesTotal,
-            byte[] data
+            long bytesTotal
     );
 }
@@ -47,6 +47,7 @@ import javax.microedition.ims.common.Shutdownable;
 import javax.microedition.ims.common.TimeoutUnit;
 import javax.microedition.ims.core.StackContext;
 import javax.microedition.ims.core.transaction.Transaction;
+import javax.microedition.ims.core.transaction.TransactionCompletionListener;
 import javax.microedition.ims.core.transaction.TransactionManager;
 import javax.microedition.ims.core.transaction.TransactionResult;
 import java.util.concurrent.TimeUnit;
@@ -121,6 +122,16 @@ public abstract class AbstractService implements Service, Shutdownable {
         transaction.appendNoBlock();
     }
 
+    /**
+     * Runs transaction without parking calling thread. Listener gets transaction result from transaction thread.
+     */
+    public static <T, V> void runAsynchronously(
+            final Transaction<T, V> transaction,
+            final TimeoutUnit timeoutUnit,
+            final TransactionCompletionListener<T> listener) {
+        transaction.appendAsync(timeoutUnit, listener);
+    }
+
     protected <T, V> TransactionResult<T> runSynchronously(Transaction<T, V> transaction, final TimeoutUnit timeoutUnit) {
         return transaction.append(timeoutUnit);
     }
@@ -411,6 +411,11 @@ public class InviteServiceImpl extends AbstractService implements InviteService,
                             assert false : "Method not supported";
                         }
                     }
+
+                    @PartitionResolver
+                    public Object partitionKey() {
+                        return dlg.getPartitionKey();
+                    }
                 }, SteppedAcceptable.class
 
         );
@@ -455,7 +460,7 @@ public class InviteServiceImpl extends AbstractService implements InviteService,
 
     public void invite(final Dialog dialog) throws DialogStateException {
         Logger.log(TAG, "invite#started");
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+        assert TransactionUtils.isPartitionOwner(dialog.getPartitionKey()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
         assert !done.get();
 
         if (!done.get()) {
@@ -473,7 +478,7 @@ public class InviteServiceImpl extends AbstractService implements InviteService,
 
     public void reInvite(final Dialog dialog) throws DialogStateException {
         Logger.log(TAG, "reInvite#started");
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+        assert TransactionUtils.isPartitionOwner(dialog.getPartitionKey()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
         assert !done.get();
         assert getStackContext().getDialogStorage().findDialogByCallId(dialog.getCallId()) != null : "DIALOG being re-invited is already  terminated";
 
@@ -488,7 +493,7 @@ public class InviteServiceImpl extends AbstractService implements InviteService,
 
 
     public void update(Dialog dialog) throws DialogStateException {
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+        assert TransactionUtils.isPartitionOwner(dialog.getPartitionKey()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
         assert !done.get();
         assert getStackContext().getDialogStorage().findDialogByCallId(dialog.getCallId()) != null : "DIALOG being updated is already  terminated";
 
@@ -508,7 +513,7 @@ public class InviteServiceImpl extends AbstractService implements InviteService,
      * @param dialog - DIALOG to terminate
      */
     public void bye(final Dialog dialog) {
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+        assert TransactionUtils.isPartitionOwner(dialog.getPartitionKey()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
         assert !done.get();
 
         if (!done.get()) {
@@ -523,7 +528,7 @@ public class InviteServiceImpl extends AbstractService implements InviteService,
      * @param dialog - DIALOG to cancel
      */
     public void cancel(final Dialog dialog) {
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+        assert TransactionUtils.isPartitionOwner(dialog.getPartitionKey()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
         assert !done.get();
         Logger.log("Canceling call");
 
@@ -533,7 +538,7 @@ public class InviteServiceImpl extends AbstractService implements InviteService,
     }
 
     private void preAccept(final Dialog dialog) {
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+        assert TransactionUtils.isPartitionOwner(dialog.getPartitionKey()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
         assert !done.get();
         Logger.log(TAG, "preAccept");
 
@@ -552,7 +557,7 @@ public class InviteServiceImpl extends AbstractService implements InviteService,
      * @param alternativeUserAddress - alternative USER address for status code 302(Moved)
      */
     private void doReject(final Dialog dialog, final int statusCode, final String alternativeUserAddress) {
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+        assert TransactionUtils.isPartitionOwner(dialog.getPartitionKey()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
         assert !done.get();
 
         TransactionType<InviteSrvTransaction, ? extends ServerCommonInviteTransaction> transactionType;
@@ -575,7 +580,7 @@ public class InviteServiceImpl extends AbstractService implements InviteService,
      * @param dialog - DIALOG associated with this invite SESSION
      */
     private void doAccept(final Dialog dialog) {
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+        assert TransactionUtils.isPartitionOwner(dialog.getPartitionKey()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
         assert !done.get();
 
         TransactionType<InviteSrvTransaction, ? extends ServerCommonInviteTransaction> transactionType;
@@ -591,7 +596,7 @@ public class InviteServiceImpl extends AbstractService implements InviteService,
     }
 
     private void doRejectUpdate(final Dialog dialog, final int statusCode, final String alternativeUserAddress) {
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+        assert TransactionUtils.isPartitionOwner(dialog.getPartitionKey()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
         assert !done.get();
 
         if (dialog.getInitiateParty() == InitiateParty.LOCAL) {
@@ -606,7 +611,7 @@ public class InviteServiceImpl extends AbstractService implements InviteService,
     }
 
     private void doAcceptUpdate(final Dialog dialog) {
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+        assert TransactionUtils.isPartitionOwner(dialog.getPartitionKey()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
         assert !done.get();
 
         
@@ -632,7 +637,7 @@ public class InviteServiceImpl extends AbstractService implements InviteService,
 */    }
 
     private void doPreAccept(final Dialog dialog) {
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+        assert TransactionUtils.isPartitionOwner(dialog.getPartitionKey()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
         assert !done.get();
 
         TransactionType<InviteSrvTransaction, ? extends ServerCommonInviteTransaction> transactionType;
@@ -651,7 +656,7 @@ public class InviteServiceImpl extends AbstractService implements InviteService,
     //TODO add forseCreating on absence to getTransactionManager().lookUpTransaction
 
     private void doCancel(final Dialog dialog) {
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+        assert TransactionUtils.isPartitionOwner(dialog.getPartitionKey()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
         assert !done.get();
 
         final InviteClntTransaction transaction = getTransactionManager().findTransaction(dialog, SIP_INVITE_CLIENT);
@@ -670,7 +675,7 @@ public class InviteServiceImpl extends AbstractService implements InviteService,
 
 
     private void doInvite(final Dialog dialog, final TimeoutUnit timeoutUnit) {
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+        assert TransactionUtils.isPartitionOwner(dialog.getPartitionKey()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
         assert !done.get();
 
         final InviteClntTransaction transaction = getTransactionManager().lookUpTransaction(
@@ -684,7 +689,7 @@ public class InviteServiceImpl extends AbstractService implements InviteService,
     }
 
     private void doReInvite(final Dialog dialog, final TimeoutUnit timeoutUnit) {
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+        assert TransactionUtils.isPartitionOwner(dialog.getPartitionKey()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
         assert !done.get();
         final InviteClntTransaction transaction = getTransactionManager().lookUpTransaction(
                 dialog,
@@ -698,7 +703,7 @@ public class InviteServiceImpl extends AbstractService implements InviteService,
 
 
     private void doUpdate(Dialog dialog) {
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+        assert TransactionUtils.isPartitionOwner(dialog.getPartitionKey()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
         assert !done.get();
 
         if (dialog.getInitiateParty() == InitiateParty.LOCAL) {
@@ -713,7 +718,7 @@ public class InviteServiceImpl extends AbstractService implements InviteService,
     //TODO: check if DIALOG terminated on successive noninvite
 
     private void doBye(final Dialog dialog, final TimeoutUnit timeoutUnit) {
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+        assert TransactionUtils.isPartitionOwner(dialog.getPartitionKey()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
         assert !done.get();
 
         final Transaction transaction = getTransactionManager().lookUpTransaction(
@@ -731,7 +736,7 @@ public class InviteServiceImpl extends AbstractService implements InviteService,
      * @param msg - invite message
      */
     public void handleIncomingInvite(final Request msg) throws DialogStateException {
-        assert TransactionUtils.isTransactionExecutionThread() :
+        assert TransactionUtils.isPartitionOwner(msg.getCallId()) :
                 "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
 
         assert !done.get();
@@ -792,7 +797,7 @@ public class InviteServiceImpl extends AbstractService implements InviteService,
     }
 
     public void handleIncomingReInvite(final Request msg) throws DialogStateException {
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+        assert TransactionUtils.isPartitionOwner(msg.getCallId()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
         assert !done.get();
         assert msg != null && MessageType.SIP_INVITE == MessageType.parse(msg.getMethod());
 
@@ -813,7 +818,7 @@ public class InviteServiceImpl extends AbstractService implements InviteService,
     }
 
     public void handleIncomingUpdate(Request msg) throws DialogStateException {
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+        assert TransactionUtils.isPartitionOwner(msg.getCallId()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
         assert !done.get();
 
         if (!done.get()) {
@@ -840,7 +845,7 @@ public class InviteServiceImpl extends AbstractService implements InviteService,
             TransactionType<UpdateSrvTransaction, UpdateServerTransaction> transactionType) {
 
         dialog.getMessageHistory().addMessage(msg, true);
-        SdpMessage sdp = SipMessageUtils.getSdpFromMessage(msg);
+        SdpMessage sdp = SipMessageUtils.getSdpFromMessage(dialog, msg);
         if (sdp != null) {
             dialog.setIncomingSdpMessage(sdp);
         }
@@ -865,7 +870,7 @@ public class InviteServiceImpl extends AbstractService implements InviteService,
         dialog.getMessageHistory().addMessage(msg, true);
         //DIALOG.putCustomParameter(ParamKey.LAST_MESSAGE, msg);
         Logger.log("doHandleIncomingInvite", "");
-        SdpMessage sdp = SipMessageUtils.getSdpFromMessage(msg);
+        SdpMessage sdp = SipMessageUtils.getSdpFromMessage(dialog, msg);
         if (sdp != null) {
             dialog.setIncomingSdpMessage(sdp);
         }
@@ -888,7 +893,7 @@ public class InviteServiceImpl extends AbstractService implements InviteService,
      */
     public void handleIncomingBye(final Request msg) {
 
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+        assert TransactionUtils.isPartitionOwner(msg.getCallId()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
         assert !done.get();
         assert msg != null && MessageType.SIP_BYE == MessageType.parse(msg.getMethod());
 
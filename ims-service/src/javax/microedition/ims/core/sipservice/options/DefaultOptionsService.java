@@ -242,7 +242,7 @@ public class DefaultOptionsService extends AbstractService implements OptionsSer
     }
 
     private void doSendOptionsMessage(final Dialog dialog, final TimeoutUnit timeoutUnit) {
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+        assert TransactionUtils.isPartitionOwner(dialog.getPartitionKey()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
         assert !done.get();
 
         final Transaction transaction =
@@ -257,7 +257,7 @@ public class DefaultOptionsService extends AbstractService implements OptionsSer
 
     
     public void handleIncomingOptionsMessage(Request msg) {
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+        assert TransactionUtils.isPartitionOwner(msg.getCallId()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
         assert !done.get();
         assert msg != null && MessageType.SIP_OPTIONS == MessageType.parse(msg.getMethod());
         if (!done.get()) {
@@ -145,7 +145,7 @@ public class PageMessageServiceImpl extends AbstractService implements PageMessa
     };
 
     public void handleIncomingPageMessage(Request msg) throws DialogStateException {
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in "
+        assert TransactionUtils.isPartitionOwner(msg.getCallId()) : "Code run in wrong thread. Must be run in TransactionThread. Now in "
                 + Thread.currentThread();
         assert !done.get();
         assert msg != null && MessageType.SIP_MESSAGE == MessageType.parse(msg.getMethod());
@@ -216,7 +216,7 @@ public class PageMessageServiceImpl extends AbstractService implements PageMessa
     }
 
     private void doSendPageMessage(final Dialog dialog, final TimeoutUnit timeoutUnit) {
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in "
+        assert TransactionUtils.isPartitionOwner(dialog.getPartitionKey()) : "Code run in wrong thread. Must be run in TransactionThread. Now in "
                 + Thread.currentThread();
         assert !done.get();
 
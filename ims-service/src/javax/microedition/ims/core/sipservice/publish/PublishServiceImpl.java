@@ -51,6 +51,9 @@ import javax.microedition.ims.core.sipservice.AbstractService;
 import javax.microedition.ims.core.sipservice.RefreshHelper.Refresher;
 import javax.microedition.ims.core.transaction.*;
 import javax.microedition.ims.messages.wrappers.sip.BaseSipMessage;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 
@@ -60,7 +63,8 @@ public class PublishServiceImpl extends AbstractService implements PublishServic
     private final AtomicBoolean done = new AtomicBoolean(false);
     private final PublishService transactionSafeView;
     private final long publishExpirationSeconds;
-    private PublishRefresher refresher;
+    //publications of different dialogs run in different transaction partitions
+    private final Map<Dialog, PublishRefresher> refreshers = Collections.synchronizedMap(new HashMap<Dialog, PublishRefresher>());
 
     private final ListenerHolder<PublishStateListener> publishStateListenerHolder = new ListenerHolder<PublishStateListener>(PublishStateListener.class);
 
@@ -94,7 +98,7 @@ public class PublishServiceImpl extends AbstractService implements PublishServic
 
         
         public void refresh(long timeOutInMillis) {
-            TransactionUtils.invokeLaterSmart(new TransactionRunnable("Publish refresh") {
+            TransactionUtils.invokeLaterSmart(new TransactionRunnable("Publish refresh", dialog.getPartitionKey()) {
                 public void run() {
                     sendPublishMessage(dialog, publishInfo);
                 }
@@ -109,7 +113,7 @@ public class PublishServiceImpl extends AbstractService implements PublishServic
     }
 
     private TransactionListener<BaseSipMessage> obtainNewTransactionListener(final Dialog dialog) {
-        return new PublishTransactionListener(getStackContext().getRepetitiousTaskManager(), dialog, publishStateListenerHolder.getNotifier(), publishExpirationSeconds, refresher);
+        return new PublishTransactionListener(getStackContext().getRepetitiousTaskManager(), dialog, publishStateListenerHolder.getNotifier(), publishExpirationSeconds, refreshers.get(dialog));
     }
 
     private final TransactionBuildUpListener<BaseSipMessage> clientMessageListener =
@@ -146,7 +150,7 @@ public class PublishServiceImpl extends AbstractService implements PublishServic
         assert !done.get();
 
         if (!done.get()) {
-            refresher = new PublishRefresher(dialog, publishInfo);
+            refreshers.put(dialog, new PublishRefresher(dialog, publishInfo));
             doSendPublishMessage(dialog, TRANSACTION_TIMEOUT, publishInfo);
         }
         Logger.log(TAG, "sendPublishMessage#finished");
@@ -157,6 +161,7 @@ public class PublishServiceImpl extends AbstractService implements PublishServic
         assert !done.get();
 
         if (!done.get()) {
+            refreshers.remove(dialog);
             doSendPublishMessage(dialog, TRANSACTION_TIMEOUT, publishInfo);
         }
         Logger.log(TAG, "sendUnpublishMessage#finished");
@@ -165,7 +170,7 @@ public class PublishServiceImpl extends AbstractService implements PublishServic
     private void doSendPublishMessage(final Dialog dialog, final TimeoutUnit timeoutUnit, PublishInfo publishInfo) {
         Logger.log(TAG, "doSendPublishMessage#started");
 
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+        assert TransactionUtils.isPartitionOwner(dialog.getPartitionKey()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
         assert !done.get();
         assert publishInfo != null : "Empty publish info";
         Logger.log(TAG, "doSendPublishMessage: " + publishInfo);
@@ -191,6 +196,7 @@ public class PublishServiceImpl extends AbstractService implements PublishServic
         Logger.log(getClass(), Logger.Tag.SHUTDOWN, "Shutdowning PublishService");
         if (done.compareAndSet(false, true)) {
             unSubscribeFromTransactionManager();
+            refreshers.clear();
         }
         Logger.log(getClass(), Logger.Tag.SHUTDOWN, "PublishService shutdown successfully");
     }
@@ -43,6 +43,7 @@ package javax.microedition.ims.core.sipservice.refer;
 
 import javax.microedition.ims.common.TimeoutUnit;
 import javax.microedition.ims.core.dialog.Dialog;
+import javax.microedition.ims.core.transaction.PartitionResolver;
 
 /*
  * ReferImpl-To: sip:somebody@somewhere.com
@@ -94,6 +95,11 @@ public class ReferImpl implements Refer {
         return dialog;
     }
 
+    @PartitionResolver
+    public Object getPartitionKey() {
+        return dialog.getPartitionKey();
+    }
+
     
     public TimeoutUnit getTimeoutUnit() {
         return timeoutUnit;
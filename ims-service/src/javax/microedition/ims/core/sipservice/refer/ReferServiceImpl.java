@@ -273,7 +273,7 @@ public class ReferServiceImpl<T> extends AbstractService implements ReferService
 
     
     public void refer(Refer refer) {
-        assert TransactionUtils.isTransactionExecutionThread() :
+        assert TransactionUtils.isPartitionOwner(refer.getDialog().getPartitionKey()) :
                 "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
 
         assert !done.get();
@@ -339,7 +339,8 @@ public class ReferServiceImpl<T> extends AbstractService implements ReferService
                         DefaultNotifyInfo notifyInfo =
                                 new DefaultNotifyInfo(EventPackage.REFER, state, new String[]{"SIP/2.0 100 Trying"});
 
-                        doNotifyByRefer(refer.getDialog(), notifyInfo);
+                        //observed dialog runs in another partition than the REFER one
+                        transactionSafeView.notifyByRefer(refer.getDialog(), notifyInfo);
                     }
 
                     
@@ -376,7 +377,8 @@ public class ReferServiceImpl<T> extends AbstractService implements ReferService
         DefaultNotifyInfo notifyInfo =
                 new DefaultNotifyInfo(EventPackage.REFER, state, new String[]{bodyMessage});
 
-        doNotifyByRefer(dialogToNotify, notifyInfo);
+        //called from observed dialog and from timer, so go to partition of the REFER dialog
+        transactionSafeView.notifyByRefer(dialogToNotify, notifyInfo);
     }
 
     
@@ -385,7 +387,7 @@ public class ReferServiceImpl<T> extends AbstractService implements ReferService
     }
 
     private void doNotifyByRefer(Dialog dialog, DefaultNotifyInfo notifyInfo) {
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+        assert TransactionUtils.isPartitionOwner(dialog.getPartitionKey()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
         assert !done.get();
 
         if (!done.get()) {
@@ -403,7 +405,7 @@ public class ReferServiceImpl<T> extends AbstractService implements ReferService
 
     
     public void handleIncomingRefer(final Request msg) {
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+        assert TransactionUtils.isPartitionOwner(msg.getCallId()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
         assert !done.get();
         assert msg != null && MessageType.SIP_REFER == MessageType.parse(msg.getMethod());
 
@@ -444,7 +446,7 @@ public class ReferServiceImpl<T> extends AbstractService implements ReferService
 
     
     public void handleIncomingNotify(final Request msg) {
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+        assert TransactionUtils.isPartitionOwner(msg.getCallId()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
         assert !done.get();
         assert msg != null && MessageType.SIP_NOTIFY == MessageType.parse(msg.getMethod());
 
@@ -474,7 +476,7 @@ public class ReferServiceImpl<T> extends AbstractService implements ReferService
     }
 
     void doAccept(Dialog dialog) {
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+        assert TransactionUtils.isPartitionOwner(dialog.getPartitionKey()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
         assert !done.get();
 
         if (!done.get()) {
@@ -483,7 +485,7 @@ public class ReferServiceImpl<T> extends AbstractService implements ReferService
     }
 
     void doReject(Refer refer, int statusCode, String alternativeUserAddress) {
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+        assert TransactionUtils.isPartitionOwner(refer.getDialog().getPartitionKey()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
         assert !done.get();
 
         if (!done.get()) {
@@ -113,6 +113,10 @@ public class RegisterServiceImpl extends AbstractService implements
 
     private Route failureRoute;
 
+    private static interface RegistrationCompletionListener {
+        void onRegistrationComplete(RegResult result, IMSStackException error);
+    }
+
     private Set<String> registrationProxies = new HashSet<String>();
     public static final int REDIRECT_ROUNDTRIPS_ALLOWED = 3;
     private AtomicReference<ChannelIOException> certificateValidationError = new AtomicReference<ChannelIOException>();
@@ -176,7 +180,7 @@ public class RegisterServiceImpl extends AbstractService implements
                     new RefreshHelper.Refresher() {
 
                         public void refresh(final long timeOutInMillis) {
-                            refreshRegistration(new DefaultTimeoutUnit(timeOutInMillis, TimeUnit.MILLISECONDS));
+                            refreshRegistrationAsync(new DefaultTimeoutUnit(timeOutInMillis, TimeUnit.MILLISECONDS));
                         }
                     },
                     registrationExpirationSeconds
@@ -315,6 +319,26 @@ public class RegisterServiceImpl extends AbstractService implements
         return refreshRegistration(REGISTRATION_TIMEOUT);
     }
 
+    //same as refreshRegistration() but refresh timer thread doesn't wait for the REGISTER round trip
+
+    private void refreshRegistrationAsync(final TimeoutUnit timeoutUnit) {
+        log("Starting registration refresh...", "REGISTRATION REFRESH");
+
+        doRegistrationAsync(
+                timeoutUnit,
+                TransactionType.SIP_LOGIN,
+                new RegistrationCompletionListener() {
+                    public void onRegistrationComplete(final RegResult result, final IMSStackException error) {
+                        registered.set(error == null && result.isSuccessful());
+
+                        if (error == null) {
+                            regResult.set(result);
+                        }
+                    }
+                }
+        );
+    }
+
     private RegResult doRegistration(
             final TimeoutUnit timeoutUnit,
             final TransactionType<ClientTransaction, ? extends RegisterTransaction> transactionType
@@ -323,15 +347,7 @@ public class RegisterServiceImpl extends AbstractService implements
 
         if (!done.get()) {
 
-            failureRoute = null;
-            registrationProxies.clear();
-
-            registrationProxies.add(getStackContext().getConfig().getProxyServer().getAddress());
-
-            final Dialog dlg = extractRegistrationData();
-
-            //democode
-            //dlg.putCustomParameter(Dialog.ParamKey.PATH, "<sip:P3.EXAMPLEHOME.COM;lr>,<sip:P1.EXAMPLEVISITED.COM;lr>");
+            final Dialog dlg = prepareRegistration();
 
             ClientTransaction transaction, prevTransaction = null;
             int i = REDIRECT_ROUNDTRIPS_ALLOWED;
@@ -348,24 +364,9 @@ public class RegisterServiceImpl extends AbstractService implements
 
                 prevTransaction = transaction;
             }
-            while (retValue.getRedirectData() != null/*redirectDetected(retValue)*/ &&
-                    !redirectEvents.contains(lastRedirect.get()) &&
-                    i-- > 0);
-
-            if (!retValue.isSuccessful() && !retValue.byTimeout()) {
-                if(failureRoute != null && registrationProxies.contains(failureRoute.getDstHost())) {
-                    throw new DnsLookupException("Cann't lookup host: " + failureRoute.getDstHost());
-                } else if(certificateValidationError.get() != null) {
-                    ChannelIOException exception = certificateValidationError.getAndSet(null);
-                    throw new CertificateException(exception.getMessage(), exception.getCause());
-                } 
-            }
-
-            redirectEvents.clear();
-            lastRedirect.set(null);
+            while (needRedirect(retValue) && i-- > 0);
 
-            updateRegDialog(transactionType, retValue);
-            notifyListeners(transactionType, retValue);
+            completeRegistration(transactionType, retValue);
         }
         else {
             throw new IllegalStateException("Service already shutdown");
@@ -374,6 +375,124 @@ public class RegisterServiceImpl extends AbstractService implements
         return retValue;
     }
 
+    //non-blocking counterpart of doRegistration(). Redirect round trips are chained from transaction completion.
+
+    private void doRegistrationAsync(
+            final TimeoutUnit timeoutUnit,
+            final TransactionType<ClientTransaction, ? extends RegisterTransaction> transactionType,
+            final RegistrationCompletionListener listener) {
+
+        if (!done.get()) {
+            runRegistrationRound(
+                    prepareRegistration(),
+                    timeoutUnit,
+                    transactionType,
+                    null,
+                    REDIRECT_ROUNDTRIPS_ALLOWED,
+                    listener
+            );
+        }
+        else {
+            throw new IllegalStateException("Service already shutdown");
+        }
+    }
+
+    private void runRegistrationRound(
+            final Dialog dlg,
+            final TimeoutUnit timeoutUnit,
+            final TransactionType<ClientTransaction, ? extends RegisterTransaction> transactionType,
+            final ClientTransaction prevTransaction,
+            final int roundtripsLeft,
+            final RegistrationCompletionListener listener) {
+
+        final ClientTransaction transaction = getTransactionManager().lookUpTransaction(dlg, null, transactionType);
+        assert transaction != prevTransaction;
+        assert !transaction.isComplete();
+
+        runAsynchronously(
+                transaction,
+                timeoutUnit,
+                new TransactionCompletionListener<Boolean>() {
+                    public void onTransactionComplete(final TransactionResult<Boolean> result) {
+                        //listeners are notified over IPC and next round looks up transaction with invokeAndWait,
+                        //neither may run in transaction thread
+                        TransactionUtils.getExecutorService().execute(new Runnable() {
+                            public void run() {
+                                completeRegistrationRound(dlg, timeoutUnit, transactionType, transaction,
+                                        roundtripsLeft, listener);
+                            }
+                        });
+                    }
+                }
+        );
+    }
+
+    private void completeRegistrationRound(
+            final Dialog dlg,
+            final TimeoutUnit timeoutUnit,
+            final TransactionType<ClientTransaction, ? extends RegisterTransaction> transactionType,
+            final ClientTransaction transaction,
+            final int roundtripsLeft,
+            final RegistrationCompletionListener listener) {
+
+        final RegResult retValue = buildRegResult(transaction);
+
+        handleRegistrationResults(retValue, transaction);
+
+        if (needRedirect(retValue) && roundtripsLeft > 0) {
+            runRegistrationRound(dlg, timeoutUnit, transactionType, transaction, roundtripsLeft - 1, listener);
+        }
+        else {
+            IMSStackException error = null;
+            try {
+                completeRegistration(transactionType, retValue);
+            }
+            catch (IMSStackException e) {
+                error = e;
+            }
+            listener.onRegistrationComplete(retValue, error);
+        }
+    }
+
+    private Dialog prepareRegistration() {
+        failureRoute = null;
+        registrationProxies.clear();
+
+        registrationProxies.add(getStackContext().getConfig().getProxyServer().getAddress());
+
+        final Dialog dlg = extractRegistrationData();
+
+        //democode
+        //dlg.putCustomParameter(Dialog.ParamKey.PATH, "<sip:P3.EXAMPLEHOME.COM;lr>,<sip:P1.EXAMPLEVISITED.COM;lr>");
+
+        return dlg;
+    }
+
+    private boolean needRedirect(final RegResult retValue) {
+        return retValue.getRedirectData() != null/*redirectDetected(retValue)*/ &&
+                !redirectEvents.contains(lastRedirect.get());
+    }
+
+    private void completeRegistration(
+            final TransactionType<ClientTransaction, ? extends RegisterTransaction> transactionType,
+            final RegResult retValue) throws DnsLookupException, CertificateException {
+
+        if (!retValue.isSuccessful() && !retValue.byTimeout()) {
+            if(failureRoute != null && registrationProxies.contains(failureRoute.getDstHost())) {
+                throw new DnsLookupException("Cann't lookup host: " + failureRoute.getDstHost());
+            } else if(certificateValidationError.get() != null) {
+                ChannelIOException exception = certificateValidationError.getAndSet(null);
+                throw new CertificateException(exception.getMessage(), exception.getCause());
+            } 
+        }
+
+        redirectEvents.clear();
+        lastRedirect.set(null);
+
+        updateRegDialog(transactionType, retValue);
+        notifyListeners(transactionType, retValue);
+    }
+
 
     private Dialog extractRegistrationData() {
         //String toUri = SIPUtil.toSipURI(getStackContext().getConfig().getRegistrarServer());
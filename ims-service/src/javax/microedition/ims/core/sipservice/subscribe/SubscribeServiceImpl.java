@@ -203,7 +203,7 @@ public class SubscribeServiceImpl
     }
 
     public void handleIncomingNotify(final Request msg) {
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+        assert TransactionUtils.isPartitionOwner(msg.getCallId()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
         assert !done.get();
         assert msg != null && MessageType.SIP_NOTIFY == MessageType.parse(msg.getMethod());
 
@@ -138,91 +138,6 @@ public class SubscriptionImpl implements Subscription, Shutdownable {
                         }
                     );
 
-                    transaction.addListener(new TransactionListenerAdapter<BaseSipMessage>() {
-                        
-                        public void onTransactionComplete(
-                                final TransactionEvent<BaseSipMessage> event,
-                                final TransactionResult.Reason reason) {
-
-                            super.onTransactionComplete(event, reason);
-                            final Boolean success = event.getTransaction().getTransactionValue().getValue();
-
-                            notifyListeners(success, dialog, info);
-
-                            final boolean stateChanged = stateHolder.compareAndTransitNextState(
-                                    State.SUBSCRIBING,
-                                    success,
-                                    getTransactionDescription(event)
-                            );
-
-                            assert stateChanged : "Can not proceed to next state. Current state " +
-                                    stateHolder.getState() + " expected state " + State.SUBSCRIBING;
-
-                            if (!success) {
-                                //TODO: set a timer for non-481 fail
-                                //currently terminate all failure
-                                //if (getTransactionDescription(event).getType()==SubscribeTransactionDescription.Type.REFRESH) {
-                                //    if (errocode == 481) {
-                                //    } else {
-                                //    }
-                                //} else if (getTransactionDescription(event).getType()==SubscribeTransactionDescription.Type.SUBSCRIBE) {
-                                //}
-                                shutdown();
-                            }
-                        }
-
-                        private void notifyListeners(Boolean success, final Dialog dialog, final SubscriptionInfo info) {
-                            if (State.SUBSCRIBED == stateHolder.getState()) {
-                                if (success) {
-
-                                    final SubscriptionStateEvent subscriptionStateEvent = new DefaultSubscriptionStateEvent(
-                                            dialog,
-                                            info
-                                    );
-
-                                    subscriptionStateListenerHolder.getNotifier().
-                                            onSubscriptionRefreshed(subscriptionStateEvent);
-                                }
-                                else {
-
-
-                                    final SubscriptionFailedEvent subscriptionStateEvent = new DefaultSubscriptionFailedEvent(
-                                            dialog,
-                                            info,
-                                            "fake",
-                                            0
-                                    );
-
-                                    subscriptionStateListenerHolder.getNotifier().
-                                            onSubscriptionRefreshFailed(subscriptionStateEvent);
-                                }
-                            }
-                            else {
-                                if (success) {
-                                    final SubscriptionStateEvent subscriptionStateEvent = new DefaultSubscriptionStateEvent(
-                                            dialog,
-                                            info
-                                    );
-
-                                    subscriptionStateListenerHolder.getNotifier().
-                                            onSubscriptionStarted(subscriptionStateEvent);
-                                }
-                                else {
-                                    //TODO AK change hardcoded parameters
-                                    final SubscriptionFailedEvent subscriptionStateEvent = new DefaultSubscriptionFailedEvent(
-                                            dialog,
-                                            info,
-                                            "no resoureces",
-                                            -1
-                                    );
-
-                                    subscriptionStateListenerHolder.getNotifier().
-                                            onSubscriptionStartFailed(subscriptionStateEvent);
-                                }
-                            }
-                        }
-                    });
-
                     transaction.addListener(
                             new RefreshListener(
                                     context.getRepetitiousTaskManager(),
@@ -382,6 +297,11 @@ public class SubscriptionImpl implements Subscription, Shutdownable {
         return dialog;
     }
 
+    @PartitionResolver
+    public Object getPartitionKey() {
+        return dialog.getPartitionKey();
+    }
+
     /*
     The SUBSCRIBE method [5] is used by a user agent to establish a subscription
     for the purpose of receiving notifications (via the NOTIFY method)
@@ -468,7 +388,7 @@ public class SubscriptionImpl implements Subscription, Shutdownable {
     private void doSubscription(
             final TransactionType<ClientTransaction, ? extends SubscribeCommonTransaction> transactionType,
             final Dialog transactionEntity,
-            final TransactionDescription transactionDescription) {
+            final SubscribeTransactionDescription transactionDescription) {
 
         assert TransactionType.SIP_SUBSCRIBE == transactionType ||
                 TransactionType.SIP_UNSUBSCRIBE == transactionType;
@@ -478,13 +398,106 @@ public class SubscriptionImpl implements Subscription, Shutdownable {
             final Transaction<Boolean, BaseSipMessage> transaction =
                     transactionManager.newTransaction(transactionEntity, transactionDescription, transactionType);
 
-            AbstractService.runAsynchronously(transaction, TRANSACTION_TIMEOUT);
+            if (TransactionType.SIP_SUBSCRIBE == transactionType) {
+                AbstractService.runAsynchronously(
+                        transaction,
+                        TRANSACTION_TIMEOUT,
+                        new TransactionCompletionListener<Boolean>() {
+                            public void onTransactionComplete(final TransactionResult<Boolean> result) {
+                                onSubscribeComplete(result.getValue(), transactionDescription);
+                            }
+                        }
+                );
+            }
+            else {
+                AbstractService.runAsynchronously(transaction, TRANSACTION_TIMEOUT);
+            }
         }
         else {
             assert false : "Subscription already shutdown";
         }
     }
 
+    //SUBSCRIBE result comes through completion listener, no thread waits for it
+    private void onSubscribeComplete(
+            final Boolean success,
+            final SubscribeTransactionDescription transactionDescription) {
+
+        notifyListeners(success, dialog, info);
+
+        final boolean stateChanged = stateHolder.compareAndTransitNextState(
+                State.SUBSCRIBING,
+                success,
+                transactionDescription
+        );
+
+        assert stateChanged : "Can not proceed to next state. Current state " +
+                stateHolder.getState() + " expected state " + State.SUBSCRIBING;
+
+        if (!success) {
+            //TODO: set a timer for non-481 fail
+            //currently terminate all failure
+            //if (transactionDescription.getType()==SubscribeTransactionDescription.Type.REFRESH) {
+            //    if (errocode == 481) {
+            //    } else {
+            //    }
+            //} else if (transactionDescription.getType()==SubscribeTransactionDescription.Type.SUBSCRIBE) {
+            //}
+            shutdown();
+        }
+    }
+
+    private void notifyListeners(Boolean success, final Dialog dialog, final SubscriptionInfo info) {
+        if (State.SUBSCRIBED == stateHolder.getState()) {
+            if (success) {
+
+                final SubscriptionStateEvent subscriptionStateEvent = new DefaultSubscriptionStateEvent(
+                        dialog,
+                        info
+                );
+
+                subscriptionStateListenerHolder.getNotifier().
+                        onSubscriptionRefreshed(subscriptionStateEvent);
+            }
+            else {
+
+
+                final SubscriptionFailedEvent subscriptionStateEvent = new DefaultSubscriptionFailedEvent(
+                        dialog,
+                        info,
+                        "fake",
+                        0
+                );
+
+                subscriptionStateListenerHolder.getNotifier().
+                        onSubscriptionRefreshFailed(subscriptionStateEvent);
+            }
+        }
+        else {
+            if (success) {
+                final SubscriptionStateEvent subscriptionStateEvent = new DefaultSubscriptionStateEvent(
+                        dialog,
+                        info
+                );
+
+                subscriptionStateListenerHolder.getNotifier().
+                        onSubscriptionStarted(subscriptionStateEvent);
+            }
+            else {
+                //TODO AK change hardcoded parameters
+                final SubscriptionFailedEvent subscriptionStateEvent = new DefaultSubscriptionFailedEvent(
+                        dialog,
+                        info,
+                        "no resoureces",
+                        -1
+                );
+
+                subscriptionStateListenerHolder.getNotifier().
+                        onSubscriptionStartFailed(subscriptionStateEvent);
+            }
+        }
+    }
+
     private void finalizeSubscription(final RemoteState remoteState) {
         final SubscriptionTerminatedEvent subscriptionStateEvent = new DefaultSubscriptionTerminatedEvent(
                 dialog,
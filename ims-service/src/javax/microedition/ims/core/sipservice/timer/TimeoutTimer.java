@@ -44,6 +44,7 @@ package javax.microedition.ims.core.sipservice.timer;
 import javax.microedition.ims.common.Logger;
 import javax.microedition.ims.common.NamedDaemonThreadFactory;
 import javax.microedition.ims.common.Shutdownable;
+import javax.microedition.ims.core.transaction.TransactionRunnable;
 import javax.microedition.ims.core.transaction.TransactionUtils;
 import java.util.*;
 import java.util.concurrent.Executors;
@@ -91,14 +92,19 @@ public class TimeoutTimer implements Shutdownable {
 
 
         if (!done.get()) {
+            //timeout fires in the transaction partition which started the timer
+            final Object partitionKey = TransactionUtils.currentPartitionKey();
+
             synchronized (futureMap) {
                 ScheduledFuture<?> timeoutTask = service.schedule(
                         new Runnable() {
-                            private final TimeoutListener wrappedListener = TransactionUtils.wrap(timeoutListener, TimeoutListener.class);
-
                             public void run() {
                                 try {
-                                    wrappedListener.onTimeout();
+                                    TransactionUtils.invokeLater(new TransactionRunnable("Timeout " + timeoutListener, partitionKey) {
+                                        public void run() {
+                                            timeoutListener.onTimeout();
+                                        }
+                                    });
                                 }
                                 catch (Throwable e) {
                                     e.printStackTrace();
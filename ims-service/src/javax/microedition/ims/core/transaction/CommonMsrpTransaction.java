@@ -88,6 +88,12 @@ public abstract class CommonMsrpTransaction extends CommonTransaction<MsrpMessag
         return Priority.NORMAL;
     }
     
+    @Override
+    protected Object partitionKey() {
+        //MSRP session runs in the partition of its SIP dialog
+        return msrpTransactionDescriptor.getMsrpSession().getMsrpDialog().getCallId();
+    }
+
     @Override
     public TransactionDescription getDescription() {
         return msrpTransactionDescriptor;
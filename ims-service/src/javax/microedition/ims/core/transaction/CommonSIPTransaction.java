@@ -76,6 +76,11 @@ public abstract class CommonSIPTransaction extends CommonTransaction<BaseSipMess
         return dialog;
     }
 
+    @Override
+    protected Object partitionKey() {
+        return dialog == null ? super.partitionKey() : dialog.getCallId();
+    }
+
     @Override
     public TransactionDescription getDescription() {
         return description;
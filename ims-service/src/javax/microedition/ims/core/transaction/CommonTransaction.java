@@ -93,7 +93,7 @@ public abstract class CommonTransaction<M extends IMSMessage> implements Transac
                 new ReentrantSynchronizationContext.ContextCallback<Boolean>() {
                     public void initiateTransaction() {
 
-                        assert TransactionUtils.isTransactionExecutionThread() :
+                        assert TransactionUtils.isPartitionOwner(getPartitionKey()) :
                                 "Code run in wrong thread. Must be run in TransactionThread. Now in " +
                                         Thread.currentThread();
 
@@ -130,7 +130,7 @@ public abstract class CommonTransaction<M extends IMSMessage> implements Transac
                     }
 
                     public void finalizeTransaction(final TransactionResult<Boolean> result) {
-                        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+                        assert TransactionUtils.isPartitionOwner(getPartitionKey()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
                         tryToComplete(result);
                     }
 
@@ -143,6 +143,11 @@ public abstract class CommonTransaction<M extends IMSMessage> implements Transac
                     public Priority priority(Method method) {
                         return CommonTransaction.this.priority(method);
                     }
+
+                    @PartitionResolver
+                    public Object partitionKey() {
+                        return getPartitionKey();
+                    }
                 };
 
         this.wrappedContextCallback = TransactionUtils.wrap(
@@ -166,6 +171,18 @@ public abstract class CommonTransaction<M extends IMSMessage> implements Transac
         return null;
     }
 
+    /**
+     * @return key of transaction partition. Subclasses return dialog or session key so related transactions run in order.
+     */
+    protected Object partitionKey() {
+        return transactionId;
+    }
+
+    @PartitionResolver
+    public final Object getPartitionKey() {
+        return partitionKey();
+    }
+
     public Object getTransactionId() {
         return transactionId;
     }
@@ -186,7 +203,7 @@ public abstract class CommonTransaction<M extends IMSMessage> implements Transac
             final M outMessage = lastOutMessage.get();
 
             TransactionUtils.invokeLaterSmart(
-                    new TransactionRunnable("push[" + inMessage.shortDescription() + "] transaction[" + CommonTransaction.this.toString() + "]") {
+                    new TransactionRunnable("push[" + inMessage.shortDescription() + "] transaction[" + CommonTransaction.this.toString() + "]", getPartitionKey()) {
                         public void run() {
                             doPushMessage(inMessage, outMessage);
                         }
@@ -196,7 +213,7 @@ public abstract class CommonTransaction<M extends IMSMessage> implements Transac
     }
 
     private void doPushMessage(final M inMessage, final M outMessage) {
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+        assert TransactionUtils.isPartitionOwner(getPartitionKey()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
         assert !done.get() : "transaction already finished: " + CommonTransaction.this;
 
         if (!done.get()) {
@@ -302,6 +319,37 @@ public abstract class CommonTransaction<M extends IMSMessage> implements Transac
         return transactionValue.get();
     }
 
+    public void appendAsync(final TransactionCompletionListener<Boolean> listener) {
+        appendAsync(null, listener);
+    }
+
+    public void appendAsync(final TimeoutUnit timeoutUnit, final TransactionCompletionListener<Boolean> listener) {
+        Logger.log("CommontTransaction", "appendAsync# timeoutUnit = " + timeoutUnit + ", done = " + done.get() + ", transactionComplete.get() = " + transactionComplete.get());
+
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener can't be null.");
+        }
+
+        if (transactionComplete.get()) {
+            listener.onTransactionComplete(transactionValue.get());
+        }
+        else if (!done.get()) {
+            context.appendAsync(
+                    timeoutUnit,
+                    new TransactionCompletionListener<Boolean>() {
+                        public void onTransactionComplete(final TransactionResult<Boolean> result) {
+                            //transaction value is set in finalization routine which runs before listeners
+                            final TransactionResult<Boolean> value = transactionValue.get();
+                            listener.onTransactionComplete(value == null ? result : value);
+                        }
+                    }
+            );
+        }
+        else {
+            throw new IllegalArgumentException("Transaction already shutdown.");
+        }
+    }
+
     private TransactionResult<Boolean> doAppend(final TimeoutUnit timeoutUnit, final boolean block) {
         Logger.log("CommontTransaction", "doAppend# timeoutUnit = " + timeoutUnit + ", block = " + block + ", done = " + done.get() + ", transactionComplete.get() = " + transactionComplete.get());
 
@@ -333,7 +381,7 @@ public abstract class CommonTransaction<M extends IMSMessage> implements Transac
     //modificator must be made protected
 
     public void sendMessage(M outMessage, final MessageStateListener listener) {
-        assert TransactionUtils.isTransactionExecutionThread() :
+        assert TransactionUtils.isPartitionOwner(getPartitionKey()) :
                 "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
 
         lastOutMessage.set(outMessage);
@@ -352,7 +400,7 @@ public abstract class CommonTransaction<M extends IMSMessage> implements Transac
         final String lastInMsgDescr = inMessage == null ? "NONE" : inMessage.shortDescription();
         final String lastOutMsgDescr = outMessage == null ? "NONE" : outMessage.shortDescription();
         TransactionUtils.invokeLaterSmart(
-                new TransactionRunnable("doSendMessage[lastInMsg " + lastInMsgDescr + " lastOutMsg " + lastOutMsgDescr + "]") {
+                new TransactionRunnable("doSendMessage[lastInMsg " + lastInMsgDescr + " lastOutMsg " + lastOutMsgDescr + "]", getPartitionKey()) {
                     public void run() {
                         getListenerHolder().getNotifier().onOutgoingMessage(createTransactionEvent(inMessage, outMessage));
                         
@@ -369,7 +417,7 @@ public abstract class CommonTransaction<M extends IMSMessage> implements Transac
 
     public void tryToComplete(final TransactionResult<Boolean> transactionResult) {
 
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+        assert TransactionUtils.isPartitionOwner(getPartitionKey()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
 
         /*if (transactionResult == null) {
             throw new IllegalArgumentException("Transaction MUST always have non null result value. Now it has " + transactionResult);
@@ -433,7 +481,7 @@ public abstract class CommonTransaction<M extends IMSMessage> implements Transac
     public void shutdown() {
 
         TransactionUtils.invokeLater(
-                new TransactionRunnable("CommonSIPTransaction.shutdown[]") {
+                new TransactionRunnable("CommonSIPTransaction.shutdown[]", getPartitionKey()) {
                     public void run() {
                         doShutdown();
                     }
@@ -442,7 +490,7 @@ public abstract class CommonTransaction<M extends IMSMessage> implements Transac
     }
 
     private void doShutdown() {
-        assert TransactionUtils.isTransactionExecutionThread() : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
+        assert TransactionUtils.isPartitionOwner(getPartitionKey()) : "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
 
         log("Cancelling transaction", "shutdown");
 
@@ -501,7 +549,7 @@ public abstract class CommonTransaction<M extends IMSMessage> implements Transac
 
         final String currStateName = currentState == null ? "NOSTATE" : currentState.shortName();
         TransactionUtils.invokeLaterSmart(
-                new TransactionRunnable("transitToState[from " + currStateName + " to " + newState + "]") {
+                new TransactionRunnable("transitToState[from " + currStateName + " to " + newState + "]", getPartitionKey()) {
                     public void run() {
                         doTransitToState(newState, event);
                     }
@@ -510,7 +558,7 @@ public abstract class CommonTransaction<M extends IMSMessage> implements Transac
     }
 
     private void doTransitToState(final TransactionState<?, M> newState, final TransactionStateChangeEvent<M> event) {
-        assert TransactionUtils.isTransactionExecutionThread() :
+        assert TransactionUtils.isPartitionOwner(getPartitionKey()) :
                 "Code run in wrong thread. Must be run in TransactionThread. Now in " + Thread.currentThread();
 
         Logger.log("Transiting to state: " + newState);
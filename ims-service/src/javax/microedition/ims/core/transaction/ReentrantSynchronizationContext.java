@@ -59,10 +59,10 @@ import java.util.concurrent.atomic.AtomicReference;
  */
 
 /*
-It's a reentrant synchronization point for many threads.
-First coming thread initiate so calling transaction and all subsecuent threads just wait in append() method till some
-outside thread calls release(). After relase() new iteration begins. First new comming thread initiate transaction and
-wait and subsequent threads waite too till new release(). And all over again.
+It's a reentrant synchronization point for many callers.
+First coming caller initiate so calling transaction and all subsequent callers just register a completion listener
+in appendAsync() till some outer routine calls release() or the timeout expires. After release() new iteration begins.
+Blocking append() is a thin adapter which registers a listener and waits for it.
 * */
 class ReentrantSynchronizationContext<T> implements Shutdownable {
 
@@ -81,18 +81,18 @@ class ReentrantSynchronizationContext<T> implements Shutdownable {
     //The mutex for common synchronization
     private final Object mutex = new Object();
 
-    //Every new context iteration will create new transactionId. this is to distinguish between threads
+    //Every new context iteration will create new transactionId. this is to distinguish between callers
     // coming in new iteration and left from the old one
     private final AtomicReference<AtomicReference<TransactionResult<T>>> transactionId =
             new AtomicReference<AtomicReference<TransactionResult<T>>>(null);
-    //Every server threads will hang in  it's own latch. So though it's list of latches but every latch connected with it's own thread
-    private final List<CountDownLatch> awaitingThreads;
+    //completion listeners of every iteration. Key is a transaction id described above.
+    private final Map<AtomicReference<TransactionResult<T>>, List<TransactionCompletionListener<T>>> completionMap;
     //this map contains a finilization tasks for each context iteartion. Key is a transaction id described above.
     // When it's time to finish current iteration a new finalization task created. it's intended for running outer
-    //  finalization routine and for releasing latches and making common clean up
+    //  finalization routine and for notifying completion listeners and making common clean up
     private final Map<AtomicReference<? extends TransactionResult<T>>, FutureTask> finalizationMap;
 
-    //the flag shows that there exists some awating threads and they not yet released from theirs latches
+    //the flag shows that current iteration is started and not yet finalized
     private final AtomicBoolean transactionInProgress;
     //that is the default value for transaction result. If there no outer release with some other value,
     // this value is used as transaction result
@@ -101,7 +101,7 @@ class ReentrantSynchronizationContext<T> implements Shutdownable {
     private final AtomicBoolean done = new AtomicBoolean(false);
     //this callback for doing outer initialization and finalization duties
     private final ContextCallback<T> callback;
-    //this executor runs finalization routine
+    //this manager runs iteration timeouts
 
     private final RepetitiousTaskManager repetitiousTaskManager;
     /**
@@ -121,150 +121,182 @@ class ReentrantSynchronizationContext<T> implements Shutdownable {
 
         transactionInProgress = new AtomicBoolean(false);
 
-        //barrierList = Collections.synchronizedList(new ArrayList<CountDownLatch>(20));
-        awaitingThreads = Collections.synchronizedList(new ArrayList<CountDownLatch>(20));
+        completionMap = Collections.synchronizedMap(new HashMap<AtomicReference<TransactionResult<T>>, List<TransactionCompletionListener<T>>>(5));
         finalizationMap = Collections.synchronizedMap(new HashMap<AtomicReference<? extends TransactionResult<T>>, FutureTask>(5));
     }
 
+    //calling thread waits until some outer routine releases it by calling release() or till TIMEOUT EXPIRES
+    //if TIMEOUT EXPIRES and there were not outer release() call default value returned.
+
     TransactionResult<T> append(final TimeoutUnit timeoutUnit) {
-        return doAppend(timeoutUnit, true);
+        Logger.log(TAG, "append#timeoutUnit = " + timeoutUnit + ", done.get() = " + done.get());
+
+        final CountDownLatch localBarrier = new CountDownLatch(1);
+        final AtomicReference<TransactionResult<T>> threadLocalTransactionId = doAppend(
+                timeoutUnit,
+                new TransactionCompletionListener<T>() {
+                    public void onTransactionComplete(final TransactionResult<T> result) {
+                        localBarrier.countDown();
+                    }
+                }
+        );
+
+        assert !TransactionUtils.isTransactionExecutionThread() : "Task queue blocking task detected";
+
+        //timeout task of the iteration may be scheduled by an earlier caller with longer timeout,
+        //so the caller finalizes the iteration itself once its own timeout expires
+        final long timeoutInMillis = toMillis(timeoutUnit);
+        boolean completed = await(threadLocalTransactionId, localBarrier, timeoutInMillis);
+
+        if (!completed) {
+            //nobody has finished this iteration in time
+            final TransactionResult<T> transactionResult = threadLocalTransactionId.get();
+            runFinalization(
+                    threadLocalTransactionId,
+                    transactionResult == null ? TransactionResult.Reason.TIMEOUT : transactionResult.getReason(),
+                    transactionResult == null ? null : transactionResult.getValue(),
+                    callback
+            );
+            completed = await(threadLocalTransactionId, localBarrier, FINALIZATION_TIMEOUT);
+        }
+
+        //if something happens to finalization routine (helper theread abruptly dead or something like that) we make map clean up.
+        //and try to notify all awaitng callers
+        if (!completed) {
+            Logger.log("Warning!!! transaction finalization took  too long time. More than " + FINALIZATION_TIMEOUT + " millis");
+            cleanUpFinalization(threadLocalTransactionId);
+            notifyCompletion(threadLocalTransactionId);
+        }
+
+        final TransactionResult<T> retValue = threadLocalTransactionId.get();
+        Logger.log(TAG, "append#retValue = " + retValue);
+        return retValue;
     }
 
     void appendNoBlock(final TimeoutUnit timeoutUnit) {
-        doAppend(timeoutUnit, false);
+        doAppend(timeoutUnit, null);
     }
 
+    //listener is notified from the transaction thread once the iteration is finalized, so it must not block.
 
-    //calling threads append until some outer routine releases them by calling release() or till TIMEOUT EXPIRES
-    //if TIMEOUT EXPIRES and there were not outer release() call default value returned.
-    //no matter how awaiting threads released (TIMEOUT or outer call) finalization routine invoked in dedicated helper thread
+    void appendAsync(final TimeoutUnit timeoutUnit, final TransactionCompletionListener<T> listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener can't be null.");
+        }
+        doAppend(timeoutUnit, listener);
+    }
+
+    private AtomicReference<TransactionResult<T>> doAppend(
+            final TimeoutUnit timeoutUnit,
+            final TransactionCompletionListener<T> listener) {
 
-    private TransactionResult<T> doAppend(final TimeoutUnit timeoutUnit, final boolean block) {
-        Logger.log("ReentrantSynchronizationContext", "doAppend#timeoutUnit = " + timeoutUnit + ", block = " + block + ", done.get() = " + done.get());
-        TransactionResult<T> retValue = null;
+        Logger.log(TAG, "doAppend#timeoutUnit = " + timeoutUnit + ", listener = " + listener + ", done.get() = " + done.get());
 
         //possible to proceed only if there were no shutdown call on this instance
-        if (!done.get()) {
+        if (done.get()) {
+            throw new IllegalStateException("Context already shutdown.");
+        }
+
+        //if the calling thread is a first on in this iteration the flag will get 'true' value
+        boolean needInitiateTransaction;
+
+        //each iteration has it's own instance of threadLocalTransactionId. Also it holds the current iteration transaction value.
+        //null means default value should be used
+        final AtomicReference<TransactionResult<T>> threadLocalTransactionId;
 
-            //latch for calling thread
-            CountDownLatch localBarrier;
-
-            //if the calling thread is a first on in this iteration the flag will get 'true' value
-            boolean needInitiateTransaction;
-
-            //each iteration has it's own instance of threadLocalTransactionId. Also it holds the current iteration transaction value.
-            //null means default value should be used
-            final AtomicReference<TransactionResult<T>> threadLocalTransactionId;
-
-            //nobody can go through if the same monitor is taken in other place. Probably in finalization routine
-            Logger.log("ReentrantSynchronizationContext", "doAppend#before sync");
-            synchronized (mutex) {
-                Logger.log("ReentrantSynchronizationContext", "doAppend#after sync");
-                //each calling thread would have it's own latch.
-                //It's supposed that some other awaking activity would countdown all the latches from list.
-                localBarrier = new CountDownLatch(1);
-
-                //list of all latches and associated threads. Used to release all threads at once for this transaction iteration
-                awaitingThreads.add(localBarrier);
-                //barierList.add(localBarrier);
-
-                //see description above
-                needInitiateTransaction = false;
-                if (transactionInProgress.compareAndSet(false, true)) {
-                    //if we first time in this iteration in this peace of code we mark that new transaction shoud be started
-                    needInitiateTransaction = true;
-                    //also we prepare new transaction id. null means we don't have outer call to release()
-                    transactionId.set(new AtomicReference<TransactionResult<T>>(null));
+        //nobody can go through if the same monitor is taken in other place. Probably in finalization routine
+        synchronized (mutex) {
+            //see description above
+            needInitiateTransaction = false;
+            if (transactionInProgress.compareAndSet(false, true)) {
+                //if we first time in this iteration in this peace of code we mark that new transaction shoud be started
+                needInitiateTransaction = true;
+                //also we prepare new transaction id. null means we don't have outer call to release()
+                transactionId.set(new AtomicReference<TransactionResult<T>>(null));
+            }
+            //each caller must hold transaction id it it's own heap
+            threadLocalTransactionId = transactionId.get();
+
+            //registered under the same monitor as finalization, so listener can't miss the iteration end
+            if (listener != null) {
+                List<TransactionCompletionListener<T>> listeners = completionMap.get(threadLocalTransactionId);
+                if (listeners == null) {
+                    listeners = new ArrayList<TransactionCompletionListener<T>>(2);
+                    completionMap.put(threadLocalTransactionId, listeners);
                 }
-                //each thread must hold transaction id it it's own heap
-                threadLocalTransactionId = transactionId.get();
+                listeners.add(listener);
             }
+        }
+
+        //call outer initialization routine
+        if (needInitiateTransaction) {
+            Logger.log(TAG, "initiateTransaction#start");
+            callback.initiateTransaction();
+            Logger.log(TAG, "initiateTransaction#end");
+        }
 
-            //call outer initialization routine
-            if (needInitiateTransaction) {
-                Logger.log("ReentrantSynchronizationContext", "initiateTransaction#start");
-                callback.initiateTransaction();
-                Logger.log("ReentrantSynchronizationContext", "initiateTransaction#end");
+        //the first caller with timeout schedules iteration timeout, later ones don't move it.
+        //Nobody waits for it in a timer thread.
+        final long timeoutInMillis = toMillis(timeoutUnit);
+        if (timeoutInMillis >= 0 && (needInitiateTransaction || listener != null)) {
+            repetitiousTaskManager.startDelayedTask(
+                    threadLocalTransactionId,
+                    new RepetitiousTaskManager.Repeater<AtomicReference<TransactionResult<T>>>() {
+                        @Override
+                        public void onRepeat(AtomicReference<TransactionResult<T>> key, Shutdownable shutdownable) {
+                            Logger.log(TAG, "onRepeat");
+                            final TransactionResult<T> transactionResult = key.get();
+                            runFinalization(
+                                    key,
+                                    TransactionResult.Reason.TIMEOUT,
+                                    transactionResult == null ? null : transactionResult.getValue(),
+                                    callback
+                            );
+                            shutdownable.shutdown();
+                        }
+                    },
+                    timeoutInMillis
+            );
+
+            //iteration could be finalized while timeout was scheduled
+            if (threadLocalTransactionId.get() != null) {
+                repetitiousTaskManager.cancelTask(threadLocalTransactionId);
             }
+        }
 
-            if (block) {
-                TransactionResult.Reason reason = TransactionResult.Reason.OUTER_INTERRUPT;
-                try {
-                    //make thread to wait until transaction finished or TIMEOUT EXPIRES
-                    if (timeoutUnit != null) {
-                        Logger.log("ReentrantSynchronizationContext", "start await, timeoutUnit = " + timeoutUnit);
-                        localBarrier.await(
-                                timeoutUnit.getTimeout(),
-                                timeoutUnit.getTimeoutUnit() == null ?
-                                        TimeUnit.MILLISECONDS :
-                                        timeoutUnit.getTimeoutUnit()
-                        );
-                    }
-                    else {
-                        localBarrier.await();
-                    }
+        return threadLocalTransactionId;
+    }
 
-                    reason = localBarrier.getCount() > 0 ?
-                            TransactionResult.Reason.TIMEOUT :
-                            TransactionResult.Reason.OUTER_INTERRUPT;
-                    
-                    Logger.log("ReentrantSynchronizationContext", "end await, reason = " + reason);
-                }
-                catch (InterruptedException e) {
-                    //set thread flag
-                    Thread.interrupted();
-                    reason = TransactionResult.Reason.OUTER_INTERRUPT;
-                }
-                finally {
-                    //try to run finalization routine
-                    final TransactionResult<T> transactionResult = threadLocalTransactionId.get();
-                    Logger.log("ReentrantSynchronizationContext", "start tr. finalization");
-                    runFinalization(
-                            threadLocalTransactionId,
-                            true,
-                            reason,
-                            transactionResult == null ? null : transactionResult.getValue(),
-                            callback
-                    );
-                    Logger.log("ReentrantSynchronizationContext", "end tr. finalization");
-                    retValue = threadLocalTransactionId.get();
-                    Logger.log("ReentrantSynchronizationContext", "start tr. finalization, retValue = " + retValue);
-                }
+    private static long toMillis(final TimeoutUnit timeoutUnit) {
+        final boolean needTimeout = !(timeoutUnit == null ||
+                timeoutUnit.getTimeout() == null ||
+                timeoutUnit.getTimeoutUnit() == null);
+
+        return needTimeout ? timeoutUnit.getTimeoutUnit().toMillis(timeoutUnit.getTimeout()) : -1;
+    }
+
+    //negative timeout means wait without time limit. Interrupt is treated as outer interruption of the iteration.
+
+    private boolean await(
+            final AtomicReference<TransactionResult<T>> transactionId,
+            final CountDownLatch latch,
+            final long timeoutInMillis) {
+        boolean retValue;
+
+        try {
+            if (timeoutInMillis < 0) {
+                latch.await();
+                retValue = true;
             }
             else {
-                if (needInitiateTransaction) {
-                    boolean needTimeout = !(timeoutUnit == null ||
-                            timeoutUnit.getTimeout() == null ||
-                            timeoutUnit.getTimeoutUnit() == null);
-
-                    if (needTimeout) {
-                        long timeoutInMillis = timeoutUnit.getTimeoutUnit().toMillis(timeoutUnit.getTimeout());
-
-                        repetitiousTaskManager.startDelayedTask(
-                                threadLocalTransactionId,
-                                new RepetitiousTaskManager.Repeater<AtomicReference<TransactionResult<T>>>() {
-                                    @Override
-                                    public void onRepeat(AtomicReference<TransactionResult<T>> key, Shutdownable shutdownable) {
-                                        Logger.log(TAG, String.format("onRepeat"));
-                                        final TransactionResult<T> transactionResult = key.get();
-                                        runFinalization(
-                                                key,
-                                                true,
-                                                TransactionResult.Reason.TIMEOUT,
-                                                transactionResult == null ? null : transactionResult.getValue(),
-                                                callback
-                                        );
-                                        shutdownable.shutdown();
-                                    }
-                                },
-                                timeoutInMillis
-                        );
-                    }
-                }
+                retValue = latch.await(timeoutInMillis, TimeUnit.MILLISECONDS);
             }
         }
-        else {
-            throw new IllegalStateException("Context already shutdown.");
+        catch (InterruptedException e) {
+            //set thread flag
+            Thread.interrupted();
+            runFinalization(transactionId, TransactionResult.Reason.OUTER_INTERRUPT, null, callback);
+            retValue = latch.getCount() == 0;
         }
 
         return retValue;
@@ -272,18 +304,16 @@ class ReentrantSynchronizationContext<T> implements Shutdownable {
 
     private void runFinalization(
             final AtomicReference<TransactionResult<T>> transactionId,
-            final boolean innerCall,
             final TransactionResult.Reason reason,
             final T transactionResult,
             final ContextCallback<T> callback) {
 
         if (transactionId != null) {
-            doRunFinalization(transactionId, innerCall, reason, transactionResult, callback);
+            doRunFinalization(transactionId, reason, transactionResult, callback);
         }
     }
 
     private void doRunFinalization(final AtomicReference<TransactionResult<T>> transactionId,
-                                   final boolean innerCall,
                                    final TransactionResult.Reason reason,
                                    final T transactionResult,
                                    final ContextCallback<T> callback) {
@@ -292,10 +322,12 @@ class ReentrantSynchronizationContext<T> implements Shutdownable {
 
         synchronized (mutex) {
 
-            //this code may be called from three points:
-            //1. On latch TIMEOUT. In that case first coming thread sets the default return value, runs finalization routine and awaits it finishes.
-            //2. On shutdown call. In that case calling thread set the default return value, runs finalization routine and returns.
-            //3. On release call. In that case calling thread set the return value equals to the value passed by calling thread, runs finalization routine and returns.
+            //this code may be called from four points:
+            //1. On iteration TIMEOUT. In that case timer thread sets the default return value and runs finalization routine.
+            //2. On blocking caller interruption. Same as above with OUTER_INTERRUPT reason.
+            //3. On shutdown call. In that case calling thread set the default return value, runs finalization routine and returns.
+            //4. On release call. In that case calling thread set the return value equals to the value passed by calling thread, runs finalization routine and returns.
+            //Nobody waits here. Callers are notified through completion listeners once finalization routine is done.
 
             final boolean trnsIdEmpty = transactionId.compareAndSet(
                     null,
@@ -306,14 +338,11 @@ class ReentrantSynchronizationContext<T> implements Shutdownable {
 
             if (trnsIdEmpty) {
 
-                //flag whether we go through 1. scenario
-
                 //create new finalization routine
                 final FutureTask<Object> futureTask = new FutureTask<Object>(
                         new Runnable() {
                             public void run() {
                                 //run outer finalization routine
-                                //Thread.currentThread().setName("Transaction finalizator");
                                 try {
                                     callback.finalizeTransaction(transactionId.get());
                                 }
@@ -321,8 +350,9 @@ class ReentrantSynchronizationContext<T> implements Shutdownable {
                                     e.printStackTrace();
                                 }
                                 finally {
-                                    //let this iteration awaiting threads to be free and continue execution
+                                    //let this iteration callers know about the result
                                     cleanUpFinalization(transactionId);
+                                    notifyCompletion(transactionId);
                                 }
                             }
                         },
@@ -330,9 +360,9 @@ class ReentrantSynchronizationContext<T> implements Shutdownable {
                 );
 
                 //hold and execute new finalization routine
+                //in partition of the callback, so listeners are notified after finalization is really done
                 finalizationMap.put(transactionId, futureTask);
-                //TransactionUtils.getExecutorService().execute(futureTask);
-                TransactionUtils.invokeLaterSmart(new TransactionRunnable("SynchronizationContext.doRunFinalization()") {
+                TransactionUtils.invokeLaterSmart(new TransactionRunnable("SynchronizationContext.doRunFinalization()", TransactionUtils.partitionKeyOf(callback)) {
                     public void run() {
                         if (!futureTask.isCancelled() && !futureTask.isDone()) {
                             futureTask.run();
@@ -341,61 +371,38 @@ class ReentrantSynchronizationContext<T> implements Shutdownable {
                     }
                 });
 
-                //set free waiting thread and initiate new iteration
-                doReleaseThreads();
+                //initiate new iteration
+                doReleaseIteration();
             }
         }
+    }
 
-        //here one more synchronization point for awaiting threads from this iteration
-        //this time threads waiting till the end of finalization routine.
-        //All outer threads (shutdown(), release()) do not block here
-        if (innerCall) {
-            boolean needCleanupFinalization = false;
-
-            //for all separate transaction we have separate transactionId.
-            //noinspection SynchronizationOnLocalVariableOrMethodParameter
-            synchronized (transactionId) {
-                long startWait = System.currentTimeMillis();
-
-                //waiting here until finalization task is done. Finalization task clears the map by itself
-                //threads do not wait more then FINALIZATION_TIMEOUT*2
-                while (finalizationMap.containsKey(transactionId)) {
-                    try {
-                        assert !TransactionUtils.isTransactionExecutionThread() : "Task queue blocking task detected";
-                        transactionId.wait(FINALIZATION_TIMEOUT);
-                    }
-                    catch (InterruptedException e) {
-                        Thread.interrupted();
-                    }
+    //clean finalization map
 
-                    if ((System.currentTimeMillis() - startWait) >= FINALIZATION_TIMEOUT) {
-                        needCleanupFinalization = true;
-                        break;
-                    }
-                }
-            }
+    private void cleanUpFinalization(final AtomicReference<TransactionResult<T>> transactionId) {
+        FutureTask futureTask = finalizationMap.remove(transactionId);
 
-            //if something happens to finalization routine (helper theread abruptly dead or something like that) we make map clean up.
-            //and try to notify all awaitng threads
-            if (needCleanupFinalization) {
-                Logger.log("Warning!!! transaction finalization took  too long time. More than " + FINALIZATION_TIMEOUT + " millis");
-                cleanUpFinalization(transactionId);
-            }
+        if (futureTask != null) {
+            futureTask.cancel(true);
         }
     }
 
-    //clean maps and notify threads in seconds synchronization point
+    //notify every listener of the iteration exactly once
 
-    private void cleanUpFinalization(final AtomicReference<TransactionResult<T>> transactionId) {
-        FutureTask futureTask = finalizationMap.remove(transactionId);
+    private void notifyCompletion(final AtomicReference<TransactionResult<T>> transactionId) {
+        final List<TransactionCompletionListener<T>> listeners = completionMap.remove(transactionId);
 
-        if (futureTask != null) {
-            //for all separate transaction we have separate transactionId.
-            //noinspection SynchronizationOnLocalVariableOrMethodParameter
-            synchronized (transactionId) {
-                transactionId.notifyAll();
+        if (listeners != null) {
+            final TransactionResult<T> result = transactionId.get();
+            for (TransactionCompletionListener<T> listener : listeners) {
+                try {
+                    listener.onTransactionComplete(result);
+                }
+                catch (Exception e) {
+                    Logger.log(TAG, "Completion listener failed: " + e);
+                    e.printStackTrace();
+                }
             }
-            futureTask.cancel(true);
         }
     }
 
@@ -407,21 +414,15 @@ class ReentrantSynchronizationContext<T> implements Shutdownable {
                 throw new IllegalStateException("Trying to release transaction which nobody ever tried to append.");
             }
         }
-        runFinalization(transactionId.get(), false, TransactionResult.Reason.RELEASE, result, callback);
+        runFinalization(transactionId.get(), TransactionResult.Reason.RELEASE, result, callback);
     }
 
-    //do release all awaiting threads and initiate new iteration
-
-    private void doReleaseThreads() {
-        List<CountDownLatch> transactionResultsCopy;
+    //initiate new iteration
 
+    private void doReleaseIteration() {
         synchronized (mutex) {
             transactionInProgress.set(false);
-            transactionResultsCopy = new ArrayList<CountDownLatch>(awaitingThreads);
-            awaitingThreads.clear();
         }
-
-        doReleaseLatches(transactionResultsCopy);
     }
 
     public void shutdown() {
@@ -430,7 +431,6 @@ class ReentrantSynchronizationContext<T> implements Shutdownable {
         if (done.compareAndSet(false, true)) {
             runFinalization(
                     transactionId.get(),
-                    false,
                     TransactionResult.Reason.OUTER_INTERRUPT,
                     initialValue,
                     callback
@@ -438,16 +438,6 @@ class ReentrantSynchronizationContext<T> implements Shutdownable {
         }
     }
 
-    //releases all threads from it's latches
-
-    private void doReleaseLatches(Collection<CountDownLatch> barrierListCollection) {
-        for (CountDownLatch latch : barrierListCollection) {
-            while (latch.getCount() > 0) {
-                latch.countDown();
-            }
-        }
-    }
-
 
     public String toString() {
         return "ReentrantSynchronizationContext{" +
@@ -109,6 +109,15 @@ class SipDispatcherRegistrator extends UnSubscribeOnCompleteAdapter<BaseSipMessa
             public void onOutgoingMessage(final TransactionEvent<BaseSipMessage> transactionEvent) {
                 final BaseSipMessage lastOutMessage = transactionEvent.getLastOutMessage();
                 messageFilter.update(lastOutMessage);
+                messageDispatcher.indexConsumer(SipTransactionKey.create(lastOutMessage), transaction);
+            }
+
+            //server transaction is initiated by incoming request, so its retransmissions must be matched too
+            public void onTransactionInited(final TransactionEvent<BaseSipMessage> transactionEvent) {
+                final BaseSipMessage initialMessage = transactionEvent.getInitialMessage();
+                if (initialMessage != null) {
+                    messageDispatcher.indexConsumer(SipTransactionKey.create(initialMessage), transaction);
+                }
             }
 
 
@@ -0,0 +1,124 @@
+/*
+ * This software code is (c) 2010 T-Mobile USA, Inc. All Rights Reserved.
+ *
+ * Unauthorized redistribution or further use of this material is
+ * prohibited without the express permission of T-Mobile USA, Inc. and
+ * will be prosecuted to the fullest extent of the law.
+ *
+ * Removal or modification of these Terms and Conditions from the source
+ * or binary code of this software is prohibited.  In the event that
+ * redistribution of the source or binary code for this software is
+ * approved by T-Mobile USA, Inc., these Terms and Conditions and the
+ * above copyright notice must be reproduced in their entirety and in all
+ * circumstances.
+ *
+ * No name or trademarks of T-Mobile USA, Inc., or of its parent company,
+ * Deutsche Telekom AG or any Deutsche Telekom or T-Mobile entity, may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" AND "WITH ALL FAULTS" BASIS
+ * AND WITHOUT WARRANTIES OF ANY KIND.  ALL EXPRESS OR IMPLIED
+ * CONDITIONS, REPRESENTATIONS OR WARRANTIES, INCLUDING ANY IMPLIED
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR
+ * NON-INFRINGEMENT CONCERNING THIS SOFTWARE, ITS SOURCE OR BINARY CODE
+ * OR ANY DERIVATIVES THEREOF ARE HEREBY EXCLUDED.  T-MOBILE USA, INC.
+ * AND ITS LICENSORS SHALL NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY
+ * LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE
+ * OR ITS DERIVATIVES.  IN NO EVENT WILL T-MOBILE USA, INC. OR ITS
+ * LICENSORS BE LIABLE FOR LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT,
+ * INDIRECT, SPECIAL, CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES,
+ * HOWEVER CAUSED AND REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT
+ * OF THE USE OF OR INABILITY TO USE THIS SOFTWARE, EVEN IF T-MOBILE USA,
+ * INC. HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGES.
+ *
+ * THESE TERMS AND CONDITIONS APPLY SOLELY AND EXCLUSIVELY TO THE USE,
+ * MODIFICATION OR DISTRIBUTION OF THIS SOFTWARE, ITS SOURCE OR BINARY
+ * CODE OR ANY DERIVATIVES THEREOF, AND ARE SEPARATE FROM ANY WRITTEN
+ * WARRANTY THAT MAY BE PROVIDED WITH A DEVICE YOU PURCHASE FROM T-MOBILE
+ * USA, INC., AND TO THE EXTENT PERMITTED BY LAW.
+ */
+
+package javax.microedition.ims.core.transaction;
+
+import javax.microedition.ims.common.MessageType;
+import javax.microedition.ims.messages.wrappers.common.Uri;
+import javax.microedition.ims.messages.wrappers.sip.BaseSipMessage;
+import javax.microedition.ims.messages.wrappers.sip.Via;
+import javax.microedition.ims.util.MessageUtilHolder;
+import java.util.List;
+
+/**
+ * RFC 3261 17.1.3/17.2.3 transaction key: top Via branch, top Via sent-by and CSeq method.
+ * Message and the transaction it belongs to have equal keys, so message can be matched with one hash lookup.
+ */
+public final class SipTransactionKey {
+    private static final String MAGIC_COOKIE = "z9hG4bK";
+
+    private final String branch;
+    private final String sentBy;
+    private final MessageType method;
+
+    private SipTransactionKey(final String branch, final String sentBy, final MessageType method) {
+        this.branch = branch;
+        this.sentBy = sentBy;
+        this.method = method;
+    }
+
+    /**
+     * @return transaction key of message or null if message can be matched by MessageFilterSIP only
+     */
+    public static SipTransactionKey create(final BaseSipMessage msg) {
+        SipTransactionKey retValue = null;
+
+        final String methodName = msg.getMethod();
+        final MessageType method = methodName == null ? null : MessageType.parse(methodName);
+
+        //ACK and PRACK are matched by dialog state in MessageFilterSIP, not by branch
+        if (method != null && method != MessageType.SIP_ACK && method != MessageType.SIP_PRACK) {
+            final List<Via> viaList = msg.getVias();
+            final Via topVia = viaList == null || viaList.size() == 0 ? null : viaList.get(0);
+
+            if (topVia != null && topVia.getUri() != null) {
+                final String branch = MessageUtilHolder.getSIPMessageUtil().getMessageBranch(msg);
+
+                //only RFC 3261 branches are unique across transactions
+                if (branch != null && branch.startsWith(MAGIC_COOKIE)) {
+                    final Uri uri = topVia.getUri();
+                    final String domain = uri.getDomain() == null ? "" : uri.getDomain().toLowerCase();
+
+                    retValue = new SipTransactionKey(branch, domain + ":" + uri.getPort(), method);
+                }
+            }
+        }
+
+        return retValue;
+    }
+
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        final SipTransactionKey that = (SipTransactionKey) o;
+        return method == that.method && branch.equals(that.branch) && sentBy.equals(that.sentBy);
+    }
+
+    public int hashCode() {
+        int result = branch.hashCode();
+        result = 31 * result + sentBy.hashCode();
+        result = 31 * result + method.hashCode();
+        return result;
+    }
+
+    public String toString() {
+        return "SipTransactionKey{" +
+                "branch='" + branch + '\'' +
+                ", sentBy='" + sentBy + '\'' +
+                ", method=" + method +
+                '}';
+    }
+}
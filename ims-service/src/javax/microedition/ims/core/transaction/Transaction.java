@@ -60,6 +60,10 @@ public interface Transaction<T, V> extends Consumer<V>, ListenerSupport<Transact
 
     TransactionResult<T> append(TimeoutUnit timeoutUnit);
 
+    void appendAsync(TransactionCompletionListener<T> listener);
+
+    void appendAsync(TimeoutUnit timeoutUnit, TransactionCompletionListener<T> listener);
+
     boolean isComplete();
 
     TransactionType getTransactionType();
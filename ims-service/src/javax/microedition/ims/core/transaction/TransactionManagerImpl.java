@@ -251,7 +251,7 @@ final public class TransactionManagerImpl<V> implements TransactionManager, Shut
                         Logger.log("New transaction created for " + event.getEntity() + " : " + event.getTransaction());
 
                         TransactionUtils.invokeAndWait(
-                                new TransactionRunnable("TransactionManagerImpl.obtainTransaction.fireOnTransactionCreate[" + dialog + ", " + event.getTransaction() + "]") {
+                                new TransactionRunnable("TransactionManagerImpl.obtainTransaction.fireOnTransactionCreate[" + dialog + ", " + event.getTransaction() + "]", TransactionUtils.partitionKeyOf(dialog)) {
                                     public void run() {
                                         listenerHolder.getNotifier().onTransactionCreate(event);
                                     }
@@ -280,7 +280,7 @@ final public class TransactionManagerImpl<V> implements TransactionManager, Shut
                         Logger.log("New transaction created for " + event.getEntity() + " : " + event.getTransaction());
 
                         TransactionUtils.invokeAndWait(
-                                new TransactionRunnable("TransactionManagerImpl.obtainTransaction.fireOnTransactionCreate[" + entity + ", " + event.getTransaction() + "]") {
+                                new TransactionRunnable("TransactionManagerImpl.obtainTransaction.fireOnTransactionCreate[" + entity + ", " + event.getTransaction() + "]", TransactionUtils.partitionKeyOf(entity)) {
                                     public void run() {
                                         listenerHolder.getNotifier().onTransactionCreate(event);
                                     }
@@ -50,10 +50,19 @@ import java.util.concurrent.atomic.AtomicReference;
  */
 public abstract class TransactionRunnable implements Runnable {
     private final String description;
+    private final Object partitionKey;
     private final AtomicReference<String> type = new AtomicReference<String>();
 
     public TransactionRunnable(final String description) {
+        this(description, null);
+    }
+
+    /**
+     * @param partitionKey key of partition to run in. null means partition of calling thread or the default one
+     */
+    public TransactionRunnable(final String description, final Object partitionKey) {
         this.description = description;
+        this.partitionKey = partitionKey;
     }
 
 
@@ -61,6 +70,10 @@ public abstract class TransactionRunnable implements Runnable {
         return "DirectCall: " + description + " Type:" + type.get();
     }
 
+    Object getPartitionKey() {
+        return partitionKey;
+    }
+
     void setType(final String type) {
         this.type.compareAndSet(null, type);
     }
@@ -79,21 +79,23 @@ public final class TransactionUtils {
         );
     }
 
-    private static final ExecutorService transactionExecutor = Executors.newSingleThreadExecutor(
-            new NamedDaemonThreadFactory("Transaction Thread")
-    );
-    private static final Thread transactionExecutorThread;
-    private static final AtomicReference<Future<?>> currentTask = new AtomicReference<Future<?>>(null);
+    //upper bound for partition count, a handset gains nothing from more transaction threads
+    private static final int MAX_PARTITION_COUNT = 4;
 
-    private static final Queue<ElementContainer<Callable<?>>> executionQueue =
-            new PriorityBlockingQueue<ElementContainer<Callable<?>>>(100);
+    //service calls hop to the partition of their dialog, so dialogs run in parallel one partition per core
+    private static final int PARTITION_COUNT =
+            Math.max(2, Math.min(Runtime.getRuntime().availableProcessors(), MAX_PARTITION_COUNT));
 
-    private static final Map<Callable<?>, FutureTask<?>> executionMap =
-            Collections.synchronizedMap(new LinkedHashMap<Callable<?>, FutureTask<?>>(100));
+    //partition 0 is the default one. It runs all the tasks submitted without partition key from outer threads
+    private static final Partition[] partitions = createPartitions(PARTITION_COUNT);
 
     // private static final AtomicReference<ErrorHandler> commonExceptionHandler = new AtomicReference<ErrorHandler>(null);
     private static final ListenerHolder<ErrorHandler> errorHandlerSupport = new ListenerHolder<ErrorHandler>(ErrorHandler.class);
 
+    //@PartitionResolver method per class, null value for classes without one
+    private static final Map<Class<?>, Method> partitionResolvers =
+            Collections.synchronizedMap(new HashMap<Class<?>, Method>());
+
     private static class DefaultErrorHandler implements ErrorHandler<Throwable> {
         public void handleError(final Throwable e) {
 
@@ -109,20 +111,136 @@ public final class TransactionUtils {
         }
     }
 
-    static {
-        Future<Thread> threadFuture = transactionExecutor.submit(
-                new Callable<Thread>() {
-                    public Thread call() throws Exception {
-                        return Thread.currentThread();
+    /**
+     * Single threaded ordered executor. All the tasks with the same partition key run here one by one in priority order.
+     */
+    private static final class Partition {
+        //partition owned by current thread, null for threads outside of transaction executor.
+        //Lives here and not in outer class as partition threads start while outer class is still initializing
+        private static final ThreadLocal<Partition> current = new ThreadLocal<Partition>();
+
+        private final int index;
+        private final ExecutorService transactionExecutor;
+        private final Thread transactionExecutorThread;
+        private final AtomicReference<Future<?>> currentTask = new AtomicReference<Future<?>>(null);
+
+        private final Queue<ElementContainer<Callable<?>>> executionQueue =
+                new PriorityBlockingQueue<ElementContainer<Callable<?>>>(100);
+
+        private final Map<Callable<?>, FutureTask<?>> executionMap =
+                Collections.synchronizedMap(new LinkedHashMap<Callable<?>, FutureTask<?>>(100));
+
+        private Partition(final int index) {
+            this.index = index;
+            this.transactionExecutor = Executors.newSingleThreadExecutor(
+                    new NamedDaemonThreadFactory(index == 0 ? "Transaction Thread" : "Transaction Thread " + index)
+            );
+
+            Future<Thread> threadFuture = transactionExecutor.submit(
+                    new Callable<Thread>() {
+                        public Thread call() throws Exception {
+                            current.set(Partition.this);
+                            return Thread.currentThread();
+                        }
                     }
+            );
+            try {
+                transactionExecutorThread = threadFuture.get();
+            }
+            catch (Exception e) {
+                e.printStackTrace();
+                throw new RuntimeException("Can not instantiate transaction manager. " + e);
+            }
+        }
+
+        private boolean isOwner() {
+            return Thread.currentThread() == transactionExecutorThread;
+        }
+
+        private List<ElementContainer<Callable<?>>> enqueue(
+                final Callable<Object> wrapper,
+                final FutureTask<Object> result,
+                final PrioritizedData<Callable<?>> prioritizedData) {
+
+            final List<ElementContainer<Callable<?>>> executionQueueCopy;
+
+            synchronized (currentTask) {
+                if (currentTask.compareAndSet(null, result)) {
+                    transactionExecutor.execute(result);
+                    prioritizedData.markVip(PrioritizedData.VipStatus.VIP);
+                    assert executionQueue.size() == 0 : "queue is broken";
                 }
-        );
-        try {
-            transactionExecutorThread = threadFuture.get();
+                executionMap.put(wrapper, result);
+                executionQueue.add(prioritizedData);
+
+                executionQueueCopy = copyQueue(executionQueue);
+
+                assert executionQueue.size() == executionMap.size() :
+                        "Inconsistent behaviour. " +
+                                "executionQueue size = " + executionQueue.size() +
+                                " executionMap size = " + executionMap.size() + " but must be identical.";
+            }
+
+            return executionQueueCopy;
         }
-        catch (Exception e) {
-            e.printStackTrace();
-            throw new RuntimeException("Can not instantiate transaction manager. " + e);
+
+        private void runNext(final Callable<?> finished) {
+            synchronized (currentTask) {
+                if (executionMap.containsKey(finished)) {
+                    executionMap.remove(finished);
+                    final ElementContainer<Callable<?>> headElement = executionQueue.poll();
+
+                    assert headElement.getElement() == finished :
+                            "Inconsistent state. Head of the task queue doesn't contain current task. Expected task: "
+                                    + finished + " actual task: " + headElement;
+                }
+
+
+                final FutureTask<?> nextTask;
+                if (!executionQueue.isEmpty()) {
+
+                    //here we get topmost element, then remove it, change it Vip status and then add again to queue
+                    final PrioritizedData<Callable<?>> prioritizedData = (PrioritizedData<Callable<?>>) executionQueue.peek();
+                    executionQueue.remove(prioritizedData);
+                    prioritizedData.markVip(PrioritizedData.VipStatus.VIP);
+                    executionQueue.add(prioritizedData);
+                    assert executionQueue.peek() == prioritizedData : "Queue is broken";
+
+                    final Callable<?> callable = prioritizedData.getElement();
+                    nextTask = executionMap.get(callable);
+                }
+                else {
+                    nextTask = null;
+                }
+
+                currentTask.set(nextTask);
+                if (nextTask != null) {
+                    transactionExecutor.execute(nextTask);
+                }
+
+                assert executionQueue.size() == executionMap.size() :
+                        "Inconsistent behaviour. " +
+                                "executionQueue size = " + executionQueue.size() +
+                                " executionMap size = " + executionMap.size() + " but must be identical.";
+            }
+        }
+
+        private void reset() {
+            synchronized (currentTask) {
+                List<Callable<?>> keys = new ArrayList<Callable<?>>(executionMap.keySet());
+
+                for (Callable<?> callable : keys) {
+                    Future<?> future = executionMap.remove(callable);
+                    future.cancel(true);
+                }
+
+                executionQueue.clear();
+                currentTask.set(null);
+            }
+        }
+
+        public String toString() {
+            return "Partition" + index;
         }
     }
 
@@ -131,19 +249,29 @@ public final class TransactionUtils {
         private final ErrorHandler<Throwable> exceptionHandler;
         private final Runnable hostRunnable;
         private final Object result;
+        private final Partition partition;
 
         private final AtomicBoolean started = new AtomicBoolean(false);
 
-        public CallableWrapper(final Callable<Object> hostCallable, final ErrorHandler<Throwable> exceptionHandler) {
+        public CallableWrapper(
+                final Callable<Object> hostCallable,
+                final Partition partition,
+                final ErrorHandler<Throwable> exceptionHandler) {
             this.hostCallable = hostCallable;
+            this.partition = partition;
             this.exceptionHandler = exceptionHandler;
             this.hostRunnable = null;
             this.result = null;
         }
 
-        public CallableWrapper(final Runnable hostRunnable, final Object result, ErrorHandler exceptionHandler) {
+        public CallableWrapper(
+                final Runnable hostRunnable,
+                final Object result,
+                final Partition partition,
+                ErrorHandler exceptionHandler) {
             this.hostRunnable = hostRunnable;
             this.result = result;
+            this.partition = partition;
             this.exceptionHandler = exceptionHandler;
 
             this.hostCallable = null;
@@ -182,44 +310,7 @@ public final class TransactionUtils {
                 throw error;
             }
             finally {
-                synchronized (currentTask) {
-                    if (executionMap.containsKey(this)) {
-                        executionMap.remove(this);
-                        final ElementContainer<Callable<?>> headElement = executionQueue.poll();
-
-                        assert headElement.getElement() == this :
-                                "Inconsistent state. Head of the task queue doesn't contain current task. Expected task: "
-                                        + this + " actual task: " + headElement;
-                    }
-
-
-                    final FutureTask<?> nextTask;
-                    if (!executionQueue.isEmpty()) {
-
-                        //here we get topmost element, then remove it, change it Vip status and then add again to queue
-                        final PrioritizedData<Callable<?>> prioritizedData = (PrioritizedData<Callable<?>>) executionQueue.peek();
-                        executionQueue.remove(prioritizedData);
-                        prioritizedData.markVip(PrioritizedData.VipStatus.VIP);
-                        executionQueue.add(prioritizedData);
-                        assert executionQueue.peek() == prioritizedData : "Queue is broken";
-
-                        final Callable<?> callable = prioritizedData.getElement();
-                        nextTask = executionMap.get(callable);
-                    }
-                    else {
-                        nextTask = null;
-                    }
-
-                    currentTask.set(nextTask);
-                    if (nextTask != null) {
-                        transactionExecutor.execute(nextTask);
-                    }
-
-                    assert executionQueue.size() == executionMap.size() :
-                            "Inconsistent behaviour. " +
-                                    "executionQueue size = " + executionQueue.size() +
-                                    " executionMap size = " + executionMap.size() + " but must be identical.";
-                }
+                partition.runNext(this);
                 log("END " + this);
             }
             return retValue;
@@ -247,7 +338,7 @@ public final class TransactionUtils {
             final String[] idParts = wholeId.split("@");
             final String id = idParts == null || idParts.length == 0 ? wholeId : idParts[idParts.length - 1];
             //return separator + "<" + host.toString() + " started:" + started.get() + " id:" + id + ">";
-            return "<id:" + id + " " + host.toString() + " started:" + started.get() + ">";
+            return "<id:" + id + " " + partition + " " + host.toString() + " started:" + started.get() + ">";
         }
     }
 
@@ -257,11 +348,13 @@ public final class TransactionUtils {
             final boolean waitResult,
             final boolean forceQueueing,
             final Priority priority,
+            final Object partitionKey,
             final ErrorHandler<Throwable> exceptionHandler) throws Exception {
 
-        Callable<Object> wrapper = new CallableWrapper(callable, exceptionHandler);
+        final Partition partition = partitionFor(partitionKey);
+        Callable<Object> wrapper = new CallableWrapper(callable, partition, exceptionHandler);
 
-        return doInvoke(wrapper, waitResult, forceQueueing, priority);
+        return doInvoke(wrapper, partition, waitResult, forceQueueing, priority);
     }
 
     private static Object invoke(
@@ -269,59 +362,33 @@ public final class TransactionUtils {
             final Object result,
             final boolean waitResult,
             final boolean forceQueueing,
+            final Object partitionKey,
             final ErrorHandler exceptionHandler) throws Exception {
 
 
         final PriorityCall priorityAnnotation = runnable.getClass().getMethod("run").getAnnotation(PriorityCall.class);
         Priority priority = priorityAnnotation == null ? Priority.NORMAL : priorityAnnotation.priority();
 
-        Callable<Object> wrapper = new CallableWrapper(runnable, result, exceptionHandler);
-        return doInvoke(wrapper, waitResult, forceQueueing, priority);
+        final Partition partition = partitionFor(partitionKey);
+        Callable<Object> wrapper = new CallableWrapper(runnable, result, partition, exceptionHandler);
+        return doInvoke(wrapper, partition, waitResult, forceQueueing, priority);
     }
 
     private static Object doInvoke(
             final Callable<Object> wrapper,
+            final Partition partition,
             final boolean waitResult,
             final boolean forceQueueing,
             final Priority priority) throws Exception {
 
         Object retValue = null;
 
-        if (forceQueueing || !isTransactionExecutionThread()) {
+        if (forceQueueing || !partition.isOwner()) {
             final FutureTask<Object> result = new FutureTask<Object>(wrapper);
-            final List<ElementContainer<Callable<?>>> executionQueueCopy;
             final PrioritizedData<Callable<?>> prioritizedData = new PrioritizedData<Callable<?>>(priority, wrapper);
 
             log("ADD : " + wrapper);
-            //assert !isTransactionExecutionThread() : "may be you don't want queueing from transaction thread";
-            synchronized (currentTask) {
-                if (currentTask.compareAndSet(null, result)) {
-                    transactionExecutor.execute(result);
-                    prioritizedData.markVip(PrioritizedData.VipStatus.VIP);
-                    assert executionQueue.size() == 0 : "queue is broken";
-                    //result = transactionExecutor.submit(wrapper);
-                }
-                executionMap.put(wrapper, result);
-
-                /*
-                if (priority != Priority.HIGH || executionQueue.size() == 0) {
-                    executionQueue.add(wrapper);
-                } else {
-                    executionQueue.add(1, wrapper);
-                }
-                */
-                executionQueue.add(prioritizedData);
-
-
-                //executionQueueCopy = new ArrayList<Callable<?>>(executionMap.keySet());
-                executionQueueCopy = copyQueue(executionQueue);
-
-
-                assert executionQueue.size() == executionMap.size() :
-                        "Inconsistent behaviour. " +
-                                "executionQueue size = " + executionQueue.size() +
-                                " executionMap size = " + executionMap.size() + " but must be identical.";
-            }
+            final List<ElementContainer<Callable<?>>> executionQueueCopy = partition.enqueue(wrapper, result, prioritizedData);
 
             log(buildQueueLogMsg(executionQueueCopy));
 
@@ -392,11 +459,13 @@ public final class TransactionUtils {
         private final Object hostObject;
         private final Class<?> proxyInterface;
         private final Method priorityResolver;
+        private final Method partitionResolver;
 
         public TransactionInvocationHandler(final Object hostObject, final Class<?> proxyInterface) {
             this.hostObject = hostObject;
             this.proxyInterface = proxyInterface;
             this.priorityResolver = obtainPriorityResolver(hostObject);
+            this.partitionResolver = obtainPartitionResolver(hostObject);
         }
 
         public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
@@ -409,11 +478,13 @@ public final class TransactionUtils {
 
                 final boolean smartCallDetected = method.getAnnotation(SmartCall.class) != null;
                 final Priority priority = obtainTaskPriority(method);
+                //objects shared by dialogs (services) run the call in partition of the dialog passed in
+                final Object partitionKey = partitionResolver == null ? obtainPartitionKey(args) : obtainPartitionKey();
 
                 final TransactionProxyCallable callable = new TransactionProxyCallable(method, hostObject, args);
                 log(callable + " " + hostObject.toString());
                 final boolean waitResult = method.getReturnType() != void.class;
-                retValue = TransactionUtils.invoke(callable, waitResult, !smartCallDetected, priority, new ErrorHandler<Throwable>() {
+                retValue = TransactionUtils.invoke(callable, waitResult, !smartCallDetected, priority, partitionKey, new ErrorHandler<Throwable>() {
                     public void handleError(final Throwable e) {
                         final String errMsg = "(EXCEPTION) " + callable + ": EXCEPTION detected" + e.toString();
                         log(errMsg);
@@ -482,6 +553,26 @@ public final class TransactionUtils {
             return priorityResolver;
         }
 
+        private Object obtainPartitionKey() throws IllegalAccessException, InvocationTargetException {
+            return partitionResolver == null ? null : partitionResolver.invoke(hostObject);
+        }
+
+        private Object obtainPartitionKey(final Object[] args) {
+            Object partitionKey = null;
+
+            if (args != null) {
+                for (int i = 0; i < args.length && partitionKey == null; i++) {
+                    partitionKey = partitionKeyOf(args[i]);
+                }
+            }
+
+            return partitionKey;
+        }
+
+        private Method obtainPartitionResolver(Object hostObject) {
+            return findPartitionResolver(hostObject.getClass());
+        }
+
 
         public String toString() {
             final StringBuffer sb = new StringBuffer();
@@ -513,8 +604,116 @@ public final class TransactionUtils {
     }
 
 
+    /**
+     * @return true if current thread is one of the transaction partition threads
+     */
     public static boolean isTransactionExecutionThread() {
-        return Thread.currentThread() == transactionExecutorThread;
+        return Partition.current.get() != null;
+    }
+
+    /**
+     * @param partitionKey dialog Call-ID or other key the task was submitted with. null means partition of current thread
+     * @return true if current thread is the one that runs tasks for given key
+     */
+    public static boolean isPartitionOwner(final Object partitionKey) {
+        final Partition partition = Partition.current.get();
+        return partition != null && partition == partitionFor(partitionKey);
+    }
+
+    /**
+     * @param object dialog, session, transaction or other object declaring its key with @PartitionResolver
+     * @return partition key of the object or null if it doesn't declare one
+     */
+    public static Object partitionKeyOf(final Object object) {
+        Object retValue = null;
+
+        if (object != null) {
+            try {
+                if (Proxy.isProxyClass(object.getClass()) &&
+                        Proxy.getInvocationHandler(object) instanceof TransactionInvocationHandler) {
+                    retValue = ((TransactionInvocationHandler) Proxy.getInvocationHandler(object)).obtainPartitionKey();
+                }
+                else {
+                    final Method partitionResolver = findPartitionResolver(object.getClass());
+                    retValue = partitionResolver == null ? null : partitionResolver.invoke(object);
+                }
+            }
+            catch (IllegalAccessException e) {
+                throw new IllegalStateException("Can not resolve partition of " + object + ". " + e);
+            }
+            catch (InvocationTargetException e) {
+                throw new IllegalStateException("Can not resolve partition of " + object + ". " + e.getCause());
+            }
+        }
+
+        return retValue;
+    }
+
+    /**
+     * @return key which routes tasks to the partition of current thread, null if current thread runs no partition
+     */
+    public static Object currentPartitionKey() {
+        return Partition.current.get();
+    }
+
+    private static Method findPartitionResolver(final Class<?> clazz) {
+        Method partitionResolver;
+
+        synchronized (partitionResolvers) {
+            if (partitionResolvers.containsKey(clazz)) {
+                partitionResolver = partitionResolvers.get(clazz);
+            }
+            else {
+                partitionResolver = null;
+
+                final Method[] methods = clazz.getMethods();
+                for (Method method : methods) {
+                    if (method.getAnnotation(PartitionResolver.class) != null &&
+                            method.getParameterTypes().length == 0 &&
+                            method.getReturnType() != void.class) {
+                        //host classes are often package private
+                        method.setAccessible(true);
+                        partitionResolver = method;
+                        break;
+                    }
+                }
+
+                partitionResolvers.put(clazz, partitionResolver);
+            }
+        }
+
+        return partitionResolver;
+    }
+
+    private static Partition[] createPartitions(final int count) {
+        final Partition[] retValue = new Partition[count];
+        for (int i = 0; i < count; i++) {
+            retValue[i] = new Partition(i);
+        }
+        return retValue;
+    }
+
+    public static int getPartitionCount() {
+        return partitions.length;
+    }
+
+    private static Partition partitionFor(final Object partitionKey) {
+        final Partition retValue;
+
+        if (partitionKey == null) {
+            final Partition current = Partition.current.get();
+            retValue = current == null ? partitions[0] : current;
+        }
+        else if (partitionKey instanceof Partition) {
+            retValue = (Partition) partitionKey;
+        }
+        else {
+            int hash = partitionKey.hashCode();
+            hash ^= (hash >>> 16);
+            retValue = partitions[(hash & 0x7fffffff) % partitions.length];
+        }
+
+        return retValue;
     }
 
     //will be placed at the end of queue and return immediately
@@ -526,7 +725,7 @@ public final class TransactionUtils {
             final boolean forceQueueing = true;
 
             runnable.setType("IL(R:" + result + " W:" + waitResult + " F:" + forceQueueing + ")");
-            invoke(runnable, null, waitResult, forceQueueing, new DefaultErrorHandler());
+            invoke(runnable, null, waitResult, forceQueueing, runnable.getPartitionKey(), new DefaultErrorHandler());
         }
         catch (Exception e) {
             log("invocation error for: " + runnable);
@@ -541,7 +740,7 @@ public final class TransactionUtils {
             final boolean forceQueueing = false;
 
             runnable.setType("IL(R:" + result + " W:" + waitResult + " F:" + forceQueueing + ")");
-            invoke(runnable, null, waitResult, forceQueueing, new DefaultErrorHandler());
+            invoke(runnable, null, waitResult, forceQueueing, runnable.getPartitionKey(), new DefaultErrorHandler());
         }
         catch (Exception e) {
             log("invocation error for: " + runnable);
@@ -558,7 +757,7 @@ public final class TransactionUtils {
             final boolean forceQueueing = true;
 
             runnable.setType("IW(R:" + result + " W:" + waitResult + " F:" + forceQueueing + ")");
-            invoke(runnable, result, waitResult, forceQueueing, new DefaultErrorHandler());
+            invoke(runnable, result, waitResult, forceQueueing, runnable.getPartitionKey(), new DefaultErrorHandler());
         }
         catch (Exception e) {
             log("invocation error for: " + runnable);
@@ -573,7 +772,7 @@ public final class TransactionUtils {
             final boolean forceQueueing = false;
 
             runnable.setType("IW(R:" + result + " W:" + waitResult + " F:" + forceQueueing + ")");
-            invoke(runnable, result, waitResult, forceQueueing, new DefaultErrorHandler());
+            invoke(runnable, result, waitResult, forceQueueing, runnable.getPartitionKey(), new DefaultErrorHandler());
         }
         catch (Exception e) {
             log("invocation error for: " + runnable);
@@ -633,16 +832,8 @@ public final class TransactionUtils {
     }
 
     public static void reset() {
-        synchronized (currentTask) {
-            List<Callable<?>> keys = new ArrayList<Callable<?>>(executionMap.keySet());
-
-            for (Callable<?> callable : keys) {
-                Future<?> future = executionMap.remove(callable);
-                future.cancel(true);
-            }
-
-            executionQueue.clear();
-            currentTask.set(null);
+        for (Partition partition : partitions) {
+            partition.reset();
         }
     }
 
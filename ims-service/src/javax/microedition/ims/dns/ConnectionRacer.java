@@ -0,0 +1,192 @@
+/*
+ * This software code is (c) 2010 T-Mobile USA, Inc. All Rights Reserved.
+ *
+ * Unauthorized redistribution or further use of this material is
+ * prohibited without the express permission of T-Mobile USA, Inc. and
+ * will be prosecuted to the fullest extent of the law.
+ *
+ * Removal or modification of these Terms and Conditions from the source
+ * or binary code of this software is prohibited.  In the event that
+ * redistribution of the source or binary code for this software is
+ * approved by T-Mobile USA, Inc., these Terms and Conditions and the
+ * above copyright notice must be reproduced in their entirety and in all
+ * circumstances.
+ *
+ * No name or trademarks of T-Mobile USA, Inc., or of its parent company,
+ * Deutsche Telekom AG or any Deutsche Telekom or T-Mobile entity, may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" AND "WITH ALL FAULTS" BASIS
+ * AND WITHOUT WARRANTIES OF ANY KIND.  ALL EXPRESS OR IMPLIED
+ * CONDITIONS, REPRESENTATIONS OR WARRANTIES, INCLUDING ANY IMPLIED
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR
+ * NON-INFRINGEMENT CONCERNING THIS SOFTWARE, ITS SOURCE OR BINARY CODE
+ * OR ANY DERIVATIVES THEREOF ARE HEREBY EXCLUDED.  T-MOBILE USA, INC.
+ * AND ITS LICENSORS SHALL NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY
+ * LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE
+ * OR ITS DERIVATIVES.  IN NO EVENT WILL T-MOBILE USA, INC. OR ITS
+ * LICENSORS BE LIABLE FOR LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT,
+ * INDIRECT, SPECIAL, CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES,
+ * HOWEVER CAUSED AND REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT
+ * OF THE USE OF OR INABILITY TO USE THIS SOFTWARE, EVEN IF T-MOBILE USA,
+ * INC. HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGES.
+ *
+ * THESE TERMS AND CONDITIONS APPLY SOLELY AND EXCLUSIVELY TO THE USE,
+ * MODIFICATION OR DISTRIBUTION OF THIS SOFTWARE, ITS SOURCE OR BINARY
+ * CODE OR ANY DERIVATIVES THEREOF, AND ARE SEPARATE FROM ANY WRITTEN
+ * WARRANTY THAT MAY BE PROVIDED WITH A DEVICE YOU PURCHASE FROM T-MOBILE
+ * USA, INC., AND TO THE EXTENT PERMITTED BY LAW.
+ */
+package javax.microedition.ims.dns;
+
+import javax.microedition.ims.common.ConnectionData;
+import javax.microedition.ims.common.Logger;
+import javax.microedition.ims.common.NamedDaemonThreadFactory;
+import javax.microedition.ims.common.PreConnectedSockets;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Races TCP connects to resolved targets, "happy eyeballs" style.
+ * <p/>
+ * Targets are tried in priority order, but the next one doesn't wait for the previous connect to time out:
+ * it is started after a short stagger delay, or at once if previous attempt fails.
+ * The first target to complete TCP handshake wins, connects still in progress are aborted.
+ * Connection of the winner is handed over to the transport through {@link PreConnectedSockets},
+ * the rest are closed.
+ */
+final class ConnectionRacer {
+    private static final String LOG_PREFIX = "DNS";
+
+    static final long DEFAULT_STAGGER_MILLIS = 250;
+    static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 5000;
+
+    private final long staggerMillis;
+    private final int connectTimeoutMillis;
+
+    private static final class Attempt implements Runnable {
+        private final ConnectionData target;
+        private final int connectTimeoutMillis;
+        private final BlockingQueue<Attempt> completed;
+        private final Socket socket = new Socket();
+        private volatile boolean connected;
+
+        private Attempt(final ConnectionData target, final int connectTimeoutMillis, final BlockingQueue<Attempt> completed) {
+            this.target = target;
+            this.connectTimeoutMillis = connectTimeoutMillis;
+            this.completed = completed;
+        }
+
+        public void run() {
+            try {
+                socket.connect(new InetSocketAddress(target.getAddress(), target.getPort()), connectTimeoutMillis);
+                connected = true;
+            }
+            catch (IOException e) {
+                Logger.log(Logger.Tag.COMMON, LOG_PREFIX, "Connect to " + target + " failed: " + e);
+            }
+            completed.add(this);
+        }
+
+        void close() {
+            try {
+                //aborts connect in progress too
+                socket.close();
+            }
+            catch (IOException e) {
+                Logger.log(Logger.Tag.WARNING, LOG_PREFIX, "Can't close probe socket: " + e);
+            }
+        }
+    }
+
+    ConnectionRacer() {
+        this(DEFAULT_STAGGER_MILLIS, DEFAULT_CONNECT_TIMEOUT_MILLIS);
+    }
+
+    ConnectionRacer(final long staggerMillis, final int connectTimeoutMillis) {
+        this.staggerMillis = staggerMillis;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    /**
+     * @param targets stream transport targets, most preferred first
+     * @return first target which accepted connection or null if none did
+     */
+    ConnectionData race(final List<ConnectionData> targets) {
+        final BlockingQueue<Attempt> completed = new LinkedBlockingQueue<Attempt>();
+        final List<Attempt> attempts = new ArrayList<Attempt>(targets.size());
+        final ExecutorService executor = Executors.newCachedThreadPool(new NamedDaemonThreadFactory("ConnectionRacer"));
+
+        Attempt winner = null;
+        try {
+            int running = 0;
+            int next = 0;
+
+            while (winner == null && (running > 0 || next < targets.size())) {
+                if (running == 0) {
+                    start(targets.get(next++), attempts, completed, executor);
+                    running++;
+                }
+
+                final Attempt attempt = next < targets.size() ?
+                        completed.poll(staggerMillis, TimeUnit.MILLISECONDS) :
+                        completed.take();
+
+                if (attempt == null) {
+                    //stagger delay expired, give next target a chance in parallel
+                    start(targets.get(next++), attempts, completed, executor);
+                    running++;
+                }
+                else {
+                    running--;
+                    if (attempt.connected) {
+                        winner = attempt;
+                    }
+                    else if (next < targets.size()) {
+                        //failed target doesn't hold the next one back
+                        start(targets.get(next++), attempts, completed, executor);
+                        running++;
+                    }
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            for (Attempt attempt : attempts) {
+                if (attempt != winner) {
+                    attempt.close();
+                }
+            }
+            executor.shutdownNow();
+        }
+
+        if (winner != null) {
+            PreConnectedSockets.getInstance().offer(winner.target.getAddress(), winner.target.getPort(), winner.socket);
+        }
+
+        Logger.log(Logger.Tag.COMMON, LOG_PREFIX, "Connection race of " + targets.size() + " targets won by " +
+                (winner == null ? null : winner.target));
+        return winner == null ? null : winner.target;
+    }
+
+    private void start(final ConnectionData target, final List<Attempt> attempts,
+                      final BlockingQueue<Attempt> completed, final ExecutorService executor) {
+        Logger.log(Logger.Tag.COMMON, LOG_PREFIX, "Connecting to " + target);
+
+        final Attempt attempt = new Attempt(target, connectTimeoutMillis, completed);
+        attempts.add(attempt);
+        executor.execute(attempt);
+    }
+}
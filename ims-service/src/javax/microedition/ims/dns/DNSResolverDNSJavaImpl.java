@@ -54,8 +54,11 @@ import javax.microedition.ims.core.connection.NetworkType;
 import javax.microedition.ims.core.env.ConnectionManager;
 
 import java.net.*;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -93,6 +96,9 @@ public final class DNSResolverDNSJavaImpl implements DNSResolver {
     //TODO we can't cache dns lookup result due the reason that network interface can be changed and cached value becames invalid
     private AtomicReference<ConnectionData> connectionData = new AtomicReference<ConnectionData>(null);
     private AtomicReference<NetworkType> mNetworkType = new AtomicReference<NetworkType>(NetworkType.WIFI);
+    //target which won the last connection race, it goes first next time
+    private final AtomicReference<ConnectionData> lastWinner = new AtomicReference<ConnectionData>(null);
+    private final ConnectionRacer connectionRacer = new ConnectionRacer();
 
     //Comparator to compare records like this
     //example.com NAPTR 10 100 "S" "SIP+D2U" "" _sip._udp.example.com.
@@ -225,14 +231,24 @@ public final class DNSResolverDNSJavaImpl implements DNSResolver {
             for (NAPTRRecord naptrRecord : sortedNaptrRecords) {
                 Logger.log(Logger.Tag.COMMON, LOG_PREFIX, "NAPTR Record: " + naptrRecord);
             }
-            //process all records from most important to least one
+            //process all records from most important to least one.
+            //Next record is looked up only if none of targets of previous one accepted connection.
+            ConnectionData mostPreferred = null;
             for (NAPTRRecord naptrRecord : sortedNaptrRecords) {
-                retValue = processNAPTRRecord(naptrRecord);
+                final List<ConnectionData> targets = processNAPTRRecord(naptrRecord);
+                if (mostPreferred == null && !targets.isEmpty()) {
+                    mostPreferred = targets.get(0);
+                }
 
+                retValue = selectTarget(targets);
                 if (retValue != null){
                     break;
                 }
             }
+
+            if (retValue == null) {
+                retValue = mostPreferred;
+            }
         } else {
             int result = naptrLookup.getResult();
             String errorString = naptrLookup.getErrorString();
@@ -265,7 +281,7 @@ public final class DNSResolverDNSJavaImpl implements DNSResolver {
                     builder.port(DEFAULT_TLS_PORT);
                 }
 
-                retValue = doProcessRecordAsTypeA(target, builder);
+                retValue = selectTargetOrFirst(doProcessRecordAsTypeA(target, builder));
             } catch (TextParseException e) {
                 Logger.log(Logger.Tag.WARNING, LOG_PREFIX, "Can't fulfill lookup for " +
                         (mNetworkType.get() == NetworkType.MOBILE ?
@@ -278,8 +294,66 @@ public final class DNSResolverDNSJavaImpl implements DNSResolver {
         return retValue;
     }
 
-    private ConnectionData processNAPTRRecord(final NAPTRRecord naptrRecord) throws DNSException {
+    /**
+     * Chooses target to connect to. Stream transport targets race for the first completed TCP handshake,
+     * target which won last time starts first. Datagram targets can't be probed, the most preferred one is taken.
+     *
+     * @param targets targets in order of preference
+     * @return chosen target or null if no stream target accepted connection
+     */
+    private ConnectionData selectTarget(final List<ConnectionData> targets) {
+        final List<ConnectionData> ordered = lastWinnerFirst(targets);
+
         ConnectionData retValue = null;
+        if (ordered.size() == 1 || ordered.size() > 1 && ordered.get(0).getProtocol() == Protocol.UDP) {
+            retValue = ordered.get(0);
+        }
+        else if (ordered.size() > 1) {
+            final List<ConnectionData> streamTargets = new ArrayList<ConnectionData>(ordered.size());
+            for (ConnectionData target : ordered) {
+                if (target.getProtocol() != Protocol.UDP) {
+                    streamTargets.add(target);
+                }
+            }
+
+            retValue = connectionRacer.race(streamTargets);
+            if (retValue != null) {
+                lastWinner.set(retValue);
+            }
+        }
+
+        return retValue;
+    }
+
+    private ConnectionData selectTargetOrFirst(final List<ConnectionData> targets) {
+        final ConnectionData retValue = selectTarget(targets);
+        return retValue != null || targets.isEmpty() ? retValue : targets.get(0);
+    }
+
+    private List<ConnectionData> lastWinnerFirst(final List<ConnectionData> targets) {
+        final ConnectionData winner = lastWinner.get();
+
+        List<ConnectionData> retValue = targets;
+        if (winner != null) {
+            for (int i = 1; i < targets.size(); i++) {
+                if (isSameTarget(winner, targets.get(i))) {
+                    retValue = new ArrayList<ConnectionData>(targets);
+                    retValue.add(0, retValue.remove(i));
+                    break;
+                }
+            }
+        }
+        return retValue;
+    }
+
+    private static boolean isSameTarget(final ConnectionData first, final ConnectionData second) {
+        return first.getPort() == second.getPort() &&
+                first.getProtocol() == second.getProtocol() &&
+                first.getAddress() != null && first.getAddress().equals(second.getAddress());
+    }
+
+    private List<ConnectionData> processNAPTRRecord(final NAPTRRecord naptrRecord) throws DNSException {
+        List<ConnectionData> retValue = Collections.emptyList();
 
         // NAPTR record looks like this
         // example.com NAPTR 10 100 "S" "SIP+D2U" "" _sip._udp.example.com.
@@ -352,10 +426,10 @@ public final class DNSResolverDNSJavaImpl implements DNSResolver {
         return retValue;
     }
 
-    private ConnectionData doProcessNAPTRRecord(
+    private List<ConnectionData> doProcessNAPTRRecord(
             final NAPTRRecord naptrRecord,
             final ConnectionDataDefaultImpl.Builder builder) throws DNSException {
-        ConnectionData retValue;
+        List<ConnectionData> retValue;
         //NAPTR record looks like this
         //example.com NAPTR 10 100 "S" "SIP+D2U" "" _sip._udp.example.com.
         //
@@ -380,26 +454,26 @@ public final class DNSResolverDNSJavaImpl implements DNSResolver {
             //A "P" would signify a "non-terminal" rule where additional NAPTR lookups would be necessary.
             //It is application specific and can be mutated by regular expressions
             //no processing algorithm for "P" at this time
-            retValue = null;
+            retValue = Collections.emptyList();
         } else {
             String errMsg = flags + " is unknown DNS flags for processing. Record = " + naptrRecord + " " + builder;
             Logger.log(Logger.Tag.WARNING, LOG_PREFIX, errMsg);
             assert false : errMsg;
 
-            retValue = null;
+            retValue = Collections.emptyList();
         }
 
         return retValue;
     }
 
-    private ConnectionData processRecordAsTypeSRV(
+    private List<ConnectionData> processRecordAsTypeSRV(
             final NAPTRRecord naptrRecord,
             final ConnectionDataDefaultImpl.Builder builder) throws DNSException {
         // SRV record looks like this
         // _sip._udp.example.com SRV 5 100 5060 sip-udp01.example.com.
         Lookup srvLookup = new Lookup(naptrRecord.getReplacement(), Type.SRV);
         Record[] records = srvLookup.run();
-        ConnectionData retValue = null;
+        List<ConnectionData> retValue;
 
         Logger.log(Logger.Tag.COMMON, LOG_PREFIX, "Number of SRV records = " +
                 ((records != null) ? records.length : "0"));
@@ -412,42 +486,23 @@ public final class DNSResolverDNSJavaImpl implements DNSResolver {
                     srvComparatorImportantFirst
             );
 
-            int priorityIndex = 0, weightSum = 0, randNum = 0;
-            SRVRecord srvRecord = srvRecords[0];
-
-            if (srvRecords.length > 1) {
-                // Fine proper DNS server by SRV records...
-                Logger.log(Logger.Tag.COMMON, LOG_PREFIX, "Finding proper DNS server...");
-                Random rand = new Random();
-
-                for (int i = 0; i < srvRecords.length; i++) {
-                    Logger.log(Logger.Tag.COMMON, LOG_PREFIX, "SRV Record: " + srvRecords[i]);
-
-                    if (srvRecords[0].getPriority() == srvRecords[i].getPriority()) {
-                        weightSum += srvRecords[i].getWeight();
-                    } else if (srvRecords[0].getPriority() != srvRecords[i].getPriority()) {
-                        priorityIndex = i;
-                        break;
-                    }
-                }
-
-                randNum = rand.nextInt(weightSum);
-                Logger.log(Logger.Tag.COMMON, LOG_PREFIX, "priorityIndex = " + priorityIndex +
-                        ", weightSum = " + weightSum + ", randNum = " + randNum);
-                weightSum = 0;
-                for (int i = 0; i < priorityIndex; i++) {
-                    weightSum += srvRecords[i].getWeight();
-
-                    if (randNum <= weightSum) {
-                        srvRecord = srvRecords[i];
-                        Logger.log(Logger.Tag.COMMON, LOG_PREFIX, "Select SRV record: " + srvRecord);
-                        break;
-                    }
+            retValue = new ArrayList<ConnectionData>();
+            DNSException lastException = null;
+
+            //every SRV target takes part in connection race, so a dead one doesn't hold back the others
+            for (SRVRecord srvRecord : orderByWeight(srvRecords)) {
+                Logger.log(Logger.Tag.COMMON, LOG_PREFIX, "processing 'SRV' record: " + srvRecord);
+                try {
+                    retValue.addAll(processRecordAsTypeA(srvRecord, builder.port(srvRecord.getPort())));
+                } catch (DNSException e) {
+                    Logger.log(Logger.Tag.WARNING, LOG_PREFIX, "SRV target skipped: " + srvRecord + " " + e);
+                    lastException = e;
                 }
             }
 
-            Logger.log(Logger.Tag.COMMON, LOG_PREFIX, "processing 'SRV' record: " + srvRecord);
-            retValue = processRecordAsTypeA(srvRecord, builder.port(srvRecord.getPort()));
+            if (retValue.isEmpty() && lastException != null) {
+                throw lastException;
+            }
         } else {
             int result = srvLookup.getResult();
             String errorString = srvLookup.getErrorString();
@@ -492,18 +547,63 @@ public final class DNSResolverDNSJavaImpl implements DNSResolver {
         return retValue;
     }
 
-    private ConnectionData processRecordAsTypeA(
+    /**
+     * Orders SRV records as RFC 2782 selects them: by priority, and within the same priority
+     * randomly with chance proportional to weight.
+     *
+     * @param srvRecords records sorted by priority
+     */
+    private static List<SRVRecord> orderByWeight(final SRVRecord[] srvRecords) {
+        final List<SRVRecord> retValue = new ArrayList<SRVRecord>(srvRecords.length);
+        final Random rand = new Random();
+
+        int groupStart = 0;
+        while (groupStart < srvRecords.length) {
+            int groupEnd = groupStart;
+            final List<SRVRecord> group = new ArrayList<SRVRecord>();
+            while (groupEnd < srvRecords.length && srvRecords[groupEnd].getPriority() == srvRecords[groupStart].getPriority()) {
+                Logger.log(Logger.Tag.COMMON, LOG_PREFIX, "SRV Record: " + srvRecords[groupEnd]);
+                group.add(srvRecords[groupEnd++]);
+            }
+
+            while (!group.isEmpty()) {
+                int weightSum = 0;
+                for (SRVRecord record : group) {
+                    weightSum += record.getWeight();
+                }
+
+                //zero weight records have a small chance too
+                final int randNum = rand.nextInt(weightSum + 1);
+                int runningSum = 0;
+                int selected = group.size() - 1;
+                for (int i = 0; i < group.size(); i++) {
+                    runningSum += group.get(i).getWeight();
+                    if (randNum <= runningSum) {
+                        selected = i;
+                        break;
+                    }
+                }
+                retValue.add(group.remove(selected));
+            }
+
+            groupStart = groupEnd;
+        }
+
+        return retValue;
+    }
+
+    private List<ConnectionData> processRecordAsTypeA(
             final SRVRecord srvRecord,
             final ConnectionDataDefaultImpl.Builder builder) throws DNSException {
 
         return doProcessRecordAsTypeA(srvRecord.getTarget(), builder);
     }
 
-    private ConnectionData processRecordAsTypeA(final NAPTRRecord naptrRecord, final ConnectionDataDefaultImpl.Builder builder) throws DNSException {
+    private List<ConnectionData> processRecordAsTypeA(final NAPTRRecord naptrRecord, final ConnectionDataDefaultImpl.Builder builder) throws DNSException {
         return doProcessRecordAsTypeA(naptrRecord.getReplacement(), builder);
     }
 
-    private ConnectionData doProcessRecordAsTypeA(final Name target, final ConnectionDataDefaultImpl.Builder builder) throws DNSException {
+    private List<ConnectionData> doProcessRecordAsTypeA(final Name target, final ConnectionDataDefaultImpl.Builder builder) throws DNSException {
         //'A' record looks like this
         //sip-udp01.example.com has address 11.22.33.44
 
@@ -511,6 +611,7 @@ public final class DNSResolverDNSJavaImpl implements DNSResolver {
         Lookup aLookup = new Lookup(target, Type.A);
         Record[] records = aLookup.run();
         Logger.log(Logger.Tag.COMMON, LOG_PREFIX, "'A' lookup records = " + (records == null ? null : Arrays.asList(records)));
+        final List<ConnectionData> retValue = new ArrayList<ConnectionData>();
 
         if (Lookup.SUCCESSFUL == aLookup.getResult() && records != null) {
             @SuppressWarnings({"SuspiciousToArrayCall"})
@@ -520,11 +621,8 @@ public final class DNSResolverDNSJavaImpl implements DNSResolver {
                 Logger.log(Logger.Tag.COMMON, LOG_PREFIX, "processing 'A' record: " + aRecord);
                 InetAddress address = aRecord.getAddress();
 
-                //here we test address for liveness. If address doesn't respond we would rather choose next one to try.
-                if (isReachable(address)) {
-                    builder.address(address.getHostAddress());
-                    break;
-                }
+                //liveness of addresses is checked later by connection race
+                retValue.add(builder.address(address.getHostAddress()).build());
             }
         } else {
             int result = aLookup.getResult();
@@ -535,10 +633,10 @@ public final class DNSResolverDNSJavaImpl implements DNSResolver {
             throw new DNSException(ReasonCode.A_LOOKUP_FAILS, errorString);
         }
 
-        return builder.build();
+        return retValue;
     }
 
-    private ConnectionData pocessRecordAsTypeU(
+    private List<ConnectionData> pocessRecordAsTypeU(
             final NAPTRRecord naptrRecord,
             final ConnectionDataDefaultImpl.Builder builder) {
 
@@ -556,7 +654,7 @@ public final class DNSResolverDNSJavaImpl implements DNSResolver {
         //int port = 5060;//TODO: extract port from replacement
 
         //return builder.address(address).port(port).build();
-        return null;
+        return Collections.emptyList();
     }
 
     private static <T> T[] sortRecords(final T[] records, final Comparator<T> comparator) {
@@ -587,25 +685,6 @@ public final class DNSResolverDNSJavaImpl implements DNSResolver {
         return retValue;
     }
 
-    private static boolean isReachable(final InetAddress address) {
-
-        boolean retValue = false;
-
-        /*try {
-            retValue = address.isReachable(ICMP_TIMEOUT);
-        } catch (IOException e) {
-            String errMsg = "Error during DNS lookup testing remote host " + address + " " + e;
-            Logger.log(Logger.Tag.WARNING, LOG_PREFIX, errMsg);
-        }*/
-
-        //try establish socket connection here
-        if (retValue == false) {
-        }
-
-        //return retValue;
-        return true;
-    }
-
 /*    public static void main(String[] args) throws DNSException {
         DNSResolver dnsResolver = new DNSResolverDNSJavaImpl();
     }
@@ -42,6 +42,7 @@
 package javax.microedition.ims.messages.utils;
 
 import javax.microedition.ims.common.MimeType;
+import javax.microedition.ims.core.dialog.Dialog;
 import javax.microedition.ims.messages.history.BodyPartData;
 import javax.microedition.ims.messages.parser.sdp.SdpParser;
 import javax.microedition.ims.messages.wrappers.sdp.SdpMessage;
@@ -58,22 +59,43 @@ public class SipMessageUtils {
     }
 
     public static SdpMessage getSdpFromMessage(BaseSipMessage msg) {
+        return getSdpFromMessage(null, msg);
+    }
+
+    /**
+     * Same as {@link #getSdpFromMessage(BaseSipMessage)} but body parsed last time for the dialog isn't parsed again.
+     *
+     * @param dialog - dialog message belongs to, null if there is none
+     */
+    public static SdpMessage getSdpFromMessage(Dialog dialog, BaseSipMessage msg) {
         SdpMessage sdp = null;
         if (MimeType.APP_SDP.stringValue().equals(msg.getContentType().getValue())) {
-            sdp = SdpParser.parse(new String(msg.getBody()));
+            sdp = parseSdp(dialog, msg.getBody());
         }
         else if (SipMessageUtils.checkIsMultipart(msg.getContentType())) {
             String boundary = msg.getContentType().getParamsList().get("boundary").getValue();
             List<BodyPartData> parts = BodyPartUtils.parseBody(msg.getBody(), boundary);
             for (BodyPartData part : parts) {
                 if (MimeType.APP_SDP.stringValue().equals(part.getHeader(Header.Content_Type.stringValue()))) {
-                    sdp = SdpParser.parse(new String(part.getContent()));
+                    sdp = parseSdp(dialog, part.getContent());
                 }
             }
         }
         return sdp;
     }
 
+    private static SdpMessage parseSdp(Dialog dialog, byte[] body) {
+        SdpMessage retValue = dialog == null || body == null ? null : dialog.getParsedSdpMessage(body);
+
+        if (retValue == null) {
+            retValue = SdpParser.parse(body);
+            if (retValue != null && dialog != null) {
+                dialog.putParsedSdpMessage(body, retValue);
+            }
+        }
+        return retValue;
+    }
+
 /*	public static void main(String[] args) {
 		String input = "SIP_NOTIFY sip:tch2_user_9320214@172.17.50.24:5061 SIP/2.0\r\n" +
 		"Max-Forwards: 67\r\n" +
@@ -56,7 +56,8 @@ public class ChannelIOException extends IOException {
         CLOSED_BY_REMOTE_PARTY,
         UNSUPPORTED_TRANSPORT_TYPE,
         SECURITY,
-        DNS_LOOKUP_ERROR
+        DNS_LOOKUP_ERROR,
+        KEEP_ALIVE_TIMEOUT
     }
 
     private final Route route;
@@ -41,6 +41,8 @@
 
 package javax.microedition.ims.transport;
 
+import java.nio.ByteBuffer;
+
 /**
  * User: Pavel Laboda (pavel.laboda@gmail.com)
  * Date: 18-Feb-2010
@@ -50,4 +52,11 @@ public interface MessageContentProvider<T> {
     String getContent(T msg);
 
     byte[] getByteContent(T msg);
+
+    /**
+     * Writes wire representation of the message straight into transport buffer.
+     *
+     * @throws java.nio.BufferOverflowException if message doesn't fit into remaining space of target
+     */
+    void writeByteContent(T msg, ByteBuffer target);
 }
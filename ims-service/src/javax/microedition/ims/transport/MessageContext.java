@@ -43,6 +43,7 @@ package javax.microedition.ims.transport;
 
 import javax.microedition.ims.common.IMSEntityType;
 import javax.microedition.ims.common.TimeoutUnit;
+import javax.microedition.ims.transport.sigcomp.SigCompCompartment;
 
 /**
  * User: Pavel Laboda (pavel.laboda@gmail.com)
@@ -52,7 +53,13 @@ import javax.microedition.ims.common.TimeoutUnit;
 public interface MessageContext<T> {
     MessageContentProvider<T> getMessageContentProvider();
 
-    MessageReader<T> getMessageReader();
+    /**
+     * Reader keeps state of the stream it is fed with, so every channel must obtain own instance.
+     *
+     * @param stream - true for stream transports (TCP, TLS), false if every received part is a datagram
+     * @return new reader instance
+     */
+    MessageReader<T> createMessageReader(boolean stream);
 
     T buildServiceUnavailableMessage(T msg);
 
@@ -65,4 +72,29 @@ public interface MessageContext<T> {
     int getMessageHash(T msg);
 
     IMSEntityType getEntityType();
+
+    /**
+     * @param stream true if compartment serves stream based transport
+     * @return new SigComp compartment or null if messages of this context are never compressed
+     */
+    SigCompCompartment createSigCompCompartment(boolean stream);
+
+    boolean isCompressionRequested(T msg);
+
+    /**
+     * RFC 3261 18.1.1: request too large for a datagram is sent over congestion controlled transport.
+     *
+     * @param msg message routed to datagram transport
+     * @return copy of the message to be sent over stream transport, or null if msg fits into datagram
+     */
+    T buildStreamTransportMessage(T msg);
+
+    /**
+     * RFC 5626 4.2.1: registrar which supports outbound confirms it in 2xx response to REGISTER
+     * carrying reg-id Contact.
+     *
+     * @return Flow-Timer of the response in seconds, 0 if outbound is confirmed without Flow-Timer,
+     *         -1 if the message doesn't confirm outbound
+     */
+    int getOutboundFlowTimer(T msg);
 }
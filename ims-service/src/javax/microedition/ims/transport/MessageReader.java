@@ -58,5 +58,8 @@ public interface MessageReader<T> {
 
     void feedPart(byte[] part) throws IOException;
 
-    void feedCompressedPart(byte[] part, boolean isStream) throws IOException;
+    /**
+     * Feeds range of the array. Array is not referenced after the call returns, so caller can reuse it.
+     */
+    void feedPart(byte[] part, int offset, int length) throws IOException;
 }
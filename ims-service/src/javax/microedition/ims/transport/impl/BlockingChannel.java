@@ -0,0 +1,203 @@
+/*
+ * This software code is (c) 2010 T-Mobile USA, Inc. All Rights Reserved.
+ *
+ * Unauthorized redistribution or further use of this material is
+ * prohibited without the express permission of T-Mobile USA, Inc. and
+ * will be prosecuted to the fullest extent of the law.
+ *
+ * Removal or modification of these Terms and Conditions from the source
+ * or binary code of this software is prohibited.  In the event that
+ * redistribution of the source or binary code for this software is
+ * approved by T-Mobile USA, Inc., these Terms and Conditions and the
+ * above copyright notice must be reproduced in their entirety and in all
+ * circumstances.
+ *
+ * No name or trademarks of T-Mobile USA, Inc., or of its parent company,
+ * Deutsche Telekom AG or any Deutsche Telekom or T-Mobile entity, may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" AND "WITH ALL FAULTS" BASIS
+ * AND WITHOUT WARRANTIES OF ANY KIND.  ALL EXPRESS OR IMPLIED
+ * CONDITIONS, REPRESENTATIONS OR WARRANTIES, INCLUDING ANY IMPLIED
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR
+ * NON-INFRINGEMENT CONCERNING THIS SOFTWARE, ITS SOURCE OR BINARY CODE
+ * OR ANY DERIVATIVES THEREOF ARE HEREBY EXCLUDED.  T-MOBILE USA, INC.
+ * AND ITS LICENSORS SHALL NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY
+ * LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE
+ * OR ITS DERIVATIVES.  IN NO EVENT WILL T-MOBILE USA, INC. OR ITS
+ * LICENSORS BE LIABLE FOR LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT,
+ * INDIRECT, SPECIAL, CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES,
+ * HOWEVER CAUSED AND REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT
+ * OF THE USE OF OR INABILITY TO USE THIS SOFTWARE, EVEN IF T-MOBILE USA,
+ * INC. HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGES.
+ *
+ * THESE TERMS AND CONDITIONS APPLY SOLELY AND EXCLUSIVELY TO THE USE,
+ * MODIFICATION OR DISTRIBUTION OF THIS SOFTWARE, ITS SOURCE OR BINARY
+ * CODE OR ANY DERIVATIVES THEREOF, AND ARE SEPARATE FROM ANY WRITTEN
+ * WARRANTY THAT MAY BE PROVIDED WITH A DEVICE YOU PURCHASE FROM T-MOBILE
+ * USA, INC., AND TO THE EXTENT PERMITTED BY LAW.
+ */
+
+package javax.microedition.ims.transport.impl;
+
+import javax.microedition.ims.common.Consumer;
+import javax.microedition.ims.common.Logger;
+import javax.microedition.ims.transport.ChannelIOException;
+import javax.microedition.ims.transport.ChannelIOException.Reason;
+import javax.microedition.ims.transport.MessageContext;
+import javax.microedition.ims.transport.MessageReader;
+import javax.microedition.ims.transport.messagerouter.Route;
+import java.io.IOException;
+import java.net.SocketException;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Channel read by own task which polls the socket with blocking reads.
+ * <p/>
+ * Channels served by {@link SelectorLoop} extend {@link NioChannel} instead and never read this way.
+ */
+abstract class BlockingChannel<T> extends Channel<T> {
+    protected static final int READ_TIMEOUT = 100;
+    protected static final int SO_TIMEOUT = 10;
+
+    final Future<Object> readTask;
+
+    BlockingChannel(final Route route, final Consumer<T> outerConsumer, final MessageContext<T> messageContext) {
+        super(route, outerConsumer, messageContext);
+
+        this.readTask =
+                new FutureTask<Object>(
+                        new Callable<Object>() {
+
+                            public Object call() throws Exception {
+                                final Object retValue;
+                                Exception exception = null;
+
+                                try {
+                                    Thread.currentThread().setName("Channel Worker");
+
+                                    getListenerNotifier().onChannelStart(createEvent(null));
+                                    retValue = doCall();
+                                }
+                                catch (Exception e) {
+                                    exception = e;
+                                    try {
+                                        getListenerNotifier().onException(createEvent(e));
+                                    }
+                                    catch (Exception innerException) {
+                                        innerException.printStackTrace();
+                                    }
+                                    catch (Error err) {
+                                        logThrowable(e);
+                                        logThrowable(err);
+                                        throw err;
+                                    }
+
+                                    logThrowable(e);
+                                    throw e;
+                                }
+                                catch (Error e) {
+                                    exception = new Exception(e);
+                                    logThrowable(e);
+                                    throw e;
+                                }
+                                finally {
+                                    getListenerNotifier().onChannelStop(createEvent(exception));
+                                }
+
+                                return retValue;
+                            }
+
+                            private void logThrowable(Throwable e) {
+                                e.printStackTrace();
+                                Logger.log(Logger.Tag.WARNING, e.toString());
+                            }
+
+                            private Object doCall() throws IOException {
+
+                                //TODO if isAlive == false it signals that communication counterpart has closed the socket
+                                boolean isAlive = true;
+
+                                while (!isShutdown() && isAlive) {
+                                    try {
+                                        isAlive = false;
+                                        isAlive = onReadMessage(getMessageReader());
+                                    }
+                                    catch (SipBufferOverflowException e) {
+                                        send513MessageTooLarge(e.getMsgBytes());
+                                    }
+                                    catch (SocketException e){
+                                        if(!isShutdown()){
+                                            throw e;
+                                        }
+                                    }
+                                    catch (ClosedChannelException e) {
+                                        //blocking channel read is released by shutdown closing the channel
+                                        if (!isShutdown()) {
+                                            throw e;
+                                        }
+                                    }
+
+                                    if (isAlive) {
+                                        try {
+                                            TimeUnit.MILLISECONDS.sleep(READ_TIMEOUT);
+                                        }
+                                        catch (InterruptedException e) {
+                                            Thread.interrupted();
+                                        }
+                                    }
+                                }
+
+                                Logger.log(BlockingChannel.this.getClass(), Logger.Tag.SHUTDOWN, "Channel stopped. route=" + getInitialRoute());
+
+                                if (!isAlive && !isShutdown()) {
+                                    throw new ChannelIOException(getInitialRoute(), Reason.CLOSED_BY_REMOTE_PARTY);
+                                }
+
+                                return new Object();
+                            }
+                        }
+                );
+    }
+
+
+    /**
+     * Starts reading from the channel, read task is run by the executor.
+     */
+    void start(final Executor executor) {
+        executor.execute((FutureTask) readTask);
+    }
+
+    void onStopReading() {
+        Logger.log(getClass(), Logger.Tag.SHUTDOWN, "Cancelling Channel task");
+        readTask.cancel(true);
+    }
+
+    protected void onMessageHandled() {
+        channelSleep();
+    }
+
+    /**
+     * Return true is socket is alive, otherwise false
+     *
+     * @param messageReader
+     * @return
+     * @throws IOException
+     */
+    abstract boolean onReadMessage(MessageReader<T> messageReader) throws IOException;
+
+    private static void channelSleep() {
+        try {
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+        catch (InterruptedException e) {
+            Thread.interrupted();
+        }
+    }
+}
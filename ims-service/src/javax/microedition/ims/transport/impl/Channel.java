@@ -43,18 +43,15 @@ package javax.microedition.ims.transport.impl;
 
 
 import javax.microedition.ims.common.*;
-import javax.microedition.ims.transport.ChannelIOException;
-import javax.microedition.ims.transport.ChannelIOException.Reason;
 import javax.microedition.ims.transport.MessageContext;
 import javax.microedition.ims.transport.MessageReader;
 import javax.microedition.ims.transport.messagerouter.Route;
+import javax.microedition.ims.transport.sigcomp.SigCompCompartment;
+import javax.microedition.ims.transport.sigcomp.SigCompException;
 import javax.microedition.ims.util.MessageUtilHolder;
 import java.io.IOException;
-import java.net.SocketException;
-import java.util.concurrent.Callable;
-import java.util.concurrent.Future;
-import java.util.concurrent.FutureTask;
-import java.util.concurrent.TimeUnit;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -67,8 +64,6 @@ abstract class Channel<T> implements Shutdownable {
     //protected static final int BUFFER_SIZE = 4096;
     protected static final int BUFFER_SIZE = 1024*48;
     protected static final String SIP_TERMINATOR = "\r\n";
-    protected static final int READ_TIMEOUT = 100;
-    protected static final int SO_TIMEOUT = 10;
     protected ChannelType channelType = ChannelType.UNDEFINED_CHANNEL_TYPE;
 
 
@@ -80,15 +75,32 @@ abstract class Channel<T> implements Shutdownable {
     protected final AtomicReference<Route> realRoute = new AtomicReference<Route>();
     private final Consumer<T> consumer;
     private final MessageContext<T> messageContext;
+    private final MessageReader<T> messageReader;
     private final ListenerHolder<ChannelListener> listenerHolder = new ListenerHolder<ChannelListener>(ChannelListener.class);
     private final AtomicReference<T> firstMessage = new AtomicReference<T>(null);
+    //null if message context doesn't use SigComp
+    private final SigCompCompartment sigCompCompartment;
+    //messages parsed by reader, reading thread only
+    private int parsedMessageCount;
+    //decompressed message is valid if reader parsed a message out of it
+    private final SigCompCompartment.MessageSink sigCompSink = new SigCompCompartment.MessageSink() {
+        public boolean onMessage(final byte[] message) throws IOException {
+            final int parsedBefore = parsedMessageCount;
+            messageReader.feedPart(message);
+            return parsedMessageCount != parsedBefore;
+        }
+    };
+    //flow activity for keep-alive
+    private volatile long lastSentMillis = System.currentTimeMillis();
+    private volatile long lastReceivedMillis;
+    //null until keep-alive of UDP flow is answered
+    private volatile StunKeepAlive.BindingResponse lastBindingResponse;
+    //Flow-Timer seconds of RFC 5626 outbound registration over the flow, 0 if none, -1 until outbound is confirmed
+    private volatile int outboundFlowTimer = -1;
 
     //put message hashes there
     private final FloodBlocker<Integer> floodBlocker;
 
-    final Future<Object> readTask;
-
-
     private final AtomicBoolean done = new AtomicBoolean(false);
 
     //TODO:test code here
@@ -121,6 +133,9 @@ abstract class Channel<T> implements Shutdownable {
         this.initialRoute = route;
         this.consumer = outerConsumer;
         this.messageContext = messageContext;
+        final boolean stream = route.getTransportType() != Protocol.UDP;
+        this.messageReader = messageContext.createMessageReader(stream);
+        this.sigCompCompartment = messageContext.createSigCompCompartment(stream);
 
         int messagesPerSecond = messageContext.getMessageRate();
         TimeoutUnit messageLifeTime = messageContext.getMessageLifeTime();
@@ -128,10 +143,11 @@ abstract class Channel<T> implements Shutdownable {
 
         this.floodBlocker = new FloodBlockerImpl<Integer>(floodBlockerSize, messageLifeTime);
 
-        messageContext.getMessageReader().setMessageReceiver(
+        messageReader.setMessageReceiver(
                 new MessageReader.MessageReceiver<T>() {
 
                     public void onMessage(final T msg) throws IOException {
+                        parsedMessageCount++;
                         //if we have too many messages per second it's probably a kind of DOS attack or
                         //other uncontrolled flood of messages. Than we should answer with '503 Service Unavailable'
                         if (!floodBlocker.isBlocked()) {
@@ -157,7 +173,7 @@ abstract class Channel<T> implements Shutdownable {
                             send503ServiceUnavailable(msg);
                         }
 
-                        channelSleep();
+                        onMessageHandled();
                     }
 
                     private void handleNewMessage(final T msg) {
@@ -169,7 +185,13 @@ abstract class Channel<T> implements Shutdownable {
                         String msgContent = getMessageContext().getMessageContentProvider().getContent(msg);
                         Logger.log(getClass(), Logger.Tag.SIP_MESSAGE_IN, msgContent);
 
-                        consumer.push(msg);
+                        final int flowTimer = messageContext.getOutboundFlowTimer(msg);
+                        if (flowTimer >= 0 && flowTimer != outboundFlowTimer) {
+                            outboundFlowTimer = flowTimer;
+                            listenerHolder.getNotifier().onOutboundNegotiated(createEvent(null));
+                        }
+
+                        pushReceived(msg);
 
                         /*
                         //TODO: debug code
@@ -213,105 +235,135 @@ abstract class Channel<T> implements Shutdownable {
                     }
                 }
         );
+    }
 
-        this.readTask =
-                new FutureTask<Object>(
-                        new Callable<Object>() {
-
-                            public Object call() throws Exception {
-                                final Object retValue;
-                                Exception exception = null;
-
-                                try {
-                                    Thread.currentThread().setName("Channel Worker");
-
-                                    listenerHolder.getNotifier().onChannelStart(createEvent(null));
-                                    retValue = doCall();
-                                }
-                                catch (Exception e) {
-                                    exception = e;
-                                    try {
-                                        listenerHolder.getNotifier().onException(createEvent(e));
-                                    }
-                                    catch (Exception innerException) {
-                                        innerException.printStackTrace();
-                                    }
-                                    catch (Error err) {
-                                        logThrowable(e);
-                                        logThrowable(err);
-                                        throw err;
-                                    }
+    /**
+     * Starts reading from the channel.
+     *
+     * @param executor - executor for channels reading in own task
+     */
+    abstract void start(Executor executor);
 
-                                    logThrowable(e);
-                                    throw e;
-                                }
-                                catch (Error e) {
-                                    exception = new Exception(e);
-                                    logThrowable(e);
-                                    throw e;
-                                }
-                                finally {
-                                    listenerHolder.getNotifier().onChannelStop(createEvent(exception));
-                                }
+    /**
+     * Feeds received bytes to message reader. Used by channels which read outside of read task.
+     */
+    protected final void feedReader(final byte[] part, final int offset, final int length) throws IOException {
+        try {
+            deliverTraffic(messageReader, part, offset, length);
+        }
+        catch (SipBufferOverflowException e) {
+            send513MessageTooLarge(e.getMsgBytes());
+        }
+    }
 
-                                return retValue;
-                            }
+    /**
+     * Passes received bytes to the reader. SigComp messages are decompressed first.
+     */
+    protected final void deliverTraffic(final MessageReader<T> messageReader,
+                                        final byte[] part,
+                                        final int offset,
+                                        final int length) throws IOException {
+        lastReceivedMillis = System.currentTimeMillis();
+
+        if (initialRoute.getTransportType() == Protocol.UDP && StunKeepAlive.isStunMessage(part, offset, length)) {
+            //keep-alive response, nothing for message reader
+            final StunKeepAlive.BindingResponse response = StunKeepAlive.parseBindingResponse(part, offset, length);
+            if (response != null) {
+                lastBindingResponse = response;
+            }
+            return;
+        }
 
-                            private void logThrowable(Throwable e) {
-                                e.printStackTrace();
-                                Logger.log(Logger.Tag.WARNING, e.toString());
-                            }
+        checkChannelType(part, offset, length);
 
-                            private Object doCall() throws IOException {
+        if (channelType == ChannelType.SIGCOMP_CHANNEL_TYPE) {
+            sigCompCompartment.feedStream(part, offset, length, sigCompSink);
+        }
+        else if (sigCompCompartment != null && SigCompCompartment.isSigCompMessage(part, offset, length)) {
+            //message based transport, every datagram is checked on its own
+            try {
+                sigCompCompartment.decompress(part, offset, length, sigCompSink);
+            }
+            catch (SigCompException e) {
+                Logger.log(Logger.Tag.WARNING, "SigComp message is discarded: " + e.getMessage());
+            }
+        }
+        else {
+            messageReader.feedPart(part, offset, length);
+        }
+    }
 
-                                //TODO if isAlive == false it signals that communication counterpart has closed the socket
-                                boolean isAlive = true;
+    /**
+     * Builds wire representation of the message, compressed if message context requests it.
+     */
+    protected final byte[] getWireContent(final T msg) {
+        final byte[] content = messageContext.getMessageContentProvider().getByteContent(msg);
+        return sigCompCompartment != null && messageContext.isCompressionRequested(msg) ?
+                sigCompCompartment.compress(content) :
+                content;
+    }
 
-                                while (!done.get() && isAlive) {
-                                    try {
-                                        isAlive = false;
-                                        isAlive = onReadMessage(Channel.this.messageContext.getMessageReader());
-                                    }
-                                    catch (SipBufferOverflowException e) {
-                                        send513MessageTooLarge(e.getMsgBytes());
-                                    }
-                                    catch (SocketException e){
-                                        if(!done.get()){
-                                            throw e;
-                                        }
-                                    }
+    /**
+     * Writes wire representation of the message into target, compressed if message context requests it.
+     *
+     * @throws java.nio.BufferOverflowException if message doesn't fit into remaining space of target
+     */
+    protected final void writeWireContent(final T msg, final ByteBuffer target) {
+        if (sigCompCompartment != null && messageContext.isCompressionRequested(msg)) {
+            target.put(getWireContent(msg));
+        }
+        else {
+            messageContext.getMessageContentProvider().writeByteContent(msg, target);
+        }
+    }
 
-                                    if (isAlive) {
-                                        try {
-                                            TimeUnit.MILLISECONDS.sleep(READ_TIMEOUT);
-                                        }
-                                        catch (InterruptedException e) {
-                                            Thread.interrupted();
-                                        }
-                                    }
-                                }
+    protected final void fireChannelStart() {
+        listenerHolder.getNotifier().onChannelStart(createEvent(null));
+    }
 
-                                Logger.log(Channel.this.getClass(), Logger.Tag.SHUTDOWN, "Channel stopped. route=" + route);
+    /**
+     * Notifies listeners that channel is stopped. Used by channels which read outside of read task.
+     *
+     * @param e reason of stop or null if channel was stopped normally
+     */
+    protected final void fireChannelStop(final Exception e) {
+        if (e != null) {
+            try {
+                listenerHolder.getNotifier().onException(createEvent(e));
+            }
+            catch (Exception innerException) {
+                innerException.printStackTrace();
+            }
+            Logger.log(Logger.Tag.WARNING, e.toString());
+        }
+        listenerHolder.getNotifier().onChannelStop(createEvent(e));
+    }
 
-                                if (!isAlive && !done.get()) {
-                                    throw new ChannelIOException(route, Reason.CLOSED_BY_REMOTE_PARTY);
-                                }
+    /**
+     * Hands received message over to the consumer of the channel.
+     */
+    protected void pushReceived(final T msg) {
+        consumer.push(msg);
+    }
 
-                                return new Object();
-                            }
+    protected final Consumer<T> getConsumer() {
+        return consumer;
+    }
 
-                            private void send513MessageTooLarge(final byte[] msg) throws IOException {
-                                T messageTooLargeMsg = messageContext.buildMessageTooLargeMessage(msg);
-                                if (messageTooLargeMsg != null) {
-                                    sendMessage(messageTooLargeMsg);
-                                }
-                                else {
-                                    Logger.log(Logger.Tag.WARNING, "Can not parse message '513 Message Too Large': " + new String(msg));
-                                }
-                            }
+    /**
+     * Called after each received message is handled.
+     */
+    protected void onMessageHandled() {
+    }
 
-                        }
-                );
+    final void send513MessageTooLarge(final byte[] msg) throws IOException {
+        T messageTooLargeMsg = messageContext.buildMessageTooLargeMessage(msg);
+        if (messageTooLargeMsg != null) {
+            sendMessage(messageTooLargeMsg);
+        }
+        else {
+            Logger.log(Logger.Tag.WARNING, "Can not parse message '513 Message Too Large': " + new String(msg));
+        }
     }
 
     void addListener(ChannelListener<T> listener) {
@@ -344,9 +396,53 @@ abstract class Channel<T> implements Shutdownable {
         //TODO: end of debug code*/
 
             onPushMessage(msg);
+            lastSentMillis = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Sends RFC 5626 keep-alive ping bypassing message context.
+     */
+    void sendKeepAlive(final byte[] ping) throws IOException {
+        if (!done.get()) {
+            onPushKeepAlive(ping);
+            lastSentMillis = System.currentTimeMillis();
         }
     }
 
+    /**
+     * @return false if keep-alive bytes can't be mixed into the stream, e.g. SigComp stream
+     */
+    boolean isKeepAliveCapable() {
+        return channelType != ChannelType.SIGCOMP_CHANNEL_TYPE;
+    }
+
+    long getLastSentMillis() {
+        return lastSentMillis;
+    }
+
+    boolean isShutdown() {
+        return done.get();
+    }
+
+    long getLastReceivedMillis() {
+        return lastReceivedMillis;
+    }
+
+    /**
+     * @return last STUN Binding success response received over UDP flow, null if there was none
+     */
+    StunKeepAlive.BindingResponse getLastBindingResponse() {
+        return lastBindingResponse;
+    }
+
+    /**
+     * @return Flow-Timer in seconds, 0 if registrar gave none, -1 if outbound isn't negotiated over the flow
+     */
+    int getOutboundFlowTimer() {
+        return outboundFlowTimer;
+    }
+
     Route getInitialRoute() {
         return initialRoute;
     }
@@ -355,12 +451,14 @@ abstract class Channel<T> implements Shutdownable {
         if (done.compareAndSet(false, true)) {
             Logger.log(getClass(), Logger.Tag.SHUTDOWN, "Shutdowning Channel. route=" + initialRoute);
 
-            Logger.log(getClass(), Logger.Tag.SHUTDOWN, "Cancelling Channel task");
-            readTask.cancel(true);
+            onStopReading();
             listenerHolder.shutdown();
 
             Logger.log(getClass(), Logger.Tag.SHUTDOWN, "Closing Channel socket");
             onShutdown();
+            if (sigCompCompartment != null) {
+                sigCompCompartment.close();
+            }
             Logger.log(getClass(), Logger.Tag.SHUTDOWN, "Channel shutdown successfully");
         }
     }
@@ -369,45 +467,57 @@ abstract class Channel<T> implements Shutdownable {
         return messageContext;
     }
 
-    abstract void onPushMessage(T msg) throws IOException;
+    final MessageReader<T> getMessageReader() {
+        return messageReader;
+    }
+
+    final ChannelListener getListenerNotifier() {
+        return listenerHolder.getNotifier();
+    }
 
     /**
-     * Return true is socket is alive, otherwise false
-     *
-     * @param messageReader
-     * @return
-     * @throws IOException
+     * Called on shutdown before listeners are released and channel is closed.
      */
-    abstract boolean onReadMessage(MessageReader messageReader) throws IOException;
+    void onStopReading() {
+    }
+
+    abstract void onPushMessage(T msg) throws IOException;
+
+    abstract void onPushKeepAlive(byte[] ping) throws IOException;
 
     abstract void onShutdown();
 
-    private ChannelEvent<T> createEvent(Exception e) {
+    ChannelEvent<T> createEvent(Exception e) {
         //return new DefaultChannelEvent<T>(getInitialRoute(), null, e, firstMessage.get());
         return new DefaultChannelEvent<T>(getInitialRoute(), getRealRoute(), e, firstMessage.get());
     }
 
-    private static void channelSleep() {
-        try {
-            TimeUnit.MILLISECONDS.sleep(100);
-        }
-        catch (InterruptedException e) {
-            Thread.interrupted();
-        }
-    }
-
 
     static void log(String msg, String prefix) {
         Logger.log(prefix, msg);
     }
 
-    protected void checkChannelType(byte[] data) {
-        if (channelType == ChannelType.UNDEFINED_CHANNEL_TYPE) {
-            channelType = ChannelType.PLAIN_DATA_CHANNEL_TYPE;
+    private void checkChannelType(final byte[] data, final int offset, final int length) {
+        if (channelType == ChannelType.UNDEFINED_CHANNEL_TYPE && !isCrlfOnly(data, offset, length)) {
+            //SigComp and plain text are never mixed on a stream, first byte decides
+            final boolean sigCompStream = sigCompCompartment != null &&
+                    initialRoute.getTransportType() != Protocol.UDP &&
+                    SigCompCompartment.isSigCompMessage(data, offset, length);
+            channelType = sigCompStream ? ChannelType.SIGCOMP_CHANNEL_TYPE : ChannelType.PLAIN_DATA_CHANNEL_TYPE;
             log("Channel type changed to " + channelType, this.getClass().getSimpleName());
         }
     }
 
+    //CRLF keep-alive pong says nothing about channel type
+    private static boolean isCrlfOnly(final byte[] data, final int offset, final int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (data[i] != '\r' && data[i] != '\n') {
+                return false;
+            }
+        }
+        return true;
+    }
+
     protected Route getRealRoute() {
         return realRoute.get();
     }
@@ -54,4 +54,9 @@ interface ChannelListener<T> {
     void onFirstMessage(ChannelEvent<T> event);
 
     void onException(ChannelEvent<T> event);
+
+    /**
+     * Registrar confirmed RFC 5626 outbound for the flow or changed its Flow-Timer.
+     */
+    void onOutboundNegotiated(ChannelEvent<T> event);
 }
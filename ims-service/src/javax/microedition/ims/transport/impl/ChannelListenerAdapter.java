@@ -62,4 +62,7 @@ public class ChannelListenerAdapter<T> implements ChannelListener<T> {
     public void onFirstMessage(final ChannelEvent<T> event) {
         //To change body of implemented methods use File | Settings | File Templates.
     }
+
+    public void onOutboundNegotiated(final ChannelEvent<T> event) {
+    }
 }
@@ -48,7 +48,13 @@ import java.net.Socket;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 /**
  * User: Pavel Laboda (pavel.laboda@gmail.com)
@@ -64,6 +70,38 @@ final class ChannelManager<T extends IMSMessage> implements Shutdownable {
 
     private final Object mutex = new Object();
     private final Map<Route, ChannelWorker<T>> channelMap = Collections.synchronizedMap(new HashMap<Route, ChannelWorker<T>>());
+    //channels being established, connect itself runs outside of mutex in the thread which asked for route first.
+    //guarded by mutex
+    private final Map<Route, FutureTask<ChannelWorker<T>>> pendingMap = new HashMap<Route, FutureTask<ChannelWorker<T>>>();
+    //pending routes removed before their channel was established, guarded by mutex
+    private final Set<Route> abandonedRoutes = new HashSet<Route>();
+    private static final int MAX_ESTABLISHMENT_RECORDS = 64;
+    //guarded by itself. Record is dropped together with its channel, failed routes are bounded by eviction
+    private final Map<Route, EstablishmentRecord> establishmentRecords = new LinkedHashMap<Route, EstablishmentRecord>() {
+        private static final long serialVersionUID = 1L;
+
+        protected boolean removeEldestEntry(final Map.Entry<Route, EstablishmentRecord> eldest) {
+            return size() > MAX_ESTABLISHMENT_RECORDS;
+        }
+    };
+
+    private static class EstablishmentRecord {
+        private int establishedCount;
+        private int failedCount;
+        private long lastMillis;
+        private long totalMillis;
+        private long maxMillis;
+
+        RouteEstablishmentStatistics snapshot() {
+            return new RouteEstablishmentStatistics(
+                    establishedCount,
+                    failedCount,
+                    lastMillis,
+                    establishedCount == 0 ? 0 : totalMillis / establishedCount,
+                    maxMillis
+            );
+        }
+    }
 
     ChannelManager() {
     }
@@ -86,28 +124,44 @@ final class ChannelManager<T extends IMSMessage> implements Shutdownable {
     }
 
     private ChannelWorker<T> doGet(final Route key, final Creator<T> creator) throws ChannelIOException {
-        ChannelWorker<T> retValue = null;
         Logger.log("ChannelManager<IMSMessage>", "getting ChannelWorker for route:" + key);
+
+        ChannelWorker<T> retValue;
+        FutureTask<ChannelWorker<T>> establishment = null;
+        boolean owner = false;
+
         synchronized (mutex) {
-            try {
-                retValue = channelMap.get(key);
-                if (retValue == null) {
-                    retValue = createChannelWorker(key, creator);
+            retValue = channelMap.get(key);
+            if (retValue == null) {
+                establishment = pendingMap.get(key);
+                if (establishment == null) {
+                    establishment = createEstablishment(key, creator);
+                    pendingMap.put(key, establishment);
+                    owner = true;
+                }
+            }
+        }
+
+        if (retValue == null) {
+            if (owner) {
+                try {
+                    establishment.run();
+                    retValue = awaitChannel(key, establishment);
 
                     if (key.getSimultaneousRoutes() != null) {
-                        final Collection<Protocol> collection = key.getSimultaneousRoutes();
-                        for (Protocol protocol : collection) {
-                            final Route route = DefaultRoute.copyOf(key, protocol);
-                            if (!channelMap.containsKey(route)) {
-                                createChannelWorker(route, creator);
-                            }
+                        for (Protocol protocol : key.getSimultaneousRoutes()) {
+                            getOrEstablish(DefaultRoute.copyOf(key, protocol), creator);
                         }
                     }
                 }
+                catch (ChannelIOException e) {
+                    doRemove(key);
+                    throw e;
+                }
             }
-            catch (ChannelIOException e) {
-                doRemove(key);
-                throw e;
+            else {
+                //same route is being established by other thread, share its result
+                retValue = awaitChannel(key, establishment);
             }
         }
 
@@ -116,9 +170,95 @@ final class ChannelManager<T extends IMSMessage> implements Shutdownable {
         return retValue;
     }
 
-    private ChannelWorker<T> createChannelWorker(final Route route, Creator<T> creator) throws ChannelIOException {
+    private ChannelWorker<T> getOrEstablish(final Route route, final Creator<T> creator) throws ChannelIOException {
+        FutureTask<ChannelWorker<T>> establishment;
+        boolean owner = false;
 
-        assert Thread.holdsLock(mutex) : "Method run without proper synchronization";
+        synchronized (mutex) {
+            final ChannelWorker<T> existing = channelMap.get(route);
+            if (existing != null) {
+                return existing;
+            }
+
+            establishment = pendingMap.get(route);
+            if (establishment == null) {
+                establishment = createEstablishment(route, creator);
+                pendingMap.put(route, establishment);
+                owner = true;
+            }
+        }
+
+        if (owner) {
+            establishment.run();
+        }
+        return awaitChannel(route, establishment);
+    }
+
+    private FutureTask<ChannelWorker<T>> createEstablishment(final Route route, final Creator<T> creator) {
+        return new FutureTask<ChannelWorker<T>>(
+                new Callable<ChannelWorker<T>>() {
+                    public ChannelWorker<T> call() throws ChannelIOException {
+                        return establish(route, creator);
+                    }
+                }
+        );
+    }
+
+    private ChannelWorker<T> establish(final Route route, final Creator<T> creator) throws ChannelIOException {
+        final long started = System.currentTimeMillis();
+        ChannelWorker<T> retValue = null;
+        boolean abandoned = false;
+
+        try {
+            retValue = createChannelWorker(route, creator);
+        }
+        finally {
+            synchronized (mutex) {
+                pendingMap.remove(route);
+                abandoned = abandonedRoutes.remove(route);
+                if (retValue != null && !abandoned) {
+                    retValue.addListener(createChannelListener());
+                    channelMap.put(route, retValue);
+                }
+            }
+            recordEstablishment(route, retValue != null && !abandoned, System.currentTimeMillis() - started);
+        }
+
+        if (abandoned) {
+            retValue.shutdown();
+            throw new ChannelIOException(route, ChannelIOException.Reason.UNKNOWN_ERROR,
+                    "Route was removed while channel was being established");
+        }
+
+        return retValue;
+    }
+
+    private ChannelWorker<T> awaitChannel(final Route route, final FutureTask<ChannelWorker<T>> establishment)
+            throws ChannelIOException {
+        try {
+            return establishment.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ChannelIOException(route, ChannelIOException.Reason.UNKNOWN_ERROR,
+                    "Interrupted while waiting for channel", e);
+        }
+        catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof ChannelIOException) {
+                throw (ChannelIOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new ChannelIOException(route, ChannelIOException.Reason.UNKNOWN_ERROR, String.valueOf(cause), cause);
+        }
+    }
+
+    private ChannelWorker<T> createChannelWorker(final Route route, Creator<T> creator) throws ChannelIOException {
 
         ChannelWorker<T> retValue;
         try {
@@ -133,9 +273,7 @@ final class ChannelManager<T extends IMSMessage> implements Shutdownable {
             Logger.log("ChannelManager<IMSMessage>", "createChannelWorker for:" + route);
 
             retValue = creator.create(route);
-            retValue.addListener(createChannelListener());
             MessageTransport.log("new channel created for route " + route + ": " + retValue, "MESSAGE TRANSPORT");
-            channelMap.put(route, retValue);
         }
         catch (ChannelIOException e) {
             throw new ChannelIOException(
@@ -149,6 +287,41 @@ final class ChannelManager<T extends IMSMessage> implements Shutdownable {
         return retValue;
     }
 
+    private void recordEstablishment(final Route route, final boolean established, final long millis) {
+        synchronized (establishmentRecords) {
+            EstablishmentRecord record = establishmentRecords.get(route);
+            if (record == null) {
+                record = new EstablishmentRecord();
+                establishmentRecords.put(route, record);
+            }
+
+            if (established) {
+                record.establishedCount++;
+                record.lastMillis = millis;
+                record.totalMillis += millis;
+                record.maxMillis = Math.max(record.maxMillis, millis);
+            }
+            else {
+                record.failedCount++;
+            }
+        }
+
+        Logger.log("ChannelManager<IMSMessage>", "route " + route + (established ? " established in " : " failed in ") + millis + " ms");
+    }
+
+    /**
+     * @return establishment metrics of routes with live channel and of recently failed routes
+     */
+    Map<Route, RouteEstablishmentStatistics> getEstablishmentStatistics() {
+        final Map<Route, RouteEstablishmentStatistics> retValue = new HashMap<Route, RouteEstablishmentStatistics>();
+        synchronized (establishmentRecords) {
+            for (Map.Entry<Route, EstablishmentRecord> entry : establishmentRecords.entrySet()) {
+                retValue.put(entry.getKey(), entry.getValue().snapshot());
+            }
+        }
+        return retValue;
+    }
+
     private ChannelListenerAdapter<T> createChannelListener() {
         return new ChannelListenerAdapter<T>() {
 
@@ -176,18 +349,22 @@ final class ChannelManager<T extends IMSMessage> implements Shutdownable {
                 retValue = channelMap.remove(key);
                 if (retValue != null) {
                     retValue.shutdown();
+                    dropEstablishmentRecord(key);
                 }
+                abandonPending(key);
 
                 if (key.getSimultaneousRoutes() != null) {
                     final Collection<Protocol> collection = key.getSimultaneousRoutes();
 
                     for (Protocol protocol : collection) {
-                        final ChannelWorker<T> simultaneousChannelWorker =
-                                channelMap.remove(DefaultRoute.copyOf(key, protocol));
+                        final Route simultaneousRoute = DefaultRoute.copyOf(key, protocol);
+                        final ChannelWorker<T> simultaneousChannelWorker = channelMap.remove(simultaneousRoute);
 
                         if (simultaneousChannelWorker != null) {
                             simultaneousChannelWorker.shutdown();
+                            dropEstablishmentRecord(simultaneousRoute);
                         }
+                        abandonPending(simultaneousRoute);
                     }
                 }
             }
@@ -196,6 +373,20 @@ final class ChannelManager<T extends IMSMessage> implements Shutdownable {
         return retValue;
     }
 
+    private void dropEstablishmentRecord(final Route route) {
+        synchronized (establishmentRecords) {
+            establishmentRecords.remove(route);
+        }
+    }
+
+    private void abandonPending(final Route route) {
+        assert Thread.holdsLock(mutex) : "Method run without proper synchronization";
+
+        if (pendingMap.containsKey(route)) {
+            abandonedRoutes.add(route);
+        }
+    }
+
     
     public void shutdown() {
         Map<Route, ChannelWorker<T>> copy;
@@ -203,6 +394,11 @@ final class ChannelManager<T extends IMSMessage> implements Shutdownable {
         synchronized (mutex) {
             copy = new HashMap<Route, ChannelWorker<T>>(channelMap);
             channelMap.clear();
+            abandonedRoutes.addAll(pendingMap.keySet());
+        }
+
+        synchronized (establishmentRecords) {
+            establishmentRecords.clear();
         }
 
         for (Route route : copy.keySet()) {
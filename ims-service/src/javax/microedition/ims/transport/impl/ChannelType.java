@@ -42,5 +42,5 @@
 package javax.microedition.ims.transport.impl;
 
 public enum ChannelType {
-    UNDEFINED_CHANNEL_TYPE, PLAIN_DATA_CHANNEL_TYPE
+    UNDEFINED_CHANNEL_TYPE, PLAIN_DATA_CHANNEL_TYPE, SIGCOMP_CHANNEL_TYPE
 }
@@ -53,7 +53,6 @@ import java.net.Socket;
 import java.net.UnknownHostException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.FutureTask;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -66,6 +65,7 @@ class ChannelWorker<T extends IMSMessage> implements Shutdownable {
 
     private static final int CHANNEL_CREATION_TIMEOUT = 5000;
 
+    //null if channel is served by selector loop
     private final ExecutorService executorService;
 
     private final Channel<T> channelMain;
@@ -100,31 +100,64 @@ class ChannelWorker<T extends IMSMessage> implements Shutdownable {
         }
     }
 
+    /**
+     * @param tlsSocketFactory factory for TLS routes, shared by channels to reuse TLS sessions
+     */
     public ChannelWorker(
             final Route initialRoute,
             final Consumer<T> inQueue,
             final MessageContext<T> messageContext,
-            final ConnectionSecurityInfoProvider securityInfoProvider) throws ChannelIOException {
+            final TlsSocketFactory tlsSocketFactory) throws ChannelIOException {
+        this(initialRoute, inQueue, messageContext, tlsSocketFactory, null, null);
+    }
+
+    /**
+     * @param tlsSocketFactory factory for TLS routes, shared by channels to reuse TLS sessions
+     * @param selectorLoops    loops serving TCP and UDP channels without dedicated thread.
+     *                         If null, every channel gets its own reading thread.
+     * @param writeCoalescer   write coalescing of TCP and TLS channels on blocking sockets, null to flush every message
+     */
+    public ChannelWorker(
+            final Route initialRoute,
+            final Consumer<T> inQueue,
+            final MessageContext<T> messageContext,
+            final TlsSocketFactory tlsSocketFactory,
+            final SelectorLoopGroup selectorLoops,
+            final StreamWriteCoalescer writeCoalescer) throws ChannelIOException {
 
         this.initialRoute = initialRoute;
-        this.executorService = Executors.newSingleThreadExecutor(new NamedDaemonThreadFactory("ChannelWorker"));
+        this.executorService = isServedBySelector(initialRoute, selectorLoops) ?
+                null :
+                Executors.newSingleThreadExecutor(new NamedDaemonThreadFactory("ChannelWorker"));
 
         try {
             switch (initialRoute.getTransportType()) {
                 case TCP: {
-                    SocketFactory socketFactory = new TcpSocketFactory();
-                    channelMain = new TcpChannel<T>(initialRoute, inQueue, creator, messageContext, socketFactory);
+                    if (executorService == null) {
+                        channelMain = new NioTcpChannel<T>(initialRoute, inQueue, creator, messageContext,
+                                selectorLoops.next(), selectorLoops.getWriteCoalescingMillis());
+                    }
+                    else {
+                        SocketFactory socketFactory = new TcpSocketFactory();
+                        channelMain = new TcpChannel<T>(initialRoute, inQueue, creator, messageContext, socketFactory,
+                                writeCoalescer);
+                    }
                     break;
 
                 }
                 case TLS: {
-                    SocketFactory socketFactory = new TlsSocketFactory(securityInfoProvider);
-                    channelMain = new TcpChannel<T>(initialRoute, inQueue, creator, messageContext, socketFactory);
+                    channelMain = new TcpChannel<T>(initialRoute, inQueue, creator, messageContext, tlsSocketFactory,
+                            writeCoalescer);
                     break;
 
                 }
                 case UDP: {
-                    channelMain = new UdpChannel<T>(initialRoute, inQueue, creator, messageContext);
+                    if (executorService == null) {
+                        channelMain = new NioUdpChannel<T>(initialRoute, inQueue, creator, messageContext, selectorLoops.next());
+                    }
+                    else {
+                        channelMain = new UdpChannel<T>(initialRoute, inQueue, creator, messageContext);
+                    }
                     break;
                 }
                 default:
@@ -180,13 +213,19 @@ class ChannelWorker<T extends IMSMessage> implements Shutdownable {
         }
     }
 
+    private static boolean isServedBySelector(final Route route, final SelectorLoopGroup selectorLoops) {
+        final Protocol transportType = route.getTransportType();
+        //TLS stays on blocking sockets, SSLSocket has no selectable channel
+        return selectorLoops != null && (transportType == Protocol.TCP || transportType == Protocol.UDP);
+    }
+
     private void doCommonConstruction() throws IOException {
 
         channelMain.addListener(
                 new MyChannelListenerAdapter()
         );
 
-        executorService.execute((FutureTask) channelMain.readTask);
+        channelMain.start(executorService);
 
         waitTillChannelReady();
         final Exception initException = exception.get();
@@ -262,7 +301,9 @@ class ChannelWorker<T extends IMSMessage> implements Shutdownable {
         }
 
         channelMain.shutdown();
-        executorService.shutdown();
+        if (executorService != null) {
+            executorService.shutdown();
+        }
 
         Logger.log(getClass(), Logger.Tag.SHUTDOWN, "ChannelWorker shutdown successfully. " + realRoute);
     }
@@ -280,6 +321,37 @@ class ChannelWorker<T extends IMSMessage> implements Shutdownable {
         }
     }
 
+    void sendKeepAlive(final byte[] ping) throws IOException {
+        channelMain.sendKeepAlive(ping);
+    }
+
+    boolean isKeepAliveCapable() {
+        return channelMain.isKeepAliveCapable();
+    }
+
+    long getLastSentMillis() {
+        return channelMain.getLastSentMillis();
+    }
+
+    boolean isShutdown() {
+        return channelMain.isShutdown();
+    }
+
+    long getLastReceivedMillis() {
+        return channelMain.getLastReceivedMillis();
+    }
+
+    StunKeepAlive.BindingResponse getLastBindingResponse() {
+        return channelMain.getLastBindingResponse();
+    }
+
+    int getOutboundFlowTimer() {
+        return channelMain.getOutboundFlowTimer();
+    }
+
+    Protocol getTransportType() {
+        return initialRoute.getTransportType();
+    }
 
     public String toString() {
         return "ChannelWorker{" +
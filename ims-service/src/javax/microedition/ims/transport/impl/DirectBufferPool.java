@@ -0,0 +1,99 @@
+/*
+ * This software code is (c) 2010 T-Mobile USA, Inc. All Rights Reserved.
+ *
+ * Unauthorized redistribution or further use of this material is
+ * prohibited without the express permission of T-Mobile USA, Inc. and
+ * will be prosecuted to the fullest extent of the law.
+ *
+ * Removal or modification of these Terms and Conditions from the source
+ * or binary code of this software is prohibited.  In the event that
+ * redistribution of the source or binary code for this software is
+ * approved by T-Mobile USA, Inc., these Terms and Conditions and the
+ * above copyright notice must be reproduced in their entirety and in all
+ * circumstances.
+ *
+ * No name or trademarks of T-Mobile USA, Inc., or of its parent company,
+ * Deutsche Telekom AG or any Deutsche Telekom or T-Mobile entity, may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" AND "WITH ALL FAULTS" BASIS
+ * AND WITHOUT WARRANTIES OF ANY KIND.  ALL EXPRESS OR IMPLIED
+ * CONDITIONS, REPRESENTATIONS OR WARRANTIES, INCLUDING ANY IMPLIED
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR
+ * NON-INFRINGEMENT CONCERNING THIS SOFTWARE, ITS SOURCE OR BINARY CODE
+ * OR ANY DERIVATIVES THEREOF ARE HEREBY EXCLUDED.  T-MOBILE USA, INC.
+ * AND ITS LICENSORS SHALL NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY
+ * LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE
+ * OR ITS DERIVATIVES.  IN NO EVENT WILL T-MOBILE USA, INC. OR ITS
+ * LICENSORS BE LIABLE FOR LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT,
+ * INDIRECT, SPECIAL, CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES,
+ * HOWEVER CAUSED AND REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT
+ * OF THE USE OF OR INABILITY TO USE THIS SOFTWARE, EVEN IF T-MOBILE USA,
+ * INC. HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGES.
+ *
+ * THESE TERMS AND CONDITIONS APPLY SOLELY AND EXCLUSIVELY TO THE USE,
+ * MODIFICATION OR DISTRIBUTION OF THIS SOFTWARE, ITS SOURCE OR BINARY
+ * CODE OR ANY DERIVATIVES THEREOF, AND ARE SEPARATE FROM ANY WRITTEN
+ * WARRANTY THAT MAY BE PROVIDED WITH A DEVICE YOU PURCHASE FROM T-MOBILE
+ * USA, INC., AND TO THE EXTENT PERMITTED BY LAW.
+ */
+
+package javax.microedition.ims.transport.impl;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pool of direct buffers of the same size.
+ * <p/>
+ * Direct buffers are expensive to allocate and are freed only by GC, so buffers are taken
+ * from the pool and returned after use. Pool never blocks: if it is empty a new buffer is allocated,
+ * buffers returned over the limit are left to GC. Taking and returning a buffer allocates nothing.
+ */
+final class DirectBufferPool {
+    //largest UDP payload over IPv4
+    static final int MAX_DATAGRAM_SIZE = 65507;
+
+    static final DirectBufferPool DATAGRAM_POOL = new DirectBufferPool(MAX_DATAGRAM_SIZE, 8);
+
+    private final int bufferSize;
+    //guarded by this
+    private final ByteBuffer[] buffers;
+    private int pooled;
+
+    DirectBufferPool(final int bufferSize, final int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.buffers = new ByteBuffer[maxPooled];
+    }
+
+    /**
+     * @return cleared buffer of the pool size
+     */
+    ByteBuffer acquire() {
+        ByteBuffer retValue = null;
+        synchronized (this) {
+            if (pooled > 0) {
+                retValue = buffers[--pooled];
+                buffers[pooled] = null;
+            }
+        }
+
+        if (retValue == null) {
+            retValue = ByteBuffer.allocateDirect(bufferSize);
+        }
+        else {
+            retValue.clear();
+        }
+        return retValue;
+    }
+
+    void release(final ByteBuffer buffer) {
+        assert buffer.capacity() == bufferSize : "Buffer doesn't belong to the pool";
+
+        synchronized (this) {
+            if (pooled < buffers.length) {
+                buffers[pooled++] = buffer;
+            }
+        }
+    }
+}
@@ -0,0 +1,418 @@
+/*
+ * This software code is (c) 2010 T-Mobile USA, Inc. All Rights Reserved.
+ *
+ * Unauthorized redistribution or further use of this material is
+ * prohibited without the express permission of T-Mobile USA, Inc. and
+ * will be prosecuted to the fullest extent of the law.
+ *
+ * Removal or modification of these Terms and Conditions from the source
+ * or binary code of this software is prohibited.  In the event that
+ * redistribution of the source or binary code for this software is
+ * approved by T-Mobile USA, Inc., these Terms and Conditions and the
+ * above copyright notice must be reproduced in their entirety and in all
+ * circumstances.
+ *
+ * No name or trademarks of T-Mobile USA, Inc., or of its parent company,
+ * Deutsche Telekom AG or any Deutsche Telekom or T-Mobile entity, may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" AND "WITH ALL FAULTS" BASIS
+ * AND WITHOUT WARRANTIES OF ANY KIND.  ALL EXPRESS OR IMPLIED
+ * CONDITIONS, REPRESENTATIONS OR WARRANTIES, INCLUDING ANY IMPLIED
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR
+ * NON-INFRINGEMENT CONCERNING THIS SOFTWARE, ITS SOURCE OR BINARY CODE
+ * OR ANY DERIVATIVES THEREOF ARE HEREBY EXCLUDED.  T-MOBILE USA, INC.
+ * AND ITS LICENSORS SHALL NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY
+ * LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE
+ * OR ITS DERIVATIVES.  IN NO EVENT WILL T-MOBILE USA, INC. OR ITS
+ * LICENSORS BE LIABLE FOR LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT,
+ * INDIRECT, SPECIAL, CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES,
+ * HOWEVER CAUSED AND REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT
+ * OF THE USE OF OR INABILITY TO USE THIS SOFTWARE, EVEN IF T-MOBILE USA,
+ * INC. HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGES.
+ *
+ * THESE TERMS AND CONDITIONS APPLY SOLELY AND EXCLUSIVELY TO THE USE,
+ * MODIFICATION OR DISTRIBUTION OF THIS SOFTWARE, ITS SOURCE OR BINARY
+ * CODE OR ANY DERIVATIVES THEREOF, AND ARE SEPARATE FROM ANY WRITTEN
+ * WARRANTY THAT MAY BE PROVIDED WITH A DEVICE YOU PURCHASE FROM T-MOBILE
+ * USA, INC., AND TO THE EXTENT PERMITTED BY LAW.
+ */
+
+package javax.microedition.ims.transport.impl;
+
+import javax.microedition.ims.common.Logger;
+import javax.microedition.ims.common.Protocol;
+import javax.microedition.ims.common.RepetitiousTaskManager;
+import javax.microedition.ims.common.ScheduledService;
+import javax.microedition.ims.common.Shutdownable;
+import javax.microedition.ims.transport.messagerouter.Route;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * RFC 5626 keep-alive of outbound SIP flows: double CRLF ping on TCP and TLS, STUN Binding request on UDP.
+ * UDP pong is Binding response to the very request, flow fails if its mapped address differs from the first
+ * one observed. Any data received on TCP and TLS after the ping proves the connection alive.
+ * <p/>
+ * Flow is pinged only once REGISTER 2xx received over it confirmed outbound (RFC 5626 4.2.1), and only after
+ * it sent nothing for its keep-alive interval. Flow-Timer of the registrar fixes the interval, otherwise it is
+ * learned per route: it grows while pongs come back, once NAT binding is lost it falls back to the longest
+ * interval that worked and further probing stays below the one that failed. Flow which never answered a ping
+ * isn't failed, keep-alive just stops for it: the peer doesn't support the mechanism.
+ * <p/>
+ * All flows due within a batching window are pinged by one run of {@link RepetitiousTaskManager} task,
+ * so the radio wakes up once for all of them. The task is a {@link ScheduledService.WakeUpTask}, so it runs
+ * on time while the device sleeps.
+ */
+final class FlowKeepAlive implements Shutdownable {
+    private static final String TAG = "FlowKeepAlive";
+
+    static interface FailureListener {
+        void onFlowFailed(Route route);
+    }
+
+    //RFC 5626 4.4.1, flow is failed if no pong comes within 10 seconds
+    private static final long PONG_TIMEOUT_MILLIS = 10 * 1000;
+    //RFC 5626 4.4.1, keep-alive is sent within 80-100% of Flow-Timer
+    private static final int FLOW_TIMER_PERCENT = 90;
+    //RFC 5626 4.4.1 recommended intervals, probing starts there
+    private static final long STREAM_INITIAL_INTERVAL_MILLIS = 95 * 1000;
+    private static final long DATAGRAM_INITIAL_INTERVAL_MILLIS = 25 * 1000;
+    private static final long STREAM_MAX_INTERVAL_MILLIS = 30 * 60 * 1000;
+    private static final long DATAGRAM_MAX_INTERVAL_MILLIS = 5 * 60 * 1000;
+    private static final long MIN_INTERVAL_MILLIS = 10 * 1000;
+    private static final long MIN_TICK_DELAY_MILLIS = 1000;
+    //flow is pinged early if it is due within this part of its interval
+    private static final int BATCH_WINDOW_DIVISOR = 5;
+
+    private static final byte[] CRLF_PING = {'\r', '\n', '\r', '\n'};
+
+    private final RepetitiousTaskManager taskManager;
+    private final FailureListener failureListener;
+
+    private final Object mutex = new Object();
+    //guarded by mutex
+    private final Map<Route, Flow> flows = new HashMap<Route, Flow>();
+    //learned intervals outlive flows, guarded by mutex
+    private final Map<Route, IntervalProbe> probes = new HashMap<Route, IntervalProbe>();
+    //earliest pending tick, guarded by mutex
+    private long scheduledTickMillis = Long.MAX_VALUE;
+    private boolean done;
+
+    private final RepetitiousTaskManager.Repeater<Tick> tickRepeater = new RepetitiousTaskManager.Repeater<Tick>() {
+        public void onRepeat(final Tick key, final Shutdownable task) {
+            runTick(key.millis);
+        }
+    };
+
+    private static class Flow {
+        private final ChannelWorker<?> worker;
+        private final IntervalProbe probe;
+        //0 if no ping is waiting for pong
+        private long pingSentMillis;
+        private long pingIdleMillis;
+        private byte[] ping;
+        //server reflexive address of UDP flow as first reported by STUN, null until known
+        private String mappedAddress;
+        //true once any ping was answered
+        private boolean ponged;
+
+        private Flow(final ChannelWorker<?> worker, final IntervalProbe probe) {
+            this.worker = worker;
+            this.probe = probe;
+        }
+    }
+
+    private static class IntervalProbe {
+        private final long maxMillis;
+        private long intervalMillis;
+        //longest idle time pong still came after, 0 if unknown
+        private long goodMillis;
+        //shortest idle time binding was lost after, 0 if unknown
+        private long lostMillis;
+
+        private IntervalProbe(final long initialMillis, final long maxMillis) {
+            this.intervalMillis = initialMillis;
+            this.maxMillis = maxMillis;
+        }
+
+        void onPong(final long idleMillis) {
+            goodMillis = Math.max(goodMillis, idleMillis);
+
+            if (lostMillis == 0) {
+                intervalMillis = Math.min(goodMillis + goodMillis / 4, maxMillis);
+            }
+            else if (lostMillis - goodMillis > goodMillis / 10) {
+                //bisect between intervals known to work and to fail
+                intervalMillis = (goodMillis + lostMillis) / 2;
+            }
+            else {
+                intervalMillis = goodMillis;
+            }
+        }
+
+        void onLost(final long idleMillis) {
+            lostMillis = lostMillis == 0 ? idleMillis : Math.min(lostMillis, idleMillis);
+            if (goodMillis >= lostMillis) {
+                //NAT timeout got shorter, what worked before is not trusted anymore
+                goodMillis = 0;
+            }
+            intervalMillis = goodMillis > 0 ? goodMillis : Math.max(MIN_INTERVAL_MILLIS, lostMillis / 2);
+        }
+    }
+
+    //keep-alive is due while the device sleeps
+    private static final class Tick implements ScheduledService.WakeUpTask {
+        private final long millis;
+
+        private Tick(final long millis) {
+            this.millis = millis;
+        }
+
+        public boolean equals(final Object o) {
+            return o instanceof Tick && ((Tick) o).millis == millis;
+        }
+
+        public int hashCode() {
+            return (int) (millis ^ (millis >>> 32));
+        }
+
+        public String toString() {
+            return "FlowKeepAlive.Tick{" + millis + '}';
+        }
+    }
+
+    FlowKeepAlive(final RepetitiousTaskManager taskManager, final FailureListener failureListener) {
+        this.taskManager = taskManager;
+        this.failureListener = failureListener;
+    }
+
+    void addFlow(final Route route, final ChannelWorker<?> worker) {
+        final long dueMillis;
+        synchronized (mutex) {
+            if (done) {
+                return;
+            }
+
+            IntervalProbe probe = probes.get(route);
+            if (probe == null) {
+                probe = worker.getTransportType() == Protocol.UDP ?
+                        new IntervalProbe(DATAGRAM_INITIAL_INTERVAL_MILLIS, DATAGRAM_MAX_INTERVAL_MILLIS) :
+                        new IntervalProbe(STREAM_INITIAL_INTERVAL_MILLIS, STREAM_MAX_INTERVAL_MILLIS);
+                probes.put(route, probe);
+            }
+            final Flow flow = new Flow(worker, probe);
+            flows.put(route, flow);
+            if (worker.getOutboundFlowTimer() < 0) {
+                //tick is scheduled once registrar confirms outbound
+                return;
+            }
+            dueMillis = worker.getLastSentMillis() + getInterval(flow);
+        }
+
+        scheduleTick(dueMillis);
+    }
+
+    /**
+     * Starts keep-alive of the flow or reschedules it for new Flow-Timer.
+     */
+    void onOutboundNegotiated(final Route route) {
+        final long dueMillis;
+        synchronized (mutex) {
+            final Flow flow = flows.get(route);
+            if (flow == null || done) {
+                return;
+            }
+            Logger.log(TAG, "Outbound negotiated for " + route + ", Flow-Timer " + flow.worker.getOutboundFlowTimer());
+            dueMillis = flow.worker.getLastSentMillis() + getInterval(flow);
+        }
+
+        scheduleTick(dueMillis);
+    }
+
+    //guarded by mutex
+    private static long getInterval(final Flow flow) {
+        final int flowTimer = flow.worker.getOutboundFlowTimer();
+        return flowTimer > 0 ?
+                Math.max(MIN_INTERVAL_MILLIS, flowTimer * 1000L * FLOW_TIMER_PERCENT / 100) :
+                flow.probe.intervalMillis;
+    }
+
+    //learning makes no sense while registrar dictates the interval
+    private static boolean isIntervalLearned(final Flow flow) {
+        return flow.worker.getOutboundFlowTimer() <= 0;
+    }
+
+    void removeFlow(final Route route, final ChannelWorker<?> worker) {
+        synchronized (mutex) {
+            final Flow flow = flows.get(route);
+            if (flow != null && flow.worker == worker) {
+                flows.remove(route);
+            }
+        }
+    }
+
+    private void scheduleTick(final long dueMillis) {
+        final long now = System.currentTimeMillis();
+        final long tickMillis = Math.max(dueMillis, now + MIN_TICK_DELAY_MILLIS);
+
+        synchronized (mutex) {
+            if (done || tickMillis >= scheduledTickMillis) {
+                return;
+            }
+            scheduledTickMillis = tickMillis;
+        }
+
+        //earlier tick doesn't cancel the later one, that one just finds nothing to do
+        taskManager.startDelayedTask(new Tick(tickMillis), tickRepeater, tickMillis - now);
+    }
+
+    private void runTick(final long tickMillis) {
+        final long now = System.currentTimeMillis();
+        final List<Flow> pings = new ArrayList<Flow>();
+        final List<Route> failedRoutes = new ArrayList<Route>();
+        long nextDueMillis = Long.MAX_VALUE;
+
+        synchronized (mutex) {
+            if (tickMillis <= scheduledTickMillis) {
+                scheduledTickMillis = Long.MAX_VALUE;
+            }
+            if (done) {
+                return;
+            }
+
+            for (Iterator<Map.Entry<Route, Flow>> iterator = flows.entrySet().iterator(); iterator.hasNext();) {
+                final Map.Entry<Route, Flow> entry = iterator.next();
+                final Flow flow = entry.getValue();
+
+                //channel shut down without removing the flow, e.g. all routes shut down at once
+                if (flow.worker.isShutdown()) {
+                    iterator.remove();
+                    continue;
+                }
+
+                //not negotiated yet, onOutboundNegotiated schedules the flow
+                if (flow.worker.getOutboundFlowTimer() < 0) {
+                    continue;
+                }
+
+                if (flow.pingSentMillis != 0) {
+                    final boolean datagram = flow.worker.getTransportType() == Protocol.UDP;
+                    final StunKeepAlive.BindingResponse response = datagram ? flow.worker.getLastBindingResponse() : null;
+                    final boolean pong = datagram ?
+                            response != null && response.answers(flow.ping) :
+                            flow.worker.getLastReceivedMillis() >= flow.pingSentMillis;
+
+                    if (pong && response != null && isMappedAddressChanged(flow, response.getMappedAddress())) {
+                        //RFC 5626 4.4.2, NAT binding was replaced, registration over the flow is lost
+                        if (isIntervalLearned(flow)) {
+                            flow.probe.onLost(flow.pingIdleMillis);
+                        }
+                        iterator.remove();
+                        failedRoutes.add(entry.getKey());
+                        Logger.log(TAG, "Mapped address of " + entry.getKey() + " changed from " + flow.mappedAddress +
+                                " to " + response.getMappedAddress() + ", interval " + flow.probe.intervalMillis + " ms");
+                        continue;
+                    }
+
+                    if (pong) {
+                        if (isIntervalLearned(flow)) {
+                            flow.probe.onPong(flow.pingIdleMillis);
+                        }
+                        flow.pingSentMillis = 0;
+                        flow.ponged = true;
+                        Logger.log(TAG, "Pong from " + entry.getKey() + ", interval " + getInterval(flow) + " ms");
+                    }
+                    else if (now - flow.pingSentMillis >= PONG_TIMEOUT_MILLIS && !flow.ponged) {
+                        //peer doesn't answer keep-alives at all, that tells nothing about the flow or NAT
+                        iterator.remove();
+                        Logger.log(TAG, "Keep-alive never answered over " + entry.getKey() + ", stopped for the flow");
+                        continue;
+                    }
+                    else if (now - flow.pingSentMillis >= PONG_TIMEOUT_MILLIS) {
+                        if (isIntervalLearned(flow)) {
+                            flow.probe.onLost(flow.pingIdleMillis);
+                        }
+                        iterator.remove();
+                        failedRoutes.add(entry.getKey());
+                        Logger.log(TAG, "No pong from " + entry.getKey() + " after " + flow.pingIdleMillis +
+                                " ms idle, interval " + getInterval(flow) + " ms");
+                        continue;
+                    }
+                    else {
+                        nextDueMillis = Math.min(nextDueMillis, flow.pingSentMillis + PONG_TIMEOUT_MILLIS);
+                        continue;
+                    }
+                }
+
+                final long interval = getInterval(flow);
+                final long idle = now - flow.worker.getLastSentMillis();
+
+                if (!flow.worker.isKeepAliveCapable()) {
+                    nextDueMillis = Math.min(nextDueMillis, now + interval);
+                }
+                else if (idle >= interval - interval / BATCH_WINDOW_DIVISOR) {
+                    flow.pingSentMillis = now;
+                    flow.pingIdleMillis = idle;
+                    flow.ping = flow.worker.getTransportType() == Protocol.UDP ?
+                            StunKeepAlive.createBindingRequest() :
+                            CRLF_PING;
+                    pings.add(flow);
+                    nextDueMillis = Math.min(nextDueMillis, now + PONG_TIMEOUT_MILLIS);
+                }
+                else {
+                    nextDueMillis = Math.min(nextDueMillis, now - idle + interval);
+                }
+            }
+        }
+
+        for (Flow flow : pings) {
+            try {
+                flow.worker.sendKeepAlive(flow.ping);
+            }
+            catch (IOException e) {
+                //channel reports its own failure, nothing learned about NAT here
+                Logger.log(Logger.Tag.WARNING, TAG, "Keep-alive failed for " + flow.worker + " " + e);
+                synchronized (mutex) {
+                    flow.pingSentMillis = 0;
+                }
+            }
+        }
+
+        for (Route route : failedRoutes) {
+            failureListener.onFlowFailed(route);
+        }
+
+        if (nextDueMillis != Long.MAX_VALUE) {
+            scheduleTick(nextDueMillis);
+        }
+    }
+
+    /**
+     * Remembers the first mapped address of the flow.
+     *
+     * @return true if the address differs from the first one
+     */
+    private static boolean isMappedAddressChanged(final Flow flow, final String mappedAddress) {
+        if (mappedAddress == null) {
+            return false;
+        }
+        if (flow.mappedAddress == null) {
+            flow.mappedAddress = mappedAddress;
+            return false;
+        }
+        return !flow.mappedAddress.equals(mappedAddress);
+    }
+
+    public void shutdown() {
+        synchronized (mutex) {
+            done = true;
+            flows.clear();
+        }
+    }
+}
@@ -53,8 +53,10 @@ import javax.microedition.ims.transport.messagerouter.RouterEvent;
 import javax.microedition.ims.transport.messagerouter.RouterListener;
 import java.io.IOException;
 import java.net.Socket;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -64,12 +66,18 @@ public class MessageTransport<T extends IMSMessage> implements TransportIO<T>, S
     private final ListenerHolder<UASListener> uasListenerHolder;
     private final ListenerHolder<ProducerListener> producerListenerHolder = new ListenerHolder<ProducerListener>(ProducerListener.class);
 
-    private final Consumer<T> inQueue;
-    private final Consumer<T> outQueue;
+    private final QueueWorker<T> inQueue;
+    private final QueueWorker<T> outQueue;
 
     private final ChannelListener<T> commonChannelListener;
     private final ChannelManager.Creator<T> channelCreator;
     private final ChannelManager<T> channelManager;
+    //null if every channel reads in its own thread
+    private final SelectorLoopGroup selectorLoops;
+    private final TlsSocketFactory tlsSocketFactory;
+    private final StreamWriteCoalescer writeCoalescer;
+    //null if flows are not kept alive
+    private final FlowKeepAlive flowKeepAlive;
 
     private final AtomicBoolean done = new AtomicBoolean(false);
     private final Router<T> router;
@@ -128,8 +136,53 @@ public class MessageTransport<T extends IMSMessage> implements TransportIO<T>, S
             final Router<T> router,
             final MessageContextRegistry<T> msgContextRegistry,
             final ConnectionSecurityInfoProvider securityInfoProvider) throws IOException, QueueException {
+        this(router, msgContextRegistry, securityInfoProvider, false, 0);
+    }
+
+    public MessageTransport(
+            final Router<T> router,
+            final MessageContextRegistry<T> msgContextRegistry,
+            final ConnectionSecurityInfoProvider securityInfoProvider,
+            final boolean useSelectorLoops,
+            final long writeCoalescingMillis) throws IOException, QueueException {
+        this(router, msgContextRegistry, securityInfoProvider, useSelectorLoops, writeCoalescingMillis,
+                TlsSocketFactory.DEFAULT_SESSION_LIFETIME, null);
+    }
+
+    /**
+     * @param useSelectorLoops      if true TCP and UDP channels are served by a small pool of selector loops
+     *                              instead of a reading thread per channel
+     * @param writeCoalescingMillis latency cap for outgoing messages waiting to share one write on
+     *                              TCP and TLS channels
+     * @param tlsSessionLifetime    seconds TLS session may be resumed for on reconnect, 0 disables resumption
+     * @param keepAliveTaskManager  runs RFC 5626 keep-alives of outbound SIP flows, null turns them off
+     */
+    public MessageTransport(
+            final Router<T> router,
+            final MessageContextRegistry<T> msgContextRegistry,
+            final ConnectionSecurityInfoProvider securityInfoProvider,
+            final boolean useSelectorLoops,
+            final long writeCoalescingMillis,
+            final int tlsSessionLifetime,
+            final RepetitiousTaskManager keepAliveTaskManager) throws IOException, QueueException {
 
         this.router = router;
+        this.selectorLoops = useSelectorLoops ?
+                new SelectorLoopGroup(SelectorLoopGroup.DEFAULT_LOOP_COUNT, writeCoalescingMillis) :
+                null;
+        this.tlsSocketFactory = new TlsSocketFactory(securityInfoProvider, tlsSessionLifetime);
+        this.writeCoalescer = new StreamWriteCoalescer(writeCoalescingMillis);
+        this.flowKeepAlive = keepAliveTaskManager == null ?
+                null :
+                new FlowKeepAlive(
+                        keepAliveTaskManager,
+                        new FlowKeepAlive.FailureListener() {
+                            public void onFlowFailed(final Route route) {
+                                onChannelError(route, new ChannelIOException(route,
+                                        ChannelIOException.Reason.KEEP_ALIVE_TIMEOUT, "No keep-alive response"));
+                            }
+                        }
+                );
         this.msgContextRegistry = msgContextRegistry;
 
         transportListenerHolder = new ListenerHolder<TransportListener>(TransportListener.class);
@@ -195,6 +248,12 @@ public class MessageTransport<T extends IMSMessage> implements TransportIO<T>, S
             public void onChannelStop(final ChannelEvent<T> event) {
                 doShutdownRoute(event.getInitialRoute());
             }
+
+            public void onOutboundNegotiated(final ChannelEvent<T> event) {
+                if (flowKeepAlive != null) {
+                    flowKeepAlive.onOutboundNegotiated(event.getInitialRoute());
+                }
+            }
         };
 
         channelCreator = new ChannelManager.Creator<T>() {
@@ -204,11 +263,17 @@ public class MessageTransport<T extends IMSMessage> implements TransportIO<T>, S
                         route,
                         inQueue,
                         MessageTransport.this.msgContextRegistry.getMessageContext(route.getEntityType()),
-                        securityInfoProvider
+                        tlsSocketFactory,
+                        selectorLoops,
+                        writeCoalescer
                 );
 
                 retValue.addListener(commonChannelListener);
 
+                if (flowKeepAlive != null && route.getEntityType() == IMSEntityType.SIP) {
+                    flowKeepAlive.addFlow(route, retValue);
+                }
+
                 return retValue;
             }
         };
@@ -286,6 +351,9 @@ public class MessageTransport<T extends IMSMessage> implements TransportIO<T>, S
         log(msg, "SIP_MESSAGE TRANSPORT");
 
         if (channelWorker != null) {
+            if (flowKeepAlive != null) {
+                flowKeepAlive.removeFlow(route, channelWorker);
+            }
             channelWorker.shutdown();
             channelWorker.removeListener(commonChannelListener);
         }
@@ -297,7 +365,54 @@ public class MessageTransport<T extends IMSMessage> implements TransportIO<T>, S
     }
 
     private Shutdownable[] getShutdownableList() {
-        return new Shutdownable[]{(Shutdownable) inQueue, (Shutdownable) outQueue, channelManager, transportListenerHolder};
+        final List<Shutdownable> retValue = new ArrayList<Shutdownable>();
+        retValue.add(inQueue);
+        retValue.add(outQueue);
+        if (flowKeepAlive != null) {
+            retValue.add(flowKeepAlive);
+        }
+        retValue.add(channelManager);
+        if (selectorLoops != null) {
+            retValue.add(selectorLoops);
+        }
+        retValue.add(writeCoalescer);
+        retValue.add(transportListenerHolder);
+        return retValue.toArray(new Shutdownable[retValue.size()]);
+    }
+
+    public QueueStatistics getInQueueStatistics() {
+        return inQueue.getStatistics();
+    }
+
+    public QueueStatistics getOutQueueStatistics() {
+        return outQueue.getStatistics();
+    }
+
+    /**
+     * @return channel establishment metrics per route
+     */
+    public Map<Route, RouteEstablishmentStatistics> getRouteEstablishmentStatistics() {
+        return channelManager.getEstablishmentStatistics();
+    }
+
+    /**
+     * @return handshake metrics of TLS channels
+     */
+    public TlsHandshakeStatistics getTlsHandshakeStatistics() {
+        return tlsSocketFactory.getHandshakeStatistics();
+    }
+
+    /**
+     * @return average number of outgoing stream messages per write call, or 0 if nothing was written yet
+     */
+    public float getWriteCoalescingRatio() {
+        long messages = writeCoalescer.getMessageCount();
+        long writes = writeCoalescer.getWriteCount();
+        if (selectorLoops != null) {
+            messages += selectorLoops.getQueuedMessageCount();
+            writes += selectorLoops.getWriteCount();
+        }
+        return writes == 0 ? 0 : (float) messages / writes;
     }
 
     public void addTransportListener(TransportListener<T> listener) {
@@ -332,11 +447,52 @@ public class MessageTransport<T extends IMSMessage> implements TransportIO<T>, S
     }
 
     private void handleToInternetTransportLayer(T msg) throws ChannelIOException {
-        final ChannelWorker<T> chnlWrk = getChannel(msg);
+        final Route route = router.getRoute(msg);
+
+        final T streamMsg = Protocol.UDP == route.getTransportType() ?
+                msgContextRegistry.getMessageContext(route.getEntityType()).buildStreamTransportMessage(msg) :
+                null;
 
+        if (streamMsg == null || !trySendOverStream(msg, streamMsg)) {
+            sendToChannel(doEstablishChannel(route), msg, msg);
+        }
+    }
+
+    /**
+     * RFC 3261 18.1.1: request too large for UDP goes over TCP,
+     * but if connection can't be established it is retried over UDP.
+     *
+     * @return false if message should be sent over datagram route
+     */
+    private boolean trySendOverStream(final T msg, final T streamMsg) throws ChannelIOException {
+        final Route streamRoute = router.getRoute(streamMsg);
+        if (Protocol.UDP == streamRoute.getTransportType()) {
+            return false;
+        }
+
+        final ChannelWorker<T> chnlWrk;
+        try {
+            chnlWrk = doEstablishChannel(streamRoute);
+        }
+        catch (ChannelIOException e) {
+            Logger.log(Logger.Tag.WARNING, "Can't send oversized " + msg.shortDescription() +
+                    " over " + streamRoute + ", sending it over UDP. " + e.getMessage());
+            return false;
+        }
+
+        log("oversized " + msg.shortDescription() + " is sent over " + streamRoute, "MESSAGE TRANSPORT");
+        sendToChannel(chnlWrk, msg, streamMsg);
+        return true;
+    }
+
+    /**
+     * @param msg     message passed to transport, it is checked for expiration
+     * @param wireMsg message actually sent
+     */
+    private void sendToChannel(final ChannelWorker<T> chnlWrk, final T msg, final T wireMsg) throws ChannelIOException {
         if (chnlWrk != null) {
             if(!msg.isExpired()) {
-                chnlWrk.sendMessage(msg);    
+                chnlWrk.sendMessage(wireMsg);
             } else {
                 Logger.log(Logger.Tag.WARNING, "message is expired: " + msg.shortDescription());
             }
@@ -346,10 +502,6 @@ public class MessageTransport<T extends IMSMessage> implements TransportIO<T>, S
         }
     }
 
-    private ChannelWorker<T> getChannel(final T msg) throws ChannelIOException {
-        return doEstablishChannel(router.getRoute(msg));
-    }
-
     private ChannelWorker<T> doEstablishChannel(final Route route) throws ChannelIOException {
         Logger.log("establishing route: " + route.toString());
         return channelManager.get(route, channelCreator);
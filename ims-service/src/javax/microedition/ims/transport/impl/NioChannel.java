@@ -0,0 +1,319 @@
+/*
+ * This software code is (c) 2010 T-Mobile USA, Inc. All Rights Reserved.
+ *
+ * Unauthorized redistribution or further use of this material is
+ * prohibited without the express permission of T-Mobile USA, Inc. and
+ * will be prosecuted to the fullest extent of the law.
+ *
+ * Removal or modification of these Terms and Conditions from the source
+ * or binary code of this software is prohibited.  In the event that
+ * redistribution of the source or binary code for this software is
+ * approved by T-Mobile USA, Inc., these Terms and Conditions and the
+ * above copyright notice must be reproduced in their entirety and in all
+ * circumstances.
+ *
+ * No name or trademarks of T-Mobile USA, Inc., or of its parent company,
+ * Deutsche Telekom AG or any Deutsche Telekom or T-Mobile entity, may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" AND "WITH ALL FAULTS" BASIS
+ * AND WITHOUT WARRANTIES OF ANY KIND.  ALL EXPRESS OR IMPLIED
+ * CONDITIONS, REPRESENTATIONS OR WARRANTIES, INCLUDING ANY IMPLIED
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR
+ * NON-INFRINGEMENT CONCERNING THIS SOFTWARE, ITS SOURCE OR BINARY CODE
+ * OR ANY DERIVATIVES THEREOF ARE HEREBY EXCLUDED.  T-MOBILE USA, INC.
+ * AND ITS LICENSORS SHALL NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY
+ * LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE
+ * OR ITS DERIVATIVES.  IN NO EVENT WILL T-MOBILE USA, INC. OR ITS
+ * LICENSORS BE LIABLE FOR LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT,
+ * INDIRECT, SPECIAL, CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES,
+ * HOWEVER CAUSED AND REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT
+ * OF THE USE OF OR INABILITY TO USE THIS SOFTWARE, EVEN IF T-MOBILE USA,
+ * INC. HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGES.
+ *
+ * THESE TERMS AND CONDITIONS APPLY SOLELY AND EXCLUSIVELY TO THE USE,
+ * MODIFICATION OR DISTRIBUTION OF THIS SOFTWARE, ITS SOURCE OR BINARY
+ * CODE OR ANY DERIVATIVES THEREOF, AND ARE SEPARATE FROM ANY WRITTEN
+ * WARRANTY THAT MAY BE PROVIDED WITH A DEVICE YOU PURCHASE FROM T-MOBILE
+ * USA, INC., AND TO THE EXTENT PERMITTED BY LAW.
+ */
+
+package javax.microedition.ims.transport.impl;
+
+import javax.microedition.ims.common.Consumer;
+import javax.microedition.ims.common.Logger;
+import javax.microedition.ims.transport.ChannelIOException;
+import javax.microedition.ims.transport.ChannelIOException.Reason;
+import javax.microedition.ims.transport.MessageContext;
+import javax.microedition.ims.transport.MessageReader;
+import javax.microedition.ims.transport.messagerouter.Route;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Channel driven by a {@link SelectorLoop} instead of a dedicated polling thread.
+ * <p/>
+ * Received data is fed to the message reader only when the selector reports the channel readable.
+ * Outgoing messages go to an {@link OutboundRing}. Messages queued within the coalescing window
+ * are sent together; whatever the socket can't take at once is flushed by the loop when the
+ * channel becomes writable.
+ * <p/>
+ * When the inbound {@link QueueWorker} is full, received messages are kept by the channel and it stops
+ * reading until the queue is drained, so the loop is never blocked and no message is dropped.
+ */
+abstract class NioChannel<T> extends Channel<T> implements SelectorLoop.Handler {
+    private static final int MAX_READS_PER_EVENT = 16;
+    private static final int MAX_PENDING_BYTES = 1024 * 1024;
+    //more than that is sent without waiting for the coalescing window to end
+    private static final int MAX_COALESCED_BYTES = 1024 * 16;
+
+    private final SelectorLoop loop;
+    private final long coalescingMillis;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final OutboundRing outbound = new OutboundRing();
+    //guarded by outbound
+    private boolean flushScheduled;
+    private boolean writeInterest;
+    private volatile SelectionKey key;
+    //messages received while inbound queue was full and reading is paused, accessed from the loop thread only
+    private final Queue<T> pendingInbound = new LinkedList<T>();
+    private boolean readPaused;
+
+    private final Runnable pushPendingInbound = new Runnable() {
+        public void run() {
+            doPushPendingInbound();
+        }
+    };
+
+    //called by the queue thread, which must not block
+    private final Runnable resumeReading = new Runnable() {
+        public void run() {
+            loop.execute(pushPendingInbound);
+        }
+    };
+
+    private final Runnable scheduledFlush = new Runnable() {
+        public void run() {
+            try {
+                synchronized (outbound) {
+                    flushScheduled = false;
+                    flushOutbound();
+                }
+            }
+            catch (IOException e) {
+                final SelectionKey key = NioChannel.this.key;
+                if (key != null) {
+                    key.cancel();
+                }
+                onFailure(e);
+            }
+        }
+    };
+
+    /**
+     * @param coalescingMillis how long an outgoing message may wait for others to share one write.
+     *                         Zero means every message is written immediately.
+     */
+    NioChannel(final Route route, final Consumer<T> outerConsumer, final MessageContext<T> messageContext,
+               final SelectorLoop loop, final long coalescingMillis) {
+        super(route, outerConsumer, messageContext);
+        this.loop = loop;
+        this.coalescingMillis = coalescingMillis;
+    }
+
+    abstract SelectableChannel getSelectableChannel();
+
+    /**
+     * @return number of bytes read, or -1 if the channel was closed by remote party
+     */
+    abstract int read(ByteBuffer target) throws IOException;
+
+    /**
+     * Writes as much of queued data as the channel takes.
+     *
+     * @return number of write calls made
+     */
+    abstract int write(OutboundRing outbound) throws IOException;
+
+    abstract void closeChannel() throws IOException;
+
+    void start(final Executor executor) {
+        loop.register(getSelectableChannel(), this);
+    }
+
+    public void onRegistered(final SelectionKey key) {
+        this.key = key;
+        if (closed.get()) {
+            key.cancel();
+        }
+        else {
+            synchronized (outbound) {
+                if (!outbound.isEmpty()) {
+                    writeInterest = true;
+                    loop.setWriteInterest(key, true);
+                }
+            }
+            fireChannelStart();
+        }
+    }
+
+    public void onReadable() throws IOException {
+        final ByteBuffer buffer = loop.getReadBuffer();
+
+        int readCount;
+        int reads = 0;
+        do {
+            buffer.clear();
+            readCount = read(buffer);
+
+            if (readCount > 0) {
+                feedReader(buffer.array(), buffer.arrayOffset(), readCount);
+            }
+        }
+        while (readCount > 0 && ++reads < MAX_READS_PER_EVENT && !readPaused && !closed.get());
+
+        if (readCount < 0) {
+            throw new ChannelIOException(getInitialRoute(), Reason.CLOSED_BY_REMOTE_PARTY);
+        }
+    }
+
+    protected void pushReceived(final T msg) {
+        final Consumer<T> consumer = getConsumer();
+        if (!(consumer instanceof QueueWorker)) {
+            consumer.push(msg);
+        }
+        else if (!pendingInbound.isEmpty() || !((QueueWorker<T>) consumer).offer(msg, resumeReading)) {
+            pendingInbound.add(msg);
+            if (!readPaused) {
+                readPaused = true;
+                loop.setReadInterest(key, false);
+            }
+        }
+    }
+
+    private void doPushPendingInbound() {
+        if (closed.get()) {
+            pendingInbound.clear();
+            return;
+        }
+
+        final QueueWorker<T> queue = (QueueWorker<T>) getConsumer();
+        while (!pendingInbound.isEmpty()) {
+            if (!queue.offer(pendingInbound.peek(), resumeReading)) {
+                return;
+            }
+            pendingInbound.poll();
+        }
+
+        if (readPaused) {
+            readPaused = false;
+            loop.setReadInterest(key, true);
+        }
+    }
+
+    public void onWritable() throws IOException {
+        synchronized (outbound) {
+            flushOutbound();
+        }
+    }
+
+    public void onFailure(final IOException e) {
+        if (!closed.get()) {
+            Logger.log(getClass(), Logger.Tag.WARNING, "Channel failed. route=" + getInitialRoute() + " " + e);
+            loop.executeCallback(
+                    new Runnable() {
+                        public void run() {
+                            fireChannelStop(e);
+                        }
+                    }
+            );
+        }
+    }
+
+    void onPushMessage(final T msg) throws IOException {
+        if (!closed.get()) {
+            enqueue(getWireContent(msg));
+        }
+    }
+
+    void onPushKeepAlive(final byte[] ping) throws IOException {
+        if (!closed.get()) {
+            enqueue(ping);
+        }
+    }
+
+    private void enqueue(final byte[] content) throws IOException {
+        synchronized (outbound) {
+            if (outbound.getRemainingBytes() + content.length > MAX_PENDING_BYTES) {
+                throw new ChannelIOException(getInitialRoute(), Reason.UNKNOWN_ERROR,
+                        "Outgoing data is not consumed by remote party");
+            }
+            outbound.add(ByteBuffer.wrap(content));
+            loop.recordQueued();
+
+            //while socket is busy the loop sends everything once it becomes writable
+            if (!writeInterest) {
+                if (coalescingMillis <= 0 || outbound.getRemainingBytes() >= MAX_COALESCED_BYTES) {
+                    flushOutbound();
+                }
+                else if (!flushScheduled) {
+                    flushScheduled = true;
+                    loop.schedule(scheduledFlush, coalescingMillis);
+                }
+            }
+        }
+    }
+
+    private void flushOutbound() throws IOException {
+        assert Thread.holdsLock(outbound) : "Method run without proper synchronization";
+
+        if (!outbound.isEmpty()) {
+            loop.recordWrites(write(outbound));
+        }
+
+        final boolean pending = !outbound.isEmpty();
+        final SelectionKey key = this.key;
+        if (pending != writeInterest && key != null) {
+            writeInterest = pending;
+            loop.setWriteInterest(key, pending);
+        }
+    }
+
+    /**
+     * @return average number of messages sent per write call
+     */
+    float getCoalescingRatio() {
+        synchronized (outbound) {
+            return outbound.getCoalescingRatio();
+        }
+    }
+
+    void onShutdown() {
+        if (closed.compareAndSet(false, true)) {
+            final SelectionKey key = this.key;
+            if (key != null) {
+                key.cancel();
+            }
+
+            synchronized (outbound) {
+                Logger.log(getClass(), Logger.Tag.SHUTDOWN, "Closing channel. route=" + getInitialRoute() +
+                        ", sent messages=" + outbound.getMessageCount() + ", coalescing ratio=" + outbound.getCoalescingRatio());
+                outbound.clear();
+            }
+
+            try {
+                closeChannel();
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
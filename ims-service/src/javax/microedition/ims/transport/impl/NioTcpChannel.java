@@ -0,0 +1,104 @@
+/*
+ * This software code is (c) 2010 T-Mobile USA, Inc. All Rights Reserved.
+ *
+ * Unauthorized redistribution or further use of this material is
+ * prohibited without the express permission of T-Mobile USA, Inc. and
+ * will be prosecuted to the fullest extent of the law.
+ *
+ * Removal or modification of these Terms and Conditions from the source
+ * or binary code of this software is prohibited.  In the event that
+ * redistribution of the source or binary code for this software is
+ * approved by T-Mobile USA, Inc., these Terms and Conditions and the
+ * above copyright notice must be reproduced in their entirety and in all
+ * circumstances.
+ *
+ * No name or trademarks of T-Mobile USA, Inc., or of its parent company,
+ * Deutsche Telekom AG or any Deutsche Telekom or T-Mobile entity, may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" AND "WITH ALL FAULTS" BASIS
+ * AND WITHOUT WARRANTIES OF ANY KIND.  ALL EXPRESS OR IMPLIED
+ * CONDITIONS, REPRESENTATIONS OR WARRANTIES, INCLUDING ANY IMPLIED
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR
+ * NON-INFRINGEMENT CONCERNING THIS SOFTWARE, ITS SOURCE OR BINARY CODE
+ * OR ANY DERIVATIVES THEREOF ARE HEREBY EXCLUDED.  T-MOBILE USA, INC.
+ * AND ITS LICENSORS SHALL NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY
+ * LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE
+ * OR ITS DERIVATIVES.  IN NO EVENT WILL T-MOBILE USA, INC. OR ITS
+ * LICENSORS BE LIABLE FOR LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT,
+ * INDIRECT, SPECIAL, CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES,
+ * HOWEVER CAUSED AND REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT
+ * OF THE USE OF OR INABILITY TO USE THIS SOFTWARE, EVEN IF T-MOBILE USA,
+ * INC. HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGES.
+ *
+ * THESE TERMS AND CONDITIONS APPLY SOLELY AND EXCLUSIVELY TO THE USE,
+ * MODIFICATION OR DISTRIBUTION OF THIS SOFTWARE, ITS SOURCE OR BINARY
+ * CODE OR ANY DERIVATIVES THEREOF, AND ARE SEPARATE FROM ANY WRITTEN
+ * WARRANTY THAT MAY BE PROVIDED WITH A DEVICE YOU PURCHASE FROM T-MOBILE
+ * USA, INC., AND TO THE EXTENT PERMITTED BY LAW.
+ */
+
+package javax.microedition.ims.transport.impl;
+
+import javax.microedition.ims.common.Consumer;
+import javax.microedition.ims.common.IMSMessage;
+import javax.microedition.ims.common.Logger;
+import javax.microedition.ims.transport.MessageContext;
+import javax.microedition.ims.transport.messagerouter.Route;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Non-blocking TCP transport served by a {@link SelectorLoop}.
+ */
+class NioTcpChannel<T extends IMSMessage> extends NioChannel<T> {
+    private final static String TAG = "NioTcpChannel";
+
+    private final SocketChannel socketChannel;
+
+    NioTcpChannel(final Route route, final Consumer<T> outerConsumer, final Creator creator,
+                  final MessageContext<T> messageContext, final SelectorLoop loop,
+                  final long coalescingMillis) throws IOException {
+        super(route, outerConsumer, messageContext, loop, coalescingMillis);
+
+        Logger.log(TAG, "connecting to host: " + route.getDstHost() + " port:" + route.getDstPort());
+
+        this.socketChannel = SocketChannel.open();
+        try {
+            socketChannel.socket().connect(
+                    new InetSocketAddress(route.getDstHost(), route.getDstPort()),
+                    SocketFactory.CONNECT_TIMEOUT
+            );
+            socketChannel.socket().setKeepAlive(true);
+            socketChannel.configureBlocking(false);
+        }
+        catch (IOException e) {
+            socketChannel.close();
+            throw e;
+        }
+
+        Route realRoute = TcpChannel.obtainRoute(socketChannel.socket(), messageContext.getEntityType());
+        this.realRoute.set(realRoute);
+        creator.onCreate(realRoute);
+    }
+
+    SelectableChannel getSelectableChannel() {
+        return socketChannel;
+    }
+
+    int read(final ByteBuffer target) throws IOException {
+        return socketChannel.read(target);
+    }
+
+    int write(final OutboundRing outbound) throws IOException {
+        return outbound.writeTo(socketChannel);
+    }
+
+    void closeChannel() throws IOException {
+        socketChannel.close();
+    }
+}
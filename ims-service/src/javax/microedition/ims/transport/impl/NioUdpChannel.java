@@ -0,0 +1,125 @@
+/*
+ * This software code is (c) 2010 T-Mobile USA, Inc. All Rights Reserved.
+ *
+ * Unauthorized redistribution or further use of this material is
+ * prohibited without the express permission of T-Mobile USA, Inc. and
+ * will be prosecuted to the fullest extent of the law.
+ *
+ * Removal or modification of these Terms and Conditions from the source
+ * or binary code of this software is prohibited.  In the event that
+ * redistribution of the source or binary code for this software is
+ * approved by T-Mobile USA, Inc., these Terms and Conditions and the
+ * above copyright notice must be reproduced in their entirety and in all
+ * circumstances.
+ *
+ * No name or trademarks of T-Mobile USA, Inc., or of its parent company,
+ * Deutsche Telekom AG or any Deutsche Telekom or T-Mobile entity, may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" AND "WITH ALL FAULTS" BASIS
+ * AND WITHOUT WARRANTIES OF ANY KIND.  ALL EXPRESS OR IMPLIED
+ * CONDITIONS, REPRESENTATIONS OR WARRANTIES, INCLUDING ANY IMPLIED
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR
+ * NON-INFRINGEMENT CONCERNING THIS SOFTWARE, ITS SOURCE OR BINARY CODE
+ * OR ANY DERIVATIVES THEREOF ARE HEREBY EXCLUDED.  T-MOBILE USA, INC.
+ * AND ITS LICENSORS SHALL NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY
+ * LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE
+ * OR ITS DERIVATIVES.  IN NO EVENT WILL T-MOBILE USA, INC. OR ITS
+ * LICENSORS BE LIABLE FOR LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT,
+ * INDIRECT, SPECIAL, CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES,
+ * HOWEVER CAUSED AND REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT
+ * OF THE USE OF OR INABILITY TO USE THIS SOFTWARE, EVEN IF T-MOBILE USA,
+ * INC. HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGES.
+ *
+ * THESE TERMS AND CONDITIONS APPLY SOLELY AND EXCLUSIVELY TO THE USE,
+ * MODIFICATION OR DISTRIBUTION OF THIS SOFTWARE, ITS SOURCE OR BINARY
+ * CODE OR ANY DERIVATIVES THEREOF, AND ARE SEPARATE FROM ANY WRITTEN
+ * WARRANTY THAT MAY BE PROVIDED WITH A DEVICE YOU PURCHASE FROM T-MOBILE
+ * USA, INC., AND TO THE EXTENT PERMITTED BY LAW.
+ */
+
+package javax.microedition.ims.transport.impl;
+
+import javax.microedition.ims.common.Consumer;
+import javax.microedition.ims.common.Logger;
+import javax.microedition.ims.common.Protocol;
+import javax.microedition.ims.transport.MessageContext;
+import javax.microedition.ims.transport.messagerouter.Route;
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectableChannel;
+
+/**
+ * Non-blocking UDP transport served by a {@link SelectorLoop}.
+ */
+class NioUdpChannel<T> extends NioChannel<T> {
+
+    private final DatagramChannel datagramChannel;
+
+    NioUdpChannel(final Route route, final Consumer<T> outerConsumer, final Creator creator,
+                  final MessageContext<T> messageContext, final SelectorLoop loop) throws IOException {
+        //datagrams are never coalesced, every message is a packet of its own
+        super(route, outerConsumer, messageContext, loop, 0);
+
+        this.datagramChannel = DatagramChannel.open();
+        try {
+            datagramChannel.socket().bind(new InetSocketAddress(route.getLocalPort()));
+            datagramChannel.connect(new InetSocketAddress(InetAddress.getByName(route.getDstHost()), route.getDstPort()));
+            datagramChannel.configureBlocking(false);
+        }
+        catch (IOException e) {
+            datagramChannel.close();
+            throw e;
+        }
+
+        Route realRoute = obtainRoute(datagramChannel.socket());
+        this.realRoute.set(realRoute);
+        creator.onCreate(realRoute);
+    }
+
+    SelectableChannel getSelectableChannel() {
+        return datagramChannel;
+    }
+
+    int read(final ByteBuffer target) throws IOException {
+        int packetLength;
+        try {
+            packetLength = datagramChannel.read(target);
+        }
+        catch (PortUnreachableException e) {
+            //ICMP from the previous send, nothing to read
+            packetLength = 0;
+        }
+
+        if (packetLength == target.capacity()) {
+            Logger.log(Logger.Tag.WARNING, "Probably some bytes of last UDP packet was truncated.");
+        }
+        return packetLength;
+    }
+
+    int write(final OutboundRing outbound) throws IOException {
+        return outbound.writeEachTo(datagramChannel);
+    }
+
+    void closeChannel() throws IOException {
+        datagramChannel.disconnect();
+        datagramChannel.close();
+    }
+
+    private Route obtainRoute(DatagramSocket socket) {
+
+        return new DefaultRoute(
+                socket.getInetAddress().getHostAddress(),
+                socket.getPort(),
+                socket.getLocalPort(),
+                Protocol.UDP,
+                getMessageContext().getEntityType()
+        );
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * This software code is (c) 2010 T-Mobile USA, Inc. All Rights Reserved.
+ *
+ * Unauthorized redistribution or further use of this material is
+ * prohibited without the express permission of T-Mobile USA, Inc. and
+ * will be prosecuted to the fullest extent of the law.
+ *
+ * Removal or modification of these Terms and Conditions from the source
+ * or binary code of this software is prohibited.  In the event that
+ * redistribution of the source or binary code for this software is
+ * approved by T-Mobile USA, Inc., these Terms and Conditions and the
+ * above copyright notice must be reproduced in their entirety and in all
+ * circumstances.
+ *
+ * No name or trademarks of T-Mobile USA, Inc., or of its parent company,
+ * Deutsche Telekom AG or any Deutsche Telekom or T-Mobile entity, may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" AND "WITH ALL FAULTS" BASIS
+ * AND WITHOUT WARRANTIES OF ANY KIND.  ALL EXPRESS OR IMPLIED
+ * CONDITIONS, REPRESENTATIONS OR WARRANTIES, INCLUDING ANY IMPLIED
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR
+ * NON-INFRINGEMENT CONCERNING THIS SOFTWARE, ITS SOURCE OR BINARY CODE
+ * OR ANY DERIVATIVES THEREOF ARE HEREBY EXCLUDED.  T-MOBILE USA, INC.
+ * AND ITS LICENSORS SHALL NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY
+ * LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE
+ * OR ITS DERIVATIVES.  IN NO EVENT WILL T-MOBILE USA, INC. OR ITS
+ * LICENSORS BE LIABLE FOR LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT,
+ * INDIRECT, SPECIAL, CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES,
+ * HOWEVER CAUSED AND REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT
+ * OF THE USE OF OR INABILITY TO USE THIS SOFTWARE, EVEN IF T-MOBILE USA,
+ * INC. HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGES.
+ *
+ * THESE TERMS AND CONDITIONS APPLY SOLELY AND EXCLUSIVELY TO THE USE,
+ * MODIFICATION OR DISTRIBUTION OF THIS SOFTWARE, ITS SOURCE OR BINARY
+ * CODE OR ANY DERIVATIVES THEREOF, AND ARE SEPARATE FROM ANY WRITTEN
+ * WARRANTY THAT MAY BE PROVIDED WITH A DEVICE YOU PURCHASE FROM T-MOBILE
+ * USA, INC., AND TO THE EXTENT PERMITTED BY LAW.
+ */
+
+package javax.microedition.ims.transport.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Ring of outgoing buffers of one channel.
+ * <p/>
+ * Stream channels send everything queued in one gathering write, so messages queued within
+ * a short window share a syscall and a TCP segment. Not thread safe, guarded by the owning channel.
+ */
+final class OutboundRing {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private ByteBuffer[] ring;
+    private int head;
+    private int size;
+    private long remainingBytes;
+
+    private long messageCount;
+    private long writeCount;
+
+    OutboundRing() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    OutboundRing(final int initialCapacity) {
+        this.ring = new ByteBuffer[initialCapacity];
+    }
+
+    void add(final ByteBuffer buffer) {
+        if (size == ring.length) {
+            grow();
+        }
+        ring[(head + size) % ring.length] = buffer;
+        size++;
+        remainingBytes += buffer.remaining();
+        messageCount++;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    long getRemainingBytes() {
+        return remainingBytes;
+    }
+
+    /**
+     * Writes as much as the channel takes using gathering writes.
+     *
+     * @return number of write calls made
+     */
+    int writeTo(final GatheringByteChannel channel) throws IOException {
+        int writes = 0;
+
+        while (size > 0) {
+            //buffers wrapped around the end of the ring are written by the next call
+            final int length = Math.min(size, ring.length - head);
+            remainingBytes -= channel.write(ring, head, length);
+            writes++;
+
+            final boolean segmentWritten = !ring[head + length - 1].hasRemaining();
+            releaseWritten();
+            if (!segmentWritten) {
+                //socket buffer is full, the rest waits for OP_WRITE
+                break;
+            }
+        }
+
+        writeCount += writes;
+        return writes;
+    }
+
+    /**
+     * Writes buffers one by one. Used for datagram channels where every buffer is a separate packet.
+     *
+     * @return number of write calls made
+     */
+    int writeEachTo(final WritableByteChannel channel) throws IOException {
+        int writes = 0;
+
+        while (size > 0) {
+            final ByteBuffer buffer = ring[head];
+            remainingBytes -= channel.write(buffer);
+            writes++;
+
+            if (buffer.hasRemaining()) {
+                break;
+            }
+            releaseWritten();
+        }
+
+        writeCount += writes;
+        return writes;
+    }
+
+    void clear() {
+        while (size > 0) {
+            ring[head] = null;
+            head = (head + 1) % ring.length;
+            size--;
+        }
+        head = 0;
+        remainingBytes = 0;
+    }
+
+    long getMessageCount() {
+        return messageCount;
+    }
+
+    long getWriteCount() {
+        return writeCount;
+    }
+
+    /**
+     * @return average number of messages sent per write call
+     */
+    float getCoalescingRatio() {
+        return writeCount == 0 ? 0 : (float) messageCount / writeCount;
+    }
+
+    private void releaseWritten() {
+        while (size > 0 && !ring[head].hasRemaining()) {
+            ring[head] = null;
+            head = (head + 1) % ring.length;
+            size--;
+        }
+        if (size == 0) {
+            head = 0;
+        }
+    }
+
+    private void grow() {
+        final ByteBuffer[] newRing = new ByteBuffer[ring.length * 2];
+        for (int i = 0; i < size; i++) {
+            newRing[i] = ring[(head + i) % ring.length];
+        }
+        ring = newRing;
+        head = 0;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * This software code is (c) 2010 T-Mobile USA, Inc. All Rights Reserved.
+ *
+ * Unauthorized redistribution or further use of this material is
+ * prohibited without the express permission of T-Mobile USA, Inc. and
+ * will be prosecuted to the fullest extent of the law.
+ *
+ * Removal or modification of these Terms and Conditions from the source
+ * or binary code of this software is prohibited.  In the event that
+ * redistribution of the source or binary code for this software is
+ * approved by T-Mobile USA, Inc., these Terms and Conditions and the
+ * above copyright notice must be reproduced in their entirety and in all
+ * circumstances.
+ *
+ * No name or trademarks of T-Mobile USA, Inc., or of its parent company,
+ * Deutsche Telekom AG or any Deutsche Telekom or T-Mobile entity, may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" AND "WITH ALL FAULTS" BASIS
+ * AND WITHOUT WARRANTIES OF ANY KIND.  ALL EXPRESS OR IMPLIED
+ * CONDITIONS, REPRESENTATIONS OR WARRANTIES, INCLUDING ANY IMPLIED
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR
+ * NON-INFRINGEMENT CONCERNING THIS SOFTWARE, ITS SOURCE OR BINARY CODE
+ * OR ANY DERIVATIVES THEREOF ARE HEREBY EXCLUDED.  T-MOBILE USA, INC.
+ * AND ITS LICENSORS SHALL NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY
+ * LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE
+ * OR ITS DERIVATIVES.  IN NO EVENT WILL T-MOBILE USA, INC. OR ITS
+ * LICENSORS BE LIABLE FOR LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT,
+ * INDIRECT, SPECIAL, CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES,
+ * HOWEVER CAUSED AND REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT
+ * OF THE USE OF OR INABILITY TO USE THIS SOFTWARE, EVEN IF T-MOBILE USA,
+ * INC. HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGES.
+ *
+ * THESE TERMS AND CONDITIONS APPLY SOLELY AND EXCLUSIVELY TO THE USE,
+ * MODIFICATION OR DISTRIBUTION OF THIS SOFTWARE, ITS SOURCE OR BINARY
+ * CODE OR ANY DERIVATIVES THEREOF, AND ARE SEPARATE FROM ANY WRITTEN
+ * WARRANTY THAT MAY BE PROVIDED WITH A DEVICE YOU PURCHASE FROM T-MOBILE
+ * USA, INC., AND TO THE EXTENT PERMITTED BY LAW.
+ */
+
+package javax.microedition.ims.transport.impl;
+
+/**
+ * Immutable snapshot of {@link QueueWorker} metrics.
+ */
+public final class QueueStatistics {
+    private final int queueSize;
+    private final int maxQueueSize;
+    private final long dispatchedCount;
+    private final long blockedPushCount;
+    private final long droppedCount;
+    private final long averageWaitMicros;
+    private final long maxWaitMicros;
+
+    QueueStatistics(final int queueSize, final int maxQueueSize, final long dispatchedCount,
+                    final long blockedPushCount, final long droppedCount,
+                    final long averageWaitMicros, final long maxWaitMicros) {
+        this.queueSize = queueSize;
+        this.maxQueueSize = maxQueueSize;
+        this.dispatchedCount = dispatchedCount;
+        this.blockedPushCount = blockedPushCount;
+        this.droppedCount = droppedCount;
+        this.averageWaitMicros = averageWaitMicros;
+        this.maxWaitMicros = maxWaitMicros;
+    }
+
+    /**
+     * @return number of messages waiting in the queue
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+
+    public long getDispatchedCount() {
+        return dispatchedCount;
+    }
+
+    /**
+     * @return how many times push had to wait, or selector channel stopped reading, because the queue was full
+     */
+    public long getBlockedPushCount() {
+        return blockedPushCount;
+    }
+
+    /**
+     * @return how many messages were dropped because selector loop found the queue full
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * @return average time between push and dispatch of a message
+     */
+    public long getAverageWaitMicros() {
+        return averageWaitMicros;
+    }
+
+    public long getMaxWaitMicros() {
+        return maxWaitMicros;
+    }
+
+    public String toString() {
+        return "QueueStatistics{" +
+                "queueSize=" + queueSize +
+                ", maxQueueSize=" + maxQueueSize +
+                ", dispatchedCount=" + dispatchedCount +
+                ", blockedPushCount=" + blockedPushCount +
+                ", droppedCount=" + droppedCount +
+                ", averageWaitMicros=" + averageWaitMicros +
+                ", maxWaitMicros=" + maxWaitMicros +
+                '}';
+    }
+}
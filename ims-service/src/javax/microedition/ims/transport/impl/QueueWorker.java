@@ -43,15 +43,41 @@ package javax.microedition.ims.transport.impl;
 
 
 import javax.microedition.ims.common.*;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Bounded message queue served by a single thread.
+ * <p/>
+ * The thread drains all available messages in batches and hands them to the producer listener
+ * without any pause. When the queue is full {@link #push(Object)} blocks the calling channel
+ * until the queue is drained, so channels stop reading instead of piling up messages.
+ * Selector loop threads serve many channels at once and are never blocked. Their channels use
+ * {@link #offer(Object, Runnable)}, keep the message that didn't fit and stop reading until
+ * the queue has space again.
+ */
 public class QueueWorker<T> implements Consumer<T>, Shutdownable {
 
-    private static final int SLEEP_BETWEEN_MESSAGES = 100;
+    static final int DEFAULT_CAPACITY = 1024;
+    private static final int MAX_BATCH_SIZE = 32;
+    private static final int PUSH_RECHECK_MILLIS = 100;
+
+    private static final class Entry<T> {
+        private final T msg;
+        private final long enqueuedNanos;
+
+        private Entry(final T msg) {
+            this.msg = msg;
+            this.enqueuedNanos = System.nanoTime();
+        }
+    }
 
-    private final BlockingQueue<T> queue = new LinkedBlockingQueue<T>();
+    private final BlockingQueue<Entry<T>> queue;
     private final ProducerListener producer;
     private final T dummyMessage;
     private final CyclicBarrier barrier = new CyclicBarrier(2);
@@ -59,11 +85,25 @@ public class QueueWorker<T> implements Consumer<T>, Shutdownable {
     //private final Future<Object> future;
     private final AtomicBoolean done;
 
+    private final AtomicLong dispatchedCount = new AtomicLong(0);
+    private final AtomicLong blockedPushCount = new AtomicLong(0);
+    private final AtomicLong droppedCount = new AtomicLong(0);
+    private final AtomicLong totalWaitNanos = new AtomicLong(0);
+    private final AtomicLong maxWaitNanos = new AtomicLong(0);
+    private final AtomicInteger maxQueueSize = new AtomicInteger(0);
+    //run once from the queue thread as soon as it takes messages out of the queue
+    private final Queue<Runnable> spaceListeners = new ConcurrentLinkedQueue<Runnable>();
+
     public QueueWorker(final ProducerListener<T> messageProducer, final T dummyMessage) throws QueueException {
+        this(messageProducer, dummyMessage, DEFAULT_CAPACITY);
+    }
+
+    public QueueWorker(final ProducerListener<T> messageProducer, final T dummyMessage, final int capacity) throws QueueException {
         super();
 
         producer = messageProducer;
         this.dummyMessage = dummyMessage;
+        this.queue = new LinkedBlockingQueue<Entry<T>>(capacity);
         done = new AtomicBoolean(false);
 
         executorService = ThreadEnvironmentHolder.getThreadEnvironment().forQueueWorker();
@@ -83,13 +123,19 @@ public class QueueWorker<T> implements Consumer<T>, Shutdownable {
                             e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
                         }
 
+                        final List<Entry<T>> batch = new ArrayList<Entry<T>>(MAX_BATCH_SIZE);
+
                         while (!done.get()) {
                             try {
-                                T msg = queue.take();
-                                if (!done.get()) {
-                                    producer.onPop(msg);
-                                    //give other threads chance To have CPU time
-                                    TimeUnit.MILLISECONDS.sleep(SLEEP_BETWEEN_MESSAGES);
+                                batch.add(queue.take());
+                                queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                                notifySpaceListeners();
+
+                                for (Entry<T> entry : batch) {
+                                    if (done.get()) {
+                                        break;
+                                    }
+                                    dispatch(entry);
                                 }
                             }
                             catch (InterruptedException e) {
@@ -98,9 +144,8 @@ public class QueueWorker<T> implements Consumer<T>, Shutdownable {
                                     Thread.interrupted();
                                 }
                             }
-                            catch (Exception e) {
-                                //if something wrong happens in onPop, we just log it and continue To work
-                                e.printStackTrace();
+                            finally {
+                                batch.clear();
                             }
                         }
                         log("QueueWorker is finalizing execution of it's thread", "shutdown");
@@ -123,15 +168,94 @@ public class QueueWorker<T> implements Consumer<T>, Shutdownable {
         }
     }
 
+    private void dispatch(final Entry<T> entry) {
+        final long waitNanos = System.nanoTime() - entry.enqueuedNanos;
+        totalWaitNanos.addAndGet(waitNanos);
+        long max;
+        while (waitNanos > (max = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(max, waitNanos)) {
+            ;
+        }
+        dispatchedCount.incrementAndGet();
+
+        try {
+            producer.onPop(entry.msg);
+        }
+        catch (Exception e) {
+            //if something wrong happens in onPop, we just log it and continue To work
+            e.printStackTrace();
+        }
+    }
+
+    private void notifySpaceListeners() {
+        Runnable listener;
+        while ((listener = spaceListeners.poll()) != null) {
+            try {
+                listener.run();
+            }
+            catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Puts message to the queue without blocking.
+     *
+     * @param onSpace run once from the queue thread when the queue frees space, if the message didn't fit.
+     *                Must not block.
+     * @return false if the queue is full and the message was not taken
+     */
+    public boolean offer(final T msg, final Runnable onSpace) {
+        if (done.get()) {
+            //transport is shutting down, nobody waits for the message
+            return true;
+        }
+
+        final Entry<T> entry = new Entry<T>(msg);
+        boolean sucess = queue.offer(entry);
+        if (!sucess) {
+            spaceListeners.add(onSpace);
+            //queue could be drained before the listener was added, then nobody would call it
+            sucess = queue.offer(entry);
+            if (!sucess) {
+                blockedPushCount.incrementAndGet();
+                Logger.log(Logger.Tag.WARNING, "QueueWorker is full, channel stops reading. " + getStatistics());
+            }
+        }
+
+        if (sucess) {
+            updateMaxQueueSize();
+        }
+        return sucess;
+    }
+
+    /**
+     * Puts message to the queue. Blocks while the queue is full, unless called from a selector loop thread.
+     */
     public void push(T msg) {
         if (!done.get()) {
 
+            final Entry<T> entry = new Entry<T>(msg);
             boolean sucess = false;
+            boolean blocked = false;
 
-            while (!sucess) {
+            if (SelectorLoop.isAnyLoopThread()) {
+                sucess = queue.offer(entry);
+                if (!sucess) {
+                    droppedCount.incrementAndGet();
+                    Logger.log(Logger.Tag.WARNING, "QueueWorker is full, message is dropped. " + getStatistics());
+                    return;
+                }
+            }
+
+            while (!sucess && !done.get()) {
                 try {
-                    queue.put(msg);
-                    sucess = true;
+                    sucess = queue.offer(entry, PUSH_RECHECK_MILLIS, TimeUnit.MILLISECONDS);
+                    if (!sucess && !blocked) {
+                        blocked = true;
+                        blockedPushCount.incrementAndGet();
+                        Logger.log(Logger.Tag.WARNING, "QueueWorker is full, waiting for free space. " + getStatistics());
+                    }
                 }
                 catch (InterruptedException e) {
                     //clear interruption flag
@@ -140,18 +264,44 @@ public class QueueWorker<T> implements Consumer<T>, Shutdownable {
                     Thread.yield();
                 }
             }
+
+            updateMaxQueueSize();
         }
         else {
             assert false : "Code MUST never be there";
         }
     }
 
+    private void updateMaxQueueSize() {
+        final int size = queue.size();
+        int max;
+        while (size > (max = maxQueueSize.get()) && !maxQueueSize.compareAndSet(max, size)) {
+            ;
+        }
+    }
+
+    /**
+     * @return snapshot of queue depth and wait time metrics
+     */
+    public QueueStatistics getStatistics() {
+        final long dispatched = dispatchedCount.get();
+        return new QueueStatistics(
+                queue.size(),
+                maxQueueSize.get(),
+                dispatched,
+                blockedPushCount.get(),
+                droppedCount.get(),
+                dispatched == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalWaitNanos.get() / dispatched),
+                TimeUnit.NANOSECONDS.toMicros(maxWaitNanos.get())
+        );
+    }
+
     public void shutdown() {
         if (done.compareAndSet(false, true)) {
 
-            queue.offer(dummyMessage);
+            queue.offer(new Entry<T>(dummyMessage));
 
-            Logger.log(getClass(), Logger.Tag.SHUTDOWN, "Shutdowning QueueWorker");
+            Logger.log(getClass(), Logger.Tag.SHUTDOWN, "Shutdowning QueueWorker. " + getStatistics());
             Logger.log(getClass(), Logger.Tag.SHUTDOWN, "Canceling QueueWorker task");
             //future.cancel(true);
 
@@ -160,6 +310,7 @@ public class QueueWorker<T> implements Consumer<T>, Shutdownable {
 
             Logger.log(getClass(), Logger.Tag.SHUTDOWN, "Eptying QueueWorker message queue");
             emptyQueue(queue);
+            spaceListeners.clear();
 
             Logger.log(getClass(), Logger.Tag.SHUTDOWN, "QueueWorker shutdown successfully");
         }
@@ -0,0 +1,328 @@
+/*
+ * This software code is (c) 2010 T-Mobile USA, Inc. All Rights Reserved.
+ *
+ * Unauthorized redistribution or further use of this material is
+ * prohibited without the express permission of T-Mobile USA, Inc. and
+ * will be prosecuted to the fullest extent of the law.
+ *
+ * Removal or modification of these Terms and Conditions from the source
+ * or binary code of this software is prohibited.  In the event that
+ * redistribution of the source or binary code for this software is
+ * approved by T-Mobile USA, Inc., these Terms and Conditions and the
+ * above copyright notice must be reproduced in their entirety and in all
+ * circumstances.
+ *
+ * No name or trademarks of T-Mobile USA, Inc., or of its parent company,
+ * Deutsche Telekom AG or any Deutsche Telekom or T-Mobile entity, may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" AND "WITH ALL FAULTS" BASIS
+ * AND WITHOUT WARRANTIES OF ANY KIND.  ALL EXPRESS OR IMPLIED
+ * CONDITIONS, REPRESENTATIONS OR WARRANTIES, INCLUDING ANY IMPLIED
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR
+ * NON-INFRINGEMENT CONCERNING THIS SOFTWARE, ITS SOURCE OR BINARY CODE
+ * OR ANY DERIVATIVES THEREOF ARE HEREBY EXCLUDED.  T-MOBILE USA, INC.
+ * AND ITS LICENSORS SHALL NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY
+ * LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE
+ * OR ITS DERIVATIVES.  IN NO EVENT WILL T-MOBILE USA, INC. OR ITS
+ * LICENSORS BE LIABLE FOR LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT,
+ * INDIRECT, SPECIAL, CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES,
+ * HOWEVER CAUSED AND REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT
+ * OF THE USE OF OR INABILITY TO USE THIS SOFTWARE, EVEN IF T-MOBILE USA,
+ * INC. HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGES.
+ *
+ * THESE TERMS AND CONDITIONS APPLY SOLELY AND EXCLUSIVELY TO THE USE,
+ * MODIFICATION OR DISTRIBUTION OF THIS SOFTWARE, ITS SOURCE OR BINARY
+ * CODE OR ANY DERIVATIVES THEREOF, AND ARE SEPARATE FROM ANY WRITTEN
+ * WARRANTY THAT MAY BE PROVIDED WITH A DEVICE YOU PURCHASE FROM T-MOBILE
+ * USA, INC., AND TO THE EXTENT PERMITTED BY LAW.
+ */
+
+package javax.microedition.ims.transport.impl;
+
+import javax.microedition.ims.common.Logger;
+import javax.microedition.ims.common.Shutdownable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Event loop serving many non-blocking channels from a single thread.
+ * <p/>
+ * Registration and interest changes are queued and applied by the loop thread itself,
+ * so callers never contend for the selector lock.
+ */
+final class SelectorLoop implements Runnable, Shutdownable {
+    private static final String TAG = "SelectorLoop";
+
+    interface Handler {
+
+        void onRegistered(SelectionKey key);
+
+        void onReadable() throws IOException;
+
+        void onWritable() throws IOException;
+
+        void onFailure(IOException e);
+    }
+
+    private final Selector selector;
+    private final ByteBuffer readBuffer;
+    private final Executor callbackExecutor;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    //accessed from the loop thread only
+    private final PriorityQueue<ScheduledTask> scheduledTasks = new PriorityQueue<ScheduledTask>();
+    private final AtomicLong queuedMessageCount = new AtomicLong(0);
+    private final AtomicLong writeCount = new AtomicLong(0);
+    private final AtomicBoolean done = new AtomicBoolean(false);
+    private volatile Thread loopThread;
+    //marks threads of all loops, they serve many channels and must never block
+    private static final ThreadLocal<Boolean> ANY_LOOP_THREAD = new ThreadLocal<Boolean>();
+
+    SelectorLoop(final int readBufferSize, final Executor callbackExecutor) throws IOException {
+        this.selector = Selector.open();
+        this.readBuffer = ByteBuffer.allocate(readBufferSize);
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * Registers channel for reading. handler.onRegistered() is called from the loop thread.
+     */
+    void register(final SelectableChannel channel, final Handler handler) {
+        execute(
+                new Runnable() {
+                    public void run() {
+                        try {
+                            handler.onRegistered(channel.register(selector, SelectionKey.OP_READ, handler));
+                        }
+                        catch (ClosedChannelException e) {
+                            handler.onFailure(e);
+                        }
+                    }
+                }
+        );
+    }
+
+    /**
+     * Enables or disables OP_WRITE interest for the key.
+     */
+    void setWriteInterest(final SelectionKey key, final boolean enabled) {
+        setInterest(key, SelectionKey.OP_WRITE, enabled);
+    }
+
+    /**
+     * Enables or disables OP_READ interest for the key, e.g. while received messages can't be consumed.
+     */
+    void setReadInterest(final SelectionKey key, final boolean enabled) {
+        setInterest(key, SelectionKey.OP_READ, enabled);
+    }
+
+    private void setInterest(final SelectionKey key, final int op, final boolean enabled) {
+        if (isLoopThread()) {
+            doSetInterest(key, op, enabled);
+        }
+        else {
+            execute(
+                    new Runnable() {
+                        public void run() {
+                            doSetInterest(key, op, enabled);
+                        }
+                    }
+            );
+        }
+    }
+
+    //interest set is changed by the loop thread only, so read-modify-write doesn't race
+    private static void doSetInterest(final SelectionKey key, final int op, final boolean enabled) {
+        if (key.isValid()) {
+            key.interestOps(enabled ? key.interestOps() | op : key.interestOps() & ~op);
+        }
+    }
+
+    void execute(final Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Runs task in the loop thread after the delay.
+     */
+    void schedule(final Runnable task, final long delayMillis) {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        execute(
+                new Runnable() {
+                    public void run() {
+                        scheduledTasks.add(new ScheduledTask(deadline, task));
+                    }
+                }
+        );
+    }
+
+    /**
+     * Runs task outside of the loop thread. Used for listener notifications which can block.
+     */
+    void executeCallback(final Runnable task) {
+        callbackExecutor.execute(task);
+    }
+
+    boolean isLoopThread() {
+        return Thread.currentThread() == loopThread;
+    }
+
+    /**
+     * @return true if current thread runs some selector loop
+     */
+    static boolean isAnyLoopThread() {
+        return ANY_LOOP_THREAD.get() != null;
+    }
+
+    /**
+     * @return buffer shared by all channels of this loop. Must be used from the loop thread only.
+     */
+    ByteBuffer getReadBuffer() {
+        return readBuffer;
+    }
+
+    void recordQueued() {
+        queuedMessageCount.incrementAndGet();
+    }
+
+    void recordWrites(final int writes) {
+        writeCount.addAndGet(writes);
+    }
+
+    long getQueuedMessageCount() {
+        return queuedMessageCount.get();
+    }
+
+    long getWriteCount() {
+        return writeCount.get();
+    }
+
+    public void run() {
+        loopThread = Thread.currentThread();
+        ANY_LOOP_THREAD.set(Boolean.TRUE);
+
+        while (!done.get()) {
+            try {
+                selector.select(getSelectTimeout());
+                runTasks();
+                runScheduledTasks();
+                processSelectedKeys();
+            }
+            catch (ClosedSelectorException e) {
+                break;
+            }
+            catch (IOException e) {
+                Logger.log(TAG, "run#select failed, e = " + e);
+            }
+        }
+
+        try {
+            selector.close();
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+        //pooled thread may run other tasks later
+        ANY_LOOP_THREAD.remove();
+        Logger.log(getClass(), Logger.Tag.SHUTDOWN, "SelectorLoop stopped");
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            }
+            catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private long getSelectTimeout() {
+        final ScheduledTask next = scheduledTasks.peek();
+        //zero means no timeout
+        return next == null ? 0 : Math.max(1, TimeUnit.NANOSECONDS.toMillis(next.deadline - System.nanoTime()));
+    }
+
+    private void runScheduledTasks() {
+        final long now = System.nanoTime();
+
+        ScheduledTask next;
+        while ((next = scheduledTasks.peek()) != null && next.deadline - now <= 0) {
+            scheduledTasks.poll();
+            try {
+                next.task.run();
+            }
+            catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void processSelectedKeys() {
+        final Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+        while (iterator.hasNext()) {
+            final SelectionKey key = iterator.next();
+            iterator.remove();
+
+            final Handler handler = (Handler) key.attachment();
+            try {
+                if (key.isValid() && key.isWritable()) {
+                    handler.onWritable();
+                }
+                if (key.isValid() && key.isReadable()) {
+                    handler.onReadable();
+                }
+            }
+            catch (CancelledKeyException e) {
+                //channel was closed by another thread
+            }
+            catch (IOException e) {
+                key.cancel();
+                handler.onFailure(e);
+            }
+            catch (RuntimeException e) {
+                key.cancel();
+                handler.onFailure(new IOException(e.toString()));
+            }
+        }
+    }
+
+    public void shutdown() {
+        if (done.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    private static final class ScheduledTask implements Comparable<ScheduledTask> {
+        private final long deadline;
+        private final Runnable task;
+
+        private ScheduledTask(final long deadline, final Runnable task) {
+            this.deadline = deadline;
+            this.task = task;
+        }
+
+        public int compareTo(final ScheduledTask other) {
+            final long diff = deadline - other.deadline;
+            return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * This software code is (c) 2010 T-Mobile USA, Inc. All Rights Reserved.
+ *
+ * Unauthorized redistribution or further use of this material is
+ * prohibited without the express permission of T-Mobile USA, Inc. and
+ * will be prosecuted to the fullest extent of the law.
+ *
+ * Removal or modification of these Terms and Conditions from the source
+ * or binary code of this software is prohibited.  In the event that
+ * redistribution of the source or binary code for this software is
+ * approved by T-Mobile USA, Inc., these Terms and Conditions and the
+ * above copyright notice must be reproduced in their entirety and in all
+ * circumstances.
+ *
+ * No name or trademarks of T-Mobile USA, Inc., or of its parent company,
+ * Deutsche Telekom AG or any Deutsche Telekom or T-Mobile entity, may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" AND "WITH ALL FAULTS" BASIS
+ * AND WITHOUT WARRANTIES OF ANY KIND.  ALL EXPRESS OR IMPLIED
+ * CONDITIONS, REPRESENTATIONS OR WARRANTIES, INCLUDING ANY IMPLIED
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR
+ * NON-INFRINGEMENT CONCERNING THIS SOFTWARE, ITS SOURCE OR BINARY CODE
+ * OR ANY DERIVATIVES THEREOF ARE HEREBY EXCLUDED.  T-MOBILE USA, INC.
+ * AND ITS LICENSORS SHALL NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY
+ * LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE
+ * OR ITS DERIVATIVES.  IN NO EVENT WILL T-MOBILE USA, INC. OR ITS
+ * LICENSORS BE LIABLE FOR LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT,
+ * INDIRECT, SPECIAL, CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES,
+ * HOWEVER CAUSED AND REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT
+ * OF THE USE OF OR INABILITY TO USE THIS SOFTWARE, EVEN IF T-MOBILE USA,
+ * INC. HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGES.
+ *
+ * THESE TERMS AND CONDITIONS APPLY SOLELY AND EXCLUSIVELY TO THE USE,
+ * MODIFICATION OR DISTRIBUTION OF THIS SOFTWARE, ITS SOURCE OR BINARY
+ * CODE OR ANY DERIVATIVES THEREOF, AND ARE SEPARATE FROM ANY WRITTEN
+ * WARRANTY THAT MAY BE PROVIDED WITH A DEVICE YOU PURCHASE FROM T-MOBILE
+ * USA, INC., AND TO THE EXTENT PERMITTED BY LAW.
+ */
+
+package javax.microedition.ims.transport.impl;
+
+import javax.microedition.ims.common.Logger;
+import javax.microedition.ims.common.NamedDaemonThreadFactory;
+import javax.microedition.ims.common.Shutdownable;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed pool of {@link SelectorLoop}s shared by all NIO channels of a transport.
+ * Channels are spread over the loops round-robin.
+ */
+final class SelectorLoopGroup implements Shutdownable {
+    static final int DEFAULT_LOOP_COUNT = 2;
+    static final long DEFAULT_WRITE_COALESCING_MILLIS = 2;
+
+    private final SelectorLoop[] loops;
+    private final AtomicInteger nextLoop = new AtomicInteger(0);
+    private final ExecutorService loopExecutor;
+    private final ExecutorService callbackExecutor;
+    private final long writeCoalescingMillis;
+
+    SelectorLoopGroup() throws IOException {
+        this(DEFAULT_LOOP_COUNT, DEFAULT_WRITE_COALESCING_MILLIS);
+    }
+
+    /**
+     * @param writeCoalescingMillis latency cap for outgoing stream messages waiting to share one write
+     */
+    SelectorLoopGroup(final int loopCount, final long writeCoalescingMillis) throws IOException {
+        if (loopCount < 1) {
+            throw new IllegalArgumentException("loopCount must be positive, now it is " + loopCount);
+        }
+
+        this.writeCoalescingMillis = writeCoalescingMillis;
+
+        this.loopExecutor = Executors.newFixedThreadPool(loopCount, new NamedDaemonThreadFactory("Selector Loop"));
+        this.callbackExecutor = Executors.newSingleThreadExecutor(new NamedDaemonThreadFactory("Selector Callback"));
+        this.loops = new SelectorLoop[loopCount];
+
+        for (int i = 0; i < loopCount; i++) {
+            loops[i] = new SelectorLoop(Channel.BUFFER_SIZE, callbackExecutor);
+            loopExecutor.execute(loops[i]);
+        }
+    }
+
+    SelectorLoop next() {
+        return loops[(nextLoop.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+    }
+
+    long getWriteCoalescingMillis() {
+        return writeCoalescingMillis;
+    }
+
+    /**
+     * @return average number of outgoing messages per write call over all channels
+     */
+    float getCoalescingRatio() {
+        final long writes = getWriteCount();
+        return writes == 0 ? 0 : (float) getQueuedMessageCount() / writes;
+    }
+
+    long getQueuedMessageCount() {
+        long retValue = 0;
+        for (SelectorLoop loop : loops) {
+            retValue += loop.getQueuedMessageCount();
+        }
+        return retValue;
+    }
+
+    long getWriteCount() {
+        long retValue = 0;
+        for (SelectorLoop loop : loops) {
+            retValue += loop.getWriteCount();
+        }
+        return retValue;
+    }
+
+    public void shutdown() {
+        Logger.log(getClass(), Logger.Tag.SHUTDOWN, "Shutdowning SelectorLoopGroup. Coalescing ratio = " + getCoalescingRatio());
+
+        for (SelectorLoop loop : loops) {
+            loop.shutdown();
+        }
+        loopExecutor.shutdown();
+        callbackExecutor.shutdown();
+
+        Logger.log(getClass(), Logger.Tag.SHUTDOWN, "SelectorLoopGroup shutdown successfully");
+    }
+}
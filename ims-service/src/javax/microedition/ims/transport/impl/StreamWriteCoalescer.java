@@ -0,0 +1,104 @@
+/*
+ * This software code is (c) 2010 T-Mobile USA, Inc. All Rights Reserved.
+ *
+ * Unauthorized redistribution or further use of this material is
+ * prohibited without the express permission of T-Mobile USA, Inc. and
+ * will be prosecuted to the fullest extent of the law.
+ *
+ * Removal or modification of these Terms and Conditions from the source
+ * or binary code of this software is prohibited.  In the event that
+ * redistribution of the source or binary code for this software is
+ * approved by T-Mobile USA, Inc., these Terms and Conditions and the
+ * above copyright notice must be reproduced in their entirety and in all
+ * circumstances.
+ *
+ * No name or trademarks of T-Mobile USA, Inc., or of its parent company,
+ * Deutsche Telekom AG or any Deutsche Telekom or T-Mobile entity, may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" AND "WITH ALL FAULTS" BASIS
+ * AND WITHOUT WARRANTIES OF ANY KIND.  ALL EXPRESS OR IMPLIED
+ * CONDITIONS, REPRESENTATIONS OR WARRANTIES, INCLUDING ANY IMPLIED
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR
+ * NON-INFRINGEMENT CONCERNING THIS SOFTWARE, ITS SOURCE OR BINARY CODE
+ * OR ANY DERIVATIVES THEREOF ARE HEREBY EXCLUDED.  T-MOBILE USA, INC.
+ * AND ITS LICENSORS SHALL NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY
+ * LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE
+ * OR ITS DERIVATIVES.  IN NO EVENT WILL T-MOBILE USA, INC. OR ITS
+ * LICENSORS BE LIABLE FOR LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT,
+ * INDIRECT, SPECIAL, CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES,
+ * HOWEVER CAUSED AND REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT
+ * OF THE USE OF OR INABILITY TO USE THIS SOFTWARE, EVEN IF T-MOBILE USA,
+ * INC. HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGES.
+ *
+ * THESE TERMS AND CONDITIONS APPLY SOLELY AND EXCLUSIVELY TO THE USE,
+ * MODIFICATION OR DISTRIBUTION OF THIS SOFTWARE, ITS SOURCE OR BINARY
+ * CODE OR ANY DERIVATIVES THEREOF, AND ARE SEPARATE FROM ANY WRITTEN
+ * WARRANTY THAT MAY BE PROVIDED WITH A DEVICE YOU PURCHASE FROM T-MOBILE
+ * USA, INC., AND TO THE EXTENT PERMITTED BY LAW.
+ */
+
+package javax.microedition.ims.transport.impl;
+
+import javax.microedition.ims.common.Logger;
+import javax.microedition.ims.common.NamedDaemonThreadFactory;
+import javax.microedition.ims.common.Shutdownable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write coalescing for stream channels on blocking sockets (TCP and TLS {@link TcpChannel}).
+ * <p/>
+ * Channel buffers outgoing messages and asks for a delayed flush, so messages sent within
+ * the coalescing window leave in one write. One timer thread serves all channels of a transport.
+ */
+final class StreamWriteCoalescer implements Shutdownable {
+    private final long coalescingMillis;
+    private final ScheduledExecutorService flushTimer;
+    private final AtomicLong messageCount = new AtomicLong(0);
+    private final AtomicLong writeCount = new AtomicLong(0);
+
+    /**
+     * @param coalescingMillis latency cap for outgoing messages waiting to share one write.
+     *                         Zero means every message is written immediately.
+     */
+    StreamWriteCoalescer(final long coalescingMillis) {
+        this.coalescingMillis = coalescingMillis;
+        this.flushTimer = coalescingMillis > 0 ?
+                Executors.newSingleThreadScheduledExecutor(new NamedDaemonThreadFactory("Write Coalescing")) :
+                null;
+    }
+
+    boolean isEnabled() {
+        return flushTimer != null;
+    }
+
+    void scheduleFlush(final Runnable flush) {
+        flushTimer.schedule(flush, coalescingMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void recordWrite(final int messages) {
+        messageCount.addAndGet(messages);
+        writeCount.incrementAndGet();
+    }
+
+    long getMessageCount() {
+        return messageCount.get();
+    }
+
+    long getWriteCount() {
+        return writeCount.get();
+    }
+
+    public void shutdown() {
+        final long writes = writeCount.get();
+        Logger.log(getClass(), Logger.Tag.SHUTDOWN, "Shutdowning StreamWriteCoalescer. Coalescing ratio = " +
+                (writes == 0 ? 0 : (float) messageCount.get() / writes));
+        if (flushTimer != null) {
+            flushTimer.shutdown();
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * This software code is (c) 2010 T-Mobile USA, Inc. All Rights Reserved.
+ *
+ * Unauthorized redistribution or further use of this material is
+ * prohibited without the express permission of T-Mobile USA, Inc. and
+ * will be prosecuted to the fullest extent of the law.
+ *
+ * Removal or modification of these Terms and Conditions from the source
+ * or binary code of this software is prohibited.  In the event that
+ * redistribution of the source or binary code for this software is
+ * approved by T-Mobile USA, Inc., these Terms and Conditions and the
+ * above copyright notice must be reproduced in their entirety and in all
+ * circumstances.
+ *
+ * No name or trademarks of T-Mobile USA, Inc., or of its parent company,
+ * Deutsche Telekom AG or any Deutsche Telekom or T-Mobile entity, may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" AND "WITH ALL FAULTS" BASIS
+ * AND WITHOUT WARRANTIES OF ANY KIND.  ALL EXPRESS OR IMPLIED
+ * CONDITIONS, REPRESENTATIONS OR WARRANTIES, INCLUDING ANY IMPLIED
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR
+ * NON-INFRINGEMENT CONCERNING THIS SOFTWARE, ITS SOURCE OR BINARY CODE
+ * OR ANY DERIVATIVES THEREOF ARE HEREBY EXCLUDED.  T-MOBILE USA, INC.
+ * AND ITS LICENSORS SHALL NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY
+ * LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE
+ * OR ITS DERIVATIVES.  IN NO EVENT WILL T-MOBILE USA, INC. OR ITS
+ * LICENSORS BE LIABLE FOR LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT,
+ * INDIRECT, SPECIAL, CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES,
+ * HOWEVER CAUSED AND REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT
+ * OF THE USE OF OR INABILITY TO USE THIS SOFTWARE, EVEN IF T-MOBILE USA,
+ * INC. HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGES.
+ *
+ * THESE TERMS AND CONDITIONS APPLY SOLELY AND EXCLUSIVELY TO THE USE,
+ * MODIFICATION OR DISTRIBUTION OF THIS SOFTWARE, ITS SOURCE OR BINARY
+ * CODE OR ANY DERIVATIVES THEREOF, AND ARE SEPARATE FROM ANY WRITTEN
+ * WARRANTY THAT MAY BE PROVIDED WITH A DEVICE YOU PURCHASE FROM T-MOBILE
+ * USA, INC., AND TO THE EXTENT PERMITTED BY LAW.
+ */
+
+package javax.microedition.ims.transport.impl;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Minimal STUN (RFC 5389) coding used for RFC 5626 keep-alives of UDP flows.
+ * Binding requests are built, of server messages only Binding success responses are parsed.
+ */
+final class StunKeepAlive {
+    private static final int HEADER_LENGTH = 20;
+    private static final int BINDING_REQUEST = 0x0001;
+    private static final int BINDING_SUCCESS_RESPONSE = 0x0101;
+    private static final int MAGIC_COOKIE = 0x2112A442;
+    private static final int TRANSACTION_ID_OFFSET = 8;
+    private static final int TRANSACTION_ID_LENGTH = 12;
+
+    private static final int MAPPED_ADDRESS = 0x0001;
+    private static final int XOR_MAPPED_ADDRESS = 0x0020;
+    private static final int FAMILY_IPV4 = 0x01;
+    private static final int FAMILY_IPV6 = 0x02;
+
+    private static final Random random = new Random();
+
+    /**
+     * Binding success response: transaction it answers and server reflexive address of the flow.
+     */
+    static final class BindingResponse {
+        private final byte[] transactionId;
+        //host:port, null if response carries no mapped address
+        private final String mappedAddress;
+
+        private BindingResponse(final byte[] transactionId, final String mappedAddress) {
+            this.transactionId = transactionId;
+            this.mappedAddress = mappedAddress;
+        }
+
+        /**
+         * @return true if this is response to the request
+         */
+        boolean answers(final byte[] request) {
+            return request.length >= HEADER_LENGTH && Arrays.equals(transactionId,
+                    Arrays.copyOfRange(request, TRANSACTION_ID_OFFSET, TRANSACTION_ID_OFFSET + TRANSACTION_ID_LENGTH));
+        }
+
+        String getMappedAddress() {
+            return mappedAddress;
+        }
+
+        public String toString() {
+            return "BindingResponse{mappedAddress=" + mappedAddress + '}';
+        }
+    }
+
+    private StunKeepAlive() {
+    }
+
+    /**
+     * @return Binding request without attributes and with random transaction id
+     */
+    static byte[] createBindingRequest() {
+        final byte[] retValue = new byte[HEADER_LENGTH];
+
+        retValue[0] = (byte) (BINDING_REQUEST >> 8);
+        retValue[1] = (byte) BINDING_REQUEST;
+        //message length stays 0
+        putInt(retValue, 4, MAGIC_COOKIE);
+
+        final byte[] transactionId = new byte[TRANSACTION_ID_LENGTH];
+        synchronized (random) {
+            random.nextBytes(transactionId);
+        }
+        System.arraycopy(transactionId, 0, retValue, TRANSACTION_ID_OFFSET, TRANSACTION_ID_LENGTH);
+
+        return retValue;
+    }
+
+    /**
+     * SIP messages start with a letter, STUN ones with two zero bits followed by magic cookie at offset 4.
+     */
+    static boolean isStunMessage(final byte[] data, final int offset, final int length) {
+        if (length < HEADER_LENGTH || (data[offset] & 0xC0) != 0) {
+            return false;
+        }
+
+        final int messageLength = ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+        return messageLength == length - HEADER_LENGTH && getInt(data, offset + 4) == MAGIC_COOKIE;
+    }
+
+    /**
+     * @return parsed response or null if message is not Binding success response
+     */
+    static BindingResponse parseBindingResponse(final byte[] data, final int offset, final int length) {
+        if (!isStunMessage(data, offset, length) || getShort(data, offset) != BINDING_SUCCESS_RESPONSE) {
+            return null;
+        }
+
+        final int transactionStart = offset + TRANSACTION_ID_OFFSET;
+        final byte[] transactionId = Arrays.copyOfRange(data, transactionStart, transactionStart + TRANSACTION_ID_LENGTH);
+
+        String mappedAddress = null;
+        int attribute = offset + HEADER_LENGTH;
+        final int end = offset + length;
+        while (attribute + 4 <= end) {
+            final int type = getShort(data, attribute);
+            final int valueLength = getShort(data, attribute + 2);
+            final int value = attribute + 4;
+            if (value + valueLength > end) {
+                break;
+            }
+
+            if (type == XOR_MAPPED_ADDRESS) {
+                //XOR-MAPPED-ADDRESS is preferred, old servers send MAPPED-ADDRESS only
+                mappedAddress = parseAddress(data, value, valueLength, transactionStart, true);
+                break;
+            }
+            if (type == MAPPED_ADDRESS) {
+                mappedAddress = parseAddress(data, value, valueLength, transactionStart, false);
+            }
+            //values are padded to 4 bytes
+            attribute = value + ((valueLength + 3) & ~3);
+        }
+
+        return new BindingResponse(transactionId, mappedAddress);
+    }
+
+    /**
+     * @return host:port or null if the address family is unknown
+     */
+    private static String parseAddress(final byte[] data, final int value, final int valueLength,
+                                       final int transactionStart, final boolean xor) {
+        final int family = data[value + 1] & 0xFF;
+        final int addressLength = family == FAMILY_IPV4 ? 4 : family == FAMILY_IPV6 ? 16 : 0;
+        if (addressLength == 0 || valueLength < 4 + addressLength) {
+            return null;
+        }
+
+        int port = getShort(data, value + 2);
+        final byte[] address = Arrays.copyOfRange(data, value + 4, value + 4 + addressLength);
+        if (xor) {
+            port ^= MAGIC_COOKIE >>> 16;
+            //IPv4 address is XORed with magic cookie, IPv6 one with magic cookie and transaction id
+            for (int i = 0; i < addressLength; i++) {
+                final int mask = i < 4 ? MAGIC_COOKIE >>> (24 - 8 * i) : data[transactionStart + i - 4];
+                address[i] ^= (byte) mask;
+            }
+        }
+
+        try {
+            return InetAddress.getByAddress(address).getHostAddress() + ":" + port;
+        }
+        catch (UnknownHostException e) {
+            //address length is checked above
+            return null;
+        }
+    }
+
+    private static int getShort(final byte[] data, final int offset) {
+        return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
+
+    private static void putInt(final byte[] target, final int offset, final int value) {
+        target[offset] = (byte) (value >>> 24);
+        target[offset + 1] = (byte) (value >>> 16);
+        target[offset + 2] = (byte) (value >>> 8);
+        target[offset + 3] = (byte) value;
+    }
+
+    private static int getInt(final byte[] data, final int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16) |
+                ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+}
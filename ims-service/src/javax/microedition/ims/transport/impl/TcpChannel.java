@@ -59,9 +59,11 @@ import java.util.concurrent.atomic.AtomicReference;
  * 
  * @author ext-akhomush
  */
-class TcpChannel<T extends IMSMessage> extends Channel<T> {
+class TcpChannel<T extends IMSMessage> extends BlockingChannel<T> {
     private final static String TAG = "TcpChannel"; 
     private final static int WAIT_TRANSPORT_CHANGE_TIMEOUT = 5000;
+    //more than that is sent without waiting for the coalescing window to end
+    private static final int MAX_COALESCED_BYTES = 1024 * 16;
 
     private final AtomicBoolean changeTransportInProgressMutex = new AtomicBoolean(false);
 
@@ -74,21 +76,60 @@ class TcpChannel<T extends IMSMessage> extends Channel<T> {
     private final SocketFactory socketFactory;
 
     private final AtomicReference<T> lastOutMessageChache = new AtomicReference<T>();
+    //keep-alive is written from timer thread, it must not split a message
+    private final Object writeLock = new Object();
+    //null if every message is flushed at once
+    private final StreamWriteCoalescer coalescer;
+    //guarded by writeLock
+    private int pendingBytes;
+    private int pendingMessages;
+    private boolean flushScheduled;
+    //failure of delayed flush. Read task stops the channel with it, so listeners reset the route
+    private final AtomicReference<IOException> flushFailure = new AtomicReference<IOException>();
+
+    private final Runnable scheduledFlush = new Runnable() {
+        public void run() {
+            synchronized (writeLock) {
+                flushScheduled = false;
+                final SocketIO io = socketIO.get();
+                try {
+                    if (io != null) {
+                        flushPending(io);
+                    }
+                }
+                catch (IOException e) {
+                    Logger.log(TAG, "scheduledFlush#flush failed, e = " + e);
+                    flushFailure.set(e);
+                }
+            }
+        }
+    };
     
     TcpChannel(final Route route, final Consumer<T> outerConsumer, final Creator creator,
             final MessageContext<T> messageContext, final SocketFactory socketFactory)
             throws IOException {
-        this(route, null, outerConsumer, creator, messageContext, socketFactory);
+        this(route, outerConsumer, creator, messageContext, socketFactory, null);
+    }
+
+    /**
+     * @param coalescer write coalescing shared by channels of the transport, null to flush every message at once
+     */
+    TcpChannel(final Route route, final Consumer<T> outerConsumer, final Creator creator,
+            final MessageContext<T> messageContext, final SocketFactory socketFactory,
+            final StreamWriteCoalescer coalescer)
+            throws IOException {
+        this(route, null, outerConsumer, creator, messageContext, socketFactory, coalescer);
     }
 
     TcpChannel(final Socket socket, final Consumer<T> outerConsumer, final Creator creator,
             final MessageContext<T> messageContext) throws IOException {
-        this(null, socket, outerConsumer, creator, messageContext, null);
+        this(null, socket, outerConsumer, creator, messageContext, null, null);
     }
 
     private TcpChannel(final Route initialRoute, final Socket socket,
             final Consumer<T> outerConsumer, final Creator creator,
-            final MessageContext<T> messageContext, final SocketFactory socketFactory)
+            final MessageContext<T> messageContext, final SocketFactory socketFactory,
+            final StreamWriteCoalescer coalescer)
             throws IOException {
 
         super(initialRoute == null ? obtainRoute(socket, messageContext.getEntityType())
@@ -96,6 +137,7 @@ class TcpChannel<T extends IMSMessage> extends Channel<T> {
 
         this.creator = creator;
         this.socketFactory = socketFactory;
+        this.coalescer = coalescer != null && coalescer.isEnabled() ? coalescer : null;
 
         if (socket == null) {
             if (initialRoute == null) {
@@ -137,6 +179,12 @@ class TcpChannel<T extends IMSMessage> extends Channel<T> {
             Socket tcpSocket = createSocket(route/*getInitialRoute()*/, socketFactory);
             final SocketIO newSocketIO = new SocketIO(tcpSocket);
             final SocketIO previousSocketIO = this.socketIO.getAndSet(newSocketIO);
+            synchronized (writeLock) {
+                //bytes buffered for previous socket are gone with it, so is its flush failure
+                pendingBytes = 0;
+                pendingMessages = 0;
+                flushFailure.set(null);
+            }
             
             Route realRoute = obtainRoute(tcpSocket, getMessageContext().getEntityType());
             
@@ -216,7 +264,12 @@ class TcpChannel<T extends IMSMessage> extends Channel<T> {
         return tcpSocket;
     }
 
-    boolean onReadMessage(MessageReader messageReader) throws IOException {
+    boolean onReadMessage(MessageReader<T> messageReader) throws IOException {
+        final IOException failure = flushFailure.get();
+        if (failure != null) {
+            throw failure;
+        }
+
         boolean isAlive = !isDone.get();
         if (!isDone.get()) {
             try {
@@ -252,7 +305,7 @@ class TcpChannel<T extends IMSMessage> extends Channel<T> {
         return isAlive;
     }
 
-    private boolean doReadMessage(MessageReader messageReader) throws IOException {
+    private boolean doReadMessage(MessageReader<T> messageReader) throws IOException {
         boolean isAlive = !isDone.get();
         
         int readCount = 0;
@@ -260,11 +313,8 @@ class TcpChannel<T extends IMSMessage> extends Channel<T> {
 
         try {
             while (!isDone.get() && (readCount = socketIO.get().getByteIn().read(buf)) > 0) {
-                byte[] readData = new byte[readCount];
-                checkChannelType(buf);
-                System.arraycopy(buf, 0, readData, 0, readCount);
-                // log(new String(readData), "TcpChannel");
-                messageReader.feedPart(readData);
+                // log(new String(buf, 0, readCount), "TcpChannel");
+                deliverTraffic(messageReader, buf, 0, readCount);
                 readCount = 0;
                 Thread.yield();
             }
@@ -301,13 +351,28 @@ class TcpChannel<T extends IMSMessage> extends Channel<T> {
                 throw new IOException("Unknown IO exception");
             }
 
+            final IOException failure = flushFailure.get();
+            if (failure != null) {
+                throw failure;
+            }
+
             // TODO temp fix
             lastOutMessageChache.set(msg);
 
-            final byte[] content = getMessageContext().getMessageContentProvider().getByteContent(
-                    msg);
-            socketIO.getByteOut().write(content);
-            socketIO.getByteOut().flush();
+            final byte[] content = getWireContent(msg);
+            synchronized (writeLock) {
+                socketIO.getByteOut().write(content);
+                pendingBytes += content.length;
+                pendingMessages++;
+
+                if (coalescer == null || pendingBytes >= MAX_COALESCED_BYTES) {
+                    flushPending(socketIO);
+                }
+                else if (!flushScheduled) {
+                    flushScheduled = true;
+                    coalescer.scheduleFlush(scheduledFlush);
+                }
+            }
 
             if (!socketIO.isReady() || socketIO.getOut().checkError()) {
                 throw new IOException("Unknown IO exception");
@@ -316,13 +381,53 @@ class TcpChannel<T extends IMSMessage> extends Channel<T> {
 
     }
 
+    void onPushKeepAlive(final byte[] ping) throws IOException {
+        //connection being changed is fresh anyway, keep-alive doesn't wait for it
+        if (!isDone.get() && !changeTransportInProgressMutex.get()) {
+            SocketIO socketIO = this.socketIO.get();
+
+            if (socketIO.isReady()) {
+                synchronized (writeLock) {
+                    socketIO.getByteOut().write(ping);
+                    flushPending(socketIO);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends everything buffered so far in one write.
+     */
+    private void flushPending(final SocketIO socketIO) throws IOException {
+        assert Thread.holdsLock(writeLock) : "Method run without proper synchronization";
+
+        socketIO.getByteOut().flush();
+        if (coalescer != null && pendingMessages > 0) {
+            coalescer.recordWrite(pendingMessages);
+        }
+        pendingBytes = 0;
+        pendingMessages = 0;
+    }
+
     void onShutdown() {
         if (isDone.compareAndSet(false, true)) {
-            socketIO.get().shutdown();
+            final SocketIO io = socketIO.get();
+            //messages waiting for coalescing window are sent before socket is closed
+            synchronized (writeLock) {
+                if (pendingBytes > 0 && flushFailure.get() == null) {
+                    try {
+                        flushPending(io);
+                    }
+                    catch (IOException e) {
+                        Logger.log(TAG, "onShutdown#flush failed, e = " + e);
+                    }
+                }
+            }
+            io.shutdown();
         }
     }
 
-    private static Route obtainRoute(Socket socket, IMSEntityType entityType) {
+    static Route obtainRoute(Socket socket, IMSEntityType entityType) {
         return new DefaultRoute(socket.getInetAddress().getHostAddress(), socket.getPort(),
                 socket.getLocalPort(), Protocol.TCP, entityType);
     }
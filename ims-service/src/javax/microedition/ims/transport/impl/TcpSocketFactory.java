@@ -44,11 +44,13 @@ package javax.microedition.ims.transport.impl;
 import java.io.IOException;
 import java.net.Socket;
 
+import javax.microedition.ims.common.PreConnectedSockets;
 import javax.microedition.ims.transport.messagerouter.Route;
 
 public class TcpSocketFactory implements SocketFactory {
     public Socket createSocket(Route route) throws IOException {
         //new Exception().printStackTrace();
-        return new Socket(route.getDstHost(), route.getDstPort());
+        final Socket raced = PreConnectedSockets.getInstance().take(route.getDstHost(), route.getDstPort());
+        return raced != null ? raced : new Socket(route.getDstHost(), route.getDstPort());
     }
 }
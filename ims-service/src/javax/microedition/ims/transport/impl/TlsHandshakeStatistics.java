@@ -0,0 +1,105 @@
+/*
+ * This software code is (c) 2010 T-Mobile USA, Inc. All Rights Reserved.
+ *
+ * Unauthorized redistribution or further use of this material is
+ * prohibited without the express permission of T-Mobile USA, Inc. and
+ * will be prosecuted to the fullest extent of the law.
+ *
+ * Removal or modification of these Terms and Conditions from the source
+ * or binary code of this software is prohibited.  In the event that
+ * redistribution of the source or binary code for this software is
+ * approved by T-Mobile USA, Inc., these Terms and Conditions and the
+ * above copyright notice must be reproduced in their entirety and in all
+ * circumstances.
+ *
+ * No name or trademarks of T-Mobile USA, Inc., or of its parent company,
+ * Deutsche Telekom AG or any Deutsche Telekom or T-Mobile entity, may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" AND "WITH ALL FAULTS" BASIS
+ * AND WITHOUT WARRANTIES OF ANY KIND.  ALL EXPRESS OR IMPLIED
+ * CONDITIONS, REPRESENTATIONS OR WARRANTIES, INCLUDING ANY IMPLIED
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR
+ * NON-INFRINGEMENT CONCERNING THIS SOFTWARE, ITS SOURCE OR BINARY CODE
+ * OR ANY DERIVATIVES THEREOF ARE HEREBY EXCLUDED.  T-MOBILE USA, INC.
+ * AND ITS LICENSORS SHALL NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY
+ * LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE
+ * OR ITS DERIVATIVES.  IN NO EVENT WILL T-MOBILE USA, INC. OR ITS
+ * LICENSORS BE LIABLE FOR LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT,
+ * INDIRECT, SPECIAL, CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES,
+ * HOWEVER CAUSED AND REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT
+ * OF THE USE OF OR INABILITY TO USE THIS SOFTWARE, EVEN IF T-MOBILE USA,
+ * INC. HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGES.
+ *
+ * THESE TERMS AND CONDITIONS APPLY SOLELY AND EXCLUSIVELY TO THE USE,
+ * MODIFICATION OR DISTRIBUTION OF THIS SOFTWARE, ITS SOURCE OR BINARY
+ * CODE OR ANY DERIVATIVES THEREOF, AND ARE SEPARATE FROM ANY WRITTEN
+ * WARRANTY THAT MAY BE PROVIDED WITH A DEVICE YOU PURCHASE FROM T-MOBILE
+ * USA, INC., AND TO THE EXTENT PERMITTED BY LAW.
+ */
+
+package javax.microedition.ims.transport.impl;
+
+/**
+ * Immutable snapshot of TLS handshake metrics of transport.
+ */
+public final class TlsHandshakeStatistics {
+    private final int fullCount;
+    private final int resumedCount;
+    private final int failedCount;
+    private final long averageFullMillis;
+    private final long averageResumedMillis;
+    private final long lastMillis;
+
+    TlsHandshakeStatistics(final int fullCount, final int resumedCount, final int failedCount,
+                           final long averageFullMillis, final long averageResumedMillis, final long lastMillis) {
+        this.fullCount = fullCount;
+        this.resumedCount = resumedCount;
+        this.failedCount = failedCount;
+        this.averageFullMillis = averageFullMillis;
+        this.averageResumedMillis = averageResumedMillis;
+        this.lastMillis = lastMillis;
+    }
+
+    public int getFullCount() {
+        return fullCount;
+    }
+
+    /**
+     * @return number of abbreviated handshakes which resumed cached session
+     */
+    public int getResumedCount() {
+        return resumedCount;
+    }
+
+    public int getFailedCount() {
+        return failedCount;
+    }
+
+    public long getAverageFullMillis() {
+        return averageFullMillis;
+    }
+
+    public long getAverageResumedMillis() {
+        return averageResumedMillis;
+    }
+
+    /**
+     * @return time the last successful handshake took, including TCP connect
+     */
+    public long getLastMillis() {
+        return lastMillis;
+    }
+
+    public String toString() {
+        return "TlsHandshakeStatistics{" +
+                "fullCount=" + fullCount +
+                ", resumedCount=" + resumedCount +
+                ", failedCount=" + failedCount +
+                ", averageFullMillis=" + averageFullMillis +
+                ", averageResumedMillis=" + averageResumedMillis +
+                ", lastMillis=" + lastMillis +
+                '}';
+    }
+}
@@ -42,6 +42,7 @@
 package javax.microedition.ims.transport.impl;
 
 import javax.microedition.ims.common.Logger;
+import javax.microedition.ims.common.PreConnectedSockets;
 import javax.microedition.ims.transport.messagerouter.Route;
 import javax.net.ssl.*;
 import java.io.IOException;
@@ -53,50 +54,162 @@ import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.Collection;
 
+/**
+ * Creates TLS sockets sharing one SSL context, so reconnects to the same destination resume
+ * the cached session with abbreviated handshake.
+ * <p/>
+ * One instance is meant to be shared by all channels of transport.
+ */
 public class TlsSocketFactory implements SocketFactory {
     private static final String TAG = "TlsSocketFactory";
+
+    public static final int DEFAULT_SESSION_LIFETIME = 12 * 60 * 60;
+
     private final ConnectionSecurityInfoProvider securityInfoProvider;
+    private final int sessionLifetime;
+
+    //guarded by this
+    private SSLContext sslContext;
+
+    //guarded by itself
+    private final HandshakeRecord handshakeRecord = new HandshakeRecord();
+
+    private static class HandshakeRecord {
+        private int fullCount;
+        private int resumedCount;
+        private int failedCount;
+        private long fullMillis;
+        private long resumedMillis;
+        private long lastMillis;
+
+        TlsHandshakeStatistics snapshot() {
+            return new TlsHandshakeStatistics(
+                    fullCount,
+                    resumedCount,
+                    failedCount,
+                    fullCount == 0 ? 0 : fullMillis / fullCount,
+                    resumedCount == 0 ? 0 : resumedMillis / resumedCount,
+                    lastMillis
+            );
+        }
+    }
 
     public TlsSocketFactory(final ConnectionSecurityInfoProvider securityInfoProvider) {
+        this(securityInfoProvider, DEFAULT_SESSION_LIFETIME);
+    }
+
+    /**
+     * @param sessionLifetime seconds TLS session may be resumed for, 0 disables resumption
+     */
+    public TlsSocketFactory(final ConnectionSecurityInfoProvider securityInfoProvider, final int sessionLifetime) {
         if (securityInfoProvider == null) {
             throw new NullPointerException("ConnectionSecurityInfoProvider is " + securityInfoProvider);
         }
+        if (sessionLifetime < 0) {
+            throw new IllegalArgumentException("sessionLifetime must be non-negative " + sessionLifetime);
+        }
         this.securityInfoProvider = securityInfoProvider;
+        this.sessionLifetime = sessionLifetime;
     }
 
     public Socket createSocket(Route route) throws IOException {
-        final Socket retValue;
+        return connect(route.getDstHost(), route.getDstPort());
+    }
+
+    private SSLSocket connect(final String host, final int port) throws IOException {
+        final SSLSocketFactory sslSocketFactory = obtainContext().getSocketFactory();
+        final long started = System.currentTimeMillis();
 
-        SSLSocket tcpSocket;
+        Socket plainSocket = null;
+        SSLSocket tcpSocket = null;
+        boolean connected = false;
         try {
-            SSLContext sslContext = SSLContext.getInstance("TLS");
-            TrustManager[] trustManagers = new TrustManager[]{new TestTrustManager()};
+            //connection of DNS connection race is reused if it is still waiting
+            plainSocket = PreConnectedSockets.getInstance().take(host, port);
+            if (plainSocket == null) {
+                plainSocket = new Socket();
+                plainSocket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+            }
+            Logger.log(TAG, "Socket connected");
+
+            //layering over connected socket lets the session cache know peer host and port
+            tcpSocket = (SSLSocket) sslSocketFactory.createSocket(plainSocket, host, port, true);
+            tcpSocket.startHandshake();
+
+            final SSLSession session = tcpSocket.getSession();
+            final boolean resumed = session.getCreationTime() < started;
+            if (sessionLifetime == 0) {
+                session.invalidate();
+            }
+            onHandshake(host + ":" + port, resumed, System.currentTimeMillis() - started);
+            connected = true;
+        } finally {
+            if (!connected) {
+                synchronized (handshakeRecord) {
+                    handshakeRecord.failedCount++;
+                }
+                //TLS socket closes the layered one, before it exists plain socket is closed on its own
+                if (tcpSocket != null) {
+                    closeQuietly(tcpSocket);
+                }
+                else if (plainSocket != null) {
+                    closeQuietly(plainSocket);
+                }
+            }
+        }
 
-            sslContext.init(null, trustManagers, null);
-            Logger.log(TAG, "Context inited");
+        return tcpSocket;
+    }
 
-            tcpSocket = (SSLSocket) sslContext.getSocketFactory().createSocket();
-            Logger.log(TAG, "Socket created");
+    private synchronized SSLContext obtainContext() throws SSLException {
+        if (sslContext == null) {
+            try {
+                SSLContext context = SSLContext.getInstance("TLS");
+                TrustManager[] trustManagers = new TrustManager[]{new TestTrustManager()};
 
-            tcpSocket.connect(new InetSocketAddress(route.getDstHost(), route.getDstPort()), CONNECT_TIMEOUT);
-            Logger.log(TAG, "Socket connected");
+                context.init(null, trustManagers, null);
+                context.getClientSessionContext().setSessionTimeout(sessionLifetime);
+                Logger.log(TAG, "Context inited");
 
-            tcpSocket.startHandshake();
-            Logger.log(TAG, "Socket handshaked");
-        } catch (NoSuchAlgorithmException e) {
-            Logger.log(TAG, "createSocket#" + e.getMessage());
-            throw new SSLException(e.getMessage());
-        } catch (KeyManagementException e) {
-            Logger.log(TAG, "createSocket#" + e.getMessage());
-            throw new SSLException(e.getMessage());
-        }/*catch (IOException e){
-            Logger.log(TAG, "createSocket#" + e.getMessage());
-            throw new SSLException(e.getMessage());
-        }*/
-
-        retValue = tcpSocket;
-
-        return retValue;
+                sslContext = context;
+            } catch (NoSuchAlgorithmException e) {
+                Logger.log(TAG, "createSocket#" + e.getMessage());
+                throw new SSLException(e.getMessage());
+            } catch (KeyManagementException e) {
+                Logger.log(TAG, "createSocket#" + e.getMessage());
+                throw new SSLException(e.getMessage());
+            }
+        }
+        return sslContext;
+    }
+
+    private void onHandshake(final String destination, final boolean resumed, final long millis) {
+        synchronized (handshakeRecord) {
+            if (resumed) {
+                handshakeRecord.resumedCount++;
+                handshakeRecord.resumedMillis += millis;
+            }
+            else {
+                handshakeRecord.fullCount++;
+                handshakeRecord.fullMillis += millis;
+            }
+            handshakeRecord.lastMillis = millis;
+        }
+        Logger.log(TAG, (resumed ? "Resumed" : "Full") + " handshake with " + destination + " in " + millis + " ms");
+    }
+
+    private static void closeQuietly(final Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            Logger.log(TAG, "Can't close socket " + e);
+        }
+    }
+
+    public TlsHandshakeStatistics getHandshakeStatistics() {
+        synchronized (handshakeRecord) {
+            return handshakeRecord.snapshot();
+        }
     }
 
     class TestTrustManager implements X509TrustManager {
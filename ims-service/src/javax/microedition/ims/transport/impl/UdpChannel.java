@@ -49,116 +49,137 @@ import javax.microedition.ims.transport.MessageContext;
 import javax.microedition.ims.transport.MessageReader;
 import javax.microedition.ims.transport.messagerouter.Route;
 import java.io.IOException;
-import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
-import java.net.SocketTimeoutException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 
 
 /**
  * This class is responsible for udp transport.
+ * <p/>
+ * Datagrams are sent and received through pooled direct buffers, so neither direction allocates
+ * per message once the channel is running.
  *
  * @author ext-akhomush
  */
-class UdpChannel<T> extends Channel<T> {
+class UdpChannel<T> extends BlockingChannel<T> {
+    private static final int INITIAL_RECEIVE_SIZE = 4096;
 
-    private InetAddress dstAddress;
-    private final DatagramSocket socket;
+    private final DatagramChannel datagramChannel;
+    //only read task uses it, grows up to the largest datagram received
+    private byte[] receiveArray = new byte[INITIAL_RECEIVE_SIZE];
 
     public UdpChannel(final Route route, final Consumer<T> outerConsumer, final Creator creator, final MessageContext<T> messageContext) throws IOException {
         super(route, outerConsumer, messageContext);
-        this.socket = new DatagramSocket(route.getLocalPort());
-        socket.setSoTimeout(SO_TIMEOUT);
-        this.dstAddress = InetAddress.getByName(route.getDstHost());
-        socket.connect(dstAddress, route.getDstPort());
-        Route realRoute = obtainRoute(socket);
+        this.datagramChannel = DatagramChannel.open();
+        try {
+            datagramChannel.socket().bind(new InetSocketAddress(route.getLocalPort()));
+            //read blocks until datagram arrives, shutdown closes the channel to release it
+            datagramChannel.connect(new InetSocketAddress(InetAddress.getByName(route.getDstHost()), route.getDstPort()));
+        }
+        catch (IOException e) {
+            datagramChannel.close();
+            throw e;
+        }
+
+        Route realRoute = obtainRoute(datagramChannel.socket());
         this.realRoute.set(realRoute);
         creator.onCreate(realRoute);
     }
 
-    boolean onReadMessage(MessageReader messageReader) throws IOException {
-        byte[] buf = new byte[BUFFER_SIZE];
-        DatagramPacket packet = new DatagramPacket(buf, buf.length);
-
+    boolean onReadMessage(MessageReader<T> messageReader) throws IOException {
+        final ByteBuffer buffer = DirectBufferPool.DATAGRAM_POOL.acquire();
         try {
-            socket.receive(packet);
-            int packetLength = packet.getLength();
+            int packetLength;
+            try {
+                packetLength = datagramChannel.read(buffer);
+            }
+            catch (PortUnreachableException e) {
+                //ICMP for one of sent datagrams, nothing to read
+                packetLength = 0;
+            }
 
             if (packetLength > 0) {
-
-                if(packetLength == BUFFER_SIZE){
-                    Logger.log(Logger.Tag.WARNING, "Probably some bytes of last UDP packet was truncated.");
+                if (receiveArray.length < packetLength) {
+                    receiveArray = new byte[Math.max(packetLength, receiveArray.length * 2)];
                 }
+                buffer.flip();
+                buffer.get(receiveArray, 0, packetLength);
 
-                byte[] readData = new byte[packetLength];
-                System.arraycopy(packet.getData(), packet.getOffset(), readData, 0, packetLength);
-                checkChannelType(readData);
-                //log("Server says: '" + new String(readData) + "'", "read message");
-                messageReader.feedPart(readData);
+                //log("Server says: '" + new String(receiveArray, 0, packetLength) + "'", "read message");
+                deliverTraffic(messageReader, receiveArray, 0, packetLength);
             }
-            /* String input = new String(packet.getElement(), 0, packet.getLength());
-            final String[] message = input.split(SIP_TERMINATOR);
-
-            for (String header : message) {
-                log("Server says: '" + header + "'", "read message");
-                messageReader.feedText(header);
-            }
-            messageReader.feedText(SIP_TERMINATOR);*/
-
         }
-        catch (SocketTimeoutException e) {
-            //just go out to main cycle in Channel to see if something happend
-            // and if all is ok try go in onReadMessage() again
+        finally {
+            DirectBufferPool.DATAGRAM_POOL.release(buffer);
         }
 
         return true;
     }
 
-    
-    void onPushMessage(T msg) throws IOException {
-        /* Build message. */
-        byte[] buf = getMessageContext().getMessageContentProvider().getByteContent(msg);
-        //log(new String(buf),"Udpchannel#real sent content");
-        /* Create UDP-packet with data & destination(url+port) */
-        //DatagramPacket packet = new DatagramPacket(buf, buf.length, dstAddress, route.getDstPort());
-        DatagramPacket packet = new DatagramPacket(buf, buf.length, dstAddress, socket.getPort());      
-
-        /* UDP sends seem to occasionally fail at the socket level because of error code 1.
-           This causes the following type of output to logcat:
-
-               E/OSNetworkSystem( 2357): unclassified errno 1 (Operation not permitted)
 
-           According to man page this error is not exprected for this func, but according to some web 
-           sources it seem to be related to that we send packets too quickly. That's why we wait a while
-           and attempt a new transmission after a while. Unfortunately the Java won't expose the
-           actual error code, so we need to investigate the message string instead. 
-         */
+    void onPushMessage(T msg) throws IOException {
+        final ByteBuffer buffer = DirectBufferPool.DATAGRAM_POOL.acquire();
+        try {
+            writeWireContent(msg, buffer);
+            buffer.flip();
+            //log(new String(buf),"Udpchannel#real sent content");
 
-        int delayTime = 20;
+            datagramChannel.write(buffer);
+        }
+        catch (BufferOverflowException e) {
+            Logger.log(Logger.Tag.WARNING, "Message doesn't fit into UDP datagram and is dropped: " + msg);
+        }
+        catch (IOException e) {
+            if (!isTransientSendFailure(e)) {
+                throw e;
+            }
+            //datagram is lost as if it was dropped by network, transaction layer retransmits it
+            Logger.log(Logger.Tag.WARNING, "UDP send failed, datagram is dropped: " + e);
+        }
+        finally {
+            DirectBufferPool.DATAGRAM_POOL.release(buffer);
+        }
+    }
 
-        while (delayTime < 100) {
-            try {
-                socket.send(packet);
-                break;
-            } catch (IOException e) {
-                if (e.getMessage().equals("Operation failed")) {
-                    try {
-                        Thread.sleep(delayTime);
-                    } catch (InterruptedException ie) {
-                        // Ignore this one, we hopefully slept for some time at least
-                    }
-                    delayTime *= 2;
-                } else {
-                    throw e;
-                }
+    void onPushKeepAlive(final byte[] ping) throws IOException {
+        try {
+            datagramChannel.write(ByteBuffer.wrap(ping));
+        }
+        catch (IOException e) {
+            if (!isTransientSendFailure(e)) {
+                throw e;
             }
+            Logger.log(Logger.Tag.WARNING, "UDP keep-alive send failed: " + e);
         }
     }
 
-    
+    /**
+     * UDP sends occasionally fail at the socket level with errno 1 (Operation not permitted) when packets
+     * are sent too quickly, ICMP port unreachable of previous datagram is reported by next send too.
+     * Neither means the channel is broken. Java doesn't expose error code, so message is inspected.
+     */
+    private static boolean isTransientSendFailure(final IOException e) {
+        final String message = e.getMessage();
+        return e instanceof PortUnreachableException ||
+                message != null && (message.contains("Operation failed") ||
+                        message.contains("Operation not permitted") ||
+                        message.contains("EPERM"));
+    }
+
+
     void onShutdown() {
-        socket.disconnect();
-        socket.close();
+        //disconnect would wait for blocked read, close releases it
+        try {
+            datagramChannel.close();
+        }
+        catch (IOException e) {
+            Logger.log(Logger.Tag.WARNING, "Error closing UDP channel: " + e);
+        }
     }
 
     private Route obtainRoute(DatagramSocket socket) {
@@ -46,14 +46,21 @@ public class Utils {
      * Finds the first occurrence of the pattern in the text.
      */
     public static int indexOf(byte[] data, byte[] pattern, int startIndex) {
+        return indexOf(data, pattern, startIndex, data.length);
+    }
+
+    /**
+     * Finds the first occurrence of the pattern in the text before endIndex.
+     */
+    public static int indexOf(byte[] data, byte[] pattern, int startIndex, int endIndex) {
         int[] failure = computeFailure(pattern);
 
         int j = 0;
-        if (data.length == 0) {
+        if (endIndex == 0) {
             return -1;
         }
 
-        for (int i = startIndex; i < data.length; i++) {
+        for (int i = startIndex; i < endIndex; i++) {
             while (j > 0 && pattern[j] != data[i]) {
                 j = failure[j - 1];
             }
@@ -72,7 +79,7 @@ public class Utils {
      * Computes the failure function using a boot-strapping process,
      * where the pattern is matched against itself.
      */
-    private static int[] computeFailure(byte[] pattern) {
+    public static int[] computeFailure(byte[] pattern) {
         int[] failure = new int[pattern.length];
 
         int j = 0;
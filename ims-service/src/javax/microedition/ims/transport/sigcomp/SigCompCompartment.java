@@ -0,0 +1,284 @@
+/*
+ * This software code is (c) 2010 T-Mobile USA, Inc. All Rights Reserved.
+ *
+ * Unauthorized redistribution or further use of this material is
+ * prohibited without the express permission of T-Mobile USA, Inc. and
+ * will be prosecuted to the fullest extent of the law.
+ *
+ * Removal or modification of these Terms and Conditions from the source
+ * or binary code of this software is prohibited.  In the event that
+ * redistribution of the source or binary code for this software is
+ * approved by T-Mobile USA, Inc., these Terms and Conditions and the
+ * above copyright notice must be reproduced in their entirety and in all
+ * circumstances.
+ *
+ * No name or trademarks of T-Mobile USA, Inc., or of its parent company,
+ * Deutsche Telekom AG or any Deutsche Telekom or T-Mobile entity, may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" AND "WITH ALL FAULTS" BASIS
+ * AND WITHOUT WARRANTIES OF ANY KIND.  ALL EXPRESS OR IMPLIED
+ * CONDITIONS, REPRESENTATIONS OR WARRANTIES, INCLUDING ANY IMPLIED
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR
+ * NON-INFRINGEMENT CONCERNING THIS SOFTWARE, ITS SOURCE OR BINARY CODE
+ * OR ANY DERIVATIVES THEREOF ARE HEREBY EXCLUDED.  T-MOBILE USA, INC.
+ * AND ITS LICENSORS SHALL NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY
+ * LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE
+ * OR ITS DERIVATIVES.  IN NO EVENT WILL T-MOBILE USA, INC. OR ITS
+ * LICENSORS BE LIABLE FOR LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT,
+ * INDIRECT, SPECIAL, CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES,
+ * HOWEVER CAUSED AND REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT
+ * OF THE USE OF OR INABILITY TO USE THIS SOFTWARE, EVEN IF T-MOBILE USA,
+ * INC. HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGES.
+ *
+ * THESE TERMS AND CONDITIONS APPLY SOLELY AND EXCLUSIVELY TO THE USE,
+ * MODIFICATION OR DISTRIBUTION OF THIS SOFTWARE, ITS SOURCE OR BINARY
+ * CODE OR ANY DERIVATIVES THEREOF, AND ARE SEPARATE FROM ANY WRITTEN
+ * WARRANTY THAT MAY BE PROVIDED WITH A DEVICE YOU PURCHASE FROM T-MOBILE
+ * USA, INC., AND TO THE EXTENT PERMITTED BY LAW.
+ */
+
+package javax.microedition.ims.transport.sigcomp;
+
+import javax.microedition.ims.common.Logger;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * SigComp compartment of one remote endpoint: decompression of received messages, states saved on
+ * their behalf and compression of messages sent back.
+ * <p/>
+ * RFC 3320 6.2: states requested by decompressed message are saved, and the rest of its results applied,
+ * only once {@link MessageSink} accepted the message as valid.
+ */
+public final class SigCompCompartment {
+
+    /**
+     * Receives decompressed messages.
+     */
+    public interface MessageSink {
+        /**
+         * @return true if message is valid, so states it requested may be saved
+         */
+        boolean onMessage(byte[] message) throws IOException;
+    }
+
+    public static final int DECOMPRESSION_MEMORY_SIZE = 8 * 1024;
+    public static final int CYCLES_PER_BIT = 16;
+    private static final int MAX_STREAM_MESSAGE_SIZE = 64 * 1024;
+
+    private final SigCompStateStore stateStore;
+    private final boolean stream;
+    private final Udvm udvm;
+    private final SigCompCompressor compressor;
+
+    //partial identifiers of states peer has saved
+    private List<byte[]> peerStateIds = Collections.emptyList();
+    //states saved on behalf of the peer, as last announced to it
+    private List<byte[]> announcedStateIds = Collections.emptyList();
+    private byte[] requestedFeedback;
+
+    //record marking of stream based transport
+    private byte[] streamBuffer = new byte[1024];
+    private int streamFill;
+    private boolean escaped;
+    private int verbatimLeft;
+    private boolean discarding;
+
+    /**
+     * @param stream true for stream based transport, where messages are delimited by 0xFFFF
+     */
+    public SigCompCompartment(final SigCompStateStore stateStore, final boolean stream) {
+        this.stateStore = stateStore;
+        this.stream = stream;
+        this.udvm = new Udvm(stateStore);
+        this.compressor = new SigCompCompressor(stateStore.getStateMemorySize());
+    }
+
+    /**
+     * @return true if data starts with SigComp message, rather than plain text
+     */
+    public static boolean isSigCompMessage(final byte[] data, final int offset, final int length) {
+        return length > 0 && (data[offset] & 0xF8) == 0xF8;
+    }
+
+    /**
+     * Decompresses message received over message based transport and passes it to the sink.
+     *
+     * @return true if sink accepted the message
+     */
+    public boolean decompress(final byte[] message, final int offset, final int length, final MessageSink sink)
+            throws IOException {
+
+        final Udvm.Result result = doDecompress(message, offset, length);
+        //sink isn't called under the lock, it may take long
+        final boolean accepted = sink.onMessage(result.output);
+        if (accepted) {
+            applyResult(result);
+        }
+        else {
+            Logger.log(Logger.Tag.WARNING, "Decompressed message is not valid, its state requests are dropped");
+        }
+        return accepted;
+    }
+
+    private synchronized Udvm.Result doDecompress(final byte[] message, final int offset, final int length)
+            throws SigCompException {
+
+        final int memorySize = stream ? DECOMPRESSION_MEMORY_SIZE / 2 : DECOMPRESSION_MEMORY_SIZE - length;
+        if (memorySize <= 0) {
+            throw new SigCompException("Message exceeds decompression memory");
+        }
+
+        return udvm.decompress(message, offset, length, memorySize, CYCLES_PER_BIT);
+    }
+
+    /**
+     * Feeds part of stream based transport, messages it completes are passed to the sink.
+     * Messages which failed to decompress are skipped. Called by reading thread only.
+     */
+    public void feedStream(final byte[] part, final int offset, final int length, final MessageSink sink)
+            throws IOException {
+
+        final int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            final int b = part[i] & 0xFF;
+
+            if (verbatimLeft > 0) {
+                verbatimLeft--;
+                appendStream(b);
+            }
+            else if (escaped) {
+                escaped = false;
+                if (b == 0xFF) {
+                    final boolean complete = !discarding;
+                    final int fill = streamFill;
+                    streamFill = 0;
+                    discarding = false;
+                    if (complete) {
+                        decompressStreamMessage(fill, sink);
+                    }
+                }
+                else if (b < 0x80) {
+                    appendStream(0xFF);
+                    verbatimLeft = b;
+                }
+                else {
+                    Logger.log(Logger.Tag.WARNING, "Reserved SigComp record marking 0xFF " + b + ", message is skipped");
+                    discarding = true;
+                }
+            }
+            else if (b == 0xFF) {
+                escaped = true;
+            }
+            else {
+                appendStream(b);
+            }
+        }
+    }
+
+    private void decompressStreamMessage(final int fill, final MessageSink sink) throws IOException {
+        final byte[] message = streamBuffer;
+        if (streamBuffer.length > MAX_STREAM_MESSAGE_SIZE / 4) {
+            streamBuffer = new byte[1024];
+        }
+
+        try {
+            decompress(message, 0, fill, sink);
+        }
+        catch (SigCompException e) {
+            Logger.log(Logger.Tag.WARNING, "SigComp message is discarded: " + e.getMessage());
+        }
+    }
+
+    private void appendStream(final int b) {
+        if (discarding) {
+            return;
+        }
+        if (streamFill == MAX_STREAM_MESSAGE_SIZE) {
+            Logger.log(Logger.Tag.WARNING, "SigComp message exceeds " + MAX_STREAM_MESSAGE_SIZE + " bytes, skipped");
+            discarding = true;
+            return;
+        }
+        if (streamFill == streamBuffer.length) {
+            streamBuffer = Arrays.copyOf(streamBuffer, streamBuffer.length * 2);
+        }
+        streamBuffer[streamFill++] = (byte) b;
+    }
+
+    /**
+     * Compresses message. For stream based transport result is escaped and delimited.
+     * Saved states are announced to the peer in returned parameters whenever they change.
+     */
+    public synchronized byte[] compress(final byte[] message) {
+        final List<byte[]> savedStateIds = stateStore.getStateIds(this);
+        final boolean announce = !sameIds(savedStateIds, announcedStateIds);
+
+        final byte[] compressed = compressor.compress(message, peerStateIds, requestedFeedback,
+                announce ? savedStateIds : null);
+        requestedFeedback = null;
+        if (announce) {
+            announcedStateIds = savedStateIds;
+        }
+        return stream ? encodeStream(compressed) : compressed;
+    }
+
+    private static byte[] encodeStream(final byte[] message) {
+        int escapes = 0;
+        for (byte b : message) {
+            if (b == (byte) 0xFF) {
+                escapes++;
+            }
+        }
+
+        final byte[] encoded = new byte[message.length + escapes + 2];
+        int p = 0;
+        for (byte b : message) {
+            encoded[p++] = b;
+            if (b == (byte) 0xFF) {
+                //0xFF followed by zero verbatim bytes
+                encoded[p++] = 0;
+            }
+        }
+        encoded[p++] = (byte) 0xFF;
+        encoded[p] = (byte) 0xFF;
+        return encoded;
+    }
+
+    /**
+     * Releases states saved for the compartment.
+     */
+    public void close() {
+        stateStore.release(this);
+    }
+
+    private synchronized void applyResult(final Udvm.Result result) {
+        for (SigCompState state : result.createdStates) {
+            stateStore.save(this, state);
+        }
+        for (byte[] partialId : result.freedStates) {
+            stateStore.free(this, partialId);
+        }
+        if (result.requestedFeedback != null) {
+            requestedFeedback = result.requestedFeedback;
+        }
+        if (result.returnedParameters) {
+            peerStateIds = result.peerStateIds;
+        }
+    }
+
+    private static boolean sameIds(final List<byte[]> ids, final List<byte[]> otherIds) {
+        if (ids.size() != otherIds.size()) {
+            return false;
+        }
+        for (int i = 0; i < ids.size(); i++) {
+            if (!Arrays.equals(ids.get(i), otherIds.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
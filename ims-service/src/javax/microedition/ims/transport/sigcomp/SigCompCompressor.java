@@ -0,0 +1,538 @@
+/*
+ * This software code is (c) 2010 T-Mobile USA, Inc. All Rights Reserved.
+ *
+ * Unauthorized redistribution or further use of this material is
+ * prohibited without the express permission of T-Mobile USA, Inc. and
+ * will be prosecuted to the fullest extent of the law.
+ *
+ * Removal or modification of these Terms and Conditions from the source
+ * or binary code of this software is prohibited.  In the event that
+ * redistribution of the source or binary code for this software is
+ * approved by T-Mobile USA, Inc., these Terms and Conditions and the
+ * above copyright notice must be reproduced in their entirety and in all
+ * circumstances.
+ *
+ * No name or trademarks of T-Mobile USA, Inc., or of its parent company,
+ * Deutsche Telekom AG or any Deutsche Telekom or T-Mobile entity, may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" AND "WITH ALL FAULTS" BASIS
+ * AND WITHOUT WARRANTIES OF ANY KIND.  ALL EXPRESS OR IMPLIED
+ * CONDITIONS, REPRESENTATIONS OR WARRANTIES, INCLUDING ANY IMPLIED
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR
+ * NON-INFRINGEMENT CONCERNING THIS SOFTWARE, ITS SOURCE OR BINARY CODE
+ * OR ANY DERIVATIVES THEREOF ARE HEREBY EXCLUDED.  T-MOBILE USA, INC.
+ * AND ITS LICENSORS SHALL NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY
+ * LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE
+ * OR ITS DERIVATIVES.  IN NO EVENT WILL T-MOBILE USA, INC. OR ITS
+ * LICENSORS BE LIABLE FOR LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT,
+ * INDIRECT, SPECIAL, CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES,
+ * HOWEVER CAUSED AND REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT
+ * OF THE USE OF OR INABILITY TO USE THIS SOFTWARE, EVEN IF T-MOBILE USA,
+ * INC. HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGES.
+ *
+ * THESE TERMS AND CONDITIONS APPLY SOLELY AND EXCLUSIVELY TO THE USE,
+ * MODIFICATION OR DISTRIBUTION OF THIS SOFTWARE, ITS SOURCE OR BINARY
+ * CODE OR ANY DERIVATIVES THEREOF, AND ARE SEPARATE FROM ANY WRITTEN
+ * WARRANTY THAT MAY BE PROVIDED WITH A DEVICE YOU PURCHASE FROM T-MOBILE
+ * USA, INC., AND TO THE EXTENT PERMITTED BY LAW.
+ */
+
+package javax.microedition.ims.transport.sigcomp;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LZ77 compressor producing messages for the UDVM decompressor uploaded along with the first message.
+ * <p/>
+ * Decompressor keeps 2K circular buffer of decompressed text and asks peer to save it together with
+ * the bytecode as a state. Once peer announces the state, next messages reference it instead of
+ * uploading bytecode and find their matches in the previous messages as well.
+ * <p/>
+ * Message starts with length byte of returned parameters announcing states saved on behalf of the peer,
+ * followed by the parameters themselves if the length is not zero. The rest is bit stream of tokens:
+ * 0 and 8-bit literal or 1, 11-bit distance - 1 and 5-bit length - 3.
+ */
+final class SigCompCompressor {
+    static final int CODE_ADDRESS = 128;
+    private static final int FLAG_ADDRESS = 72;
+    private static final int LITERAL_ADDRESS = 74;
+    private static final int DISTANCE_ADDRESS = 76;
+    private static final int LENGTH_ADDRESS = 78;
+    private static final int START_ADDRESS = 80;
+    private static final int PARAMETERS_LENGTH_ADDRESS = 82;
+    private static final int PARAMETERS_LOCATION_ADDRESS = 84;
+    private static final int PARAMETERS_ADDRESS = 86;
+    private static final int POSITION_ADDRESS = 318;
+    private static final int RING_START = 320;
+    private static final int RING_SIZE = 2048;
+    private static final int RING_END = RING_START + RING_SIZE;
+
+    static final int STATE_LENGTH = RING_END - CODE_ADDRESS;
+    private static final int MIN_ACCESS_LENGTH = 6;
+    private static final int MAX_SENT_STATES = 4;
+    //parameters, version, partial identifiers and terminating zero must fit below the code
+    private static final int MAX_ANNOUNCED_STATES = (CODE_ADDRESS - PARAMETERS_ADDRESS - 3) / (MIN_ACCESS_LENGTH + 1);
+
+    private static final int DISTANCE_BITS = 11;
+    private static final int LENGTH_BITS = 5;
+    private static final int MIN_MATCH = 3;
+    private static final int MAX_MATCH = MIN_MATCH + (1 << LENGTH_BITS) - 1;
+    private static final int MAX_CHAIN = 64;
+    private static final int HASH_BITS = 12;
+
+    static final byte[] BYTECODE = assembleDecompressor();
+
+    //cycles_per_bit, decompression_memory_size and state_memory_size as returned parameters encode them
+    private final int encodedParameters;
+
+    //states our messages asked peer to create, newest first
+    private final LinkedList<SigCompState> sentStates = new LinkedList<SigCompState>();
+
+    private int[] head = new int[1 << HASH_BITS];
+    private int[] prev = new int[0];
+    private byte[] window;
+    private int windowStart;
+    private int windowEnd;
+    private int matchLength;
+    private int matchDistance;
+
+    SigCompCompressor(final int stateMemorySize) {
+        this.encodedParameters = (encodeSize(SigCompCompartment.CYCLES_PER_BIT, 16) << 6) |
+                (encodeSize(SigCompCompartment.DECOMPRESSION_MEMORY_SIZE, 2048) << 3) |
+                encodeSize(stateMemorySize, 2048);
+    }
+
+    /**
+     * @return n such that base * 2^(n - 1) is the largest power not above the size, 0 if size is below base
+     */
+    private static int encodeSize(final int size, final int base) {
+        int n = 0;
+        while (n < 7 && size >= base << n) {
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * @param peerStateIds      partial identifiers of states peer has announced
+     * @param returnedFeedback  feedback item peer asked to return or null
+     * @param announcedStateIds identifiers of states saved on behalf of the peer to announce
+     *                          in returned parameters, null if the peer already knows them
+     * @return SigComp message
+     */
+    byte[] compress(final byte[] message, final List<byte[]> peerStateIds, final byte[] returnedFeedback,
+                    final List<byte[]> announcedStateIds) {
+        final SigCompState base = findAnnouncedState(peerStateIds);
+
+        final byte[] ring;
+        final int position;
+        if (base == null) {
+            ring = new byte[RING_SIZE];
+            position = RING_START;
+        }
+        else {
+            final byte[] value = base.getValue();
+            ring = Arrays.copyOfRange(value, RING_START - CODE_ADDRESS, RING_END - CODE_ADDRESS);
+            position = ((value[POSITION_ADDRESS - CODE_ADDRESS] & 0xFF) << 8) |
+                    (value[POSITION_ADDRESS - CODE_ADDRESS + 1] & 0xFF);
+        }
+
+        //history in the order it was written followed by the message
+        window = new byte[RING_SIZE + message.length];
+        final int oldest = position - RING_START;
+        System.arraycopy(ring, oldest, window, 0, RING_SIZE - oldest);
+        System.arraycopy(ring, 0, window, RING_SIZE - oldest, oldest);
+        System.arraycopy(message, 0, window, RING_SIZE, message.length);
+        windowStart = base == null ? RING_SIZE : 0;
+        windowEnd = window.length;
+
+        final BitWriter bits = new BitWriter(message.length + 48);
+        writeReturnedParameters(bits, announcedStateIds);
+        encode(bits);
+        window = null;
+
+        final byte[] header = buildHeader(base, returnedFeedback);
+        final byte[] compressed = bits.toByteArray();
+        final byte[] result = Arrays.copyOf(header, header.length + compressed.length);
+        System.arraycopy(compressed, 0, result, header.length, compressed.length);
+
+        rememberState(ring, position, message);
+        return result;
+    }
+
+    private void writeReturnedParameters(final BitWriter bits, final List<byte[]> announcedStateIds) {
+        if (announcedStateIds == null) {
+            bits.write(0, 8);
+            return;
+        }
+
+        //newest states are at the end
+        final int count = Math.min(announcedStateIds.size(), MAX_ANNOUNCED_STATES);
+        final List<byte[]> ids = announcedStateIds.subList(announcedStateIds.size() - count, announcedStateIds.size());
+
+        bits.write(3 + count * (MIN_ACCESS_LENGTH + 1), 8);
+        bits.write(encodedParameters, 8);
+        bits.write(Udvm.SIGCOMP_VERSION, 8);
+        for (byte[] id : ids) {
+            bits.write(MIN_ACCESS_LENGTH, 8);
+            for (int i = 0; i < MIN_ACCESS_LENGTH; i++) {
+                bits.write(id[i] & 0xFF, 8);
+            }
+        }
+        bits.write(0, 8);
+    }
+
+    private SigCompState findAnnouncedState(final List<byte[]> peerStateIds) {
+        for (SigCompState state : sentStates) {
+            for (byte[] id : peerStateIds) {
+                if (state.matches(id, 0, id.length)) {
+                    return state;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static byte[] buildHeader(final SigCompState base, final byte[] returnedFeedback) {
+        final int feedbackLength = returnedFeedback == null ? 0 : returnedFeedback.length;
+        final byte[] header;
+        int p = 0;
+
+        if (base != null) {
+            header = new byte[1 + feedbackLength + MIN_ACCESS_LENGTH];
+            header[p++] = (byte) (0xF9 | (returnedFeedback == null ? 0 : 0x04));
+        }
+        else {
+            header = new byte[1 + feedbackLength + 2 + BYTECODE.length];
+            header[p++] = (byte) (0xF8 | (returnedFeedback == null ? 0 : 0x04));
+        }
+
+        if (returnedFeedback != null) {
+            System.arraycopy(returnedFeedback, 0, header, p, feedbackLength);
+            p += feedbackLength;
+        }
+
+        if (base != null) {
+            System.arraycopy(base.getId(), 0, header, p, MIN_ACCESS_LENGTH);
+        }
+        else {
+            header[p++] = (byte) (BYTECODE.length >> 4);
+            header[p++] = (byte) (((BYTECODE.length & 0x0F) << 4) | (CODE_ADDRESS / 64 - 1));
+            System.arraycopy(BYTECODE, 0, header, p, BYTECODE.length);
+        }
+        return header;
+    }
+
+    /**
+     * Builds the state peer will create after decompressing the message, exactly as decompressor sees it.
+     */
+    private void rememberState(final byte[] ring, final int position, final byte[] message) {
+        int offset = position - RING_START;
+        for (byte b : message) {
+            ring[offset] = b;
+            offset = offset + 1 == RING_SIZE ? 0 : offset + 1;
+        }
+        final int newPosition = RING_START + offset;
+
+        final byte[] value = new byte[STATE_LENGTH];
+        System.arraycopy(BYTECODE, 0, value, 0, BYTECODE.length);
+        value[POSITION_ADDRESS - CODE_ADDRESS] = (byte) (newPosition >> 8);
+        value[POSITION_ADDRESS - CODE_ADDRESS + 1] = (byte) newPosition;
+        System.arraycopy(ring, 0, value, RING_START - CODE_ADDRESS, RING_SIZE);
+
+        sentStates.addFirst(new SigCompState(value, CODE_ADDRESS, CODE_ADDRESS, MIN_ACCESS_LENGTH, 0));
+        if (sentStates.size() > MAX_SENT_STATES) {
+            sentStates.removeLast();
+        }
+    }
+
+    /**
+     * Deflate-like greedy parsing with one step lazy evaluation over hash chains.
+     */
+    private void encode(final BitWriter bits) {
+        Arrays.fill(head, -1);
+        if (prev.length < windowEnd) {
+            prev = new int[windowEnd];
+        }
+        for (int i = windowStart; i < RING_SIZE; i++) {
+            insert(i);
+        }
+
+        int current = RING_SIZE;
+        boolean pending = false;
+        int pendingLength = 0;
+        int pendingDistance = 0;
+
+        while (current < windowEnd) {
+            findMatch(current);
+            insert(current);
+
+            if (pending) {
+                if (pendingLength >= MIN_MATCH && pendingLength >= matchLength) {
+                    bits.write(1, 1);
+                    bits.write(pendingDistance - 1, DISTANCE_BITS);
+                    bits.write(pendingLength - MIN_MATCH, LENGTH_BITS);
+
+                    final int end = current - 1 + pendingLength;
+                    for (int i = current + 1; i < end; i++) {
+                        insert(i);
+                    }
+                    current = end;
+                    pending = false;
+                    continue;
+                }
+                writeLiteral(bits, window[current - 1]);
+            }
+
+            pending = true;
+            pendingLength = matchLength;
+            pendingDistance = matchDistance;
+            current++;
+        }
+
+        if (pending) {
+            writeLiteral(bits, window[current - 1]);
+        }
+    }
+
+    private static void writeLiteral(final BitWriter bits, final byte literal) {
+        bits.write(0, 1);
+        bits.write(literal & 0xFF, 8);
+    }
+
+    private void findMatch(final int position) {
+        matchLength = 0;
+        matchDistance = 0;
+        if (position + MIN_MATCH > windowEnd) {
+            return;
+        }
+
+        final int limit = Math.min(MAX_MATCH, windowEnd - position);
+        int candidate = head[hash(position)];
+        int chain = MAX_CHAIN;
+
+        while (candidate >= windowStart && position - candidate <= RING_SIZE && chain-- > 0) {
+            if (window[candidate + matchLength] == window[position + matchLength]) {
+                int length = 0;
+                while (length < limit && window[candidate + length] == window[position + length]) {
+                    length++;
+                }
+                if (length > matchLength) {
+                    matchLength = length;
+                    matchDistance = position - candidate;
+                    if (length == limit) {
+                        break;
+                    }
+                }
+            }
+            candidate = prev[candidate];
+        }
+
+        if (matchLength < MIN_MATCH) {
+            matchLength = 0;
+        }
+    }
+
+    private void insert(final int position) {
+        if (position + MIN_MATCH <= windowEnd) {
+            final int hash = hash(position);
+            prev[position] = head[hash];
+            head[hash] = position;
+        }
+    }
+
+    private int hash(final int position) {
+        final int value = ((window[position] & 0xFF) << 16) |
+                ((window[position + 1] & 0xFF) << 8) |
+                (window[position + 2] & 0xFF);
+        return (value * 0x9E3779B1) >>> (32 - HASH_BITS);
+    }
+
+    private static byte[] assembleDecompressor() {
+        final Assembler asm = new Assembler(CODE_ADDRESS);
+
+        asm.instruction(Udvm.LOAD).multitype(Udvm.BYTE_COPY_LEFT).multitype(RING_START);
+        asm.instruction(Udvm.LOAD).multitype(Udvm.BYTE_COPY_RIGHT).multitype(RING_END);
+        //write position is zero unless restored from state
+        asm.instruction(Udvm.COMPARE).memory(POSITION_ADDRESS).multitype(RING_START)
+                .address("init").address("parameters").address("parameters");
+        asm.label("init");
+        asm.instruction(Udvm.LOAD).multitype(POSITION_ADDRESS).multitype(RING_START);
+
+        //returned parameters, location stays zero if there are none
+        asm.label("parameters");
+        asm.instruction(Udvm.INPUT_BYTES).multitype(1).multitype(PARAMETERS_LENGTH_ADDRESS + 1).address("done");
+        asm.instruction(Udvm.COMPARE).memory(PARAMETERS_LENGTH_ADDRESS).multitype(1)
+                .address("loop").address("announce").address("announce");
+        asm.label("announce");
+        asm.instruction(Udvm.INPUT_BYTES).memory(PARAMETERS_LENGTH_ADDRESS).multitype(PARAMETERS_ADDRESS)
+                .address("done");
+        asm.instruction(Udvm.LOAD).multitype(PARAMETERS_LOCATION_ADDRESS).multitype(PARAMETERS_ADDRESS);
+
+        asm.label("loop");
+        asm.instruction(Udvm.INPUT_BITS).multitype(1).multitype(FLAG_ADDRESS).address("done");
+        asm.instruction(Udvm.COMPARE).memory(FLAG_ADDRESS).multitype(1)
+                .address("literal").address("match").address("match");
+
+        asm.label("literal");
+        asm.instruction(Udvm.INPUT_BITS).multitype(8).multitype(LITERAL_ADDRESS).address("done");
+        asm.instruction(Udvm.OUTPUT).multitype(LITERAL_ADDRESS + 1).multitype(1);
+        asm.instruction(Udvm.COPY_LITERAL).multitype(LITERAL_ADDRESS + 1).multitype(1).reference(POSITION_ADDRESS);
+        asm.instruction(Udvm.JUMP).address("loop");
+
+        asm.label("match");
+        asm.instruction(Udvm.INPUT_BITS).multitype(DISTANCE_BITS).multitype(DISTANCE_ADDRESS).address("done");
+        asm.instruction(Udvm.INPUT_BITS).multitype(LENGTH_BITS).multitype(LENGTH_ADDRESS).address("done");
+        asm.instruction(Udvm.ADD).reference(DISTANCE_ADDRESS).multitype(1);
+        asm.instruction(Udvm.ADD).reference(LENGTH_ADDRESS).multitype(MIN_MATCH);
+        asm.instruction(Udvm.LOAD).multitype(START_ADDRESS).memory(POSITION_ADDRESS);
+        asm.instruction(Udvm.COPY_OFFSET).memory(DISTANCE_ADDRESS).memory(LENGTH_ADDRESS).reference(POSITION_ADDRESS);
+        asm.instruction(Udvm.OUTPUT).memory(START_ADDRESS).memory(LENGTH_ADDRESS);
+        asm.instruction(Udvm.JUMP).address("loop");
+
+        asm.label("done");
+        asm.instruction(Udvm.END_MESSAGE).multitype(0).memory(PARAMETERS_LOCATION_ADDRESS).multitype(STATE_LENGTH)
+                .multitype(CODE_ADDRESS).multitype(CODE_ADDRESS).multitype(MIN_ACCESS_LENGTH).multitype(0);
+
+        final byte[] code = asm.toByteArray();
+        if (CODE_ADDRESS + code.length > POSITION_ADDRESS) {
+            throw new IllegalStateException("Decompressor code overlaps its variables");
+        }
+        return code;
+    }
+
+    /**
+     * Minimal UDVM assembler. Addresses are always encoded in 3 bytes, so labels are resolved in one pass.
+     */
+    private static final class Assembler {
+        private final int origin;
+        private byte[] code = new byte[256];
+        private int length;
+        private int instructionStart;
+        private final Map<String, Integer> labels = new HashMap<String, Integer>();
+        //code offset of the address operand -> {instruction offset, label}
+        private final Map<Integer, Object[]> fixups = new HashMap<Integer, Object[]>();
+
+        Assembler(final int origin) {
+            this.origin = origin;
+        }
+
+        Assembler instruction(final int opcode) {
+            instructionStart = length;
+            return put(opcode);
+        }
+
+        void label(final String name) {
+            labels.put(name, length);
+        }
+
+        Assembler multitype(final int value) {
+            if (value < 64) {
+                return put(value);
+            }
+            if (value == 64 || value == 128) {
+                return put(value == 64 ? 0x86 : 0x87);
+            }
+            if (Integer.bitCount(value) == 1 && value >= 256 && value <= 32768) {
+                return put(0x88 | (Integer.numberOfTrailingZeros(value) - 8));
+            }
+            if (value < 8192) {
+                return put(0xA0 | (value >> 8)).put(value & 0xFF);
+            }
+            return put(0x80).put(value >> 8).put(value & 0xFF);
+        }
+
+        Assembler memory(final int address) {
+            if ((address & 1) == 0 && address < 128) {
+                return put(0x40 | (address / 2));
+            }
+            if (address < 8192) {
+                return put(0xC0 | (address >> 8)).put(address & 0xFF);
+            }
+            return put(0x81).put(address >> 8).put(address & 0xFF);
+        }
+
+        Assembler reference(final int address) {
+            if ((address & 1) == 0 && address < 256) {
+                return put(address / 2);
+            }
+            return put(0xC0).put(address >> 8).put(address & 0xFF);
+        }
+
+        Assembler address(final String label) {
+            fixups.put(length, new Object[]{instructionStart, label});
+            return put(0x80).put(0).put(0);
+        }
+
+        byte[] toByteArray() {
+            for (Map.Entry<Integer, Object[]> fixup : fixups.entrySet()) {
+                final int at = fixup.getKey();
+                final int instruction = (Integer) fixup.getValue()[0];
+                final Integer target = labels.get((String) fixup.getValue()[1]);
+                if (target == null) {
+                    throw new IllegalStateException("Unknown label " + fixup.getValue()[1]);
+                }
+                final int relative = (target - instruction) & 0xFFFF;
+                code[at + 1] = (byte) (relative >> 8);
+                code[at + 2] = (byte) relative;
+            }
+            return Arrays.copyOf(code, length);
+        }
+
+        private Assembler put(final int b) {
+            if (length == code.length) {
+                code = Arrays.copyOf(code, code.length * 2);
+            }
+            code[length++] = (byte) b;
+            return this;
+        }
+    }
+
+    private static final class BitWriter {
+        private byte[] bytes;
+        private int length;
+        private int accumulator;
+        private int bitCount;
+
+        BitWriter(final int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        /**
+         * Writes value most significant bit first, matching input_bit_order of zero.
+         */
+        void write(final int value, final int count) {
+            for (int i = count - 1; i >= 0; i--) {
+                accumulator = (accumulator << 1) | ((value >> i) & 1);
+                if (++bitCount == 8) {
+                    putByte(accumulator);
+                    accumulator = 0;
+                    bitCount = 0;
+                }
+            }
+        }
+
+        byte[] toByteArray() {
+            if (bitCount > 0) {
+                //padding zeros read as a literal flag which lacks its 8 bits, so decompressor stops
+                putByte(accumulator << (8 - bitCount));
+                accumulator = 0;
+                bitCount = 0;
+            }
+            return Arrays.copyOf(bytes, length);
+        }
+
+        private void putByte(final int b) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[length++] = (byte) b;
+        }
+    }
+}
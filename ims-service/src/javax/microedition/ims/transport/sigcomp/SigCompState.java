@@ -0,0 +1,145 @@
+/*
+ * This software code is (c) 2010 T-Mobile USA, Inc. All Rights Reserved.
+ *
+ * Unauthorized redistribution or further use of this material is
+ * prohibited without the express permission of T-Mobile USA, Inc. and
+ * will be prosecuted to the fullest extent of the law.
+ *
+ * Removal or modification of these Terms and Conditions from the source
+ * or binary code of this software is prohibited.  In the event that
+ * redistribution of the source or binary code for this software is
+ * approved by T-Mobile USA, Inc., these Terms and Conditions and the
+ * above copyright notice must be reproduced in their entirety and in all
+ * circumstances.
+ *
+ * No name or trademarks of T-Mobile USA, Inc., or of its parent company,
+ * Deutsche Telekom AG or any Deutsche Telekom or T-Mobile entity, may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" AND "WITH ALL FAULTS" BASIS
+ * AND WITHOUT WARRANTIES OF ANY KIND.  ALL EXPRESS OR IMPLIED
+ * CONDITIONS, REPRESENTATIONS OR WARRANTIES, INCLUDING ANY IMPLIED
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR
+ * NON-INFRINGEMENT CONCERNING THIS SOFTWARE, ITS SOURCE OR BINARY CODE
+ * OR ANY DERIVATIVES THEREOF ARE HEREBY EXCLUDED.  T-MOBILE USA, INC.
+ * AND ITS LICENSORS SHALL NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY
+ * LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE
+ * OR ITS DERIVATIVES.  IN NO EVENT WILL T-MOBILE USA, INC. OR ITS
+ * LICENSORS BE LIABLE FOR LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT,
+ * INDIRECT, SPECIAL, CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES,
+ * HOWEVER CAUSED AND REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT
+ * OF THE USE OF OR INABILITY TO USE THIS SOFTWARE, EVEN IF T-MOBILE USA,
+ * INC. HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGES.
+ *
+ * THESE TERMS AND CONDITIONS APPLY SOLELY AND EXCLUSIVELY TO THE USE,
+ * MODIFICATION OR DISTRIBUTION OF THIS SOFTWARE, ITS SOURCE OR BINARY
+ * CODE OR ANY DERIVATIVES THEREOF, AND ARE SEPARATE FROM ANY WRITTEN
+ * WARRANTY THAT MAY BE PROVIDED WITH A DEVICE YOU PURCHASE FROM T-MOBILE
+ * USA, INC., AND TO THE EXTENT PERMITTED BY LAW.
+ */
+
+package javax.microedition.ims.transport.sigcomp;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * State item of RFC 3320, identified by SHA-1 hash over its attributes and value.
+ */
+final class SigCompState {
+    static final int STATE_COST_OVERHEAD = 64;
+
+    private final byte[] value;
+    private final int address;
+    private final int instruction;
+    private final int minimumAccessLength;
+    private final int retentionPriority;
+    private final byte[] id;
+
+    SigCompState(final byte[] value,
+                 final int address,
+                 final int instruction,
+                 final int minimumAccessLength,
+                 final int retentionPriority) {
+
+        this.value = value;
+        this.address = address;
+        this.instruction = instruction;
+        this.minimumAccessLength = minimumAccessLength;
+        this.retentionPriority = retentionPriority;
+        this.id = calcId();
+    }
+
+    private byte[] calcId() {
+        final MessageDigest digest = createSha1();
+        digest.update(new byte[]{
+                (byte) (value.length >> 8), (byte) value.length,
+                (byte) (address >> 8), (byte) address,
+                (byte) (instruction >> 8), (byte) instruction,
+                (byte) (minimumAccessLength >> 8), (byte) minimumAccessLength
+        });
+        digest.update(value);
+        return digest.digest();
+    }
+
+    static MessageDigest createSha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+
+    /**
+     * @return true if partial identifier is prefix of the state id
+     */
+    boolean matches(final byte[] partialId, final int offset, final int length) {
+        if (length > id.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (id[i] != partialId[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean hasSameId(final SigCompState state) {
+        return matches(state.id, 0, id.length);
+    }
+
+    byte[] getId() {
+        return id;
+    }
+
+    byte[] getValue() {
+        return value;
+    }
+
+    int getLength() {
+        return value.length;
+    }
+
+    int getAddress() {
+        return address;
+    }
+
+    int getInstruction() {
+        return instruction;
+    }
+
+    int getMinimumAccessLength() {
+        return minimumAccessLength;
+    }
+
+    int getRetentionPriority() {
+        return retentionPriority;
+    }
+
+    int getCost() {
+        return value.length + STATE_COST_OVERHEAD;
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * This software code is (c) 2010 T-Mobile USA, Inc. All Rights Reserved.
+ *
+ * Unauthorized redistribution or further use of this material is
+ * prohibited without the express permission of T-Mobile USA, Inc. and
+ * will be prosecuted to the fullest extent of the law.
+ *
+ * Removal or modification of these Terms and Conditions from the source
+ * or binary code of this software is prohibited.  In the event that
+ * redistribution of the source or binary code for this software is
+ * approved by T-Mobile USA, Inc., these Terms and Conditions and the
+ * above copyright notice must be reproduced in their entirety and in all
+ * circumstances.
+ *
+ * No name or trademarks of T-Mobile USA, Inc., or of its parent company,
+ * Deutsche Telekom AG or any Deutsche Telekom or T-Mobile entity, may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" AND "WITH ALL FAULTS" BASIS
+ * AND WITHOUT WARRANTIES OF ANY KIND.  ALL EXPRESS OR IMPLIED
+ * CONDITIONS, REPRESENTATIONS OR WARRANTIES, INCLUDING ANY IMPLIED
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR
+ * NON-INFRINGEMENT CONCERNING THIS SOFTWARE, ITS SOURCE OR BINARY CODE
+ * OR ANY DERIVATIVES THEREOF ARE HEREBY EXCLUDED.  T-MOBILE USA, INC.
+ * AND ITS LICENSORS SHALL NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY
+ * LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE
+ * OR ITS DERIVATIVES.  IN NO EVENT WILL T-MOBILE USA, INC. OR ITS
+ * LICENSORS BE LIABLE FOR LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT,
+ * INDIRECT, SPECIAL, CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES,
+ * HOWEVER CAUSED AND REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT
+ * OF THE USE OF OR INABILITY TO USE THIS SOFTWARE, EVEN IF T-MOBILE USA,
+ * INC. HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGES.
+ *
+ * THESE TERMS AND CONDITIONS APPLY SOLELY AND EXCLUSIVELY TO THE USE,
+ * MODIFICATION OR DISTRIBUTION OF THIS SOFTWARE, ITS SOURCE OR BINARY
+ * CODE OR ANY DERIVATIVES THEREOF, AND ARE SEPARATE FROM ANY WRITTEN
+ * WARRANTY THAT MAY BE PROVIDED WITH A DEVICE YOU PURCHASE FROM T-MOBILE
+ * USA, INC., AND TO THE EXTENT PERMITTED BY LAW.
+ */
+
+package javax.microedition.ims.transport.sigcomp;
+
+import javax.microedition.ims.common.Logger;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * States saved by local decompressor. Every compartment has own state memory, lookup by identifier is
+ * done across all compartments and locally available states.
+ */
+public final class SigCompStateStore {
+    public static final int DEFAULT_STATE_MEMORY_SIZE = 16 * 1024;
+
+    //RFC 3485 static SIP/SDP dictionary, state_address and state_instruction are 0
+    private static final String SIP_SDP_DICTIONARY_RESOURCE = "rfc3485-sip-sdp-dictionary.bin";
+    private static final int SIP_SDP_DICTIONARY_LENGTH = 0x12E4;
+    private static final int SIP_SDP_DICTIONARY_MINIMUM_ACCESS_LENGTH = 6;
+    private static final byte[] SIP_SDP_DICTIONARY_ID = {
+            (byte) 0xFB, (byte) 0xE5, (byte) 0x07, (byte) 0xDF, (byte) 0xE5, (byte) 0xE6
+    };
+
+    //marks more than one state matching partial identifier
+    private static final SigCompState AMBIGUOUS = new SigCompState(new byte[0], 0, 0, 0, 0);
+
+    private final int stateMemorySize;
+    private final List<SigCompState> localStates = new ArrayList<SigCompState>();
+    //states of every compartment in order of creation
+    private final Map<SigCompCompartment, LinkedList<SigCompState>> compartmentStates =
+            new HashMap<SigCompCompartment, LinkedList<SigCompState>>();
+
+    public SigCompStateStore() {
+        this(DEFAULT_STATE_MEMORY_SIZE);
+    }
+
+    public SigCompStateStore(final int stateMemorySize) {
+        this.stateMemorySize = stateMemorySize;
+    }
+
+    public int getStateMemorySize() {
+        return stateMemorySize;
+    }
+
+    /**
+     * Adds RFC 3485 SIP/SDP static dictionary, which peers may reference right from their first message.
+     * Dictionary is read from package resource and checked against its well-known state identifier.
+     *
+     * @return true if dictionary was added
+     */
+    public boolean addSipSdpDictionary() {
+        final byte[] value;
+        try {
+            value = readResource(SIP_SDP_DICTIONARY_RESOURCE);
+        }
+        catch (IOException e) {
+            Logger.log(Logger.Tag.WARNING, "SIP/SDP dictionary is not available: " + e.getMessage());
+            return false;
+        }
+
+        final SigCompState state = new SigCompState(value, 0, 0, SIP_SDP_DICTIONARY_MINIMUM_ACCESS_LENGTH, 0);
+        if (value.length != SIP_SDP_DICTIONARY_LENGTH ||
+                !state.matches(SIP_SDP_DICTIONARY_ID, 0, SIP_SDP_DICTIONARY_ID.length)) {
+            Logger.log(Logger.Tag.WARNING, "SIP/SDP dictionary resource is corrupted, not used");
+            return false;
+        }
+
+        synchronized (this) {
+            localStates.add(state);
+        }
+        return true;
+    }
+
+    private static byte[] readResource(final String name) throws IOException {
+        final InputStream in = SigCompStateStore.class.getResourceAsStream(name);
+        if (in == null) {
+            throw new IOException("Resource " + name + " is not found");
+        }
+
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(SIP_SDP_DICTIONARY_LENGTH);
+            final byte[] buffer = new byte[1024];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Adds state available to every compartment.
+     */
+    public synchronized void addLocalState(final byte[] value,
+                                           final int address,
+                                           final int instruction,
+                                           final int minimumAccessLength) {
+        localStates.add(new SigCompState(value, address, instruction, minimumAccessLength, 0));
+    }
+
+    /**
+     * Looks state up by partial identifier.
+     *
+     * @return state or null if there is no state or partial identifier is ambiguous or too short
+     */
+    synchronized SigCompState find(final byte[] partialId, final int offset, final int length) {
+        SigCompState found = null;
+
+        for (SigCompState state : localStates) {
+            found = pickMatch(found, state, partialId, offset, length);
+            if (found == AMBIGUOUS) {
+                return null;
+            }
+        }
+        for (List<SigCompState> states : compartmentStates.values()) {
+            for (SigCompState state : states) {
+                found = pickMatch(found, state, partialId, offset, length);
+                if (found == AMBIGUOUS) {
+                    return null;
+                }
+            }
+        }
+
+        return found != null && length >= found.getMinimumAccessLength() ? found : null;
+    }
+
+    private static SigCompState pickMatch(final SigCompState found,
+                                          final SigCompState state,
+                                          final byte[] partialId,
+                                          final int offset,
+                                          final int length) {
+        if (!state.matches(partialId, offset, length)) {
+            return found;
+        }
+        return found == null || found.hasSameId(state) ? state : AMBIGUOUS;
+    }
+
+    /**
+     * Saves state in compartment memory. States of lower retention priority and then older states
+     * are freed if there is not enough room.
+     */
+    synchronized void save(final SigCompCompartment compartment, final SigCompState state) {
+        if (state.getCost() > stateMemorySize) {
+            return;
+        }
+
+        final LinkedList<SigCompState> states = getStates(compartment);
+        for (SigCompState saved : states) {
+            if (saved.hasSameId(state)) {
+                states.remove(saved);
+                break;
+            }
+        }
+
+        int used = state.getCost();
+        for (SigCompState saved : states) {
+            used += saved.getCost();
+        }
+        while (used > stateMemorySize) {
+            SigCompState victim = states.getFirst();
+            for (SigCompState saved : states) {
+                if (saved.getRetentionPriority() < victim.getRetentionPriority()) {
+                    victim = saved;
+                }
+            }
+            states.remove(victim);
+            used -= victim.getCost();
+        }
+
+        states.addLast(state);
+    }
+
+    synchronized void free(final SigCompCompartment compartment, final byte[] partialId) {
+        final LinkedList<SigCompState> states = compartmentStates.get(compartment);
+        if (states != null) {
+            SigCompState found = null;
+            for (SigCompState state : states) {
+                found = pickMatch(found, state, partialId, 0, partialId.length);
+            }
+            if (found != null && found != AMBIGUOUS && partialId.length >= found.getMinimumAccessLength()) {
+                states.remove(found);
+            }
+        }
+    }
+
+    /**
+     * @return identifiers of states saved for compartment
+     */
+    synchronized List<byte[]> getStateIds(final SigCompCompartment compartment) {
+        final List<byte[]> ids = new ArrayList<byte[]>();
+        final List<SigCompState> states = compartmentStates.get(compartment);
+        if (states != null) {
+            for (SigCompState state : states) {
+                ids.add(state.getId());
+            }
+        }
+        return ids;
+    }
+
+    synchronized void release(final SigCompCompartment compartment) {
+        compartmentStates.remove(compartment);
+    }
+
+    private LinkedList<SigCompState> getStates(final SigCompCompartment compartment) {
+        LinkedList<SigCompState> states = compartmentStates.get(compartment);
+        if (states == null) {
+            states = new LinkedList<SigCompState>();
+            compartmentStates.put(compartment, states);
+        }
+        return states;
+    }
+}
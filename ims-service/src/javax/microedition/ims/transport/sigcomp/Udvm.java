@@ -0,0 +1,983 @@
+/*
+ * This software code is (c) 2010 T-Mobile USA, Inc. All Rights Reserved.
+ *
+ * Unauthorized redistribution or further use of this material is
+ * prohibited without the express permission of T-Mobile USA, Inc. and
+ * will be prosecuted to the fullest extent of the law.
+ *
+ * Removal or modification of these Terms and Conditions from the source
+ * or binary code of this software is prohibited.  In the event that
+ * redistribution of the source or binary code for this software is
+ * approved by T-Mobile USA, Inc., these Terms and Conditions and the
+ * above copyright notice must be reproduced in their entirety and in all
+ * circumstances.
+ *
+ * No name or trademarks of T-Mobile USA, Inc., or of its parent company,
+ * Deutsche Telekom AG or any Deutsche Telekom or T-Mobile entity, may be
+ * used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" AND "WITH ALL FAULTS" BASIS
+ * AND WITHOUT WARRANTIES OF ANY KIND.  ALL EXPRESS OR IMPLIED
+ * CONDITIONS, REPRESENTATIONS OR WARRANTIES, INCLUDING ANY IMPLIED
+ * WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, OR
+ * NON-INFRINGEMENT CONCERNING THIS SOFTWARE, ITS SOURCE OR BINARY CODE
+ * OR ANY DERIVATIVES THEREOF ARE HEREBY EXCLUDED.  T-MOBILE USA, INC.
+ * AND ITS LICENSORS SHALL NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY
+ * LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE
+ * OR ITS DERIVATIVES.  IN NO EVENT WILL T-MOBILE USA, INC. OR ITS
+ * LICENSORS BE LIABLE FOR LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT,
+ * INDIRECT, SPECIAL, CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES,
+ * HOWEVER CAUSED AND REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT
+ * OF THE USE OF OR INABILITY TO USE THIS SOFTWARE, EVEN IF T-MOBILE USA,
+ * INC. HAS BEEN ADVISED OF THE POSSIBILITY OF SUCH DAMAGES.
+ *
+ * THESE TERMS AND CONDITIONS APPLY SOLELY AND EXCLUSIVELY TO THE USE,
+ * MODIFICATION OR DISTRIBUTION OF THIS SOFTWARE, ITS SOURCE OR BINARY
+ * CODE OR ANY DERIVATIVES THEREOF, AND ARE SEPARATE FROM ANY WRITTEN
+ * WARRANTY THAT MAY BE PROVIDED WITH A DEVICE YOU PURCHASE FROM T-MOBILE
+ * USA, INC., AND TO THE EXTENT PERMITTED BY LAW.
+ */
+
+package javax.microedition.ims.transport.sigcomp;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Universal Decompressor Virtual Machine of RFC 3320. Instance is not thread safe and is used for one
+ * message at a time.
+ */
+final class Udvm {
+    static final int BYTE_COPY_LEFT = 64;
+    static final int BYTE_COPY_RIGHT = 66;
+    static final int INPUT_BIT_ORDER = 68;
+    static final int STACK_LOCATION = 70;
+
+    static final int DECOMPRESSION_FAILURE = 0;
+    static final int AND = 1;
+    static final int OR = 2;
+    static final int NOT = 3;
+    static final int LSHIFT = 4;
+    static final int RSHIFT = 5;
+    static final int ADD = 6;
+    static final int SUBTRACT = 7;
+    static final int MULTIPLY = 8;
+    static final int DIVIDE = 9;
+    static final int REMAINDER = 10;
+    static final int SORT_ASCENDING = 11;
+    static final int SORT_DESCENDING = 12;
+    static final int SHA_1 = 13;
+    static final int LOAD = 14;
+    static final int MULTILOAD = 15;
+    static final int PUSH = 16;
+    static final int POP = 17;
+    static final int COPY = 18;
+    static final int COPY_LITERAL = 19;
+    static final int COPY_OFFSET = 20;
+    static final int MEMSET = 21;
+    static final int JUMP = 22;
+    static final int COMPARE = 23;
+    static final int CALL = 24;
+    static final int RETURN = 25;
+    static final int SWITCH = 26;
+    static final int CRC = 27;
+    static final int INPUT_BYTES = 28;
+    static final int INPUT_BITS = 29;
+    static final int INPUT_HUFFMAN = 30;
+    static final int STATE_ACCESS = 31;
+    static final int STATE_CREATE = 32;
+    static final int STATE_FREE = 33;
+    static final int OUTPUT = 34;
+    static final int END_MESSAGE = 35;
+
+    static final int SIGCOMP_VERSION = 1;
+    private static final int MAX_OUTPUT_SIZE = 64 * 1024;
+    private static final int MAX_STATE_REQUESTS = 4;
+    private static final int MIN_PARTIAL_ID_LENGTH = 6;
+    private static final int MAX_PARTIAL_ID_LENGTH = 20;
+
+    /**
+     * Outcome of decompression. States are only requested, it's up to the application to save them.
+     */
+    static final class Result {
+        byte[] output;
+        final List<SigCompState> createdStates = new ArrayList<SigCompState>();
+        final List<byte[]> freedStates = new ArrayList<byte[]>();
+        //feedback item peer returns for our earlier message
+        byte[] returnedFeedback;
+        //feedback item peer wants to get back in our next message
+        byte[] requestedFeedback;
+        boolean returnedParameters;
+        int peerCyclesPerBit;
+        int peerDecompressionMemorySize;
+        int peerStateMemorySize;
+        final List<byte[]> peerStateIds = new ArrayList<byte[]>();
+    }
+
+    private final SigCompStateStore stateStore;
+
+    private byte[] memory;
+    private int memorySize;
+    private int pc;
+    private long cyclesLeft;
+
+    private byte[] input;
+    private int inputPos;
+    private int inputEnd;
+    private int bitBuffer;
+    private int bitCount;
+    private int lastPBit;
+
+    private byte[] output;
+    private int outputLength;
+    private Result result;
+
+    Udvm(final SigCompStateStore stateStore) {
+        this.stateStore = stateStore;
+    }
+
+    /**
+     * Decompresses single SigComp message.
+     *
+     * @param memorySize UDVM memory size, decompression_memory_size for stream based transport is halved and
+     *                   for message based transport reduced by message size by caller
+     */
+    Result decompress(final byte[] message,
+                      final int offset,
+                      final int length,
+                      final int memorySize,
+                      final int cyclesPerBit) throws SigCompException {
+
+        this.memorySize = Math.min(memorySize, 0x10000);
+        this.memory = new byte[this.memorySize];
+        this.output = new byte[1024];
+        this.outputLength = 0;
+        this.result = new Result();
+        this.bitCount = 0;
+        this.lastPBit = 0;
+
+        final int end = offset + length;
+        int p = offset;
+        if (length < 3) {
+            throw new SigCompException("Message is too short");
+        }
+
+        final int first = message[p++] & 0xFF;
+        if ((first & 0xF8) != 0xF8) {
+            throw new SigCompException("Not a SigComp message");
+        }
+
+        if ((first & 0x04) != 0) {
+            final int itemLength = (message[p] & 0x80) == 0 ? 1 : 1 + (message[p] & 0x7F);
+            if (p + itemLength > end) {
+                throw new SigCompException("Truncated returned feedback item");
+            }
+            result.returnedFeedback = Arrays.copyOfRange(message, p, p + itemLength);
+            p += itemLength;
+        }
+
+        writeWord(0, this.memorySize & 0xFFFF);
+        writeWord(2, cyclesPerBit);
+        writeWord(4, SIGCOMP_VERSION);
+
+        final int idLengthCode = first & 0x03;
+        if (idLengthCode != 0) {
+            final int idLength = 3 + 3 * idLengthCode;
+            if (p + idLength > end) {
+                throw new SigCompException("Truncated partial state identifier");
+            }
+            final SigCompState state = stateStore.find(message, p, idLength);
+            if (state == null) {
+                throw new SigCompException("State is not found");
+            }
+            p += idLength;
+
+            if (state.getAddress() + state.getLength() > this.memorySize) {
+                throw new SigCompException("State doesn't fit UDVM memory");
+            }
+            System.arraycopy(state.getValue(), 0, memory, state.getAddress(), state.getLength());
+            writeWord(6, idLength);
+            writeWord(8, state.getLength());
+            pc = state.getInstruction();
+        }
+        else {
+            if (p + 2 > end) {
+                throw new SigCompException("Truncated bytecode header");
+            }
+            final int codeLength = ((message[p] & 0xFF) << 4) | ((message[p + 1] & 0xFF) >> 4);
+            final int destination = message[p + 1] & 0x0F;
+            p += 2;
+
+            if (destination == 0) {
+                throw new SigCompException("Reserved destination");
+            }
+            final int codeAddress = (destination + 1) * 64;
+            if (p + codeLength > end || codeAddress + codeLength > this.memorySize) {
+                throw new SigCompException("Bytecode doesn't fit");
+            }
+            System.arraycopy(message, p, memory, codeAddress, codeLength);
+            p += codeLength;
+            pc = codeAddress;
+        }
+
+        this.input = message;
+        this.inputPos = p;
+        this.inputEnd = end;
+        this.cyclesLeft = (8L * length + 1000) * cyclesPerBit;
+
+        execute();
+
+        result.output = Arrays.copyOf(output, outputLength);
+        final Result done = result;
+        result = null;
+        memory = null;
+        input = null;
+        return done;
+    }
+
+    private void execute() throws SigCompException {
+        while (true) {
+            final int instruction = pc;
+            final int opcode = codeByte();
+            consumeCycles(1);
+
+            switch (opcode) {
+                case AND:
+                case OR:
+                case LSHIFT:
+                case RSHIFT:
+                case ADD:
+                case SUBTRACT:
+                case MULTIPLY:
+                case DIVIDE:
+                case REMAINDER: {
+                    final int ref = reference();
+                    final int operand2 = multitype();
+                    writeWord(ref, arithmetic(opcode, readWord(ref), operand2));
+                    break;
+                }
+                case NOT: {
+                    final int ref = reference();
+                    writeWord(ref, ~readWord(ref) & 0xFFFF);
+                    break;
+                }
+                case SORT_ASCENDING:
+                case SORT_DESCENDING: {
+                    final int start = multitype();
+                    final int n = multitype();
+                    final int k = multitype();
+                    consumeCycles((long) k * (ceilLog2(k) + n));
+                    sort(start, n, k, opcode == SORT_DESCENDING);
+                    break;
+                }
+                case SHA_1: {
+                    final int position = multitype();
+                    final int length = multitype();
+                    final int destination = multitype();
+                    consumeCycles(length);
+                    sha1(position, length, destination);
+                    break;
+                }
+                case LOAD: {
+                    final int address = multitype();
+                    writeWord(address, multitype());
+                    break;
+                }
+                case MULTILOAD:
+                    multiload(instruction);
+                    break;
+                case PUSH:
+                    push(multitype());
+                    break;
+                case POP: {
+                    final int address = multitype();
+                    writeWord(address, pop());
+                    break;
+                }
+                case COPY: {
+                    final int position = multitype();
+                    final int length = multitype();
+                    final int destination = multitype();
+                    consumeCycles(length);
+                    copy(position, length, destination);
+                    break;
+                }
+                case COPY_LITERAL: {
+                    final int position = multitype();
+                    final int length = multitype();
+                    final int ref = reference();
+                    consumeCycles(length);
+                    writeWord(ref, copy(position, length, readWord(ref)));
+                    break;
+                }
+                case COPY_OFFSET: {
+                    final int offset = multitype();
+                    final int length = multitype();
+                    final int ref = reference();
+                    consumeCycles(length);
+                    final int destination = readWord(ref);
+                    writeWord(ref, copy(stepBack(destination, offset), length, destination));
+                    break;
+                }
+                case MEMSET: {
+                    final int address = multitype();
+                    final int length = multitype();
+                    final int startValue = multitype();
+                    final int offset = multitype();
+                    consumeCycles(length);
+                    memset(address, length, startValue, offset);
+                    break;
+                }
+                case JUMP:
+                    pc = address(instruction);
+                    break;
+                case COMPARE: {
+                    final int value1 = multitype();
+                    final int value2 = multitype();
+                    final int less = address(instruction);
+                    final int equal = address(instruction);
+                    final int greater = address(instruction);
+                    pc = value1 < value2 ? less : value1 == value2 ? equal : greater;
+                    break;
+                }
+                case CALL: {
+                    final int target = address(instruction);
+                    push(pc);
+                    pc = target;
+                    break;
+                }
+                case RETURN:
+                    pc = pop();
+                    break;
+                case SWITCH: {
+                    final int n = literal();
+                    final int j = multitype();
+                    consumeCycles(n);
+                    int target = -1;
+                    for (int i = 0; i < n; i++) {
+                        final int address = address(instruction);
+                        if (i == j) {
+                            target = address;
+                        }
+                    }
+                    if (target < 0) {
+                        throw new SigCompException("SWITCH index is out of range");
+                    }
+                    pc = target;
+                    break;
+                }
+                case CRC: {
+                    final int value = multitype();
+                    final int position = multitype();
+                    final int length = multitype();
+                    final int target = address(instruction);
+                    consumeCycles(length);
+                    if (crc(position, length) != value) {
+                        pc = target;
+                    }
+                    break;
+                }
+                case INPUT_BYTES: {
+                    final int length = multitype();
+                    final int destination = multitype();
+                    final int target = address(instruction);
+                    consumeCycles(length);
+                    inputBytes(length, destination, target);
+                    break;
+                }
+                case INPUT_BITS: {
+                    final int length = multitype();
+                    final int destination = multitype();
+                    final int target = address(instruction);
+                    if (length > 16) {
+                        throw new SigCompException("INPUT-BITS length exceeds 16");
+                    }
+                    if (!hasBits(length)) {
+                        pc = target;
+                    }
+                    else {
+                        writeWord(destination, readBits(length, (bitOrder() & 0x04) != 0));
+                    }
+                    break;
+                }
+                case INPUT_HUFFMAN:
+                    inputHuffman(instruction);
+                    break;
+                case STATE_ACCESS:
+                    stateAccess();
+                    break;
+                case STATE_CREATE: {
+                    final int length = multitype();
+                    final int address = multitype();
+                    final int stateInstruction = multitype();
+                    final int minimumAccessLength = multitype();
+                    final int retentionPriority = multitype();
+                    consumeCycles(length);
+                    createState(length, address, stateInstruction, minimumAccessLength, retentionPriority);
+                    break;
+                }
+                case STATE_FREE: {
+                    final int idStart = multitype();
+                    final int idLength = multitype();
+                    checkStateRequests();
+                    checkPartialIdLength(idLength);
+                    result.freedStates.add(readBytes(idStart, idLength));
+                    break;
+                }
+                case OUTPUT: {
+                    final int start = multitype();
+                    final int length = multitype();
+                    consumeCycles(length);
+                    output(start, length);
+                    break;
+                }
+                case END_MESSAGE: {
+                    final int feedbackLocation = multitype();
+                    final int parametersLocation = multitype();
+                    final int length = multitype();
+                    final int address = multitype();
+                    final int stateInstruction = multitype();
+                    final int minimumAccessLength = multitype();
+                    final int retentionPriority = multitype();
+                    if (length != 0) {
+                        consumeCycles(length);
+                        createState(length, address, stateInstruction, minimumAccessLength, retentionPriority);
+                    }
+                    readRequestedFeedback(feedbackLocation);
+                    readReturnedParameters(parametersLocation);
+                    return;
+                }
+                case DECOMPRESSION_FAILURE:
+                    throw new SigCompException("DECOMPRESSION-FAILURE executed at " + instruction);
+                default:
+                    throw new SigCompException("Unknown instruction " + opcode + " at " + instruction);
+            }
+        }
+    }
+
+    private static int arithmetic(final int opcode, final int operand1, final int operand2) throws SigCompException {
+        final int value;
+        switch (opcode) {
+            case AND:
+                value = operand1 & operand2;
+                break;
+            case OR:
+                value = operand1 | operand2;
+                break;
+            case LSHIFT:
+                value = operand2 >= 16 ? 0 : operand1 << operand2;
+                break;
+            case RSHIFT:
+                value = operand2 >= 16 ? 0 : operand1 >>> operand2;
+                break;
+            case ADD:
+                value = operand1 + operand2;
+                break;
+            case SUBTRACT:
+                value = operand1 - operand2;
+                break;
+            case MULTIPLY:
+                value = operand1 * operand2;
+                break;
+            case DIVIDE:
+            case REMAINDER:
+                if (operand2 == 0) {
+                    throw new SigCompException("Division by zero");
+                }
+                value = opcode == DIVIDE ? operand1 / operand2 : operand1 % operand2;
+                break;
+            default:
+                throw new IllegalArgumentException("Not an arithmetic instruction " + opcode);
+        }
+        return value & 0xFFFF;
+    }
+
+    private void sort(final int start, final int n, final int k, final boolean descending) throws SigCompException {
+        final int[][] lists = new int[n][k];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < k; j++) {
+                lists[i][j] = readWord(start + 2 * (i * k + j));
+            }
+        }
+
+        if (n > 0) {
+            final Integer[] order = new Integer[k];
+            for (int j = 0; j < k; j++) {
+                order[j] = j;
+            }
+            final int[] keys = lists[0];
+            //merge sort of Arrays.sort is stable, equal words keep their order
+            Arrays.sort(order, new Comparator<Integer>() {
+                public int compare(final Integer a, final Integer b) {
+                    final int diff = keys[a] - keys[b];
+                    return descending ? -diff : diff;
+                }
+            });
+
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < k; j++) {
+                    writeWord(start + 2 * (i * k + j), lists[i][order[j]]);
+                }
+            }
+        }
+    }
+
+    private static int ceilLog2(final int value) {
+        int log = 0;
+        while ((1 << log) < value) {
+            log++;
+        }
+        return log;
+    }
+
+    private void sha1(int position, final int length, int destination) throws SigCompException {
+        final MessageDigest digest = SigCompState.createSha1();
+        for (int i = 0; i < length; i++) {
+            digest.update((byte) readByte(position));
+            position = nextCopyAddress(position);
+        }
+        for (byte b : digest.digest()) {
+            writeByte(destination, b);
+            destination = nextCopyAddress(destination);
+        }
+    }
+
+    private void multiload(final int instruction) throws SigCompException {
+        final int address = multitype();
+        final int n = literal();
+        consumeCycles(n);
+
+        //instruction must not overwrite itself
+        int operandsEnd = pc;
+        for (int i = 0; i < n; i++) {
+            operandsEnd += multitypeLength(readByte(operandsEnd));
+        }
+
+        for (int i = 0; i < n; i++) {
+            final int target = address + 2 * i;
+            if (target < operandsEnd && target + 2 > instruction) {
+                throw new SigCompException("MULTILOAD overwrites itself");
+            }
+            writeWord(target, multitype());
+        }
+    }
+
+    private void push(final int value) throws SigCompException {
+        final int stackLocation = readWord(STACK_LOCATION);
+        final int stackFill = readWord(stackLocation);
+        writeWord(stackLocation + 2 + 2 * stackFill, value);
+        writeWord(stackLocation, (stackFill + 1) & 0xFFFF);
+    }
+
+    private int pop() throws SigCompException {
+        final int stackLocation = readWord(STACK_LOCATION);
+        final int stackFill = readWord(stackLocation);
+        if (stackFill == 0) {
+            throw new SigCompException("Stack underflow");
+        }
+        final int value = readWord(stackLocation + 2 * stackFill);
+        writeWord(stackLocation, stackFill - 1);
+        return value;
+    }
+
+    /**
+     * Copies bytes applying byte copying rules to both source and destination.
+     *
+     * @return address following the last written byte
+     */
+    private int copy(int position, final int length, int destination) throws SigCompException {
+        final int left = readWord(BYTE_COPY_LEFT);
+        final int right = readWord(BYTE_COPY_RIGHT);
+        for (int i = 0; i < length; i++) {
+            writeByte(destination, readByte(position));
+            position = nextCopyAddress(position, left, right);
+            destination = nextCopyAddress(destination, left, right);
+        }
+        return destination;
+    }
+
+    private int stepBack(final int destination, final int offset) throws SigCompException {
+        final int left = readWord(BYTE_COPY_LEFT);
+        final int right = readWord(BYTE_COPY_RIGHT);
+
+        if (left < right && destination >= left && destination < right) {
+            final int size = right - left;
+            return left + (((destination - left - offset) % size) + size) % size;
+        }
+
+        int address = destination;
+        for (int i = 0; i < offset; i++) {
+            address = address == left ? (right - 1) & 0xFFFF : (address - 1) & 0xFFFF;
+        }
+        return address;
+    }
+
+    private void memset(int address, final int length, final int startValue, final int offset) throws SigCompException {
+        final int left = readWord(BYTE_COPY_LEFT);
+        final int right = readWord(BYTE_COPY_RIGHT);
+        for (int i = 0; i < length; i++) {
+            writeByte(address, startValue + i * offset);
+            address = nextCopyAddress(address, left, right);
+        }
+    }
+
+    /**
+     * 16-bit FCS of RFC 1662.
+     */
+    private int crc(int position, final int length) throws SigCompException {
+        int crc = 0xFFFF;
+        for (int i = 0; i < length; i++) {
+            crc ^= readByte(position);
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0x8408 : crc >>> 1;
+            }
+            position = nextCopyAddress(position);
+        }
+        return ~crc & 0xFFFF;
+    }
+
+    private void inputBytes(final int length, int destination, final int target) throws SigCompException {
+        //fraction of byte left from INPUT-BITS is discarded
+        bitCount = 0;
+        if (inputEnd - inputPos < length) {
+            pc = target;
+            return;
+        }
+
+        final int left = readWord(BYTE_COPY_LEFT);
+        final int right = readWord(BYTE_COPY_RIGHT);
+        for (int i = 0; i < length; i++) {
+            writeByte(destination, input[inputPos++]);
+            destination = nextCopyAddress(destination, left, right);
+        }
+    }
+
+    private void inputHuffman(final int instruction) throws SigCompException {
+        final int destination = multitype();
+        final int target = address(instruction);
+        final int n = literal();
+        consumeCycles(n);
+
+        final int[] table = new int[4 * n];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = multitype();
+        }
+
+        final boolean hBit = (bitOrder() & 0x02) != 0;
+        int value = 0;
+        int totalBits = 0;
+        for (int i = 0; i < n; i++) {
+            final int bits = table[4 * i];
+            totalBits += bits;
+            if (totalBits > 16) {
+                throw new SigCompException("INPUT-HUFFMAN reads more than 16 bits");
+            }
+            if (!hasBits(bits)) {
+                pc = target;
+                return;
+            }
+            value = (value << bits) | readBits(bits, hBit);
+
+            final int lowerBound = table[4 * i + 1];
+            final int upperBound = table[4 * i + 2];
+            if (value >= lowerBound && value <= upperBound) {
+                writeWord(destination, (value + table[4 * i + 3] - lowerBound) & 0xFFFF);
+                return;
+            }
+        }
+        throw new SigCompException("INPUT-HUFFMAN value doesn't match any interval");
+    }
+
+    private int bitOrder() throws SigCompException {
+        final int order = readWord(INPUT_BIT_ORDER);
+        if ((order & ~0x07) != 0) {
+            throw new SigCompException("Reserved bits of input_bit_order are set");
+        }
+        return order;
+    }
+
+    private boolean hasBits(final int count) throws SigCompException {
+        final int pBit = bitOrder() & 0x01;
+        if (pBit != lastPBit) {
+            //bits of partially read byte are discarded when P-bit changes
+            bitCount = 0;
+            lastPBit = pBit;
+        }
+        return bitCount + 8L * (inputEnd - inputPos) >= count;
+    }
+
+    private int readBits(final int count, final boolean lsbFirst) {
+        int value = 0;
+        for (int i = 0; i < count; i++) {
+            if (bitCount == 0) {
+                bitBuffer = input[inputPos++] & 0xFF;
+                bitCount = 8;
+            }
+            final int bit = lastPBit == 0 ?
+                    (bitBuffer >> (bitCount - 1)) & 1 :
+                    (bitBuffer >> (8 - bitCount)) & 1;
+            bitCount--;
+
+            value = lsbFirst ? value | (bit << i) : (value << 1) | bit;
+        }
+        return value;
+    }
+
+    private void stateAccess() throws SigCompException {
+        final int idStart = multitype();
+        final int idLength = multitype();
+        final int stateBegin = multitype();
+        int stateLength = multitype();
+        int stateAddress = multitype();
+        int stateInstruction = multitype();
+
+        checkPartialIdLength(idLength);
+        final byte[] partialId = readBytes(idStart, idLength);
+        final SigCompState state = stateStore.find(partialId, 0, idLength);
+        if (state == null) {
+            throw new SigCompException("State is not found");
+        }
+
+        if (stateLength == 0) {
+            stateLength = state.getLength();
+        }
+        if (stateAddress == 0) {
+            stateAddress = state.getAddress();
+        }
+        if (stateInstruction == 0) {
+            stateInstruction = state.getInstruction();
+        }
+        if (stateBegin + stateLength > state.getLength()) {
+            throw new SigCompException("State is shorter than requested");
+        }
+        consumeCycles(stateLength);
+
+        final int left = readWord(BYTE_COPY_LEFT);
+        final int right = readWord(BYTE_COPY_RIGHT);
+        final byte[] value = state.getValue();
+        int address = stateAddress;
+        for (int i = 0; i < stateLength; i++) {
+            writeByte(address, value[stateBegin + i]);
+            address = nextCopyAddress(address, left, right);
+        }
+
+        if (stateInstruction != 0) {
+            pc = stateInstruction;
+        }
+    }
+
+    private void createState(final int length,
+                             final int address,
+                             final int instruction,
+                             final int minimumAccessLength,
+                             final int retentionPriority) throws SigCompException {
+        checkStateRequests();
+        checkPartialIdLength(minimumAccessLength);
+        if (retentionPriority == 0xFFFF) {
+            throw new SigCompException("Retention priority 65535 is reserved");
+        }
+
+        final int left = readWord(BYTE_COPY_LEFT);
+        final int right = readWord(BYTE_COPY_RIGHT);
+        final byte[] value = new byte[length];
+        int position = address;
+        for (int i = 0; i < length; i++) {
+            value[i] = (byte) readByte(position);
+            position = nextCopyAddress(position, left, right);
+        }
+        result.createdStates.add(new SigCompState(value, address, instruction, minimumAccessLength, retentionPriority));
+    }
+
+    private void checkStateRequests() throws SigCompException {
+        if (result.createdStates.size() + result.freedStates.size() >= MAX_STATE_REQUESTS) {
+            throw new SigCompException("Too many state requests");
+        }
+    }
+
+    private static void checkPartialIdLength(final int length) throws SigCompException {
+        if (length < MIN_PARTIAL_ID_LENGTH || length > MAX_PARTIAL_ID_LENGTH) {
+            throw new SigCompException("Partial state identifier length " + length + " is out of range");
+        }
+    }
+
+    private void output(int start, final int length) throws SigCompException {
+        if (outputLength + length > MAX_OUTPUT_SIZE) {
+            throw new SigCompException("Output exceeds " + MAX_OUTPUT_SIZE + " bytes");
+        }
+        if (output.length < outputLength + length) {
+            output = Arrays.copyOf(output, Math.max(output.length * 2, outputLength + length));
+        }
+
+        final int left = readWord(BYTE_COPY_LEFT);
+        final int right = readWord(BYTE_COPY_RIGHT);
+        for (int i = 0; i < length; i++) {
+            output[outputLength++] = (byte) readByte(start);
+            start = nextCopyAddress(start, left, right);
+        }
+    }
+
+    private void readRequestedFeedback(final int location) throws SigCompException {
+        if (location != 0) {
+            final int flags = readByte(location);
+            if ((flags & 0x04) != 0) {
+                final int first = readByte(location + 1);
+                final int itemLength = (first & 0x80) == 0 ? 1 : 1 + (first & 0x7F);
+                result.requestedFeedback = readBytes(location + 1, itemLength);
+            }
+        }
+    }
+
+    private void readReturnedParameters(final int location) throws SigCompException {
+        if (location != 0) {
+            final int parameters = readByte(location);
+            final int cpb = parameters >> 6;
+            final int dms = (parameters >> 3) & 0x07;
+            final int sms = parameters & 0x07;
+
+            result.returnedParameters = true;
+            result.peerCyclesPerBit = 16 << cpb;
+            result.peerDecompressionMemorySize = dms == 0 ? 0 : 2048 << (dms - 1);
+            result.peerStateMemorySize = sms == 0 ? 0 : 2048 << (sms - 1);
+
+            //list of partial state identifiers ends with a length which is out of range
+            int address = location + 2;
+            while (address < memorySize) {
+                final int idLength = readByte(address);
+                if (idLength < MIN_PARTIAL_ID_LENGTH || idLength > MAX_PARTIAL_ID_LENGTH) {
+                    break;
+                }
+                result.peerStateIds.add(readBytes(address + 1, idLength));
+                address += 1 + idLength;
+            }
+        }
+    }
+
+    private void consumeCycles(final long cycles) throws SigCompException {
+        cyclesLeft -= cycles;
+        if (cyclesLeft < 0) {
+            throw new SigCompException("Cycles are exhausted");
+        }
+    }
+
+    private int codeByte() throws SigCompException {
+        return readByte(pc++);
+    }
+
+    private int literal() throws SigCompException {
+        final int b = codeByte();
+        if ((b & 0x80) == 0) {
+            return b;
+        }
+        if ((b & 0xC0) == 0x80) {
+            return ((b & 0x3F) << 8) | codeByte();
+        }
+        if (b == 0xC0) {
+            return (codeByte() << 8) | codeByte();
+        }
+        throw new SigCompException("Invalid literal operand");
+    }
+
+    /**
+     * @return memory address the operand refers to
+     */
+    private int reference() throws SigCompException {
+        final int b = codeByte();
+        if ((b & 0x80) == 0) {
+            return 2 * b;
+        }
+        if ((b & 0xC0) == 0x80) {
+            return 2 * (((b & 0x3F) << 8) | codeByte());
+        }
+        if (b == 0xC0) {
+            return (codeByte() << 8) | codeByte();
+        }
+        throw new SigCompException("Invalid reference operand");
+    }
+
+    private int multitype() throws SigCompException {
+        final int b = codeByte();
+        if ((b & 0x80) == 0) {
+            return (b & 0x40) == 0 ? b & 0x3F : readWord(2 * (b & 0x3F));
+        }
+        switch (b >> 5) {
+            case 4:
+                if (b == 0x80) {
+                    return (codeByte() << 8) | codeByte();
+                }
+                if (b == 0x81) {
+                    return readWord((codeByte() << 8) | codeByte());
+                }
+                if ((b & 0xFE) == 0x86) {
+                    return 1 << ((b & 0x01) + 6);
+                }
+                if ((b & 0xF8) == 0x88) {
+                    return 1 << ((b & 0x07) + 8);
+                }
+                if ((b & 0xF0) == 0x90) {
+                    return (((b & 0x0F) << 8) | codeByte()) + 61440;
+                }
+                break;
+            case 5:
+                return ((b & 0x1F) << 8) | codeByte();
+            case 6:
+                return readWord(((b & 0x1F) << 8) | codeByte());
+            case 7:
+                return (b & 0x1F) + 65504;
+        }
+        throw new SigCompException("Invalid multitype operand");
+    }
+
+    private static int multitypeLength(final int b) {
+        if (b == 0x80 || b == 0x81) {
+            return 3;
+        }
+        return b >= 0x90 && b < 0xE0 ? 2 : 1;
+    }
+
+    private int address(final int instruction) throws SigCompException {
+        return (instruction + multitype()) & 0xFFFF;
+    }
+
+    private int nextCopyAddress(final int address) throws SigCompException {
+        return nextCopyAddress(address, readWord(BYTE_COPY_LEFT), readWord(BYTE_COPY_RIGHT));
+    }
+
+    private static int nextCopyAddress(final int address, final int left, final int right) {
+        final int next = (address + 1) & 0xFFFF;
+        return next == right ? left : next;
+    }
+
+    private byte[] readBytes(final int address, final int length) throws SigCompException {
+        if (address + length > memorySize) {
+            throw new SigCompException("Memory access out of bounds");
+        }
+        return Arrays.copyOfRange(memory, address, address + length);
+    }
+
+    private int readByte(final int address) throws SigCompException {
+        if (address >= memorySize) {
+            throw new SigCompException("Memory access out of bounds at " + address);
+        }
+        return memory[address] & 0xFF;
+    }
+
+    private int readWord(final int address) throws SigCompException {
+        return (readByte(address) << 8) | readByte(address + 1);
+    }
+
+    private void writeByte(final int address, final int value) throws SigCompException {
+        if (address >= memorySize) {
+            throw new SigCompException("Memory access out of bounds at " + address);
+        }
+        memory[address] = (byte) value;
+    }
+
+    private void writeWord(final int address, final int value) throws SigCompException {
+        writeByte(address, value >> 8);
+        writeByte(address + 1, value);
+    }
+}
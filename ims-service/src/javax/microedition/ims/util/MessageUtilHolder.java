@@ -725,7 +725,7 @@ public final class MessageUtilHolder {
 
     public static boolean isValidUri(final Configuration configuration, final String uriToTest){
         Collection<String> specialUris = configuration.getSpecialUris();
-        return specialUris.contains(uriToTest) || SipUriParser.parseUri(uriToTest) != null;
+        return specialUris.contains(uriToTest) || SipUriParser.parse(uriToTest) != null;
     }
 
     private MessageUtilHolder() {